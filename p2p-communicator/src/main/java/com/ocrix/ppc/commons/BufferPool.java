@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.commons;
+
+/**
+ * Keeps the byte arrays for reuse in size classes, the powers of two from
+ * {@link #MIN_SIZE} to {@link #MAX_SIZE}. An array is at least as long as
+ * asked and has to be given back by {@link #release(byte[])}, the arrays
+ * bigger than the max size are not pooled.
+ */
+public class BufferPool {
+	/* Class members */
+	public static final int MIN_SIZE = 4 * 1024;
+	public static final int MAX_SIZE = 1024 * 1024;
+	/* How many bytes each class keeps idle at most */
+	private static final int CLASS_BUDGET = 1024 * 1024;
+	private static final BufferPool SHARED = new BufferPool();
+	private final ObjectPool<byte[]>[] classes;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a buffer pool
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BufferPool() {
+		int count = Integer.numberOfTrailingZeros(MAX_SIZE)
+				- Integer.numberOfTrailingZeros(MIN_SIZE) + 1;
+		classes = new ObjectPool[count];
+		for (int i = 0; i < count; i++) {
+			final int size = MIN_SIZE << i;
+			classes[i] = new ObjectPool<byte[]>("byte[" + size + "]", Math.max(
+					2, Math.min(64, CLASS_BUDGET / size))) {
+				@Override
+				protected byte[] create() {
+					return new byte[size];
+				}
+
+				@Override
+				protected boolean reset(byte[] buffer) {
+					return true;
+				}
+
+				@Override
+				protected void destroy(byte[] buffer) {
+				}
+			};
+		}
+	}
+
+	/**
+	 * Attains a pool shared by the encoding and decoding of the messages
+	 * 
+	 * @return a {@link BufferPool}
+	 */
+	public static BufferPool getDefault() {
+		return SHARED;
+	}
+
+	/**
+	 * Borrows an array of at least the given size, its content is undefined
+	 * 
+	 * @param minSize
+	 *            - a number of bytes needed
+	 * 
+	 * @return a byte[]
+	 */
+	public byte[] acquire(int minSize) {
+		Validator.validateInt(minSize);
+		int index = getClassIndex(minSize);
+		if (index < 0) {
+			return new byte[minSize];
+		}
+		return classes[index].borrow();
+	}
+
+	/**
+	 * Gives an array back, the arrays not of a size class are left to GC
+	 * 
+	 * @param buffer
+	 *            - a borrowed array
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null || Integer.bitCount(buffer.length) != 1) {
+			return;
+		}
+		int index = getClassIndex(buffer.length);
+		if (index >= 0 && (MIN_SIZE << index) == buffer.length) {
+			classes[index].release(buffer);
+		}
+	}
+
+	/**
+	 * Turns the leak detection of all classes on or off
+	 * 
+	 * @param isLeakDetection
+	 *            <b>true</b> to remember where the arrays are borrowed
+	 */
+	public void setLeakDetection(boolean isLeakDetection) {
+		for (ObjectPool<byte[]> pool : classes) {
+			pool.setLeakDetection(isLeakDetection);
+		}
+	}
+
+	/**
+	 * Logs the arrays borrowed longer than the given time
+	 * 
+	 * @param olderThan
+	 *            - a time in milliseconds
+	 * 
+	 * @return a number of the suspected leaks
+	 */
+	public int reportLeaks(long olderThan) {
+		int leaks = 0;
+		for (ObjectPool<byte[]> pool : classes) {
+			leaks += pool.reportLeaks(olderThan);
+		}
+		return leaks;
+	}
+
+	/**
+	 * Returns a number of the arrays borrowed and not released
+	 * 
+	 * @return a borrowed count
+	 */
+	public int getBorrowedCount() {
+		int count = 0;
+		for (ObjectPool<byte[]> pool : classes) {
+			count += pool.getBorrowedCount();
+		}
+		return count;
+	}
+
+	/**
+	 * Frees all idle arrays
+	 */
+	public void clear() {
+		for (ObjectPool<byte[]> pool : classes) {
+			pool.clear();
+		}
+	}
+
+	/**
+	 * Finds the smallest class that fits the size
+	 * 
+	 * @param size
+	 *            - a number of bytes
+	 * 
+	 * @return an index of the class, -1 if the size is above the max
+	 */
+	private int getClassIndex(int size) {
+		if (size > MAX_SIZE) {
+			return -1;
+		}
+		int rounded = Math.max(size, MIN_SIZE);
+		/* The next power of two */
+		int power = 32 - Integer.numberOfLeadingZeros(rounded - 1);
+		return power - Integer.numberOfTrailingZeros(MIN_SIZE);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.commons;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps a file into memory region by region, so a file of any size is read or
+ * written without copying it through the heap. The regions are mapped as the
+ * file is walked through, sequential access maps each region once. A mapping
+ * is released by the garbage collector, it stays valid after the file is
+ * closed.
+ */
+public class MappedFile implements Closeable {
+	/* Class members */
+	public static final int REGION_SIZE = 64 * 1024 * 1024;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final FileChannel.MapMode mode;
+	private final long size;
+	private MappedByteBuffer region = null;
+	/* A position of the region in the file */
+	private long regionStart = 0;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Maps an existing file for reading
+	 * 
+	 * @param file
+	 *            - a {@link File} to be read
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be opened
+	 */
+	public MappedFile(File file) throws IOException {
+		Validator.validateObjNotNull(file);
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.mode = FileChannel.MapMode.READ_ONLY;
+		this.size = channel.size();
+	}
+
+	/**
+	 * Creates or truncates a file of the given size and maps it for writing
+	 * 
+	 * @param file
+	 *            - a {@link File} to be written
+	 * @param size
+	 *            - a number of bytes the file is sized to
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be created
+	 */
+	public MappedFile(File file, long size) throws IOException {
+		Validator.validateObjNotNull(file);
+		if (size < 0) {
+			throw new IllegalArgumentException("A negative size " + size);
+		}
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(size);
+		this.channel = this.file.getChannel();
+		this.mode = FileChannel.MapMode.READ_WRITE;
+		this.size = size;
+	}
+
+	/**
+	 * Returns a part of the file, the bytes are not copied. A writable file
+	 * returns a buffer the bytes are put into.
+	 * 
+	 * @param position
+	 *            - where the part starts
+	 * @param length
+	 *            - a number of bytes of the part
+	 * 
+	 * @return a {@link ByteBuffer} positioned at 0 and limited by the length
+	 * 
+	 * @throws IOException
+	 *             - if the part is beyond the file or could not be mapped
+	 */
+	public ByteBuffer slice(long position, int length) throws IOException {
+		if (position < 0 || length < 0 || position + length > size) {
+			throw new IOException("The part [" + position + ", "
+					+ (position + length) + ") is beyond the file of " + size
+					+ " bytes");
+		}
+		if (region == null || position < regionStart
+				|| position + length > regionStart + region.capacity()) {
+			force();
+			/* Maps the next region from the position */
+			long regionSize = Math.max(length,
+					Math.min(REGION_SIZE, size - position));
+			region = channel.map(mode, position, regionSize);
+			regionStart = position;
+		}
+		ByteBuffer part = region.duplicate();
+		part.position((int) (position - regionStart));
+		part.limit(part.position() + length);
+		return part.slice();
+	}
+
+	/**
+	 * Puts the remaining bytes of the buffer into the file, the position of the
+	 * buffer is not changed
+	 * 
+	 * @param position
+	 *            - where the bytes go
+	 * @param src
+	 *            - a {@link ByteBuffer}
+	 * 
+	 * @throws IOException
+	 *             - if the bytes do not fit the file
+	 */
+	public void write(long position, ByteBuffer src) throws IOException {
+		slice(position, src.remaining()).put(src.duplicate());
+	}
+
+	/**
+	 * Returns a size of the file
+	 * 
+	 * @return a number of bytes
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Flushes the written region and closes the file
+	 */
+	// @Override
+	public void close() throws IOException {
+		force();
+		region = null;
+		file.close();
+	}
+
+	/**
+	 * Writes the bytes put into the current region through to the file
+	 */
+	private void force() {
+		if (region != null && mode == FileChannel.MapMode.READ_WRITE) {
+			region.force();
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.commons;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps up to a number of idle objects for reuse, i.e. the ones that hold
+ * native memory or are expensive to allocate. An object is borrowed by
+ * {@link #borrow()} and has to be given back by {@link #release(Object)}. If
+ * the leak detection is on, every borrow remembers where it happened and
+ * {@link #reportLeaks(long)} logs the objects kept for too long.
+ * 
+ * @param <T>
+ *            a type of the pooled object
+ */
+public abstract class ObjectPool<T> {
+	/* Class members */
+	private final Queue<T> idle = new ConcurrentLinkedQueue<T>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final AtomicInteger borrowedCount = new AtomicInteger();
+	private final int maxIdle;
+	private final String name;
+	private volatile boolean isLeakDetection = false;
+	/* Where the borrowed objects were taken, only if the detection is on */
+	private final ConcurrentMap<Identity, Borrow> borrows = new ConcurrentHashMap<Identity, Borrow>();
+	private static final Logger logger = Logger.getLogger(ObjectPool.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a pool
+	 * 
+	 * @param name
+	 *            - a name of the pool, used in the leak reports
+	 * @param maxIdle
+	 *            - how many idle objects are kept at most
+	 */
+	public ObjectPool(String name, int maxIdle) {
+		Validator.validateString(name);
+		Validator.validateInt(maxIdle);
+		this.name = name;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Creates a new object when no idle one is left
+	 * 
+	 * @return a new object
+	 */
+	protected abstract T create();
+
+	/**
+	 * Prepares a released object for the next borrower
+	 * 
+	 * @param object
+	 *            - a released object
+	 * 
+	 * @return <b>false</b> if the object cannot be reused
+	 */
+	protected abstract boolean reset(T object);
+
+	/**
+	 * Frees an object which is not kept
+	 * 
+	 * @param object
+	 *            - an object that leaves the pool
+	 */
+	protected abstract void destroy(T object);
+
+	/**
+	 * Borrows an idle object or creates a new one
+	 * 
+	 * @return an object
+	 */
+	public T borrow() {
+		T object = idle.poll();
+		if (object != null) {
+			idleCount.decrementAndGet();
+		} else {
+			object = create();
+		}
+		borrowedCount.incrementAndGet();
+		if (isLeakDetection) {
+			borrows.put(new Identity(object), new Borrow());
+		}
+		return object;
+	}
+
+	/**
+	 * Gives an object back, it is kept if the pool is not full
+	 * 
+	 * @param object
+	 *            - a borrowed object
+	 */
+	public void release(T object) {
+		if (object == null) {
+			return;
+		}
+		borrowedCount.decrementAndGet();
+		if (isLeakDetection) {
+			borrows.remove(new Identity(object));
+		}
+		if (!reset(object)) {
+			destroy(object);
+			return;
+		}
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			destroy(object);
+			return;
+		}
+		idle.offer(object);
+	}
+
+	/**
+	 * Frees all idle objects
+	 */
+	public void clear() {
+		T object = null;
+		while ((object = idle.poll()) != null) {
+			idleCount.decrementAndGet();
+			destroy(object);
+		}
+	}
+
+	/**
+	 * Turns the leak detection on or off, it costs a stack trace per borrow
+	 * 
+	 * @param isLeakDetection
+	 *            <b>true</b> to remember where the objects are borrowed
+	 */
+	public void setLeakDetection(boolean isLeakDetection) {
+		this.isLeakDetection = isLeakDetection;
+		if (!isLeakDetection) {
+			borrows.clear();
+		}
+	}
+
+	/**
+	 * Logs the objects borrowed longer than the given time and not given back
+	 * since, with the stack trace of their borrow
+	 * 
+	 * @param olderThan
+	 *            - a time in milliseconds
+	 * 
+	 * @return a number of the suspected leaks
+	 */
+	public int reportLeaks(long olderThan) {
+		long now = System.currentTimeMillis();
+		int leaks = 0;
+		for (Borrow borrow : borrows.values()) {
+			if (now - borrow.time >= olderThan) {
+				leaks++;
+				logger.warn("A " + name + " is not released for "
+						+ (now - borrow.time) + " ms", borrow.trace);
+			}
+		}
+		return leaks;
+	}
+
+	/**
+	 * Returns a number of the idle objects
+	 * 
+	 * @return an idle count
+	 */
+	public int getIdleCount() {
+		return idleCount.get();
+	}
+
+	/**
+	 * Returns a number of the objects borrowed and not released
+	 * 
+	 * @return a borrowed count
+	 */
+	public int getBorrowedCount() {
+		return borrowedCount.get();
+	}
+
+	/**
+	 * Compares the objects by identity, i.e. two equal arrays are different
+	 * borrows
+	 */
+	private static class Identity {
+		private final Object object;
+
+		private Identity(Object object) {
+			this.object = object;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Identity
+					&& ((Identity) other).object == object;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(object);
+		}
+	}
+
+	/**
+	 * When and where an object was borrowed
+	 */
+	private static class Borrow {
+		private final long time = System.currentTimeMillis();
+		private final Throwable trace = new Throwable("Borrowed here");
+	}
+}
@@ -14,30 +14,31 @@
 
 package com.ocrix.ppc.commons;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.zip.GZIPInputStream;
 import org.apache.log4j.Appender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
-import net.jxta.document.MimeMediaType;
 import net.jxta.endpoint.Message;
 import net.jxta.endpoint.MessageElement;
-import com.ocrix.ppc.message.BinaryMessage;
+import com.ocrix.ppc.message.BatchMessage;
 import com.ocrix.ppc.message.MessageFactory;
-import com.ocrix.ppc.message.ObjectMessage;
+import com.ocrix.ppc.message.ObjectCodecs;
+import com.ocrix.ppc.message.PayloadCodecs;
 import com.ocrix.ppc.message.TextualMessage;
+import com.ocrix.ppc.threadpool.BlockingCall;
 import com.ocrix.ppc.type.DefaultParameter;
 import com.ocrix.ppc.type.Tag;
 
@@ -45,9 +46,9 @@ import com.ocrix.ppc.type.Tag;
  * Peer to peer communicator utilities class.
  */
 public final class PPCUtils {
-	private final static MimeMediaType GZIP_MEDIA_TYPE = new MimeMediaType(
-			"application/gzip").intern();
 	private final static Logger logger = Logger.getLogger(PPCUtils.class);
+	/* Creates the views of the received messages */
+	private final static MessageFactory MESSAGE_FACTORY = new MessageFactory();
 
 	// private final static PPCLogger logger =
 	// PPCLogger.getPPCLogger(PPCUtils.class.getName());
@@ -118,57 +119,42 @@ public final class PPCUtils {
 	 * @return {@link com.ocrix.ppc.message.Message}
 	 * @throws IOException
 	 */
-	public synchronized static com.ocrix.ppc.message.Message convertJxtaMsgToPpcMsg(
+	public static com.ocrix.ppc.message.Message convertJxtaMsgToPpcMsg(
 			Message msg) throws IOException {
-
-		ReentrantLock lock = new ReentrantLock();
 		com.ocrix.ppc.message.Message myMsg = null;
 		try {
-			lock.lock();
-			Message temp = msg;
-			System.out.println(PPCUtils.class.getName() + " " + temp);
-
-			String src = temp.getMessageElement(Tag.SOURCE.getValue())
-					.toString();
-			String dest = temp.getMessageElement(Tag.DESTINATION.getValue())
-					.toString();
-
-			// ========================================================
-			// TODO: Prevent using new
-			// ========================================================
-
-			/* Textual message */
-			if (temp.getMessageElement(Tag.PAYLOAD.getValue()) != null) {
-				myMsg = new TextualMessage(src, dest, temp.getMessageElement(
-						Tag.PAYLOAD.getValue()).toString());
-			} /* Binary message */
-			else if (temp.getMessageElement(Tag.STREAM.getValue()) != null) {
-				InputStream result = getInputStreamFromMessage(temp,
-						Tag.STREAM.getValue());
-				byte[] ar = toByteArray(result);
-				// System.out.println("BINARY ################## " + new
-				// String(ar));
-				logger.info("BINARY ################## " + String.valueOf(ar));
-				myMsg = new BinaryMessage(src, dest, ar);
-			} /* Object message */
-			else if (temp.getMessageElement(Tag.OBJECT.getValue()) != null) {
-				Object ob = getObjectFromMessage(temp, Tag.OBJECT.getValue());
-				// System.out.println("OBJECT @@@@@@@@@@@@@ " + ob.toString());
-				logger.info("OBJECT @@@@@@@@@@@@@ " + ob.toString());
-				myMsg = new ObjectMessage(src, dest, ob);
-			}
-
+			/* A view over the received elements, nothing is copied or decoded */
+			myMsg = MESSAGE_FACTORY.createReceivedMessage(msg);
 		} catch (Exception e) {
-			e.printStackTrace();
 			logger.error(PPCUtils.class.getName() + " thrown an exception "
 					+ e.getMessage());
-		} finally {
-			if (lock != null && lock.isLocked())
-				lock.unlock();
 		}
 		return myMsg;
 	}
 
+	/**
+	 * Converts {@link Message} to the list of
+	 * {@link com.ocrix.ppc.message.Message}, a {@link BatchMessage} is unpacked
+	 * into the messages it carries
+	 * 
+	 * @param msg
+	 *            a JXTA message
+	 * 
+	 * @return a list of {@link com.ocrix.ppc.message.Message}
+	 * @throws IOException
+	 *             if a batch is corrupted
+	 */
+	public static List<com.ocrix.ppc.message.Message> convertJxtaMsgToPpcMsgs(
+			Message msg) throws IOException {
+		if (BatchMessage.isBatch(msg)) {
+			return BatchMessage.unpack(msg);
+		}
+		List<com.ocrix.ppc.message.Message> messages = new ArrayList<com.ocrix.ppc.message.Message>(
+				1);
+		messages.add(convertJxtaMsgToPpcMsg(msg));
+		return messages;
+	}
+
 	/**
 	 * Extracts an Object from the JXTA message
 	 * 
@@ -184,14 +170,13 @@ public final class PPCUtils {
 	 */
 	public static Object getObjectFromMessage(Message message, String elemName)
 			throws IOException, ClassNotFoundException {
-		InputStream is = getInputStreamFromMessage(message, elemName);
+		MessageElement element = message.getMessageElement(elemName);
 
-		if (null == is) {
+		if (null == element) {
 			return null;
 		}
-		ObjectInputStream ois = new ObjectInputStream(is);
-
-		return ois.readObject();
+		/* The codec is named by the MIME type of the element */
+		return ObjectCodecs.decode(element);
 	}
 
 	/**
@@ -214,11 +199,8 @@ public final class PPCUtils {
 			return null;
 		}
 
-		if (element.getMimeType().equals(GZIP_MEDIA_TYPE)) {
-			result = new GZIPInputStream(element.getStream());
-		} else if (element.getMimeType().equals(MimeMediaType.AOS)) {
-			result = element.getStream();
-		}
+		/* The codec is named by the MIME type of the element */
+		result = PayloadCodecs.decode(element);
 		return result;
 	}
 
@@ -233,25 +215,44 @@ public final class PPCUtils {
 	 * @throws IOException
 	 */
 	public static byte[] toByteArray(InputStream is) throws IOException {
-		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-		int nRead;
-		byte[] data = new byte[16384];
-		while ((nRead = is.read(data, 0, data.length)) != -1) {
-			buffer.write(data, 0, nRead);
+		BufferPool buffers = BufferPool.getDefault();
+		/* Reads straight into a pooled buffer, the result is copied once */
+		byte[] data = buffers.acquire(Math.max(is.available(), 16384));
+		try {
+			int count = 0;
+			int nRead;
+			while ((nRead = is.read(data, count, data.length - count)) != -1) {
+				count += nRead;
+				if (count == data.length) {
+					byte[] larger = buffers.acquire(data.length * 2);
+					System.arraycopy(data, 0, larger, 0, count);
+					buffers.release(data);
+					data = larger;
+				}
+			}
+			return Arrays.copyOf(data, count);
+		} finally {
+			buffers.release(data);
 		}
-		buffer.flush();
-		return buffer.toByteArray();
-
 	}
 
 	/**
-	 * As simple as it is
+	 * As simple as it is. The senders wait so for a retry, a work-stealing
+	 * pool adds a thread meanwhile.
 	 * 
 	 * @param timeToWait
 	 */
-	public static void sleep(long timeToWait) {
+	public static void sleep(final long timeToWait) {
 		try {
-			Thread.sleep(timeToWait);
+			new BlockingCall<Void>() {
+				@Override
+				protected Void call() throws InterruptedException {
+					Thread.sleep(timeToWait);
+					return null;
+				}
+			}.invoke();
+		} catch (IOException e) {
+			// not thrown by a sleep
 		} catch (InterruptedException e) {
 			// System.out.println(e.getMessage());
 		}
@@ -389,14 +390,19 @@ public final class PPCUtils {
 	 */
 	public static long copyLarge(InputStream input, OutputStream output)
 			throws IOException {
-		byte[] buffer = new byte[DefaultParameter.DEFAULT_BUFFER_SIZE.getCode()];
-		long count = 0;
-		int n = 0;
-		while (-1 != (n = input.read(buffer))) {
-			output.write(buffer, 0, n);
-			count += n;
+		byte[] buffer = BufferPool.getDefault().acquire(
+				DefaultParameter.DEFAULT_BUFFER_SIZE.getCode());
+		try {
+			long count = 0;
+			int n = 0;
+			while (-1 != (n = input.read(buffer))) {
+				output.write(buffer, 0, n);
+				count += n;
+			}
+			return count;
+		} finally {
+			BufferPool.getDefault().release(buffer);
 		}
-		return count;
 	}
 
 	/**
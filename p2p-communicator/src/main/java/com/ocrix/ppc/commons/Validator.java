@@ -154,6 +154,17 @@ public final class Validator {
 			throw new IllegalArgumentException("The number must be possitive");
 	}
 
+	/**
+	 * Validates the {@link Integer} is greater than zero
+	 * 
+	 * @param toBeValidated
+	 */
+	public static void validatePositive(int toBeValidated) {
+		if (toBeValidated <= 0)
+			throw new IllegalArgumentException("The number must be positive: "
+					+ toBeValidated);
+	}
+
 	/**
 	 * Validates a {@link ThreadPoolType}
 	 * 
@@ -0,0 +1,222 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.commons;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps the {@link Deflater} and {@link Inflater} instances for reuse, each of
+ * them holds a native zlib stream which is costly to create and is freed only
+ * by end() or by GC. There is a pool per compression level and header mode.
+ */
+public final class ZlibPool {
+	/* Class members */
+	private static final int MAX_IDLE = Math.max(4, Runtime.getRuntime()
+			.availableProcessors() * 2);
+	/* Indexed by [nowrap][level] */
+	private static final DeflaterPool[][] deflaters = new DeflaterPool[2][Deflater.BEST_COMPRESSION + 1];
+	private static final InflaterPool[] inflaters = new InflaterPool[] {
+			new InflaterPool(false), new InflaterPool(true) };
+
+	static {
+		for (int wrap = 0; wrap < 2; wrap++) {
+			for (int level = 0; level <= Deflater.BEST_COMPRESSION; level++) {
+				deflaters[wrap][level] = new DeflaterPool(level, wrap == 1);
+			}
+		}
+	}
+
+	/* ---------- end of class members --------- */
+
+	private ZlibPool() {
+	}
+
+	/**
+	 * Borrows a deflater, it has to be given back by
+	 * {@link #releaseDeflater(Deflater)}
+	 * 
+	 * @param level
+	 *            - a compression level, from 0 to 9
+	 * @param isNowrap
+	 *            - <b>true</b> for the raw deflate without the zlib header, as
+	 *            GZIP needs
+	 * 
+	 * @return a {@link Deflater}
+	 */
+	public static Deflater borrowDeflater(int level, boolean isNowrap) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("The level must be from 0 to 9");
+		return deflaters[isNowrap ? 1 : 0][level].borrow();
+	}
+
+	/**
+	 * Gives a deflater back
+	 * 
+	 * @param deflater
+	 *            - a borrowed {@link Deflater}
+	 */
+	public static void releaseDeflater(Deflater deflater) {
+		if (deflater instanceof PooledDeflater) {
+			PooledDeflater pooled = (PooledDeflater) deflater;
+			deflaters[pooled.isNowrap ? 1 : 0][pooled.level].release(pooled);
+		} else if (deflater != null) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Borrows an inflater, it has to be given back by
+	 * {@link #releaseInflater(Inflater)}
+	 * 
+	 * @param isNowrap
+	 *            - <b>true</b> for the raw deflate without the zlib header
+	 * 
+	 * @return an {@link Inflater}
+	 */
+	public static Inflater borrowInflater(boolean isNowrap) {
+		return inflaters[isNowrap ? 1 : 0].borrow();
+	}
+
+	/**
+	 * Gives an inflater back
+	 * 
+	 * @param inflater
+	 *            - a borrowed {@link Inflater}
+	 */
+	public static void releaseInflater(Inflater inflater) {
+		if (inflater instanceof PooledInflater) {
+			PooledInflater pooled = (PooledInflater) inflater;
+			inflaters[pooled.isNowrap ? 1 : 0].release(pooled);
+		} else if (inflater != null) {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Turns the leak detection of all pools on or off
+	 * 
+	 * @param isLeakDetection
+	 *            <b>true</b> to remember where the instances are borrowed
+	 */
+	public static void setLeakDetection(boolean isLeakDetection) {
+		for (DeflaterPool[] pools : deflaters) {
+			for (DeflaterPool pool : pools) {
+				pool.setLeakDetection(isLeakDetection);
+			}
+		}
+		for (InflaterPool pool : inflaters) {
+			pool.setLeakDetection(isLeakDetection);
+		}
+	}
+
+	/**
+	 * Logs the instances borrowed longer than the given time
+	 * 
+	 * @param olderThan
+	 *            - a time in milliseconds
+	 * 
+	 * @return a number of the suspected leaks
+	 */
+	public static int reportLeaks(long olderThan) {
+		int leaks = 0;
+		for (DeflaterPool[] pools : deflaters) {
+			for (DeflaterPool pool : pools) {
+				leaks += pool.reportLeaks(olderThan);
+			}
+		}
+		for (InflaterPool pool : inflaters) {
+			leaks += pool.reportLeaks(olderThan);
+		}
+		return leaks;
+	}
+
+	/**
+	 * A deflater that remembers its settings, so it finds its pool back
+	 */
+	private static class PooledDeflater extends Deflater {
+		private final int level;
+		private final boolean isNowrap;
+
+		private PooledDeflater(int level, boolean isNowrap) {
+			super(level, isNowrap);
+			this.level = level;
+			this.isNowrap = isNowrap;
+		}
+	}
+
+	private static class PooledInflater extends Inflater {
+		private final boolean isNowrap;
+
+		private PooledInflater(boolean isNowrap) {
+			super(isNowrap);
+			this.isNowrap = isNowrap;
+		}
+	}
+
+	private static class DeflaterPool extends ObjectPool<Deflater> {
+		private final int level;
+		private final boolean isNowrap;
+
+		private DeflaterPool(int level, boolean isNowrap) {
+			super("Deflater(" + level + (isNowrap ? ", nowrap)" : ")"),
+					MAX_IDLE);
+			this.level = level;
+			this.isNowrap = isNowrap;
+		}
+
+		@Override
+		protected Deflater create() {
+			return new PooledDeflater(level, isNowrap);
+		}
+
+		@Override
+		protected boolean reset(Deflater deflater) {
+			deflater.reset();
+			return true;
+		}
+
+		@Override
+		protected void destroy(Deflater deflater) {
+			deflater.end();
+		}
+	}
+
+	private static class InflaterPool extends ObjectPool<Inflater> {
+		private final boolean isNowrap;
+
+		private InflaterPool(boolean isNowrap) {
+			super("Inflater" + (isNowrap ? "(nowrap)" : ""), MAX_IDLE);
+			this.isNowrap = isNowrap;
+		}
+
+		@Override
+		protected Inflater create() {
+			return new PooledInflater(isNowrap);
+		}
+
+		@Override
+		protected boolean reset(Inflater inflater) {
+			inflater.reset();
+			return true;
+		}
+
+		@Override
+		protected void destroy(Inflater inflater) {
+			inflater.end();
+		}
+	}
+}
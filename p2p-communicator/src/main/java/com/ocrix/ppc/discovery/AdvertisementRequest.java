@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.discovery;
+
+import java.util.Enumeration;
+import java.util.concurrent.CompletableFuture;
+
+import net.jxta.discovery.DiscoveryEvent;
+import net.jxta.discovery.DiscoveryListener;
+import net.jxta.document.Advertisement;
+import net.jxta.protocol.DiscoveryResponseMsg;
+
+import com.ocrix.ppc.commons.Validator;
+
+/**
+ * A pending asynchronous lookup. It listens to the discovery responses and
+ * completes its future with the first advertisement that matches.
+ * 
+ * @param <A>
+ *            a type of the sought advertisement
+ */
+abstract class AdvertisementRequest<A extends Advertisement> implements
+		DiscoveryListener {
+	/* Class members */
+	private final String name;
+	private final CompletableFuture<A> future = new CompletableFuture<A>();
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Returns the advertisement if it is the sought one
+	 * 
+	 * @param advertisement
+	 *            - a found {@link Advertisement}
+	 * 
+	 * @return a typed advertisement or null if it does not match
+	 */
+	protected abstract A match(Advertisement advertisement);
+
+	/**
+	 * Creates a request
+	 * 
+	 * @param name
+	 *            - an exact name of the sought advertisement
+	 */
+	AdvertisementRequest(String name) {
+		Validator.validateString(name);
+		this.name = name;
+	}
+
+	// @Override
+	public void discoveryEvent(DiscoveryEvent event) {
+		DiscoveryResponseMsg response = event.getResponse();
+		if (response != null) {
+			offer(response.getAdvertisements());
+		}
+	}
+
+	/**
+	 * Completes the future if one of the advertisements matches
+	 * 
+	 * @param advertisements
+	 *            - found advertisements
+	 * 
+	 * @return <b>true</b> if the future is completed
+	 */
+	boolean offer(Enumeration<Advertisement> advertisements) {
+		if (advertisements != null) {
+			while (!future.isDone() && advertisements.hasMoreElements()) {
+				A found = match(advertisements.nextElement());
+				if (found != null) {
+					future.complete(found);
+				}
+			}
+		}
+		return future.isDone();
+	}
+
+	/**
+	 * Returns an exact name of the sought advertisement
+	 * 
+	 * @return a name
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns a future of the request
+	 * 
+	 * @return a {@link CompletableFuture}
+	 */
+	CompletableFuture<A> getFuture() {
+		return future;
+	}
+}
@@ -14,9 +14,22 @@
 
 package com.ocrix.ppc.discovery;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
 import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.Tag;
 
 import net.jxta.discovery.DiscoveryService;
+import net.jxta.document.Advertisement;
 import net.jxta.platform.NetworkManager;
 
 /**
@@ -30,6 +43,19 @@ public abstract class Discovery {
 	private DiscoveryService discovery = null;
 	/* Network manager is responsible for managing JXTA network */
 	private NetworkManager discoveryManager = null;
+	/* How long an asynchronous lookup waits for the answer, in milliseconds */
+	private volatile long lookupTimeout = DefaultParameter.DISCOVERY_TIMEOUT
+			.getCode();
+	/* Expires the asynchronous lookups, shared by all discoveries */
+	private static final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				// @Override
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "PPC-DISCOVERY-TIMER");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	/**
 	 * Creates Discovery service as a base class
@@ -63,6 +89,78 @@ public abstract class Discovery {
 		return discoveryManager;
 	}
 
+	/**
+	 * Sets up how long an asynchronous lookup waits for the answer
+	 * 
+	 * @param lookupTimeout
+	 *            - a timeout in milliseconds
+	 */
+	public void setLookupTimeout(long lookupTimeout) {
+		if (lookupTimeout <= 0)
+			throw new IllegalArgumentException("The timeout must be possitive");
+		this.lookupTimeout = lookupTimeout;
+	}
+
+	/**
+	 * Attains how long an asynchronous lookup waits for the answer
+	 * 
+	 * @return a timeout in milliseconds
+	 */
+	public long getLookupTimeout() {
+		return lookupTimeout;
+	}
+
+	/**
+	 * Looks up an advertisement without blocking. The local cache is checked
+	 * first, if it misses, a discovery query is sent and the future is
+	 * completed by its response. If no answer comes in time, the future is
+	 * completed exceptionally by a {@link TimeoutException}.
+	 * 
+	 * @param type
+	 *            - a {@link DiscoveryService} type, i.e. ADV
+	 * @param request
+	 *            - a request that matches the sought advertisement
+	 * @param timeout
+	 *            - how long to wait for the answer, in milliseconds
+	 * 
+	 * @return a {@link CompletableFuture} of the advertisement
+	 */
+	protected <A extends Advertisement> CompletableFuture<A> lookupAsync(
+			int type, final AdvertisementRequest<A> request, final long timeout) {
+		try {
+			if (request.offer(getDiscovery().getLocalAdvertisements(type,
+					Tag.NAME.getValue(), request.getName()))) {
+				return request.getFuture();
+			}
+		} catch (IOException e) {
+			request.getFuture().completeExceptionally(e);
+			return request.getFuture();
+		}
+
+		final ScheduledFuture<?> expiration = timer.schedule(new Runnable() {
+			// @Override
+			public void run() {
+				request.getFuture().completeExceptionally(
+						new TimeoutException("Could not find ["
+								+ request.getName() + "] within " + timeout
+								+ " ms"));
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
+
+		request.getFuture().whenComplete(new BiConsumer<A, Throwable>() {
+			// @Override
+			public void accept(A advertisement, Throwable error) {
+				expiration.cancel(false);
+			}
+		});
+
+		/* The response is passed to the request, not to the local cache only */
+		getDiscovery().getRemoteAdvertisements(null, type,
+				Tag.NAME.getValue(), request.getName(),
+				DefaultParameter.THRESHOLD.getCode(), request);
+		return request.getFuture();
+	}
+
 	/**
 	 * Sets up a {@link DiscoveryService}
 	 * 
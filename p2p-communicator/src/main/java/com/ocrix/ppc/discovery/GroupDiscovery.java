@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import net.jxta.discovery.DiscoveryService;
 import net.jxta.document.Advertisement;
@@ -81,6 +82,48 @@ public class GroupDiscovery extends Discovery {
 		return peerGroupToBeFound;
 	}
 
+	/**
+	 * Looks up a group by its exact name without blocking the caller. The
+	 * future is completed as soon as the discovery response arrives.
+	 * 
+	 * @param groupName
+	 *            - an exact name of the group
+	 * 
+	 * @return a {@link CompletableFuture} of the {@link PeerGroupAdvertisement}
+	 */
+	public CompletableFuture<PeerGroupAdvertisement> lookupAsync(
+			String groupName) {
+		return lookupAsync(groupName, getLookupTimeout());
+	}
+
+	/**
+	 * Looks up a group by its exact name without blocking the caller.
+	 * 
+	 * @param groupName
+	 *            - an exact name of the group
+	 * @param timeout
+	 *            - how long to wait for the answer, in milliseconds
+	 * 
+	 * @return a {@link CompletableFuture} of the {@link PeerGroupAdvertisement}
+	 */
+	public CompletableFuture<PeerGroupAdvertisement> lookupAsync(
+			final String groupName, long timeout) {
+		return lookupAsync(DiscoveryService.GROUP,
+				new AdvertisementRequest<PeerGroupAdvertisement>(groupName) {
+					@Override
+					protected PeerGroupAdvertisement match(
+							Advertisement advertisement) {
+						if (advertisement instanceof PeerGroupAdvertisement
+								&& groupName
+										.equals(((PeerGroupAdvertisement) advertisement)
+												.getName())) {
+							return (PeerGroupAdvertisement) advertisement;
+						}
+						return null;
+					}
+				}, timeout);
+	}
+
 	/**
 	 * Looks up all group on the network
 	 * 
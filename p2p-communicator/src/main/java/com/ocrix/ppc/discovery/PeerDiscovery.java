@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import net.jxta.discovery.DiscoveryService;
 import net.jxta.document.Advertisement;
 import net.jxta.impl.protocol.PeerAdv;
@@ -71,6 +72,47 @@ public class PeerDiscovery extends Discovery {
 		return lookupPeer(regex);
 	}
 
+	/**
+	 * Looks up a peer by its exact name without blocking the caller. The
+	 * future is completed as soon as the discovery response arrives.
+	 * 
+	 * @param peerName
+	 *            - an exact name of the peer
+	 * 
+	 * @return a {@link CompletableFuture} of the {@link PeerAdvertisement}
+	 */
+	public CompletableFuture<PeerAdvertisement> lookupAsync(String peerName) {
+		return lookupAsync(peerName, getLookupTimeout());
+	}
+
+	/**
+	 * Looks up a peer by its exact name without blocking the caller.
+	 * 
+	 * @param peerName
+	 *            - an exact name of the peer
+	 * @param timeout
+	 *            - how long to wait for the answer, in milliseconds
+	 * 
+	 * @return a {@link CompletableFuture} of the {@link PeerAdvertisement}
+	 */
+	public CompletableFuture<PeerAdvertisement> lookupAsync(
+			final String peerName, long timeout) {
+		return lookupAsync(DiscoveryService.PEER,
+				new AdvertisementRequest<PeerAdvertisement>(peerName) {
+					@Override
+					protected PeerAdvertisement match(
+							Advertisement advertisement) {
+						if (advertisement instanceof PeerAdvertisement
+								&& peerName
+										.equals(((PeerAdvertisement) advertisement)
+												.getName())) {
+							return (PeerAdvertisement) advertisement;
+						}
+						return null;
+					}
+				}, timeout);
+	}
+
 	/**
 	 * Looks up for peers found on the network
 	 * 
@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.discovery;
+
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jxta.discovery.DiscoveryEvent;
+import net.jxta.discovery.DiscoveryListener;
+import net.jxta.discovery.DiscoveryService;
+import net.jxta.document.Advertisement;
+import net.jxta.protocol.DiscoveryResponseMsg;
+import net.jxta.protocol.PipeAdvertisement;
+
+import com.ocrix.ppc.commons.Validator;
+
+/**
+ * Indexes the discovered {@link PipeAdvertisement}s by their pipe name. It is
+ * filled by the discovery responses and respects the expiration of each
+ * advertisement, so a destination is found without querying the network and
+ * without rendering every advertisement.
+ */
+public class PipeAdvertisementCache implements DiscoveryListener {
+	/* Class members */
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/* ---------- end of class members --------- */
+
+	// @Override
+	public void discoveryEvent(DiscoveryEvent event) {
+		DiscoveryResponseMsg response = event.getResponse();
+		if (response == null || response.getAdvertisements() == null) {
+			return;
+		}
+		Enumeration<Advertisement> advertisements = response
+				.getAdvertisements();
+		Enumeration<Long> expirations = response.getExpirations();
+		while (advertisements.hasMoreElements()) {
+			Advertisement advertisement = advertisements.nextElement();
+			long expiration = DiscoveryService.DEFAULT_EXPIRATION;
+			if (expirations != null && expirations.hasMoreElements()) {
+				expiration = expirations.nextElement();
+			}
+			if (advertisement instanceof PipeAdvertisement) {
+				put((PipeAdvertisement) advertisement, expiration);
+			}
+		}
+	}
+
+	/**
+	 * Keeps an advertisement under its pipe name
+	 * 
+	 * @param advertisement
+	 *            - a {@link PipeAdvertisement}
+	 * @param expiration
+	 *            - how long the advertisement is valid, in milliseconds
+	 */
+	public void put(PipeAdvertisement advertisement, long expiration) {
+		Validator.validateObjNotNull(advertisement);
+		if (advertisement.getName() != null && expiration > 0) {
+			entries.put(advertisement.getName(), new Entry(advertisement,
+					System.currentTimeMillis() + expiration));
+		}
+	}
+
+	/**
+	 * Returns an advertisement of the pipe
+	 * 
+	 * @param pipeName
+	 *            - an exact name of the pipe
+	 * 
+	 * @return a {@link PipeAdvertisement} or null if it is not known or
+	 *         expired
+	 */
+	public PipeAdvertisement get(String pipeName) {
+		Validator.validateString(pipeName);
+		Entry entry = entries.get(pipeName);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAt <= System.currentTimeMillis()) {
+			entries.remove(pipeName, entry);
+			return null;
+		}
+		return entry.advertisement;
+	}
+
+	/**
+	 * Forgets an advertisement of the pipe
+	 * 
+	 * @param pipeName
+	 *            - an exact name of the pipe
+	 */
+	public void remove(String pipeName) {
+		entries.remove(pipeName);
+	}
+
+	/**
+	 * Forgets all advertisements
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns a number of kept advertisements, the expired ones included
+	 * 
+	 * @return a size
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * An advertisement and the time it expires at
+	 */
+	private static class Entry {
+		private final PipeAdvertisement advertisement;
+		private final long expiresAt;
+
+		private Entry(PipeAdvertisement advertisement, long expiresAt) {
+			this.advertisement = advertisement;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
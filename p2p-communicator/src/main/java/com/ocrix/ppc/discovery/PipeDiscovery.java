@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import net.jxta.discovery.DiscoveryService;
 import net.jxta.document.Advertisement;
@@ -36,9 +37,112 @@ import com.ocrix.ppc.type.Tag;
  * Provides functionality for the pipe look up
  */
 public class PipeDiscovery extends Discovery {
+	/* Discovered pipe advertisements by name */
+	private PipeAdvertisementCache advertisementCache = null;
 
 	public PipeDiscovery(NetworkManager manager) {
 		super(manager);
+		advertisementCache = new PipeAdvertisementCache();
+		/* Discovery responses fill the cache */
+		getDiscovery().addDiscoveryListener(advertisementCache);
+	}
+
+	/**
+	 * Looks up a pipe advertisement by its exact name. Takes it from the cache
+	 * of the discovered advertisements, then from the local cache of JXTA. If
+	 * both miss, a discovery query is sent without waiting for the answer,
+	 * the response fills the cache for the next call.
+	 * 
+	 * @param pipeName
+	 *            - an exact name of the pipe
+	 * 
+	 * @return a {@link PipeAdvertisement} or null if not found yet
+	 * 
+	 * @throws IOException
+	 */
+	public PipeAdvertisement lookupByName(String pipeName) throws IOException {
+		Validator.validateString(pipeName);
+		PipeAdvertisement pipeAdv = advertisementCache.get(pipeName);
+		if (pipeAdv != null) {
+			return pipeAdv;
+		}
+
+		Enumeration<Advertisement> enumerator = getDiscovery()
+				.getLocalAdvertisements(DiscoveryService.ADV,
+						Tag.NAME.getValue(), pipeName);
+		if (enumerator != null) {
+			while (enumerator.hasMoreElements()) {
+				Advertisement advertisement = enumerator.nextElement();
+				if (advertisement instanceof PipeAdvertisement
+						&& pipeName.equals(((PipeAdvertisement) advertisement)
+								.getName())) {
+					pipeAdv = (PipeAdvertisement) advertisement;
+					cache(pipeAdv);
+					return pipeAdv;
+				}
+			}
+		}
+
+		getDiscovery().getRemoteAdvertisements(null, DiscoveryService.ADV,
+				Tag.NAME.getValue(), pipeName,
+				DefaultParameter.THRESHOLD.getCode());
+		return null;
+	}
+
+	/**
+	 * Looks up a pipe advertisement by its exact name without blocking the
+	 * caller. The future is completed as soon as the discovery response
+	 * arrives.
+	 * 
+	 * @param pipeName
+	 *            - an exact name of the pipe
+	 * 
+	 * @return a {@link CompletableFuture} of the {@link PipeAdvertisement}
+	 */
+	public CompletableFuture<PipeAdvertisement> lookupAsync(String pipeName) {
+		return lookupAsync(pipeName, getLookupTimeout());
+	}
+
+	/**
+	 * Looks up a pipe advertisement by its exact name without blocking the
+	 * caller.
+	 * 
+	 * @param pipeName
+	 *            - an exact name of the pipe
+	 * @param timeout
+	 *            - how long to wait for the answer, in milliseconds
+	 * 
+	 * @return a {@link CompletableFuture} of the {@link PipeAdvertisement}
+	 */
+	public CompletableFuture<PipeAdvertisement> lookupAsync(
+			final String pipeName, long timeout) {
+		PipeAdvertisement pipeAdv = advertisementCache.get(pipeName);
+		if (pipeAdv != null) {
+			return CompletableFuture.completedFuture(pipeAdv);
+		}
+		return lookupAsync(DiscoveryService.ADV,
+				new AdvertisementRequest<PipeAdvertisement>(pipeName) {
+					@Override
+					protected PipeAdvertisement match(
+							Advertisement advertisement) {
+						if (advertisement instanceof PipeAdvertisement
+								&& pipeName
+										.equals(((PipeAdvertisement) advertisement)
+												.getName())) {
+							return (PipeAdvertisement) advertisement;
+						}
+						return null;
+					}
+				}, timeout);
+	}
+
+	/**
+	 * Attains a cache of the discovered pipe advertisements
+	 * 
+	 * @return {@link PipeAdvertisementCache}
+	 */
+	public PipeAdvertisementCache getAdvertisementCache() {
+		return advertisementCache;
 	}
 
 	/**
@@ -156,12 +260,28 @@ public class PipeDiscovery extends Discovery {
 				Object advertisement = (Advertisement) enumerator.nextElement();
 				if (advertisement instanceof PipeAdv) {
 					groups.add((PipeAdv) advertisement);
+					cache((PipeAdv) advertisement);
 				}
 			}
 		}
 		return groups;
 	}
 
+	/**
+	 * Puts a locally found advertisement into the cache for its remaining
+	 * expiration time
+	 * 
+	 * @param pipeAdv
+	 *            {@link PipeAdvertisement}
+	 */
+	private void cache(PipeAdvertisement pipeAdv) {
+		long expiration = getDiscovery().getAdvExpirationTime(pipeAdv);
+		if (expiration <= 0) {
+			expiration = DiscoveryService.DEFAULT_EXPIRATION;
+		}
+		advertisementCache.put(pipeAdv, expiration);
+	}
+
 	private PipeAdvertisement getPipeAdvertisement(
 			Enumeration<Advertisement> enumerator, String searchKey)
 			throws IOException {
@@ -0,0 +1,36 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import java.util.List;
+
+import com.ocrix.ppc.message.Message;
+
+/**
+ * Gets the received messages in batches, so a consumer may write them
+ * downstream at once. A batch holds whatever was waiting for the subscriber,
+ * up to its maximum size, in the order the messages were received.
+ */
+public interface BatchMessageReceiver {
+
+	/**
+	 * Called with the next batch of the received messages
+	 * 
+	 * @param messages
+	 *            - a non empty list, owned by the receiver
+	 */
+	void onMessages(List<Message> messages);
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import java.util.Collections;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.Message;
+
+/**
+ * Registers a {@link BatchMessageReceiver} among the observers of a
+ * {@link PPCObservable}. It is equal to any other one of the same receiver, so
+ * the receiver is subscribed once and may be deleted by a new instance. The
+ * observable drains it by a {@link SubscriberRing}, a message is handed alone
+ * only while the rings are shut down.
+ */
+class BatchSubscriber implements MessageReceiver {
+	/* Class members */
+	private final BatchMessageReceiver receiver;
+	private final int maxBatch;
+	private final long lingerMillis;
+
+	/* ---------- end of class members --------- */
+
+	BatchSubscriber(BatchMessageReceiver receiver, int maxBatch,
+			long lingerMillis) {
+		Validator.validateObjNotNull(receiver);
+		Validator.validatePositive(maxBatch);
+		if (lingerMillis < 0) {
+			throw new IllegalArgumentException("Negative linger: "
+					+ lingerMillis);
+		}
+		this.receiver = receiver;
+		this.maxBatch = maxBatch;
+		this.lingerMillis = lingerMillis;
+	}
+
+	// @Override
+	public void onMessage(Object message) {
+		if (message instanceof Message) {
+			receiver.onMessages(Collections.singletonList((Message) message));
+		}
+	}
+
+	BatchMessageReceiver getReceiver() {
+		return receiver;
+	}
+
+	int getMaxBatch() {
+		return maxBatch;
+	}
+
+	long getLingerMillis() {
+		return lingerMillis;
+	}
+
+	@Override
+	public int hashCode() {
+		return receiver.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof BatchSubscriber
+				&& receiver.equals(((BatchSubscriber) obj).receiver);
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import com.ocrix.ppc.message.Message;
+
+/**
+ * Gets the messages of a {@link MessageInbox} as it requests them, the same
+ * contract as a reactive streams subscriber. No more messages are signalled
+ * than requested by {@link InboxSubscription#request(long)}, the signals come
+ * one at a time from the thread of the subscription.
+ */
+public interface InboxSubscriber {
+
+	/**
+	 * Called first, nothing is signalled until a demand is requested
+	 * 
+	 * @param subscription
+	 *            - an {@link InboxSubscription}
+	 */
+	void onSubscribe(InboxSubscription subscription);
+
+	/**
+	 * Called with the next requested message
+	 * 
+	 * @param message
+	 *            - a received {@link Message}
+	 */
+	void onNext(Message message);
+
+	/**
+	 * Called once if the subscription failed, nothing is signalled after
+	 * 
+	 * @param error
+	 *            - a cause
+	 */
+	void onError(Throwable error);
+
+	/**
+	 * Called once when the inbox was closed and emptied, nothing is signalled
+	 * after
+	 */
+	void onComplete();
+}
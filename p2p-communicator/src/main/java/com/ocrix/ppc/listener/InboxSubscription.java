@@ -0,0 +1,190 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.message.Message;
+
+/**
+ * Hands the messages of a {@link MessageInbox} to an {@link InboxSubscriber}
+ * as it requests them. The messages not requested stay in the inbox, so a
+ * subscriber that stops requesting fills it and stops the receiving.
+ */
+public class InboxSubscription {
+	/* Class members */
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+	/* How long the thread waits for a message before it checks a cancel */
+	private static final long POLL_MILLIS = 100;
+	private final MessageInbox inbox;
+	private final InboxSubscriber subscriber;
+	/* The messages requested and not signalled yet */
+	private long demand = 0;
+	private volatile boolean isCancelled = false;
+	/* Signalled by the thread of the subscription once it stops */
+	private Throwable error = null;
+	private static final Logger logger = Logger
+			.getLogger(InboxSubscription.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a subscription, signals it by {@link #start()}
+	 * 
+	 * @param inbox
+	 *            - a {@link MessageInbox}
+	 * @param subscriber
+	 *            - an {@link InboxSubscriber}
+	 */
+	InboxSubscription(MessageInbox inbox, InboxSubscriber subscriber) {
+		this.inbox = inbox;
+		this.subscriber = subscriber;
+	}
+
+	/**
+	 * Adds to the demand of the subscriber
+	 * 
+	 * @param n
+	 *            - how many more messages may be signalled, a non positive
+	 *            one fails the subscription
+	 */
+	public synchronized void request(long n) {
+		if (isCancelled) {
+			return;
+		}
+		if (n <= 0) {
+			fail(new IllegalArgumentException("A non positive request: " + n));
+			return;
+		}
+		demand += n;
+		if (demand < 0) {
+			/* Long.MAX_VALUE stands for an unbounded demand */
+			demand = Long.MAX_VALUE;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Stops signalling, the messages left stay in the inbox
+	 */
+	public synchronized void cancel() {
+		isCancelled = true;
+		notifyAll();
+	}
+
+	/**
+	 * Indicates if the subscription was cancelled, failed or completed
+	 * 
+	 * @return <b>true</b> if nothing is signalled anymore
+	 */
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	/**
+	 * Starts the thread that signals the subscriber
+	 */
+	void start() {
+		Thread thread = new Thread(new Runnable() {
+			// @Override
+			public void run() {
+				signal();
+			}
+		}, "PPC-INBOX-" + COUNTER.incrementAndGet());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void signal() {
+		try {
+			subscriber.onSubscribe(this);
+			while (awaitDemand()) {
+				if (isDrained()) {
+					cancel();
+					subscriber.onComplete();
+					break;
+				}
+				Message message = inbox.poll(POLL_MILLIS,
+						TimeUnit.MILLISECONDS);
+				if (message != null) {
+					synchronized (this) {
+						if (demand != Long.MAX_VALUE) {
+							demand--;
+						}
+					}
+					subscriber.onNext(message);
+				}
+			}
+		} catch (InterruptedException e) {
+			fail(e);
+		} catch (RuntimeException e) {
+			/* A subscriber must not throw, it is not signalled anymore */
+			logger.error(InboxSubscription.class.getName() + " "
+					+ e.getMessage());
+			cancel();
+		} finally {
+			inbox.unsubscribe(this);
+		}
+		Throwable cause = null;
+		synchronized (this) {
+			cause = error;
+		}
+		if (cause != null) {
+			subscriber.onError(cause);
+		}
+	}
+
+	/**
+	 * Wakes the thread of the subscription, i.e. once the inbox is closed
+	 */
+	synchronized void wake() {
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the subscriber requests a message or the inbox is closed
+	 * and drained
+	 * 
+	 * @return <b>false</b> if cancelled
+	 */
+	private synchronized boolean awaitDemand() throws InterruptedException {
+		while (demand == 0 && !isCancelled && !isDrained()) {
+			wait();
+		}
+		return !isCancelled;
+	}
+
+	private boolean isDrained() {
+		return inbox.isClosed() && inbox.size() == 0;
+	}
+
+	/**
+	 * Stops signalling, the error is signalled by the thread of the
+	 * subscription
+	 * 
+	 * @param cause
+	 *            - a cause of the failure
+	 */
+	private synchronized void fail(Throwable cause) {
+		if (!isCancelled) {
+			error = cause;
+		}
+		cancel();
+	}
+}
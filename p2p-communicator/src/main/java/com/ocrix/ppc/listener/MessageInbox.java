@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.Message;
+
+/**
+ * A bounded queue of the received messages a consumer pulls by
+ * {@link #poll(long, TimeUnit)} and {@link #drainTo(Collection, int)}, or gets
+ * as it requests them by {@link #subscribe(InboxSubscriber)}. A full inbox
+ * holds the thread that publishes to it, so a consumer that does not keep up
+ * stops the receiving instead of the messages being buffered without a bound.
+ */
+public class MessageInbox implements MessageReceiver {
+	/* Class members */
+	/* How long a full inbox is waited for before a close is checked */
+	private static final long OFFER_MILLIS = 100;
+	private final BlockingQueue<Message> queue;
+	private final int capacity;
+	private volatile boolean isClosed = false;
+	private InboxSubscription subscription = null;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates an inbox
+	 * 
+	 * @param capacity
+	 *            - how many messages may wait for the consumer
+	 */
+	public MessageInbox(int capacity) {
+		Validator.validatePositive(capacity);
+		this.capacity = capacity;
+		this.queue = new ArrayBlockingQueue<Message>(capacity);
+	}
+
+	/**
+	 * Puts a received message, waits while the inbox is full. Only the
+	 * {@link Message}s are kept.
+	 * 
+	 * @param message
+	 *            - a received message
+	 */
+	// @Override
+	public void onMessage(Object message) {
+		if (!(message instanceof Message)) {
+			return;
+		}
+		try {
+			while (!isClosed) {
+				if (queue.offer((Message) message, OFFER_MILLIS,
+						TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Takes the next message
+	 * 
+	 * @param timeout
+	 *            - how long to wait for a message
+	 * @param unit
+	 *            - a unit of the timeout
+	 * 
+	 * @return a {@link Message}, null if none came in time
+	 * 
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting
+	 */
+	public Message poll(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return queue.poll(timeout, unit);
+	}
+
+	/**
+	 * Takes the waiting messages without waiting
+	 * 
+	 * @param messages
+	 *            - a collection to add the messages to
+	 * @param max
+	 *            - how many messages are taken at most
+	 * 
+	 * @return a number of the messages taken
+	 */
+	public int drainTo(Collection<? super Message> messages, int max) {
+		Validator.validateObjNotNull(messages);
+		return queue.drainTo(messages, max);
+	}
+
+	/**
+	 * Signals the messages to a subscriber as it requests them. An inbox has a
+	 * single subscription at a time.
+	 * 
+	 * @param subscriber
+	 *            - an {@link InboxSubscriber}
+	 * 
+	 * @return an {@link InboxSubscription}
+	 * 
+	 * @throws IllegalStateException
+	 *             - if the inbox has a subscription already
+	 */
+	public synchronized InboxSubscription subscribe(InboxSubscriber subscriber) {
+		Validator.validateObjNotNull(subscriber);
+		if (subscription != null && !subscription.isCancelled()) {
+			throw new IllegalStateException("The inbox has a subscriber");
+		}
+		subscription = new InboxSubscription(this, subscriber);
+		subscription.start();
+		return subscription;
+	}
+
+	/**
+	 * Stops taking the messages, the waiting ones may still be taken. A
+	 * subscriber is completed once they are.
+	 */
+	public void close() {
+		isClosed = true;
+		InboxSubscription current = null;
+		synchronized (this) {
+			current = subscription;
+		}
+		if (current != null) {
+			/* A subscriber without demand is completed too */
+			current.wake();
+		}
+	}
+
+	/**
+	 * Indicates if the inbox was closed
+	 * 
+	 * @return <b>true</b> if closed
+	 */
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	/**
+	 * Returns a number of the waiting messages
+	 * 
+	 * @return a size
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns how many messages may wait for the consumer
+	 * 
+	 * @return a capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	synchronized void unsubscribe(InboxSubscription stopped) {
+		if (subscription == stopped) {
+			subscription = null;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import net.jxta.endpoint.MessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.BinaryMessage;
+import com.ocrix.ppc.message.ByteBufferMessage;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.ObjectMessage;
+import com.ocrix.ppc.message.StreamMessage;
+import com.ocrix.ppc.message.TextualMessage;
+import com.ocrix.ppc.type.MessageType;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Selects the received messages a subscriber is interested in. A new selector
+ * matches every message, each of {@link #fromSource(String)},
+ * {@link #ofType(MessageType)} and {@link #withHeader(String, String)} returns
+ * a narrower copy. The source and the type are indexed by the
+ * {@link ReceiverObservable}, so a message reaches only the subscribers that
+ * may match it.
+ */
+public class MessageSelector {
+	/* Class members, null matches any */
+	private final String source;
+	private final MessageType type;
+	private final String headerName;
+	private final String headerValue;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a selector that matches every message
+	 */
+	public MessageSelector() {
+		this(null, null, null, null);
+	}
+
+	private MessageSelector(String source, MessageType type,
+			String headerName, String headerValue) {
+		this.source = source;
+		this.type = type;
+		this.headerName = headerName;
+		this.headerValue = headerValue;
+	}
+
+	/**
+	 * Narrows the selector to a single sender
+	 * 
+	 * @param source
+	 *            - a name of the source peer
+	 * 
+	 * @return a new {@link MessageSelector}
+	 */
+	public MessageSelector fromSource(String source) {
+		Validator.validateString(source);
+		return new MessageSelector(source, type, headerName, headerValue);
+	}
+
+	/**
+	 * Narrows the selector to a single kind of message
+	 * 
+	 * @param type
+	 *            - a {@link MessageType}
+	 * 
+	 * @return a new {@link MessageSelector}
+	 */
+	public MessageSelector ofType(MessageType type) {
+		Validator.validateObjNotNull(type);
+		return new MessageSelector(source, type, headerName, headerValue);
+	}
+
+	/**
+	 * Narrows the selector to the messages that carry a header
+	 * 
+	 * @param name
+	 *            - a name of the message element
+	 * @param value
+	 *            - a value of the element, null matches any value
+	 * 
+	 * @return a new {@link MessageSelector}
+	 */
+	public MessageSelector withHeader(String name, String value) {
+		Validator.validateString(name);
+		return new MessageSelector(source, type, name, value);
+	}
+
+	/**
+	 * Checks a message against the selector
+	 * 
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return <b>true</b> if it matches
+	 */
+	public boolean matches(Object message) {
+		if (source != null && !source.equals(sourceOf(message))) {
+			return false;
+		}
+		if (type != null && type != typeOf(message)) {
+			return false;
+		}
+		return matchesHeader(message);
+	}
+
+	/**
+	 * Returns a sender the selector is narrowed to
+	 * 
+	 * @return a name of the source peer, null if any
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Returns a kind of message the selector is narrowed to
+	 * 
+	 * @return a {@link MessageType}, null if any
+	 */
+	public MessageType getType() {
+		return type;
+	}
+
+	/**
+	 * Checks the header only, the source and the type are matched by the index
+	 * 
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return <b>true</b> if the selector has no header or the message carries
+	 *         it
+	 */
+	boolean matchesHeader(Object message) {
+		if (headerName == null) {
+			return true;
+		}
+		if (!(message instanceof Message)) {
+			return false;
+		}
+		MessageElement element = ((Message) message)
+				.getMessageElement(headerName);
+		return element != null
+				&& (headerValue == null || headerValue.equals(element
+						.toString()));
+	}
+
+	/**
+	 * Attains a sender of a received message
+	 * 
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return a name of the source peer, null if unknown
+	 */
+	static String sourceOf(Object message) {
+		if (message instanceof Message) {
+			MessageElement element = ((Message) message)
+					.getMessageElement(Tag.SOURCE.getValue());
+			return element == null ? null : element.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Attains a kind of a received message
+	 * 
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return a {@link MessageType}, null if of no known kind
+	 */
+	static MessageType typeOf(Object message) {
+		if (message instanceof TextualMessage) {
+			return MessageType.TEXTUAL;
+		}
+		if (message instanceof BinaryMessage
+				|| message instanceof ByteBufferMessage) {
+			return MessageType.BINARY;
+		}
+		if (message instanceof ObjectMessage) {
+			return MessageType.OBJECT;
+		}
+		if (message instanceof StreamMessage) {
+			return MessageType.STREAM;
+		}
+		return null;
+	}
+}
@@ -14,8 +14,14 @@
 
 package com.ocrix.ppc.listener;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.OverflowPolicy;
+
 /**
  * This class represents an observable object, or "data" in the model-view
  * paradigm. It can be subclassed to represent an object that the application
@@ -41,12 +47,20 @@ import java.util.Vector;
  * When an observable object is newly created, its set of observers is empty.
  * Two observers are considered the same if and only if the <tt>equals</tt>
  * method returns true for them.
+ * <p>
+ * In the asynchronous mode, see {@link #setAsyncDispatch(int, OverflowPolicy)},
+ * every observer is notified from a {@link SubscriberRing} of its own, so a
+ * slow observer does not hold the notifying thread nor the other observers.
  * 
  * 
  */
 public class PPCObservable {
 	private boolean changed = false;
 	private Vector<MessageReceiver> obs;
+	/* The buffers of the observers, empty in the synchronous mode */
+	private final Map<MessageReceiver, SubscriberRing> rings = new HashMap<MessageReceiver, SubscriberRing>();
+	private int ringCapacity = 0;
+	private OverflowPolicy overflowPolicy = null;
 
 	/** Construct an Observable with zero Observers. */
 
@@ -70,6 +84,7 @@ public class PPCObservable {
 			throw new NullPointerException();
 		if (!obs.contains(o)) {
 			obs.addElement(o);
+			createRing(o);
 		}
 	}
 
@@ -82,6 +97,10 @@ public class PPCObservable {
 	 */
 	public synchronized void deleteMessageReceiverListener(MessageReceiver o) {
 		obs.removeElement(o);
+		SubscriberRing ring = rings.remove(o);
+		if (ring != null) {
+			ring.close();
+		}
 	}
 
 	/**
@@ -138,12 +157,152 @@ public class PPCObservable {
 			 */
 			if (!changed)
 				return;
-			arrLocal = obs.toArray();
+			arrLocal = snapshot();
 			clearChanged();
 		}
 
-		for (int i = arrLocal.length - 1; i >= 0; i--)
-			((MessageReceiver) arrLocal[i]).onMessage(msg);
+		dispatch(arrLocal, msg);
+	}
+
+	/**
+	 * Notifies all observers regardless of the changed state, the state is
+	 * left as it is
+	 * 
+	 * @param msg
+	 *            any object.
+	 */
+	protected void deliver(Object msg) {
+		Object[] arrLocal;
+		synchronized (this) {
+			arrLocal = snapshot();
+		}
+		dispatch(arrLocal, msg);
+	}
+
+	/**
+	 * Notifies the given observers only, regardless of the changed state
+	 * 
+	 * @param msg
+	 *            any object.
+	 * @param targets
+	 *            the observers to be notified
+	 */
+	protected void deliver(Object msg, MessageReceiver[] targets) {
+		if (targets.length == 0) {
+			return;
+		}
+		Object[] arrLocal = targets;
+		synchronized (this) {
+			if (overflowPolicy != null) {
+				arrLocal = new Object[targets.length];
+				for (int i = 0; i < targets.length; i++) {
+					/* null if unsubscribed meanwhile */
+					arrLocal[i] = rings.get(targets[i]);
+				}
+			} else if (!rings.isEmpty()) {
+				arrLocal = new Object[targets.length];
+				for (int i = 0; i < targets.length; i++) {
+					SubscriberRing ring = rings.get(targets[i]);
+					arrLocal[i] = ring == null ? targets[i] : ring;
+				}
+			}
+		}
+		dispatch(arrLocal, msg);
+	}
+
+	/**
+	 * Notifies every observer from a buffer and a thread of its own. The
+	 * current observers get new buffers, the messages waiting in the old ones
+	 * are dropped.
+	 * 
+	 * @param capacity
+	 *            - how many messages may wait for a single observer
+	 * @param policy
+	 *            - an {@link OverflowPolicy} of a full buffer
+	 */
+	public synchronized void setAsyncDispatch(int capacity,
+			OverflowPolicy policy) {
+		Validator.validatePositive(capacity);
+		Validator.validateObjNotNull(policy);
+		closeRings();
+		ringCapacity = capacity;
+		overflowPolicy = policy;
+		for (MessageReceiver o : obs) {
+			createRing(o);
+		}
+	}
+
+	/**
+	 * Adds an observer that is notified of the messages in batches from a
+	 * buffer and a thread of its own, in either mode
+	 * 
+	 * @param o
+	 *            a {@link BatchMessageReceiver}
+	 * @param maxBatch
+	 *            how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            how long a smaller batch waits for more messages
+	 */
+	public void addBatchMessageReceiverListener(BatchMessageReceiver o,
+			int maxBatch, long lingerMillis) {
+		addMessageReceiverListener(new BatchSubscriber(o, maxBatch,
+				lingerMillis));
+	}
+
+	/**
+	 * Deletes an observer added by
+	 * {@link #addBatchMessageReceiverListener(BatchMessageReceiver, int, long)}
+	 * 
+	 * @param o
+	 *            the observer to be deleted.
+	 */
+	public void deleteBatchMessageReceiverListener(BatchMessageReceiver o) {
+		deleteMessageReceiverListener(new BatchSubscriber(o, 1, 0));
+	}
+
+	/**
+	 * Stops the buffers of the observers, the observers are notified on the
+	 * notifying thread again and a batch observer gets a message at a time
+	 */
+	public synchronized void shutdown() {
+		closeRings();
+		overflowPolicy = null;
+	}
+
+	/**
+	 * Indicates if the observers are notified asynchronously
+	 * 
+	 * @return <b>true</b> if every observer has a buffer
+	 */
+	public synchronized boolean isAsyncDispatch() {
+		return overflowPolicy != null;
+	}
+
+	/**
+	 * Returns how many messages the observer lags behind
+	 * 
+	 * @param o
+	 *            - an observer
+	 * 
+	 * @return a number of the messages waiting in its buffer, 0 in the
+	 *         synchronous mode
+	 */
+	public int getLag(MessageReceiver o) {
+		SubscriberRing ring = getRing(o);
+		return ring == null ? 0 : ring.getLag();
+	}
+
+	/**
+	 * Returns how many messages were dropped for the observer
+	 * 
+	 * @param o
+	 *            - an observer
+	 * 
+	 * @return a count, 0 in the synchronous mode
+	 */
+	public long getDroppedCount(MessageReceiver o) {
+		SubscriberRing ring = getRing(o);
+		return ring == null ? 0 : ring.getDroppedCount();
 	}
 
 	/**
@@ -151,6 +310,7 @@ public class PPCObservable {
 	 */
 	public synchronized void deleteObservers() {
 		obs.removeAllElements();
+		closeRings();
 	}
 
 	/**
@@ -196,4 +356,70 @@ public class PPCObservable {
 	public synchronized int countMessageReceiverListeners() {
 		return obs.size();
 	}
+
+	private synchronized SubscriberRing getRing(MessageReceiver o) {
+		return rings.get(o);
+	}
+
+	/**
+	 * Takes the current targets of a notification, must hold the monitor
+	 * 
+	 * @return the observers or their buffers
+	 */
+	private Object[] snapshot() {
+		if (overflowPolicy != null) {
+			return rings.values().toArray();
+		}
+		Object[] arrLocal = obs.toArray();
+		if (!rings.isEmpty()) {
+			/* The batch observers are notified by their buffers */
+			for (int i = 0; i < arrLocal.length; i++) {
+				SubscriberRing ring = rings.get(arrLocal[i]);
+				if (ring != null) {
+					arrLocal[i] = ring;
+				}
+			}
+		}
+		return arrLocal;
+	}
+
+	/**
+	 * Creates a buffer of an observer in the asynchronous mode, a batch
+	 * observer gets its buffer in either mode. Must hold the monitor
+	 * 
+	 * @param o
+	 *            an observer
+	 */
+	private void createRing(MessageReceiver o) {
+		if (o instanceof BatchSubscriber) {
+			BatchSubscriber batch = (BatchSubscriber) o;
+			int capacity = DefaultParameter.DELIVERY_BUFFER.getCode();
+			OverflowPolicy policy = OverflowPolicy.BLOCK;
+			if (overflowPolicy != null) {
+				capacity = ringCapacity;
+				policy = overflowPolicy;
+			}
+			rings.put(o, new SubscriberRing(batch.getReceiver(), capacity,
+					policy, batch.getMaxBatch(), batch.getLingerMillis()));
+		} else if (overflowPolicy != null) {
+			rings.put(o, new SubscriberRing(o, ringCapacity, overflowPolicy));
+		}
+	}
+
+	private void closeRings() {
+		for (SubscriberRing ring : rings.values()) {
+			ring.close();
+		}
+		rings.clear();
+	}
+
+	private static void dispatch(Object[] arrLocal, Object msg) {
+		for (int i = arrLocal.length - 1; i >= 0; i--) {
+			if (arrLocal[i] instanceof SubscriberRing) {
+				((SubscriberRing) arrLocal[i]).offer(msg);
+			} else if (arrLocal[i] != null) {
+				((MessageReceiver) arrLocal[i]).onMessage(msg);
+			}
+		}
+	}
 }
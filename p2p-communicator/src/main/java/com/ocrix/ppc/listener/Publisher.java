@@ -27,4 +27,16 @@ public abstract class Publisher extends PPCObservable {
 	public void alter() {
 		setChanged();
 	}
+
+	/**
+	 * Notifies the subscribers of a message. Unlike {@link #alter()} followed
+	 * by notifySubscribers() it is safe to call from several threads at once,
+	 * no message is lost to a concurrent notification.
+	 * 
+	 * @param message
+	 *            a received message
+	 */
+	public void publish(Object message) {
+		deliver(message);
+	}
 }
@@ -14,13 +14,101 @@
 
 package com.ocrix.ppc.listener;
 
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.OverflowPolicy;
 
 /**
- * Subscribes to the receiving message events
+ * Subscribes to the receiving message events. A message is published only to
+ * the subscribers whose {@link MessageSelector} matches it, a subscriber
+ * without a selector gets every message.
  */
 public class ReceiverObservable extends Publisher{
+	/* Class members */
+	private static final MessageSelector ALL = new MessageSelector();
+	private final SubscriberIndex index = new SubscriberIndex();
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a publisher of the received messages, the subscribers are
+	 * notified asynchronously if <code>subscriber.buffer</code> is configured
+	 */
+	public ReceiverObservable() {
+		String buffer = PPCUtils.getValue("subscriber.buffer");
+		if (buffer != null && !buffer.trim().isEmpty()
+				&& Integer.valueOf(buffer.trim()) > 0) {
+			String overflow = PPCUtils.getValue("subscriber.overflow");
+			OverflowPolicy policy = OverflowPolicy.BLOCK;
+			if (overflow != null && !overflow.trim().isEmpty()) {
+				policy = OverflowPolicy.valueOf(overflow.trim().toUpperCase());
+			}
+			setAsyncDispatch(Integer.valueOf(buffer.trim()), policy);
+		}
+	}
 	
 	public void subscribeReceiveMessages(MessageReceiver msg){
 		addMessageReceiverListener(msg);
 	}
+
+	/**
+	 * Subscribes to the messages matched by a selector, a subscriber that is
+	 * subscribed already gets the new selector instead of its previous one
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param subscriber
+	 *            - a {@link MessageReceiver}
+	 */
+	public synchronized void subscribe(MessageSelector selector,
+			MessageReceiver subscriber) {
+		Validator.validateObjNotNull(selector);
+		super.addMessageReceiverListener(subscriber);
+		index.put(subscriber, selector);
+	}
+
+	/**
+	 * Subscribes to the messages matched by a selector in batches, see
+	 * {@link #addBatchMessageReceiverListener(BatchMessageReceiver, int, long)}
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param subscriber
+	 *            - a {@link BatchMessageReceiver}
+	 * @param maxBatch
+	 *            - how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            - how long a smaller batch waits for more messages
+	 */
+	public synchronized void subscribe(MessageSelector selector,
+			BatchMessageReceiver subscriber, int maxBatch, long lingerMillis) {
+		Validator.validateObjNotNull(selector);
+		MessageReceiver batch = new BatchSubscriber(subscriber, maxBatch,
+				lingerMillis);
+		super.addMessageReceiverListener(batch);
+		index.put(batch, selector);
+	}
+
+	@Override
+	public synchronized void addMessageReceiverListener(MessageReceiver o) {
+		super.addMessageReceiverListener(o);
+		index.put(o, ALL);
+	}
+
+	@Override
+	public synchronized void deleteMessageReceiverListener(MessageReceiver o) {
+		super.deleteMessageReceiverListener(o);
+		index.remove(o);
+	}
+
+	@Override
+	public synchronized void deleteObservers() {
+		super.deleteObservers();
+		index.clear();
+	}
+
+	@Override
+	public void publish(Object message) {
+		deliver(message, index.match(message));
+	}
 }
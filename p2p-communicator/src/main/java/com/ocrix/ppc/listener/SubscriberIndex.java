@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ocrix.ppc.type.MessageType;
+
+/**
+ * Indexes the subscribers by the source and the type of their selectors. A
+ * message is looked up in four buckets, its source and type, its source and
+ * any type, any source and its type, any source and any type, so only the
+ * subscribers that may match are visited. The buckets are replaced on a
+ * change and read without a lock.
+ */
+class SubscriberIndex {
+	/* Class members */
+	private static final MessageReceiver[] NONE = new MessageReceiver[0];
+	/* A subscriber has a single selector */
+	private final Map<MessageReceiver, MessageSelector> selectors = new HashMap<MessageReceiver, MessageSelector>();
+	private volatile Map<Key, Entry[]> buckets = new HashMap<Key, Entry[]>();
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Adds a subscriber or replaces its selector
+	 * 
+	 * @param subscriber
+	 *            - a {@link MessageReceiver}
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 */
+	synchronized void put(MessageReceiver subscriber, MessageSelector selector) {
+		selectors.put(subscriber, selector);
+		rebuild();
+	}
+
+	/**
+	 * Removes a subscriber
+	 * 
+	 * @param subscriber
+	 *            - a {@link MessageReceiver}
+	 */
+	synchronized void remove(MessageReceiver subscriber) {
+		if (selectors.remove(subscriber) != null) {
+			rebuild();
+		}
+	}
+
+	/**
+	 * Removes all subscribers
+	 */
+	synchronized void clear() {
+		selectors.clear();
+		rebuild();
+	}
+
+	/**
+	 * Finds the subscribers whose selectors match a message
+	 * 
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return the matching subscribers
+	 */
+	MessageReceiver[] match(Object message) {
+		Map<Key, Entry[]> local = buckets;
+		if (local.isEmpty()) {
+			return NONE;
+		}
+		String source = MessageSelector.sourceOf(message);
+		MessageType type = MessageSelector.typeOf(message);
+		List<MessageReceiver> matched = null;
+		matched = collect(local.get(new Key(null, null)), message, matched);
+		if (type != null) {
+			matched = collect(local.get(new Key(null, type)), message, matched);
+		}
+		if (source != null) {
+			matched = collect(local.get(new Key(source, null)), message,
+					matched);
+			if (type != null) {
+				matched = collect(local.get(new Key(source, type)), message,
+						matched);
+			}
+		}
+		return matched == null ? NONE : matched
+				.toArray(new MessageReceiver[matched.size()]);
+	}
+
+	private static List<MessageReceiver> collect(Entry[] bucket,
+			Object message, List<MessageReceiver> matched) {
+		if (bucket == null) {
+			return matched;
+		}
+		for (Entry entry : bucket) {
+			if (entry.selector.matchesHeader(message)) {
+				if (matched == null) {
+					matched = new ArrayList<MessageReceiver>();
+				}
+				matched.add(entry.subscriber);
+			}
+		}
+		return matched;
+	}
+
+	private void rebuild() {
+		Map<Key, List<Entry>> lists = new HashMap<Key, List<Entry>>();
+		for (Map.Entry<MessageReceiver, MessageSelector> e : selectors
+				.entrySet()) {
+			Key key = new Key(e.getValue().getSource(), e.getValue().getType());
+			List<Entry> list = lists.get(key);
+			if (list == null) {
+				list = new ArrayList<Entry>();
+				lists.put(key, list);
+			}
+			list.add(new Entry(e.getKey(), e.getValue()));
+		}
+		Map<Key, Entry[]> rebuilt = new HashMap<Key, Entry[]>();
+		for (Map.Entry<Key, List<Entry>> e : lists.entrySet()) {
+			rebuilt.put(e.getKey(),
+					e.getValue().toArray(new Entry[e.getValue().size()]));
+		}
+		buckets = rebuilt;
+	}
+
+	/**
+	 * A source and a type, null stands for any
+	 */
+	private static class Key {
+		private final String source;
+		private final MessageType type;
+
+		private Key(String source, MessageType type) {
+			this.source = source;
+			this.type = type;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (source == null ? 0 : source.hashCode())
+					+ (type == null ? 0 : type.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return (source == null ? other.source == null : source
+					.equals(other.source)) && type == other.type;
+		}
+	}
+
+	/**
+	 * A subscriber with its selector
+	 */
+	private static class Entry {
+		private final MessageReceiver subscriber;
+		private final MessageSelector selector;
+
+		private Entry(MessageReceiver subscriber, MessageSelector selector) {
+			this.subscriber = subscriber;
+			this.selector = selector;
+		}
+	}
+}
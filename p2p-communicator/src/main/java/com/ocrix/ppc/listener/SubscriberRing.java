@@ -0,0 +1,287 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.type.OverflowPolicy;
+
+/**
+ * A bounded ring buffer of a single subscriber drained by a thread of its own,
+ * so a slow subscriber delays only itself. The messages are handed to the
+ * subscriber in the order they were offered, a full buffer is handled by its
+ * {@link OverflowPolicy}. A {@link BatchMessageReceiver} gets everything that
+ * waits, up to a maximum batch, in a single call.
+ */
+public class SubscriberRing {
+	/* Class members */
+	private static final AtomicInteger COUNTER = new AtomicInteger();
+	private final MessageReceiver subscriber;
+	private final BatchMessageReceiver batchSubscriber;
+	private final int maxBatch;
+	private final long lingerNanos;
+	private final OverflowPolicy policy;
+	private final Object[] ring;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	/* The next message to be taken and a number of the waiting ones */
+	private int head = 0;
+	private int size = 0;
+	private long delivered = 0;
+	private long dropped = 0;
+	private boolean isClosed = false;
+	private final Thread consumer;
+	private static final Logger logger = Logger.getLogger(SubscriberRing.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a buffer and starts its consumer thread
+	 * 
+	 * @param subscriber
+	 *            - a {@link MessageReceiver}
+	 * @param capacity
+	 *            - how many messages may wait for the subscriber
+	 * @param policy
+	 *            - an {@link OverflowPolicy} of the full buffer
+	 */
+	public SubscriberRing(MessageReceiver subscriber, int capacity,
+			OverflowPolicy policy) {
+		this(subscriber, null, capacity, policy, 1, 0);
+	}
+
+	/**
+	 * Creates a buffer drained in batches and starts its consumer thread
+	 * 
+	 * @param subscriber
+	 *            - a {@link BatchMessageReceiver}
+	 * @param capacity
+	 *            - how many messages may wait for the subscriber
+	 * @param policy
+	 *            - an {@link OverflowPolicy} of the full buffer
+	 * @param maxBatch
+	 *            - how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            - how long a batch smaller than the maximum waits for more
+	 *            messages
+	 */
+	public SubscriberRing(BatchMessageReceiver subscriber, int capacity,
+			OverflowPolicy policy, int maxBatch, long lingerMillis) {
+		this(null, subscriber, capacity, policy, maxBatch, lingerMillis);
+	}
+
+	private SubscriberRing(MessageReceiver subscriber,
+			BatchMessageReceiver batchSubscriber, int capacity,
+			OverflowPolicy policy, int maxBatch, long lingerMillis) {
+		if (batchSubscriber == null) {
+			Validator.validateObjNotNull(subscriber);
+		}
+		Validator.validatePositive(capacity);
+		Validator.validateObjNotNull(policy);
+		Validator.validatePositive(maxBatch);
+		this.subscriber = subscriber;
+		this.batchSubscriber = batchSubscriber;
+		this.policy = policy;
+		this.ring = new Object[capacity];
+		this.maxBatch = maxBatch;
+		this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+		this.consumer = new Thread(new Runnable() {
+			// @Override
+			public void run() {
+				drain();
+			}
+		}, "PPC-SUBSCRIBER-" + COUNTER.incrementAndGet());
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * Puts a message into the buffer
+	 * 
+	 * @param message
+	 *            - a message for the subscriber
+	 * 
+	 * @return <b>false</b> if the message was dropped
+	 */
+	public boolean offer(Object message) {
+		if (batchSubscriber != null && !(message instanceof Message)) {
+			/* A batch holds the received messages only */
+			return false;
+		}
+		lock.lock();
+		try {
+			while (size == ring.length && !isClosed
+					&& policy == OverflowPolicy.BLOCK) {
+				notFull.awaitUninterruptibly();
+			}
+			if (isClosed) {
+				return false;
+			}
+			if (size == ring.length) {
+				dropped++;
+				if (policy == OverflowPolicy.DROP_NEWEST) {
+					return false;
+				}
+				/* DROP_OLDEST, the head gives its place */
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+				size--;
+			}
+			ring[(head + size) % ring.length] = message;
+			size++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the consumer thread, the messages still waiting are dropped
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			isClosed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns how many messages the subscriber lags behind
+	 * 
+	 * @return a number of the waiting messages
+	 */
+	public int getLag() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a number of the messages handed to the subscriber
+	 * 
+	 * @return a count
+	 */
+	public long getDeliveredCount() {
+		lock.lock();
+		try {
+			return delivered;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a number of the messages dropped by the overflow policy
+	 * 
+	 * @return a count
+	 */
+	public long getDroppedCount() {
+		lock.lock();
+		try {
+			return dropped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Hands the messages to the subscriber until the buffer is closed
+	 */
+	private void drain() {
+		List<Object> batch = null;
+		while ((batch = take()) != null) {
+			try {
+				if (batchSubscriber == null) {
+					subscriber.onMessage(batch.get(0));
+				} else {
+					batchSubscriber.onMessages(toMessages(batch));
+				}
+			} catch (RuntimeException e) {
+				/* A failing subscriber keeps its thread */
+				logger.error(SubscriberRing.class.getName() + " "
+						+ e.getMessage());
+			}
+			lock.lock();
+			try {
+				delivered += batch.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Waits for the next messages, a batch smaller than the maximum lingers
+	 * for more
+	 * 
+	 * @return the messages, null if the buffer was closed
+	 */
+	private List<Object> take() {
+		lock.lock();
+		try {
+			while (size == 0 && !isClosed) {
+				notEmpty.awaitUninterruptibly();
+			}
+			long left = lingerNanos;
+			while (size < maxBatch && left > 0 && !isClosed) {
+				try {
+					left = notEmpty.awaitNanos(left);
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+			if (isClosed) {
+				return null;
+			}
+			int count = Math.min(size, maxBatch);
+			List<Object> batch = new ArrayList<Object>(count);
+			for (int i = 0; i < count; i++) {
+				batch.add(ring[head]);
+				ring[head] = null;
+				head = (head + 1) % ring.length;
+			}
+			size -= count;
+			notFull.signalAll();
+			return batch;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Message> toMessages(List<Object> batch) {
+		/* Only the messages are offered to a batch subscriber */
+		return (List<Message>) (List<?>) batch;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import net.jxta.endpoint.StringMessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.Encoding;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Acknowledges a received message, i.e. it is sent back to the source of the
+ * message and carries its correlation id. It has no pay-load and is not
+ * delivered to the subscribers.
+ */
+public class AckMessage extends Message {
+
+	private static final long serialVersionUID = -3306424526744011379L;
+
+	/**
+	 * Creates an acknowledgement
+	 * 
+	 * @param source
+	 *            - who received the message
+	 * @param destination
+	 *            - who sent the message
+	 * @param correlationId
+	 *            - a correlation id of the message
+	 */
+	public AckMessage(String source, String destination, String correlationId) {
+		super(source, destination);
+		Validator.validateString(correlationId);
+		setCorrelationId(correlationId);
+		try {
+			addMessageElement(new StringMessageElement(Tag.ACK.getValue(),
+					correlationId, Encoding.UTF_8.toString(), null));
+		} catch (UnsupportedEncodingException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Constructs a view of a received acknowledgement
+	 * 
+	 * @param received
+	 *            a JXTA message carrying the acknowledgement
+	 */
+	AckMessage(net.jxta.endpoint.Message received) {
+		super(received);
+	}
+
+	/**
+	 * Indicates if the JXTA message is an acknowledgement
+	 * 
+	 * @param message
+	 *            - a JXTA message
+	 * 
+	 * @return <b>true</b> if it acknowledges a message
+	 */
+	public static boolean isAck(net.jxta.endpoint.Message message) {
+		return message.getMessageElement(Tag.ACK.getValue()) != null;
+	}
+
+	@Override
+	public String getTextualMesage() {
+		return getCorrelationId();
+	}
+
+	@Override
+	public InputStream getStream() {
+		return null;
+	}
+
+	@Override
+	public Object getObject() {
+		return null;
+	}
+}
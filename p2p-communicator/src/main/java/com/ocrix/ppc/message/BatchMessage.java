@@ -0,0 +1,245 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.MessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.Encoding;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Carries several messages of the same destination as a single JXTA message.
+ * The pay-load of each message is framed into one binary element, so many
+ * small messages pay for a single pipe send. Use {@link #getMessages()} or
+ * {@link #unpack(net.jxta.endpoint.Message)} to get them back.
+ */
+public class BatchMessage extends Message {
+
+	private static final long serialVersionUID = -2786531862374519428L;
+	/* Elements that carry a pay-load */
+	private static final Tag[] PAYLOAD_TAGS = { Tag.PAYLOAD, Tag.STREAM,
+			Tag.OBJECT };
+	private static final Logger LOG = Logger.getLogger(BatchMessage.class);
+
+	/**
+	 * Constructs a batch message
+	 * 
+	 * @param source
+	 *            - who is sending
+	 * @param destination
+	 *            - who is receiving, the same for all messages
+	 * @param messages
+	 *            - messages to be packed
+	 */
+	public BatchMessage(String source, String destination,
+			List<? extends Message> messages) {
+		super(source, destination);
+		setMessages(messages);
+	}
+
+	@Override
+	public String getTextualMesage() {
+		return "Batch message cannot return the text, use getMessages instead";
+	}
+
+	@Override
+	public InputStream getStream() {
+		return null;
+	}
+
+	@Override
+	public Object getObject() {
+		return null;
+	}
+
+	/**
+	 * Returns the packed messages in the order they were sent
+	 * 
+	 * @return a list of {@link Message}
+	 * 
+	 * @throws IOException
+	 *             - if the batch is corrupted
+	 */
+	public List<Message> getMessages() throws IOException {
+		return unpack(this);
+	}
+
+	/**
+	 * Indicates if the message can be packed into a batch, i.e. it carries a
+	 * textual, binary or object pay-load and no correlation id, which a batch
+	 * does not keep
+	 * 
+	 * @param message
+	 *            - a {@link Message}
+	 * 
+	 * @return <b>true</b> if the message can be batched
+	 */
+	public static boolean isBatchable(Message message) {
+		return !(message instanceof BatchMessage)
+				&& message.getCorrelationId() == null
+				&& getPayload(message) != null;
+	}
+
+	/**
+	 * Indicates if the JXTA message is a batch
+	 * 
+	 * @param message
+	 *            - a JXTA message
+	 * 
+	 * @return <b>true</b> if it carries a batch
+	 */
+	public static boolean isBatch(net.jxta.endpoint.Message message) {
+		return message.getMessageElement(Tag.BATCH.getValue()) != null;
+	}
+
+	/**
+	 * Unpacks the messages of a batch received from the pipe
+	 * 
+	 * @param message
+	 *            - a JXTA message carrying a batch
+	 * 
+	 * @return a list of {@link Message}
+	 * 
+	 * @throws IOException
+	 *             - if the batch is corrupted
+	 */
+	public static List<Message> unpack(net.jxta.endpoint.Message message)
+			throws IOException {
+		MessageElement element = message.getMessageElement(Tag.BATCH
+				.getValue());
+		if (element == null) {
+			throw new IOException("The message does not carry a batch");
+		}
+		DataInputStream in = new DataInputStream(element.getStream());
+		try {
+			int count = in.readInt();
+			List<Message> messages = new ArrayList<Message>(count);
+			for (int i = 0; i < count; i++) {
+				messages.add(readMessage(in));
+			}
+			return messages;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Frames the messages into the batch element
+	 * 
+	 * @param messages
+	 */
+	private void setMessages(List<? extends Message> messages) {
+		Validator.validateObjNotNull(messages);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		try {
+			out.writeInt(messages.size());
+			for (Message message : messages) {
+				writeMessage(out, message);
+			}
+			out.flush();
+			addMessageElement(new ByteArrayMessageElement(Tag.BATCH.getValue(),
+					MimeMediaType.AOS, bos.toByteArray(), null));
+		} catch (IOException e) {
+			LOG.error(BatchMessage.class.getName() + " " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes a single message, i.e. its source, destination and the pay-load
+	 * element as is
+	 * 
+	 * @param out
+	 * @param message
+	 * 
+	 * @throws IOException
+	 */
+	private static void writeMessage(DataOutputStream out, Message message)
+			throws IOException {
+		MessageElement payload = getPayload(message);
+		if (payload == null) {
+			throw new IllegalArgumentException("The message to ["
+					+ message.getDestination() + "] has no pay-load to batch");
+		}
+		byte[] bytes = payload.getBytes(false);
+		out.writeUTF(message.getSource());
+		out.writeUTF(message.getDestination());
+		out.writeUTF(payload.getElementName());
+		out.writeUTF(payload.getMimeType().toString());
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a single message written by
+	 * {@link #writeMessage(DataOutputStream, Message)}
+	 * 
+	 * @param in
+	 * 
+	 * @return a {@link Message}
+	 * 
+	 * @throws IOException
+	 */
+	private static Message readMessage(DataInputStream in) throws IOException {
+		String source = in.readUTF();
+		String destination = in.readUTF();
+		String name = in.readUTF();
+		MimeMediaType type = new MimeMediaType(in.readUTF());
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+
+		if (Tag.PAYLOAD.getValue().equals(name)) {
+			return new TextualMessage(source, destination, new String(bytes,
+					Encoding.UTF_8.toString()));
+		} else if (Tag.STREAM.getValue().equals(name)) {
+			return new BinaryMessage(source, destination,
+					new ByteArrayMessageElement(name, type, bytes, null));
+		} else if (Tag.OBJECT.getValue().equals(name)) {
+			return new ObjectMessage(source, destination,
+					new ByteArrayMessageElement(name, type, bytes, null));
+		}
+		throw new IOException("Unknown pay-load [" + name + "] in the batch");
+	}
+
+	/**
+	 * Attains the pay-load element of the message
+	 * 
+	 * @param message
+	 * 
+	 * @return a {@link MessageElement} or null if there is no pay-load
+	 */
+	private static MessageElement getPayload(Message message) {
+		for (Tag tag : PAYLOAD_TAGS) {
+			MessageElement element = message.getMessageElement(tag.getValue());
+			if (element != null) {
+				return element;
+			}
+		}
+		return null;
+	}
+}
@@ -14,16 +14,11 @@
 
 package com.ocrix.ppc.message;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
 
-import net.jxta.document.MimeMediaType;
-import net.jxta.endpoint.ByteArrayMessageElement;
 import net.jxta.endpoint.MessageElement;
 
 import com.ocrix.ppc.commons.Validator;
@@ -35,10 +30,6 @@ import com.ocrix.ppc.type.Tag;
 public class BinaryMessage extends Message {
 
 	private static final long serialVersionUID = -6292637179092706213L;
-
-	/* Media type - zip */
-	private final static MimeMediaType GZIP_MEDIA_TYPE = new MimeMediaType(
-			"application/gzip").intern();
 	private static final Logger LOG = Logger.getLogger(BinaryMessage.class);
 
 	/**
@@ -56,6 +47,36 @@ public class BinaryMessage extends Message {
 		setByteArray(data);
 	}
 
+	/**
+	 * Constructs a binary message of the already compressed element, i.e.
+	 * received from the pipe or unpacked from a {@link BatchMessage}, the
+	 * element is neither copied nor compressed again
+	 * 
+	 * @param source
+	 *            a sender
+	 * @param destination
+	 *            a recipient
+	 * @param stream
+	 *            a compressed {@link MessageElement}
+	 */
+	public BinaryMessage(String source, String destination,
+			MessageElement stream) {
+		super(source, destination);
+		Validator.validateObjNotNull(stream);
+		addMessageElement(stream);
+	}
+
+	/**
+	 * Constructs a view of a received binary message, the pay-load is
+	 * decompressed at the first {@link #getStream()}
+	 * 
+	 * @param received
+	 *            a JXTA message carrying the stream
+	 */
+	BinaryMessage(net.jxta.endpoint.Message received) {
+		super(received);
+	}
+
 	@Override
 	public String getTextualMesage() {
 		return "Binary message cannot return the text, use TextualMessage instead";
@@ -67,7 +88,8 @@ public class BinaryMessage extends Message {
 		MessageElement element = getMessageElement(Tag.STREAM.getValue());
 
 		try {
-			result = new GZIPInputStream(element.getStream());
+			/* The codec is named by the MIME type of the element */
+			result = PayloadCodecs.decode(element);
 
 		} catch (IOException e) {
 			LOG.error(BinaryMessage.class.getName() + " "
@@ -78,37 +100,20 @@ public class BinaryMessage extends Message {
 	}
 
 	/**
-	 * Adds byte[] into {@link Message} A byte[] will be compressed before
-	 * transmission
+	 * Adds byte[] into {@link Message} A byte[] is encoded by the codec which
+	 * the {@link CompressionPolicy} picks for its size, a byte[] sent as is is
+	 * not copied
 	 * 
 	 * @param data
 	 */
 	private void setByteArray(byte[] data) {
 		/* Validates data */
 		Validator.validateObjNotNull(data);
-		byte[] buffer = data;
-		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-		GZIPOutputStream gos = null;
 		try {
-			gos = new GZIPOutputStream(outStream);
-			gos.write(data, 0, data.length);
-			gos.finish();
-			gos.close();
-			buffer = outStream.toByteArray();
-			addMessageElement(new ByteArrayMessageElement(
-					Tag.STREAM.getValue(), GZIP_MEDIA_TYPE, buffer, null));
+			addMessageElement(PayloadCodecs.encode(Tag.STREAM.getValue(), data));
 		} catch (IOException e) {
 			LOG.error(BinaryMessage.class.getName() + " "
 					+ e.getMessage());
-		} finally {// Closing streams
-			try {
-				if (outStream != null)
-					outStream.close();
-				if (gos != null)
-					gos.close();
-			} catch (IOException e) {
-				LOG.error(e);
-			}
 		}
 	}
 
@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.MessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Presents a binary message over a caller-owned {@link ByteBuffer}, heap or
+ * direct. Unlike {@link BinaryMessage} the pay-load is neither copied nor
+ * compressed, the buffer must not be changed until the message is sent. A
+ * received message returns a read-only view of the bytes it came with.
+ */
+public class ByteBufferMessage extends Message {
+
+	private static final long serialVersionUID = 4719536502437961512L;
+	private static final Logger LOG = Logger.getLogger(ByteBufferMessage.class);
+
+	/**
+	 * Constructs a message of the remaining bytes of the buffer
+	 * 
+	 * @param source
+	 *            a sender
+	 * @param destination
+	 *            a recipient
+	 * @param buffer
+	 *            a {@link ByteBuffer}, its position and limit are not changed
+	 */
+	public ByteBufferMessage(String source, String destination,
+			ByteBuffer buffer) {
+		super(source, destination);
+		addMessageElement(new ByteBufferMessageElement(Tag.BUFFER.getValue(),
+				buffer));
+	}
+
+	/**
+	 * Constructs a message of the element received from the pipe, the bytes
+	 * of the element are not copied
+	 * 
+	 * @param source
+	 *            a sender
+	 * @param destination
+	 *            a recipient
+	 * @param element
+	 *            a {@link MessageElement} carrying the pay-load
+	 */
+	public ByteBufferMessage(String source, String destination,
+			MessageElement element) {
+		super(source, destination);
+		Validator.validateObjNotNull(element);
+		addMessageElement(new ByteBufferMessageElement(Tag.BUFFER.getValue(),
+				toByteBuffer(element)));
+	}
+
+	/**
+	 * Constructs a view of a received message, the element is wrapped into a
+	 * buffer at the first access
+	 * 
+	 * @param received
+	 *            a JXTA message carrying the buffer
+	 */
+	ByteBufferMessage(net.jxta.endpoint.Message received) {
+		super(received);
+	}
+
+	/**
+	 * Returns a read-only view of the pay-load
+	 * 
+	 * @return a {@link ByteBuffer}
+	 */
+	public ByteBuffer getByteBuffer() {
+		return getElement().getByteBuffer();
+	}
+
+	@Override
+	public String getTextualMesage() {
+		return "ByteBuffer message cannot return the text, use TextualMessage instead";
+	}
+
+	@Override
+	public InputStream getStream() {
+		try {
+			return getElement().getStream();
+		} catch (IOException e) {
+			LOG.error(ByteBufferMessage.class.getName() + " " + e.getMessage());
+		}
+		return null;
+	}
+
+	@Override
+	public Object getObject() {
+		return null;
+	}
+
+	private ByteBufferMessageElement getElement() {
+		MessageElement element = getMessageElement(Tag.BUFFER.getValue());
+		if (element instanceof ByteBufferMessageElement) {
+			return (ByteBufferMessageElement) element;
+		}
+		/* A received element, it is wrapped once and kept */
+		ByteBufferMessageElement wrapped = new ByteBufferMessageElement(
+				Tag.BUFFER.getValue(), toByteBuffer(element));
+		replaceMessageElement(wrapped);
+		return wrapped;
+	}
+
+	/**
+	 * Attains the bytes of the element without copying them if the element
+	 * keeps them in memory
+	 * 
+	 * @param element
+	 *            a {@link MessageElement}
+	 * 
+	 * @return a {@link ByteBuffer}
+	 */
+	private static ByteBuffer toByteBuffer(MessageElement element) {
+		if (element instanceof ByteBufferMessageElement) {
+			return ((ByteBufferMessageElement) element).getByteBuffer();
+		}
+		if (element instanceof ByteArrayMessageElement) {
+			ByteArrayMessageElement bytes = (ByteArrayMessageElement) element;
+			return ByteBuffer.wrap(bytes.getBytes(), bytes.getOffset(),
+					(int) bytes.getByteLength());
+		}
+		return ByteBuffer.wrap(element.getBytes(false));
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.MessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+
+/**
+ * A {@link MessageElement} over a {@link ByteBuffer}, heap or direct. The
+ * bytes between the position and the limit of the buffer are the content of
+ * the element, they are neither copied nor compressed. A heap buffer is
+ * written to the pipe straight from its array, a direct one through a small
+ * chunk.
+ */
+public class ByteBufferMessageElement extends MessageElement {
+	/* Class members */
+	private static final int CHUNK_SIZE = 8192;
+	/* The content, its position is never moved and it is never written */
+	private final ByteBuffer buffer;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates an element of the remaining bytes of the buffer, the position
+	 * and the limit of the given buffer are not changed
+	 * 
+	 * @param name
+	 *            - a name of the element
+	 * @param buffer
+	 *            - a {@link ByteBuffer}
+	 */
+	public ByteBufferMessageElement(String name, ByteBuffer buffer) {
+		super(name, MimeMediaType.AOS, null);
+		Validator.validateString(name);
+		Validator.validateObjNotNull(buffer);
+		this.buffer = buffer.slice();
+	}
+
+	/**
+	 * Returns a read-only view of the content, each call returns its own
+	 * position and limit
+	 * 
+	 * @return a {@link ByteBuffer}
+	 */
+	public ByteBuffer getByteBuffer() {
+		return buffer.asReadOnlyBuffer();
+	}
+
+	@Override
+	public long getByteLength() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public InputStream getStream() throws IOException {
+		return new ByteBufferInputStream(getByteBuffer());
+	}
+
+	@Override
+	public byte[] getBytes(boolean copy) {
+		if (!copy && buffer.hasArray() && buffer.arrayOffset() == 0
+				&& buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	@Override
+	public void sendToStream(OutputStream out) throws IOException {
+		ByteBuffer content = buffer.duplicate();
+		if (content.hasArray()) {
+			out.write(content.array(), content.arrayOffset(),
+					content.remaining());
+			return;
+		}
+		byte[] chunk = new byte[Math.min(CHUNK_SIZE, content.remaining())];
+		while (content.hasRemaining()) {
+			int length = Math.min(chunk.length, content.remaining());
+			content.get(chunk, 0, length);
+			out.write(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Reads a {@link ByteBuffer} without copying it
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		private ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public long skip(long n) {
+			int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
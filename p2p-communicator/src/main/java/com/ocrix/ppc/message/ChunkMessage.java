@@ -0,0 +1,269 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.MessageElement;
+import net.jxta.endpoint.StringMessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.Encoding;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Carries one chunk of a streamed transfer. The chunks of a transfer share
+ * its id and are numbered from 0, the last one carries the total size of the
+ * transfer. The bytes of a chunk are neither copied nor compressed.
+ */
+public class ChunkMessage extends Message {
+
+	private static final long serialVersionUID = -5086419164838129815L;
+	private static final Logger LOG = Logger.getLogger(ChunkMessage.class);
+
+	/**
+	 * Constructs a chunk over a part of the array, the array must not be
+	 * changed until the chunk is delivered
+	 * 
+	 * @param source
+	 *            a sender
+	 * @param destination
+	 *            a recipient
+	 * @param transferId
+	 *            an id of the transfer
+	 * @param sequence
+	 *            a number of the chunk in the transfer, from 0
+	 * @param data
+	 *            an array holding the chunk
+	 * @param offset
+	 *            where the chunk starts
+	 * @param length
+	 *            a number of the bytes of the chunk
+	 */
+	public ChunkMessage(String source, String destination, String transferId,
+			long sequence, byte[] data, int offset, int length) {
+		super(source, destination);
+		Validator.validateString(transferId);
+		Validator.validateObjNotNull(data);
+		if (sequence < 0) {
+			throw new IllegalArgumentException("A negative sequence "
+					+ sequence);
+		}
+		addString(Tag.TRANSFER_ID, transferId);
+		addString(Tag.CHUNK_SEQ, String.valueOf(sequence));
+		addMessageElement(new ByteArrayMessageElement(Tag.CHUNK.getValue(),
+				MimeMediaType.AOS, data, offset, length, null));
+	}
+
+	/**
+	 * Constructs a chunk over the remaining bytes of the buffer, e.g. a slice
+	 * of a mapped file, the bytes are not copied into the heap
+	 * 
+	 * @param source
+	 *            a sender
+	 * @param destination
+	 *            a recipient
+	 * @param transferId
+	 *            an id of the transfer
+	 * @param sequence
+	 *            a number of the chunk in the transfer, from 0
+	 * @param buffer
+	 *            a {@link ByteBuffer}, its position and limit are not changed
+	 */
+	public ChunkMessage(String source, String destination, String transferId,
+			long sequence, ByteBuffer buffer) {
+		super(source, destination);
+		Validator.validateString(transferId);
+		Validator.validateObjNotNull(buffer);
+		if (sequence < 0) {
+			throw new IllegalArgumentException("A negative sequence "
+					+ sequence);
+		}
+		addString(Tag.TRANSFER_ID, transferId);
+		addString(Tag.CHUNK_SEQ, String.valueOf(sequence));
+		addMessageElement(new ByteBufferMessageElement(Tag.CHUNK.getValue(),
+				buffer));
+	}
+
+	/**
+	 * Constructs a view of a received chunk
+	 * 
+	 * @param received
+	 *            a JXTA message carrying the chunk
+	 */
+	ChunkMessage(net.jxta.endpoint.Message received) {
+		super(received);
+	}
+
+	/**
+	 * Indicates if the JXTA message is a chunk of a transfer
+	 * 
+	 * @param message
+	 *            - a JXTA message
+	 * 
+	 * @return <b>true</b> if it carries a chunk
+	 */
+	public static boolean isChunk(net.jxta.endpoint.Message message) {
+		return message.getMessageElement(Tag.CHUNK.getValue()) != null;
+	}
+
+	/**
+	 * Marks the chunk as the last one of the transfer
+	 * 
+	 * @param totalSize
+	 *            a number of the bytes of the whole transfer
+	 */
+	public void setLast(long totalSize) {
+		addString(Tag.TRANSFER_SIZE, String.valueOf(totalSize));
+	}
+
+	/**
+	 * Announces a size of the whole transfer ahead of its last chunk, so the
+	 * recipient may size its file at once
+	 * 
+	 * @param fileSize
+	 *            a number of the bytes of the whole transfer
+	 */
+	public void setFileSize(long fileSize) {
+		addString(Tag.FILE_SIZE, String.valueOf(fileSize));
+	}
+
+	/**
+	 * Returns a size of the transfer announced by the chunk
+	 * 
+	 * @return a number of bytes or -1 if not announced
+	 */
+	public long getFileSize() {
+		MessageElement element = getMessageElement(Tag.FILE_SIZE.getValue());
+		return element == null ? -1 : Long.parseLong(element.toString());
+	}
+
+	/**
+	 * Indicates if it is the last chunk of the transfer
+	 * 
+	 * @return <b>true</b> if last
+	 */
+	public boolean isLast() {
+		return getMessageElement(Tag.TRANSFER_SIZE.getValue()) != null;
+	}
+
+	/**
+	 * Returns a total size of the transfer, it is known by the last chunk only
+	 * 
+	 * @return a number of bytes or -1 if it is not the last chunk
+	 */
+	public long getTotalSize() {
+		MessageElement element = getMessageElement(Tag.TRANSFER_SIZE
+				.getValue());
+		return element == null ? -1 : Long.parseLong(element.toString());
+	}
+
+	/**
+	 * Returns an id of the transfer
+	 * 
+	 * @return a transfer id
+	 */
+	public String getTransferId() {
+		return getMessageElement(Tag.TRANSFER_ID.getValue()).toString();
+	}
+
+	/**
+	 * Returns a number of the chunk in the transfer
+	 * 
+	 * @return a sequence, from 0
+	 */
+	public long getSequence() {
+		return Long.parseLong(getMessageElement(Tag.CHUNK_SEQ.getValue())
+				.toString());
+	}
+
+	/**
+	 * Returns a number of the bytes of the chunk
+	 * 
+	 * @return a length
+	 */
+	public int getLength() {
+		return (int) getMessageElement(Tag.CHUNK.getValue()).getByteLength();
+	}
+
+	/**
+	 * Writes the bytes of the chunk without copying them
+	 * 
+	 * @param out
+	 *            an {@link OutputStream}
+	 * 
+	 * @throws IOException
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		getMessageElement(Tag.CHUNK.getValue()).sendToStream(out);
+	}
+
+	/**
+	 * Returns a read-only view of the bytes of the chunk, they are not copied
+	 * if the element keeps them in memory
+	 * 
+	 * @return a {@link ByteBuffer}
+	 */
+	public ByteBuffer getBuffer() {
+		MessageElement element = getMessageElement(Tag.CHUNK.getValue());
+		if (element instanceof ByteBufferMessageElement) {
+			return ((ByteBufferMessageElement) element).getByteBuffer();
+		}
+		if (element instanceof ByteArrayMessageElement) {
+			ByteArrayMessageElement bytes = (ByteArrayMessageElement) element;
+			return ByteBuffer.wrap(bytes.getBytes(), bytes.getOffset(),
+					(int) bytes.getByteLength()).asReadOnlyBuffer();
+		}
+		return ByteBuffer.wrap(element.getBytes(false)).asReadOnlyBuffer();
+	}
+
+	@Override
+	public String getTextualMesage() {
+		return "Chunk message cannot return the text, use TextualMessage instead";
+	}
+
+	@Override
+	public InputStream getStream() {
+		try {
+			return getMessageElement(Tag.CHUNK.getValue()).getStream();
+		} catch (IOException e) {
+			LOG.error(ChunkMessage.class.getName() + " " + e.getMessage());
+		}
+		return null;
+	}
+
+	@Override
+	public Object getObject() {
+		return null;
+	}
+
+	private void addString(Tag tag, String value) {
+		try {
+			replaceMessageElement(new StringMessageElement(tag.getValue(),
+					value, Encoding.UTF_8.toString(), null));
+		} catch (UnsupportedEncodingException e) {
+			LOG.error(e);
+		}
+	}
+}
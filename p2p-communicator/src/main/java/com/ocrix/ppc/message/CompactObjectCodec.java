@@ -0,0 +1,718 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jxta.document.MimeMediaType;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.Encoding;
+
+/**
+ * Encodes the objects of the registered classes without the class
+ * descriptors of the Java serialization: a class is written as a small id
+ * agreed by the peers and the primitive fields are written as they are. The
+ * strings, boxed primitives, byte arrays, dates and the
+ * ArrayList/HashMap/HashSet of them are known without registration.
+ * <p>
+ * Both peers have to register the same classes with the same ids. An object
+ * graph with an unknown type is refused by {@link NotSerializableException},
+ * so {@link ObjectCodecs} falls back to the Java serialization. The graph is
+ * written as a tree, the shared references are written twice and a cycle is
+ * refused the same way.
+ * <p>
+ * A length read from the input is checked before anything is allocated for
+ * it: an array, a string or a collection longer than the max length is
+ * refused, and an array grows with the bytes actually read, so a length
+ * beyond the end of the input fails by {@link StreamCorruptedException}.
+ */
+public class CompactObjectCodec implements ObjectCodec {
+	/* Class members */
+	private final static MimeMediaType COMPACT_MEDIA_TYPE = new MimeMediaType(
+			"application/x-ppc-object").intern();
+	/* The ids of the built-in types */
+	private static final int NULL = 0;
+	private static final int STRING = 1;
+	private static final int INTEGER = 2;
+	private static final int LONG = 3;
+	private static final int SHORT = 4;
+	private static final int BYTE = 5;
+	private static final int BOOLEAN = 6;
+	private static final int CHARACTER = 7;
+	private static final int FLOAT = 8;
+	private static final int DOUBLE = 9;
+	private static final int BYTES = 10;
+	private static final int DATE = 11;
+	private static final int LIST = 12;
+	private static final int MAP = 13;
+	private static final int SET = 14;
+	/* The ids below are reserved for the built-in types */
+	public static final int FIRST_CLASS_ID = 32;
+	private static final Map<Class<?>, Integer> builtIns = new HashMap<Class<?>, Integer>();
+	private final ConcurrentMap<Class<?>, Registration<?>> byClass = new ConcurrentHashMap<Class<?>, Registration<?>>();
+	private final ConcurrentMap<Integer, Registration<?>> byId = new ConcurrentHashMap<Integer, Registration<?>>();
+	/* A max length of a decoded array or string, or items of a collection */
+	private volatile int maxLength = DefaultParameter.OBJECT_MAX_LENGTH
+			.getCode();
+	/* The objects being written by a thread, from the root to the current one */
+	private final ThreadLocal<Map<Object, Boolean>> writing = new ThreadLocal<Map<Object, Boolean>>() {
+		@Override
+		protected Map<Object, Boolean> initialValue() {
+			return new IdentityHashMap<Object, Boolean>();
+		}
+	};
+
+	static {
+		builtIns.put(String.class, STRING);
+		builtIns.put(Integer.class, INTEGER);
+		builtIns.put(Long.class, LONG);
+		builtIns.put(Short.class, SHORT);
+		builtIns.put(Byte.class, BYTE);
+		builtIns.put(Boolean.class, BOOLEAN);
+		builtIns.put(Character.class, CHARACTER);
+		builtIns.put(Float.class, FLOAT);
+		builtIns.put(Double.class, DOUBLE);
+		builtIns.put(byte[].class, BYTES);
+		builtIns.put(Date.class, DATE);
+		builtIns.put(ArrayList.class, LIST);
+		builtIns.put(HashMap.class, MAP);
+		builtIns.put(LinkedHashMap.class, MAP);
+		builtIns.put(HashSet.class, SET);
+		builtIns.put(LinkedHashSet.class, SET);
+	}
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Registers a class to be written field by field, its non static and non
+	 * transient fields are read and written by reflection. The class needs a
+	 * constructor without arguments, it may be private. An enumeration is
+	 * written by its ordinal.
+	 * 
+	 * @param type
+	 *            - a class
+	 * @param id
+	 *            - an id agreed by the peers, not less than
+	 *            {@link #FIRST_CLASS_ID}
+	 */
+	public <T> void register(Class<T> type, int id) {
+		Validator.validateObjNotNull(type);
+		register(type, id, type.isEnum() ? new EnumSerializer<T>(type)
+				: new FieldSerializer<T>(type));
+	}
+
+	/**
+	 * Registers a class with its own serializer
+	 * 
+	 * @param type
+	 *            - a class
+	 * @param id
+	 *            - an id agreed by the peers, not less than
+	 *            {@link #FIRST_CLASS_ID}
+	 * @param serializer
+	 *            - an {@link ObjectSerializer} of the class
+	 */
+	public <T> void register(Class<T> type, int id,
+			ObjectSerializer<T> serializer) {
+		Validator.validateObjNotNull(type);
+		Validator.validateObjNotNull(serializer);
+		if (id < FIRST_CLASS_ID) {
+			throw new IllegalArgumentException("The class id must be at least "
+					+ FIRST_CLASS_ID);
+		}
+		if (builtIns.containsKey(type)) {
+			throw new IllegalArgumentException(type.getName()
+					+ " is a built-in type");
+		}
+		Registration<T> registration = new Registration<T>(type, id,
+				serializer);
+		Registration<?> other = byId.putIfAbsent(id, registration);
+		if (other != null && other.type != type) {
+			throw new IllegalArgumentException("The id " + id
+					+ " is taken by " + other.type.getName());
+		}
+		byId.put(id, registration);
+		Registration<?> previous = byClass.put(type, registration);
+		/* A class registered again under a new id is not read by the old one */
+		if (previous != null && previous.id != id) {
+			byId.remove(previous.id, previous);
+		}
+	}
+
+	/**
+	 * Sets a max length of a decoded array or string, and a max number of the
+	 * items of a decoded collection
+	 * 
+	 * @param maxLength
+	 *            - a positive length
+	 */
+	public void setMaxLength(int maxLength) {
+		Validator.validatePositive(maxLength);
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Attains a max length of a decoded array, string or collection
+	 * 
+	 * @return a max length
+	 */
+	public int getMaxLength() {
+		return maxLength;
+	}
+
+	/**
+	 * Indicates if a class is registered
+	 * 
+	 * @param type
+	 *            - a class
+	 * 
+	 * @return <b>true</b> if registered
+	 */
+	public boolean isRegistered(Class<?> type) {
+		return byClass.containsKey(type);
+	}
+
+	// @Override
+	public String getId() {
+		return "compact";
+	}
+
+	// @Override
+	public MimeMediaType getMimeType() {
+		return COMPACT_MEDIA_TYPE;
+	}
+
+	// @Override
+	public byte[] encode(Object object) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bos);
+		writeObject(out, object);
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	// @Override
+	public Object decode(InputStream encoded) throws IOException {
+		return readObject(new DataInputStream(encoded));
+	}
+
+	/**
+	 * Writes an object with the id of its type, used by the serializers for
+	 * the nested objects
+	 * 
+	 * @param out
+	 *            - a {@link DataOutput}
+	 * @param object
+	 *            - an object or null
+	 * 
+	 * @throws NotSerializableException
+	 *             - if a type of the object is not known or the object
+	 *             refers back to itself
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public void writeObject(DataOutput out, Object object) throws IOException {
+		if (object == null) {
+			writeVarInt(out, NULL);
+			return;
+		}
+		Class<?> type = object.getClass();
+		Map<Object, Boolean> path = writing.get();
+		if (path.put(object, Boolean.TRUE) != null) {
+			/* No back-references here, the Java serialization has them */
+			throw new NotSerializableException(type.getName()
+					+ " refers back to itself");
+		}
+		try {
+			Integer builtIn = builtIns.get(type);
+			if (builtIn != null) {
+				writeVarInt(out, builtIn);
+				writeBuiltIn(out, builtIn, object);
+				return;
+			}
+			Registration<Object> registration = (Registration<Object>) byClass
+					.get(type);
+			if (registration == null) {
+				throw new NotSerializableException(type.getName()
+						+ " is not registered");
+			}
+			writeVarInt(out, registration.id);
+			registration.serializer.write(out, object, this);
+		} finally {
+			path.remove(object);
+		}
+	}
+
+	/**
+	 * Reads an object written by {@link #writeObject(DataOutput, Object)}
+	 * 
+	 * @param in
+	 *            - a {@link DataInput}
+	 * 
+	 * @return an object or null
+	 * 
+	 * @throws IOException
+	 *             - if the bytes are corrupted or the id is not registered
+	 */
+	public Object readObject(DataInput in) throws IOException {
+		int id = readVarInt(in);
+		if (id < FIRST_CLASS_ID) {
+			return readBuiltIn(in, id);
+		}
+		Registration<?> registration = byId.get(id);
+		if (registration == null) {
+			throw new IOException("No class is registered with the id " + id);
+		}
+		return registration.serializer.read(in, this);
+	}
+
+	private void writeBuiltIn(DataOutput out, int id, Object object)
+			throws IOException {
+		switch (id) {
+		case STRING:
+			writeBytes(out, ((String) object).getBytes(Encoding.UTF_8
+					.toString()));
+			break;
+		case INTEGER:
+			out.writeInt((Integer) object);
+			break;
+		case LONG:
+			out.writeLong((Long) object);
+			break;
+		case SHORT:
+			out.writeShort((Short) object);
+			break;
+		case BYTE:
+			out.writeByte((Byte) object);
+			break;
+		case BOOLEAN:
+			out.writeBoolean((Boolean) object);
+			break;
+		case CHARACTER:
+			out.writeChar((Character) object);
+			break;
+		case FLOAT:
+			out.writeFloat((Float) object);
+			break;
+		case DOUBLE:
+			out.writeDouble((Double) object);
+			break;
+		case BYTES:
+			writeBytes(out, (byte[]) object);
+			break;
+		case DATE:
+			out.writeLong(((Date) object).getTime());
+			break;
+		case LIST:
+		case SET:
+			Collection<?> collection = (Collection<?>) object;
+			writeVarInt(out, collection.size());
+			for (Object item : collection) {
+				writeObject(out, item);
+			}
+			break;
+		case MAP:
+			Map<?, ?> map = (Map<?, ?>) object;
+			writeVarInt(out, map.size());
+			for (Map.Entry<?, ?> entry : map.entrySet()) {
+				writeObject(out, entry.getKey());
+				writeObject(out, entry.getValue());
+			}
+			break;
+		default:
+			throw new NotSerializableException("Unknown built-in " + id);
+		}
+	}
+
+	private Object readBuiltIn(DataInput in, int id) throws IOException {
+		switch (id) {
+		case NULL:
+			return null;
+		case STRING:
+			return new String(readBytes(in, maxLength),
+					Encoding.UTF_8.toString());
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case SHORT:
+			return in.readShort();
+		case BYTE:
+			return in.readByte();
+		case BOOLEAN:
+			return in.readBoolean();
+		case CHARACTER:
+			return in.readChar();
+		case FLOAT:
+			return in.readFloat();
+		case DOUBLE:
+			return in.readDouble();
+		case BYTES:
+			return readBytes(in, maxLength);
+		case DATE:
+			return new Date(in.readLong());
+		case LIST: {
+			int size = readLength(in, maxLength);
+			List<Object> list = new ArrayList<Object>(Math.min(size, 1024));
+			for (int i = 0; i < size; i++) {
+				list.add(readObject(in));
+			}
+			return list;
+		}
+		case SET: {
+			int size = readLength(in, maxLength);
+			Set<Object> set = new LinkedHashSet<Object>();
+			for (int i = 0; i < size; i++) {
+				set.add(readObject(in));
+			}
+			return set;
+		}
+		case MAP: {
+			int size = readLength(in, maxLength);
+			Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+			for (int i = 0; i < size; i++) {
+				Object key = readObject(in);
+				map.put(key, readObject(in));
+			}
+			return map;
+		}
+		default:
+			throw new IOException("Unknown built-in type " + id);
+		}
+	}
+
+	/**
+	 * Writes a length prefixed array
+	 * 
+	 * @param out
+	 *            - a {@link DataOutput}
+	 * @param bytes
+	 *            - an array
+	 * 
+	 * @throws IOException
+	 */
+	public static void writeBytes(DataOutput out, byte[] bytes)
+			throws IOException {
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads an array written by {@link #writeBytes(DataOutput, byte[])}, not
+	 * longer than the default max length
+	 * 
+	 * @param in
+	 *            - a {@link DataInput}
+	 * 
+	 * @return an array
+	 * 
+	 * @throws IOException
+	 *             - if the length is corrupted
+	 */
+	public static byte[] readBytes(DataInput in) throws IOException {
+		return readBytes(in, DefaultParameter.OBJECT_MAX_LENGTH.getCode());
+	}
+
+	/**
+	 * Reads an array written by {@link #writeBytes(DataOutput, byte[])}. The
+	 * array grows with the bytes read, a corrupted length fails at the end of
+	 * the input instead of allocating it.
+	 * 
+	 * @param in
+	 *            - a {@link DataInput}
+	 * @param maxLength
+	 *            - a max length of the array
+	 * 
+	 * @return an array
+	 * 
+	 * @throws StreamCorruptedException
+	 *             - if the length is above the max or beyond the input
+	 * @throws IOException
+	 */
+	public static byte[] readBytes(DataInput in, int maxLength)
+			throws IOException {
+		int length = readLength(in, maxLength);
+		byte[] bytes = new byte[Math.min(length,
+				DefaultParameter.DEFAULT_BUFFER_SIZE.getCode())];
+		int read = 0;
+		try {
+			while (read < length) {
+				if (read == bytes.length) {
+					bytes = Arrays.copyOf(bytes,
+							(int) Math.min(length, 2L * bytes.length));
+				}
+				in.readFully(bytes, read, bytes.length - read);
+				read = bytes.length;
+			}
+		} catch (EOFException e) {
+			throw new StreamCorruptedException("The length " + length
+					+ " is beyond the input, " + read + " bytes are left");
+		}
+		return bytes;
+	}
+
+	/**
+	 * Reads a length written by {@link #writeVarInt(DataOutput, int)}
+	 * 
+	 * @param in
+	 *            - a {@link DataInput}
+	 * @param maxLength
+	 *            - a max length
+	 * 
+	 * @return a length
+	 * 
+	 * @throws StreamCorruptedException
+	 *             - if the length is corrupted or above the max
+	 * @throws IOException
+	 */
+	public static int readLength(DataInput in, int maxLength)
+			throws IOException {
+		int length = readVarInt(in);
+		if (length > maxLength) {
+			throw new StreamCorruptedException("The length " + length
+					+ " is above the max " + maxLength);
+		}
+		return length;
+	}
+
+	/**
+	 * Writes a non negative int in 1 to 5 bytes, 7 bits per byte
+	 * 
+	 * @param out
+	 *            - a {@link DataOutput}
+	 * @param value
+	 *            - a non negative value
+	 * 
+	 * @throws IOException
+	 */
+	public static void writeVarInt(DataOutput out, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads an int written by {@link #writeVarInt(DataOutput, int)}
+	 * 
+	 * @param in
+	 *            - a {@link DataInput}
+	 * 
+	 * @return a value
+	 * 
+	 * @throws IOException
+	 *             - if the value is corrupted
+	 */
+	public static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				if (value < 0) {
+					throw new StreamCorruptedException("A negative length "
+							+ value);
+				}
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("A corrupted var int");
+	}
+
+	/**
+	 * A registered class
+	 */
+	private static class Registration<T> {
+		private final Class<T> type;
+		private final int id;
+		private final ObjectSerializer<T> serializer;
+
+		private Registration(Class<T> type, int id,
+				ObjectSerializer<T> serializer) {
+			this.type = type;
+			this.id = id;
+			this.serializer = serializer;
+		}
+	}
+
+	/**
+	 * Writes an enumeration by its ordinal
+	 */
+	private static class EnumSerializer<T> implements ObjectSerializer<T> {
+		private final T[] constants;
+
+		private EnumSerializer(Class<T> type) {
+			this.constants = type.getEnumConstants();
+		}
+
+		// @Override
+		public void write(DataOutput out, T object, CompactObjectCodec codec)
+				throws IOException {
+			writeVarInt(out, ((Enum<?>) object).ordinal());
+		}
+
+		// @Override
+		public T read(DataInput in, CompactObjectCodec codec)
+				throws IOException {
+			int ordinal = readVarInt(in);
+			if (ordinal >= constants.length) {
+				throw new IOException("Unknown ordinal " + ordinal);
+			}
+			return constants[ordinal];
+		}
+	}
+
+	/**
+	 * Writes the fields of a class in the order of their names, the
+	 * reflective accessors are looked up once at registration
+	 */
+	private static class FieldSerializer<T> implements ObjectSerializer<T> {
+		private final Constructor<T> constructor;
+		private final Field[] fields;
+
+		private FieldSerializer(Class<T> type) {
+			try {
+				constructor = type.getDeclaredConstructor();
+				constructor.setAccessible(true);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException(type.getName()
+						+ " has no constructor without arguments");
+			}
+			List<Field> found = new ArrayList<Field>();
+			for (Class<?> c = type; c != null && c != Object.class; c = c
+					.getSuperclass()) {
+				List<Field> declared = new ArrayList<Field>();
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (!Modifier.isStatic(modifiers)
+							&& !Modifier.isTransient(modifiers)) {
+						field.setAccessible(true);
+						declared.add(field);
+					}
+				}
+				Collections.sort(declared, new Comparator<Field>() {
+					// @Override
+					public int compare(Field a, Field b) {
+						return a.getName().compareTo(b.getName());
+					}
+				});
+				/* The fields of the super classes go first */
+				found.addAll(0, declared);
+			}
+			fields = found.toArray(new Field[found.size()]);
+		}
+
+		// @Override
+		public void write(DataOutput out, T object, CompactObjectCodec codec)
+				throws IOException {
+			try {
+				for (Field field : fields) {
+					Class<?> type = field.getType();
+					if (type == int.class) {
+						out.writeInt(field.getInt(object));
+					} else if (type == long.class) {
+						out.writeLong(field.getLong(object));
+					} else if (type == boolean.class) {
+						out.writeBoolean(field.getBoolean(object));
+					} else if (type == double.class) {
+						out.writeDouble(field.getDouble(object));
+					} else if (type == float.class) {
+						out.writeFloat(field.getFloat(object));
+					} else if (type == short.class) {
+						out.writeShort(field.getShort(object));
+					} else if (type == byte.class) {
+						out.writeByte(field.getByte(object));
+					} else if (type == char.class) {
+						out.writeChar(field.getChar(object));
+					} else {
+						codec.writeObject(out, field.get(object));
+					}
+				}
+			} catch (IllegalAccessException e) {
+				throw new NotSerializableException(e.getMessage());
+			}
+		}
+
+		// @Override
+		public T read(DataInput in, CompactObjectCodec codec)
+				throws IOException {
+			try {
+				T object = constructor.newInstance();
+				for (Field field : fields) {
+					Class<?> type = field.getType();
+					if (type == int.class) {
+						field.setInt(object, in.readInt());
+					} else if (type == long.class) {
+						field.setLong(object, in.readLong());
+					} else if (type == boolean.class) {
+						field.setBoolean(object, in.readBoolean());
+					} else if (type == double.class) {
+						field.setDouble(object, in.readDouble());
+					} else if (type == float.class) {
+						field.setFloat(object, in.readFloat());
+					} else if (type == short.class) {
+						field.setShort(object, in.readShort());
+					} else if (type == byte.class) {
+						field.setByte(object, in.readByte());
+					} else if (type == char.class) {
+						field.setChar(object, in.readChar());
+					} else {
+						field.set(object, codec.readObject(in));
+					}
+				}
+				return object;
+			} catch (ReflectiveOperationException e) {
+				throw new IOException("Could not create "
+						+ constructor.getName() + " " + e.getMessage());
+			} catch (IllegalArgumentException e) {
+				throw new IOException("A field does not match "
+						+ constructor.getName() + " " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Picks a {@link PayloadCodec} by the size of the pay-load: the small ones are
+ * sent as is, the ones up to the fast threshold by {@link Lz4Codec} and the
+ * bigger ones by {@link DeflateCodec} at the configured level. A pay-load that
+ * does not shrink below the max ratio is sent as is.
+ */
+public class CompressionPolicy {
+	/* Class members */
+	public static final double DEFAULT_MAX_RATIO = 0.9;
+	private final boolean isEnabled;
+	private final int minSize;
+	private final int fastMaxSize;
+	private final double maxRatio;
+	private final PayloadCodec fastCodec = new Lz4Codec();
+	private final PayloadCodec strongCodec;
+	private static final Logger logger = Logger
+			.getLogger(CompressionPolicy.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a policy with the default limits
+	 * 
+	 * @param isEnabled
+	 *            - <b>false</b> sends all pay-loads as is
+	 */
+	public CompressionPolicy(boolean isEnabled) {
+		this(isEnabled, DefaultParameter.COMPRESS_MIN_SIZE.getCode(),
+				DefaultParameter.COMPRESS_FAST_MAX_SIZE.getCode(),
+				DefaultParameter.COMPRESS_LEVEL.getCode(), DEFAULT_MAX_RATIO);
+	}
+
+	/**
+	 * Creates a policy
+	 * 
+	 * @param isEnabled
+	 *            - <b>false</b> sends all pay-loads as is
+	 * @param minSize
+	 *            - a smaller pay-load is sent as is, in bytes
+	 * @param fastMaxSize
+	 *            - a pay-load up to this size is compressed by the fast codec,
+	 *            in bytes
+	 * @param level
+	 *            - a level of {@link DeflateCodec} for the bigger pay-loads
+	 * @param maxRatio
+	 *            - a compressed pay-load bigger than this part of the
+	 *            original is sent as is, between 0 and 1
+	 */
+	public CompressionPolicy(boolean isEnabled, int minSize, int fastMaxSize,
+			int level, double maxRatio) {
+		Validator.validateInt(minSize);
+		Validator.validateInt(fastMaxSize);
+		if (maxRatio <= 0 || maxRatio > 1)
+			throw new IllegalArgumentException(
+					"The ratio must be greater than 0 and up to 1");
+		this.isEnabled = isEnabled;
+		this.minSize = minSize;
+		this.fastMaxSize = fastMaxSize;
+		this.maxRatio = maxRatio;
+		this.strongCodec = new DeflateCodec(level);
+	}
+
+	/**
+	 * Creates a policy of the <code>compress.*</code> keys of the
+	 * configuration, the missing keys get the default values
+	 * 
+	 * @return a {@link CompressionPolicy}
+	 */
+	public static CompressionPolicy fromConfig() {
+		boolean isEnabled = Boolean.parseBoolean(trim(PPCUtils
+				.getValue("compress.binary.data")));
+		try {
+			return new CompressionPolicy(isEnabled, getInt("compress.min.size",
+					DefaultParameter.COMPRESS_MIN_SIZE.getCode()), getInt(
+					"compress.fast.max.size",
+					DefaultParameter.COMPRESS_FAST_MAX_SIZE.getCode()),
+					getInt("compress.level",
+							DefaultParameter.COMPRESS_LEVEL.getCode()),
+					DEFAULT_MAX_RATIO);
+		} catch (IllegalArgumentException e) {
+			logger.warn("The compression is misconfigured, " + e.getMessage());
+			return new CompressionPolicy(isEnabled);
+		}
+	}
+
+	/**
+	 * Picks a codec of the pay-load
+	 * 
+	 * @param length
+	 *            - a size of the pay-load in bytes
+	 * 
+	 * @return a {@link PayloadCodec}
+	 */
+	public PayloadCodec select(int length) {
+		if (!isEnabled || length < minSize) {
+			return PayloadCodecs.NONE;
+		}
+		return length <= fastMaxSize ? fastCodec : strongCodec;
+	}
+
+	/**
+	 * Indicates if the compression is on
+	 * 
+	 * @return <b>true</b> if enabled
+	 */
+	public boolean isEnabled() {
+		return isEnabled;
+	}
+
+	/**
+	 * Returns a size below which a pay-load is sent as is
+	 * 
+	 * @return a size in bytes
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * Returns a size up to which a pay-load is compressed by the fast codec
+	 * 
+	 * @return a size in bytes
+	 */
+	public int getFastMaxSize() {
+		return fastMaxSize;
+	}
+
+	/**
+	 * Returns a part of the original size a compressed pay-load has to be
+	 * below of
+	 * 
+	 * @return a ratio
+	 */
+	public double getMaxRatio() {
+		return maxRatio;
+	}
+
+	private static String trim(String value) {
+		return value == null ? null : value.trim();
+	}
+
+	private static int getInt(String key, int defaultValue) {
+		String value = trim(PPCUtils.getValue(key));
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return Integer.parseInt(value);
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+import net.jxta.document.MimeMediaType;
+
+import com.ocrix.ppc.commons.BufferPool;
+import com.ocrix.ppc.commons.ZlibPool;
+
+/**
+ * Compresses a pay-load by {@link Deflater} at the given level, without the
+ * GZIP header and checksum. The level is not needed to decode.
+ */
+public class DeflateCodec implements PayloadCodec {
+	/* Class members */
+	private final static MimeMediaType DEFLATE_MEDIA_TYPE = new MimeMediaType(
+			"application/x-ppc-deflate").intern();
+	private final int level;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a codec of the fastest level
+	 */
+	public DeflateCodec() {
+		this(Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Creates a codec
+	 * 
+	 * @param level
+	 *            - a compression level, from 0 to 9
+	 */
+	public DeflateCodec(int level) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("The level must be from 0 to 9");
+		this.level = level;
+	}
+
+	/**
+	 * Returns a compression level
+	 * 
+	 * @return a level
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	// @Override
+	public String getId() {
+		return "deflate";
+	}
+
+	// @Override
+	public MimeMediaType getMimeType() {
+		return DEFLATE_MEDIA_TYPE;
+	}
+
+	// @Override
+	public byte[] encode(byte[] data, int offset, int length) {
+		Deflater deflater = ZlibPool.borrowDeflater(level, false);
+		try {
+			return deflate(deflater, data, offset, length, 0, 0);
+		} finally {
+			ZlibPool.releaseDeflater(deflater);
+		}
+	}
+
+	// @Override
+	public InputStream decode(InputStream encoded) {
+		return new PooledInflaterInputStream(encoded, false);
+	}
+
+	/**
+	 * Compresses the data into a pooled scratch buffer sized by the deflate
+	 * bound, so a single deflate() call is enough in the common case, and
+	 * copies the result out at its exact size.
+	 * 
+	 * @param deflater
+	 *            - a reset {@link Deflater}
+	 * @param data
+	 *            - a pay-load
+	 * @param offset
+	 *            - where the pay-load starts
+	 * @param length
+	 *            - a number of the bytes to compress
+	 * @param head
+	 *            - a number of the bytes left free before the compressed ones
+	 * @param tail
+	 *            - a number of the bytes left free after the compressed ones
+	 * 
+	 * @return the compressed bytes with the free head and tail
+	 */
+	static byte[] deflate(Deflater deflater, byte[] data, int offset,
+			int length, int head, int tail) {
+		BufferPool buffers = BufferPool.getDefault();
+		/* The zlib bound of the compressed size */
+		int bound = length + (length >> 12) + (length >> 14) + (length >> 25)
+				+ 13;
+		byte[] out = buffers.acquire(head + bound + tail);
+		try {
+			deflater.setInput(data, offset, length);
+			deflater.finish();
+			int count = head;
+			while (!deflater.finished()) {
+				if (count == out.length - tail) {
+					byte[] larger = buffers.acquire(out.length * 2);
+					System.arraycopy(out, 0, larger, 0, count);
+					buffers.release(out);
+					out = larger;
+				}
+				count += deflater.deflate(out, count, out.length - tail - count);
+			}
+			return Arrays.copyOf(out, count + tail);
+		} finally {
+			buffers.release(out);
+		}
+	}
+
+	/**
+	 * Inflates with a pooled {@link Inflater}, which is given back at the end
+	 * of the data or on close, the streams of the messages are seldom closed
+	 */
+	static class PooledInflaterInputStream extends InflaterInputStream {
+		private boolean isEnded = false;
+		private boolean isReleased = false;
+
+		PooledInflaterInputStream(InputStream encoded, boolean isNowrap) {
+			super(encoded, ZlibPool.borrowInflater(isNowrap));
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (isEnded) {
+				/* The inflater may serve another stream already */
+				return -1;
+			}
+			int count = super.read(b, off, len);
+			if (count == -1) {
+				isEnded = true;
+				try {
+					end();
+				} finally {
+					release();
+				}
+			} else {
+				inflated(b, off, count);
+			}
+			return count;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return isEnded ? 0 : super.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+
+		/**
+		 * Called with the inflated bytes
+		 * 
+		 * @param b
+		 *            - a buffer
+		 * @param off
+		 *            - where the bytes start
+		 * @param count
+		 *            - a number of the bytes
+		 */
+		protected void inflated(byte[] b, int off, int count) {
+		}
+
+		/**
+		 * Called at the end of the data, before the inflater is given back
+		 * 
+		 * @throws IOException
+		 *             - if the data does not end well
+		 */
+		protected void end() throws IOException {
+		}
+
+		private void release() {
+			if (!isReleased) {
+				isReleased = true;
+				ZlibPool.releaseInflater(inf);
+			}
+		}
+	}
+}
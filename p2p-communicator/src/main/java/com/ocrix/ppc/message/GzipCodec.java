@@ -0,0 +1,197 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import net.jxta.document.MimeMediaType;
+
+import com.ocrix.ppc.commons.ZlibPool;
+
+/**
+ * Compresses a pay-load by GZIP, the format the binary messages were always
+ * sent with. It is kept to read the messages of the older peers.
+ */
+public class GzipCodec implements PayloadCodec {
+	/* Media type - zip */
+	private final static MimeMediaType GZIP_MEDIA_TYPE = new MimeMediaType(
+			"application/gzip").intern();
+	/* The magic, deflate method, no flags, no time, the default level */
+	private static final byte[] GZIP_HEADER = new byte[] { 0x1f, (byte) 0x8b,
+			Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+	private static final int GZIP_LEVEL = 6;
+	private static final int GZIP_MAGIC = 0x8b1f;
+	/* The header flags */
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	/* The CRC-32 and the size of the data */
+	private static final int TRAILER_LENGTH = 8;
+
+	// @Override
+	public String getId() {
+		return "gzip";
+	}
+
+	// @Override
+	public MimeMediaType getMimeType() {
+		return GZIP_MEDIA_TYPE;
+	}
+
+	/**
+	 * Compresses by a pooled raw {@link Deflater} and frames the result as
+	 * GZIPOutputStream would.
+	 */
+	// @Override
+	public byte[] encode(byte[] data, int offset, int length)
+			throws IOException {
+		Deflater deflater = ZlibPool.borrowDeflater(GZIP_LEVEL, true);
+		byte[] out = null;
+		try {
+			out = DeflateCodec.deflate(deflater, data, offset, length,
+					GZIP_HEADER.length, 8);
+		} finally {
+			ZlibPool.releaseDeflater(deflater);
+		}
+		System.arraycopy(GZIP_HEADER, 0, out, 0, GZIP_HEADER.length);
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		int trailer = out.length - 8;
+		writeIntLE(out, trailer, (int) crc.getValue());
+		writeIntLE(out, trailer + 4, length);
+		return out;
+	}
+
+	// @Override
+	public InputStream decode(InputStream encoded) throws IOException {
+		/* GZIPInputStream would create an Inflater of its own each time */
+		return new PooledGzipInputStream(readHeader(encoded));
+	}
+
+	/**
+	 * Skips the GZIP header, byte by byte, so nothing of the compressed data
+	 * is read
+	 * 
+	 * @param in
+	 *            - a GZIP stream
+	 * 
+	 * @return the stream positioned at the compressed data
+	 * 
+	 * @throws IOException
+	 *             - if it is not a GZIP stream
+	 */
+	private static InputStream readHeader(InputStream in) throws IOException {
+		if (readUShort(in) != GZIP_MAGIC) {
+			throw new ZipException("Not in GZIP format");
+		}
+		if (readUByte(in) != Deflater.DEFLATED) {
+			throw new ZipException("Unsupported compression method");
+		}
+		int flags = readUByte(in);
+		/* The time, the extra flags and the OS */
+		skip(in, 6);
+		if ((flags & FEXTRA) != 0) {
+			skip(in, readUShort(in));
+		}
+		if ((flags & FNAME) != 0) {
+			skipString(in);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			skipString(in);
+		}
+		if ((flags & FHCRC) != 0) {
+			skip(in, 2);
+		}
+		return in;
+	}
+
+	private static int readUByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b == -1) {
+			throw new EOFException("Unexpected end of the GZIP stream");
+		}
+		return b;
+	}
+
+	private static int readUShort(InputStream in) throws IOException {
+		return readUByte(in) | (readUByte(in) << 8);
+	}
+
+	private static void skip(InputStream in, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			readUByte(in);
+		}
+	}
+
+	/* Skips a zero terminated string */
+	private static void skipString(InputStream in) throws IOException {
+		while (readUByte(in) != 0) {
+			continue;
+		}
+	}
+
+	private static int readIntLE(byte[] in, int ip) {
+		return (in[ip] & 0xff) | (in[ip + 1] & 0xff) << 8
+				| (in[ip + 2] & 0xff) << 16 | (in[ip + 3] & 0xff) << 24;
+	}
+
+	private static void writeIntLE(byte[] out, int op, int value) {
+		out[op] = (byte) value;
+		out[op + 1] = (byte) (value >>> 8);
+		out[op + 2] = (byte) (value >>> 16);
+		out[op + 3] = (byte) (value >>> 24);
+	}
+
+	/**
+	 * Inflates a single GZIP member by a pooled raw {@link Inflater} and
+	 * checks its trailer
+	 */
+	private static class PooledGzipInputStream extends
+			DeflateCodec.PooledInflaterInputStream {
+		private final CRC32 crc = new CRC32();
+
+		private PooledGzipInputStream(InputStream compressed) {
+			super(compressed, true);
+		}
+
+		@Override
+		protected void inflated(byte[] b, int off, int count) {
+			crc.update(b, off, count);
+		}
+
+		@Override
+		protected void end() throws IOException {
+			byte[] trailer = new byte[TRAILER_LENGTH];
+			/* The inflater may have taken a part of the trailer */
+			int taken = Math.min(inf.getRemaining(), TRAILER_LENGTH);
+			System.arraycopy(buf, len - inf.getRemaining(), trailer, 0, taken);
+			for (int i = taken; i < TRAILER_LENGTH; i++) {
+				trailer[i] = (byte) readUByte(in);
+			}
+			if (readIntLE(trailer, 0) != (int) crc.getValue()
+					|| readIntLE(trailer, 4) != (int) inf.getBytesWritten()) {
+				throw new ZipException("Corrupt GZIP trailer");
+			}
+		}
+	}
+}
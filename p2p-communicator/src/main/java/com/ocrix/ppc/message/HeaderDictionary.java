@@ -0,0 +1,324 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.MessageElement;
+import net.jxta.endpoint.StringMessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.Encoding;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Interns the peer names carried over a single connection to small ids. A
+ * compacted message carries a single binary header element instead of the
+ * source, the destination and the textual pay-load string elements. A name is
+ * defined within the header of the first message that uses it, the connection
+ * delivers the messages in order, so the recipient learns it before any later
+ * message refers to it. Both ends keep a dictionary per connection, a new
+ * connection starts from scratch.
+ * <p>
+ * The header is laid out as a version byte, a number of the definitions and
+ * each of them as an id and a name, then the ids of the source and the
+ * destination, a flag of the pay-load and the UTF-8 pay-load itself. A message
+ * without the header is passed as it is, so the old encoding keeps working.
+ */
+public class HeaderDictionary {
+	/* Class members */
+	public static final int VERSION = 1;
+	public static final int DEFAULT_MAX_NAMES = 4096;
+	private static final Map<Object, HeaderDictionary> connections = new WeakHashMap<Object, HeaderDictionary>();
+	/* The names this end defined to the other one */
+	private final Map<String, Integer> sent = new HashMap<String, Integer>();
+	/* The names the other end defined */
+	private final Map<Integer, String> received = new HashMap<Integer, String>();
+	private final int maxNames;
+	private static final Logger LOG = Logger.getLogger(HeaderDictionary.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a dictionary of the default size
+	 */
+	public HeaderDictionary() {
+		this(DEFAULT_MAX_NAMES);
+	}
+
+	/**
+	 * Creates a dictionary
+	 * 
+	 * @param maxNames
+	 *            - how many names may be defined, a message of a name beyond
+	 *            is not compacted
+	 */
+	public HeaderDictionary(int maxNames) {
+		Validator.validatePositive(maxNames);
+		this.maxNames = maxNames;
+	}
+
+	/**
+	 * Attains a dictionary of the connection, creates it at first use. It is
+	 * forgotten once the connection is collected.
+	 * 
+	 * @param connection
+	 *            - a pipe, or any other object standing for the connection
+	 * 
+	 * @return a {@link HeaderDictionary}
+	 */
+	public static HeaderDictionary forConnection(Object connection) {
+		Validator.validateObjNotNull(connection);
+		synchronized (connections) {
+			HeaderDictionary dictionary = connections.get(connection);
+			if (dictionary == null) {
+				dictionary = new HeaderDictionary();
+				connections.put(connection, dictionary);
+			}
+			return dictionary;
+		}
+	}
+
+	/**
+	 * Forgets a dictionary of the closed connection
+	 * 
+	 * @param connection
+	 *            - a pipe, or any other object standing for the connection
+	 */
+	public static void release(Object connection) {
+		synchronized (connections) {
+			connections.remove(connection);
+		}
+	}
+
+	/**
+	 * Restores a compacted message received over the connection, a message
+	 * of the old encoding is passed without looking up the dictionary
+	 * 
+	 * @param connection
+	 *            - a pipe the message came from
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return the given message
+	 * 
+	 * @throws IOException
+	 *             - if the header is malformed or refers to an unknown name
+	 */
+	public static net.jxta.endpoint.Message expand(Object connection,
+			net.jxta.endpoint.Message message) throws IOException {
+		if (message.getMessageElement(Tag.HEADER.getValue()) == null) {
+			return message;
+		}
+		return forConnection(connection).expand(message);
+	}
+
+	/**
+	 * Creates a compacted copy of an outgoing message, the message itself is
+	 * not changed and may be sent again over another connection. The copies
+	 * have to be sent in the order they were compacted.
+	 * 
+	 * @param message
+	 *            - a message with the source and the destination elements
+	 * 
+	 * @return a compacted message, or the given one if it has no source and
+	 *         destination or the dictionary is full
+	 */
+	public synchronized net.jxta.endpoint.Message compact(
+			net.jxta.endpoint.Message message) {
+		Validator.validateObjNotNull(message);
+		MessageElement source = message.getMessageElement(Tag.SOURCE
+				.getValue());
+		MessageElement destination = message
+				.getMessageElement(Tag.DESTINATION.getValue());
+		if (source == null || destination == null) {
+			return message;
+		}
+		MessageElement payLoad = message.getMessageElement(Tag.PAYLOAD
+				.getValue());
+		if (!(payLoad instanceof StringMessageElement)) {
+			/* An encoded pay-load stays an element of its own */
+			payLoad = null;
+		}
+		List<String> definitions = new ArrayList<String>(2);
+		int sourceId = intern(source.toString(), definitions);
+		int destinationId = intern(destination.toString(), definitions);
+		if (sourceId < 0 || destinationId < 0) {
+			return message;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(VERSION);
+			CompactObjectCodec.writeVarInt(out, definitions.size());
+			for (String name : definitions) {
+				CompactObjectCodec.writeVarInt(out, sent.get(name));
+				CompactObjectCodec.writeBytes(out,
+						name.getBytes(StandardCharsets.UTF_8));
+			}
+			CompactObjectCodec.writeVarInt(out, sourceId);
+			CompactObjectCodec.writeVarInt(out, destinationId);
+			out.writeBoolean(payLoad != null);
+			if (payLoad != null) {
+				out.write(payLoad.toString().getBytes(StandardCharsets.UTF_8));
+			}
+			out.flush();
+		} catch (IOException e) {
+			/* Not thrown by a stream in memory */
+			throw new IllegalStateException(e);
+		}
+
+		net.jxta.endpoint.Message compacted = new net.jxta.endpoint.Message();
+		compacted.addMessageElement(new ByteArrayMessageElement(Tag.HEADER
+				.getValue(), MimeMediaType.AOS, bytes.toByteArray(), null));
+		net.jxta.endpoint.Message.ElementIterator elements = message
+				.getMessageElements();
+		while (elements.hasNext()) {
+			MessageElement element = elements.next();
+			if (element != source && element != destination
+					&& element != payLoad) {
+				compacted.addMessageElement(elements.getNamespace(), element);
+			}
+		}
+		return compacted;
+	}
+
+	/**
+	 * Restores the source, the destination and the pay-load elements of a
+	 * compacted message received over the connection, in place. A message
+	 * without the header is not changed.
+	 * 
+	 * @param message
+	 *            - a received message
+	 * 
+	 * @return the given message
+	 * 
+	 * @throws IOException
+	 *             - if the header is malformed or refers to an unknown name
+	 */
+	public synchronized net.jxta.endpoint.Message expand(
+			net.jxta.endpoint.Message message) throws IOException {
+		Validator.validateObjNotNull(message);
+		MessageElement header = message.getMessageElement(Tag.HEADER
+				.getValue());
+		if (header == null) {
+			return message;
+		}
+		DataInputStream in = new DataInputStream(header.getStream());
+		try {
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IOException("Unknown header version " + version);
+			}
+			int count = CompactObjectCodec.readVarInt(in);
+			for (int i = 0; i < count; i++) {
+				int id = CompactObjectCodec.readVarInt(in);
+				received.put(id, new String(CompactObjectCodec.readBytes(in),
+						StandardCharsets.UTF_8));
+			}
+			String source = lookup(CompactObjectCodec.readVarInt(in));
+			String destination = lookup(CompactObjectCodec.readVarInt(in));
+			message.removeMessageElement(header);
+			message.addMessageElement(string(Tag.SOURCE, source));
+			message.addMessageElement(string(Tag.DESTINATION, destination));
+			if (in.readBoolean()) {
+				ByteArrayOutputStream payLoad = new ByteArrayOutputStream(
+						(int) header.getByteLength());
+				byte[] chunk = new byte[512];
+				int read = 0;
+				while ((read = in.read(chunk)) != -1) {
+					payLoad.write(chunk, 0, read);
+				}
+				message.addMessageElement(string(Tag.PAYLOAD, new String(
+						payLoad.toByteArray(), StandardCharsets.UTF_8)));
+			}
+		} finally {
+			in.close();
+		}
+		return message;
+	}
+
+	/**
+	 * Returns a number of the names this end defined
+	 * 
+	 * @return a count
+	 */
+	public synchronized int getSentCount() {
+		return sent.size();
+	}
+
+	/**
+	 * Returns a number of the names the other end defined
+	 * 
+	 * @return a count
+	 */
+	public synchronized int getReceivedCount() {
+		return received.size();
+	}
+
+	/**
+	 * Attains an id of the name, defines it if it is new
+	 * 
+	 * @param name
+	 *            a peer name
+	 * @param definitions
+	 *            the names defined by the message
+	 * 
+	 * @return an id or -1 if the dictionary is full
+	 */
+	private int intern(String name, List<String> definitions) {
+		Integer id = sent.get(name);
+		if (id != null) {
+			return id;
+		}
+		if (sent.size() >= maxNames) {
+			LOG.debug("The dictionary is full, [" + name + "] is sent as it is");
+			return -1;
+		}
+		id = sent.size();
+		sent.put(name, id);
+		definitions.add(name);
+		return id;
+	}
+
+	private String lookup(int id) throws IOException {
+		String name = received.get(id);
+		if (name == null) {
+			throw new IOException("The name " + id + " is not defined");
+		}
+		return name;
+	}
+
+	private static StringMessageElement string(Tag tag, String value)
+			throws IOException {
+		return new StringMessageElement(tag.getValue(), value,
+				Encoding.UTF_8.toString(), null);
+	}
+}
@@ -19,10 +19,12 @@ import java.io.UnsupportedEncodingException;
 
 import org.apache.log4j.Logger;
 
+import net.jxta.endpoint.MessageElement;
 import net.jxta.endpoint.StringMessageElement;
 
 import com.ocrix.ppc.commons.Validator;
 import com.ocrix.ppc.type.Encoding;
+import com.ocrix.ppc.type.Priority;
 import com.ocrix.ppc.type.Tag;
 
 /**
@@ -53,6 +55,27 @@ public abstract class Message extends net.jxta.endpoint.Message { //
 
 	}
 
+	/**
+	 * Constructs a view of a received message, its elements are shared, not
+	 * copied, and nothing is decoded until it is asked for
+	 * 
+	 * @param received
+	 *            a JXTA message received from the pipe
+	 */
+	protected Message(net.jxta.endpoint.Message received) {
+		super();
+		Validator.validateObjNotNull(received);
+		Validator.validateObjNotNull(received.getMessageElement(Tag.SOURCE
+				.getValue()));
+		Validator.validateObjNotNull(received.getMessageElement(Tag.DESTINATION
+				.getValue()));
+		ElementIterator elements = received.getMessageElements();
+		while (elements.hasNext()) {
+			MessageElement element = elements.next();
+			addMessageElement(elements.getNamespace(), element);
+		}
+	}
+
 	/**
 	 * Sets a source to the {@link net.jxta.endpoint.Message}
 	 * 
@@ -104,4 +127,105 @@ public abstract class Message extends net.jxta.endpoint.Message { //
 		return getMessageElement(Tag.DESTINATION.getValue()).toString();
 
 	}
+
+	/**
+	 * Sets a correlation id, it is carried to the recipient and back in its
+	 * acknowledgement
+	 * 
+	 * @param correlationId
+	 *            an id of the message
+	 */
+	public void setCorrelationId(String correlationId) {
+		Validator.validateString(correlationId);
+		try {
+			replaceMessageElement(new StringMessageElement(
+					Tag.CORRELATION_ID.getValue(), correlationId,
+					Encoding.UTF_8.toString(), null));
+		} catch (UnsupportedEncodingException e) {
+			LOG.error(e);
+		}
+	}
+
+	/**
+	 * Returns a correlation id
+	 * 
+	 * @return a correlation id or null if not set
+	 */
+	public String getCorrelationId() {
+		MessageElement element = getMessageElement(Tag.CORRELATION_ID
+				.getValue());
+		return element == null ? null : element.toString();
+	}
+
+	/**
+	 * Sets a lane the message waits in for its destination
+	 * 
+	 * @param priority
+	 *            a {@link Priority}
+	 */
+	public void setPriority(Priority priority) {
+		Validator.validateObjNotNull(priority);
+		MessageElement element = getMessageElement(Tag.PRIORITY.getValue());
+		if (element != null) {
+			removeMessageElement(element);
+		}
+		if (priority != Priority.NORMAL) {
+			try {
+				addMessageElement(new StringMessageElement(
+						Tag.PRIORITY.getValue(), priority.name(),
+						Encoding.UTF_8.toString(), null));
+			} catch (UnsupportedEncodingException e) {
+				LOG.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Returns a lane the message waits in for its destination
+	 * 
+	 * @return a {@link Priority}, NORMAL if not set
+	 */
+	public Priority getPriority() {
+		MessageElement element = getMessageElement(Tag.PRIORITY.getValue());
+		if (element == null) {
+			return Priority.NORMAL;
+		}
+		try {
+			return Priority.valueOf(element.toString());
+		} catch (IllegalArgumentException e) {
+			/* A lane of a newer peer */
+			return Priority.NORMAL;
+		}
+	}
+
+	/**
+	 * Asks the recipient to acknowledge the message
+	 * 
+	 * @param isAckRequested
+	 *            <b>true</b> if an acknowledgement is expected
+	 */
+	public void setAckRequested(boolean isAckRequested) {
+		MessageElement element = getMessageElement(Tag.ACK_REQUEST.getValue());
+		if (element != null) {
+			removeMessageElement(element);
+		}
+		if (isAckRequested) {
+			try {
+				addMessageElement(new StringMessageElement(
+						Tag.ACK_REQUEST.getValue(), Boolean.TRUE.toString(),
+						Encoding.UTF_8.toString(), null));
+			} catch (UnsupportedEncodingException e) {
+				LOG.error(e);
+			}
+		}
+	}
+
+	/**
+	 * Indicates if the sender expects an acknowledgement
+	 * 
+	 * @return <b>true</b> if an acknowledgement is requested
+	 */
+	public boolean isAckRequested() {
+		return getMessageElement(Tag.ACK_REQUEST.getValue()) != null;
+	}
 }
@@ -14,6 +14,9 @@
 
 package com.ocrix.ppc.message;
 
+import java.nio.ByteBuffer;
+
+import com.ocrix.ppc.type.Tag;
 
 /**
  * Creates a message of following types:
@@ -54,6 +57,20 @@ public class MessageFactory {
 		return new BinaryMessage(source, destination, data);
 	}
 	
+	/**
+	 * Creates a binary message over a {@link ByteBuffer}, i.e. its pay-load is
+	 * neither copied nor compressed
+	 * 
+	 * @param source a sender
+	 * @param destination a recipient
+	 * @param buffer a heap or direct {@link ByteBuffer}, must not be changed until the message is sent
+	 * 
+	 * @return {@link ByteBufferMessage}
+	 */
+	public ByteBufferMessage createByteBufferMessage(String source, String destination, ByteBuffer buffer){
+		return new ByteBufferMessage(source, destination, buffer);
+	}
+	
 	/**
 	 * Creates an object message, i.e. a message that contains {@link Object} as its payload
 	 * 
@@ -66,4 +83,42 @@ public class MessageFactory {
 	public ObjectMessage createObjectMessage(String source, String destination, Object object){
 		return new ObjectMessage(source, destination, object);
 	}
+
+	/**
+	 * Creates an acknowledgement of the received message, i.e. it is addressed
+	 * to the source of the message and carries its correlation id
+	 * 
+	 * @param received - a message that asked for an acknowledgement
+	 * 
+	 * @return {@link AckMessage}
+	 */
+	public AckMessage createAckMessage(Message received){
+		return new AckMessage(received.getDestination(), received.getSource(), received.getCorrelationId());
+	}
+
+	/**
+	 * Creates a view of a message received from the pipe, the type is chosen by
+	 * the pay-load element. The elements are shared with the received message,
+	 * the headers and the pay-load are decoded only when asked for.
+	 * 
+	 * @param received - a JXTA message
+	 * 
+	 * @return a {@link Message} or null if the pay-load is not known
+	 */
+	public Message createReceivedMessage(net.jxta.endpoint.Message received){
+		if (AckMessage.isAck(received)) {
+			return new AckMessage(received);
+		} else if (received.getMessageElement(Tag.PAYLOAD.getValue()) != null) {
+			return new TextualMessage(received);
+		} else if (received.getMessageElement(Tag.STREAM.getValue()) != null) {
+			return new BinaryMessage(received);
+		} else if (received.getMessageElement(Tag.BUFFER.getValue()) != null) {
+			return new ByteBufferMessage(received);
+		} else if (received.getMessageElement(Tag.OBJECT.getValue()) != null) {
+			return new ObjectMessage(received);
+		} else if (ChunkMessage.isChunk(received)) {
+			return new ChunkMessage(received);
+		}
+		return null;
+	}
 }
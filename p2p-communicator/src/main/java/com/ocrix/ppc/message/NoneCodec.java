@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+import net.jxta.document.MimeMediaType;
+
+/**
+ * Sends a pay-load as is. A whole array is not copied.
+ */
+public class NoneCodec implements PayloadCodec {
+
+	// @Override
+	public String getId() {
+		return "none";
+	}
+
+	// @Override
+	public MimeMediaType getMimeType() {
+		return MimeMediaType.AOS;
+	}
+
+	// @Override
+	public byte[] encode(byte[] data, int offset, int length) {
+		if (offset == 0 && length == data.length) {
+			return data;
+		}
+		return Arrays.copyOfRange(data, offset, offset + length);
+	}
+
+	// @Override
+	public InputStream decode(InputStream encoded) {
+		return encoded;
+	}
+}
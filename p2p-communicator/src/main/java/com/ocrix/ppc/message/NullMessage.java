@@ -14,17 +14,12 @@
 
 package com.ocrix.ppc.message;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
 
-import net.jxta.document.MimeMediaType;
-import net.jxta.endpoint.ByteArrayMessageElement;
 import net.jxta.endpoint.MessageElement;
 
 import com.ocrix.ppc.commons.Validator;
@@ -37,9 +32,6 @@ import com.ocrix.ppc.type.Tag;
 public class NullMessage extends Message {
 
 	private static final long serialVersionUID = 904057164005202320L;
-	/* GZIP type */
-	private final static MimeMediaType GZIP_MEDIA_TYPE = new MimeMediaType(
-			"application/gzip").intern();
 	/* A JXTA message */
 	private volatile net.jxta.endpoint.Message message = null;
 	/* Textual pay-load */
@@ -69,9 +61,8 @@ public class NullMessage extends Message {
 	 * @param message
 	 */
 	public NullMessage(net.jxta.endpoint.Message message) {
-		super(message.getMessageElement(Tag.SOURCE.getValue()).toString(),
-				message.getMessageElement(Tag.DESTINATION.getValue())
-						.toString());
+		/* Shares the elements, the headers are read on access */
+		super(message);
 		this.message = message;
 	}
 
@@ -106,8 +97,8 @@ public class NullMessage extends Message {
 	private InputStream getStreamPrvt(MessageElement element) {
 		InputStream result = null;
 		try {
-			if (element != null && element.getStream() != null)
-				result = new GZIPInputStream(element.getStream());
+			if (element != null)
+				result = PayloadCodecs.decode(element);
 		} catch (IOException e) {
 			LOG.error(BinaryMessage.class.getName() + " "
 					+ e.getMessage());
@@ -124,29 +115,12 @@ public class NullMessage extends Message {
 	private void setByteArray(byte[] data) {
 		/* Validates data */
 		Validator.validateObjNotNull(data);
-		byte[] buffer = data;
-		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-		GZIPOutputStream gos = null;
 		try {
-			gos = new GZIPOutputStream(outStream);
-			gos.write(data, 0, data.length);
-			gos.finish();
-			gos.close();
-			buffer = outStream.toByteArray();
-			this.message.addMessageElement(new ByteArrayMessageElement(
-					Tag.STREAM.getValue(), GZIP_MEDIA_TYPE, buffer, null));
+			this.message.addMessageElement(PayloadCodecs.encode(
+					Tag.STREAM.getValue(), data));
 		} catch (IOException e) {
 			LOG.error(BinaryMessage.class.getName() + " "
 					+ e.getMessage());
-		} finally {// Closing streams
-			try {
-				if (outStream != null)
-					outStream.close();
-				if (gos != null)
-					gos.close();
-			} catch (IOException e) {
-				LOG.error(e);
-			}
 		}
 	}
 
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.jxta.document.MimeMediaType;
+
+/**
+ * Turns the pay-load of an {@link ObjectMessage} into bytes and back. The MIME
+ * type of the codec is given to the message element, so the receiver picks
+ * the decoder by the element.
+ * 
+ * @see ObjectCodecs
+ */
+public interface ObjectCodec {
+
+	/**
+	 * Returns a short name of the codec, i.e. <code>compact</code>
+	 * 
+	 * @return an id
+	 */
+	String getId();
+
+	/**
+	 * Returns a MIME type of the elements encoded by this codec, it is unique
+	 * among the codecs
+	 * 
+	 * @return a {@link MimeMediaType}
+	 */
+	MimeMediaType getMimeType();
+
+	/**
+	 * Encodes an object
+	 * 
+	 * @param object
+	 *            - a pay-load
+	 * 
+	 * @return the encoded bytes
+	 * 
+	 * @throws java.io.NotSerializableException
+	 *             - if the codec does not know a type of the object graph
+	 * @throws IOException
+	 *             - if the object could not be encoded
+	 */
+	byte[] encode(Object object) throws IOException;
+
+	/**
+	 * Decodes an object
+	 * 
+	 * @param encoded
+	 *            - a stream of the encoded bytes
+	 * 
+	 * @return an object
+	 * 
+	 * @throws IOException
+	 *             - if the bytes are corrupted
+	 * @throws ClassNotFoundException
+	 *             - if a class of the object is not known here
+	 */
+	Object decode(InputStream encoded) throws IOException,
+			ClassNotFoundException;
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.MessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+
+/**
+ * Keeps the known {@link ObjectCodec}s by their MIME types. The objects are
+ * encoded by the Java serialization, which every peer reads. An object of a
+ * class registered in the {@link CompactObjectCodec} is encoded there, as
+ * the peers agreed on its id, unless a type of its graph is unknown. The
+ * received elements are decoded by the codec their MIME type names.
+ */
+public final class ObjectCodecs {
+	/* Class members */
+	public static final SerializationCodec SERIALIZATION = new SerializationCodec();
+	public static final CompactObjectCodec COMPACT = new CompactObjectCodec();
+	private static final ConcurrentMap<String, ObjectCodec> codecs = new ConcurrentHashMap<String, ObjectCodec>();
+	private static volatile ObjectCodec preferred = SERIALIZATION;
+	private static final Logger logger = Logger.getLogger(ObjectCodecs.class);
+
+	static {
+		register(SERIALIZATION);
+		register(COMPACT);
+	}
+
+	/* ---------- end of class members --------- */
+
+	private ObjectCodecs() {
+	}
+
+	/**
+	 * Registers a codec, replaces a codec of the same MIME type
+	 * 
+	 * @param codec
+	 *            - an {@link ObjectCodec}
+	 */
+	public static void register(ObjectCodec codec) {
+		Validator.validateObjNotNull(codec);
+		codecs.put(getKey(codec.getMimeType()), codec);
+	}
+
+	/**
+	 * Registers a class in the {@link CompactObjectCodec}, the peers have to
+	 * agree on the ids
+	 * 
+	 * @param type
+	 *            - a class
+	 * @param id
+	 *            - an id not less than
+	 *            {@link CompactObjectCodec#FIRST_CLASS_ID}
+	 */
+	public static <T> void registerClass(Class<T> type, int id) {
+		COMPACT.register(type, id);
+	}
+
+	/**
+	 * Attains a codec of the MIME type
+	 * 
+	 * @param mimeType
+	 *            - a MIME type of the element
+	 * 
+	 * @return an {@link ObjectCodec} or null if unknown
+	 */
+	public static ObjectCodec forMimeType(MimeMediaType mimeType) {
+		return mimeType == null ? null : codecs.get(getKey(mimeType));
+	}
+
+	/**
+	 * Sets up a codec tried first, the Java serialization is the fallback
+	 * 
+	 * @param codec
+	 *            - an {@link ObjectCodec}
+	 */
+	public static void setPreferred(ObjectCodec codec) {
+		Validator.validateObjNotNull(codec);
+		preferred = codec;
+	}
+
+	/**
+	 * Attains a codec tried first
+	 * 
+	 * @return an {@link ObjectCodec}
+	 */
+	public static ObjectCodec getPreferred() {
+		return preferred;
+	}
+
+	/**
+	 * Encodes an object into an element by the preferred codec, by the
+	 * {@link CompactObjectCodec} if its class is registered there or, if the
+	 * codec does not know the types, by the Java serialization
+	 * 
+	 * @param name
+	 *            - a name of the element
+	 * @param object
+	 *            - a pay-load
+	 * 
+	 * @return a {@link MessageElement} of the codec's MIME type
+	 * 
+	 * @throws IOException
+	 *             - if the object could not be encoded
+	 */
+	public static MessageElement encode(String name, Object object)
+			throws IOException {
+		Validator.validateObjNotNull(object);
+		ObjectCodec codec = preferred;
+		if (codec == SERIALIZATION && COMPACT.isRegistered(object.getClass())) {
+			codec = COMPACT;
+		}
+		byte[] encoded = null;
+		try {
+			encoded = codec.encode(object);
+		} catch (NotSerializableException e) {
+			if (codec == SERIALIZATION) {
+				throw e;
+			}
+			logger.debug("Falls back to the Java serialization, "
+					+ e.getMessage());
+			codec = SERIALIZATION;
+			encoded = codec.encode(object);
+		}
+		return new ByteArrayMessageElement(name, codec.getMimeType(), encoded,
+				null);
+	}
+
+	/**
+	 * Decodes an element by the codec of its MIME type
+	 * 
+	 * @param element
+	 *            - a {@link MessageElement}
+	 * 
+	 * @return an object
+	 * 
+	 * @throws IOException
+	 *             - if the codec is unknown or the element is corrupted
+	 * @throws ClassNotFoundException
+	 *             - if a class of the object is not known here
+	 */
+	public static Object decode(MessageElement element) throws IOException,
+			ClassNotFoundException {
+		ObjectCodec codec = forMimeType(element.getMimeType());
+		if (codec == null) {
+			throw new IOException("No object codec of "
+					+ element.getMimeType());
+		}
+		return codec.decode(element.getStream());
+	}
+
+	private static String getKey(MimeMediaType mimeType) {
+		return mimeType.getMimeMediaType().toLowerCase();
+	}
+}
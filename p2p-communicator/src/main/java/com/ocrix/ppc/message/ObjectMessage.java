@@ -14,22 +14,26 @@
 
 package com.ocrix.ppc.message;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import net.jxta.document.MimeMediaType;
-import net.jxta.endpoint.ByteArrayMessageElement;
+
+import org.apache.log4j.Logger;
+
 import net.jxta.endpoint.MessageElement;
+
 import com.ocrix.ppc.commons.Validator;
 import com.ocrix.ppc.type.Tag;
 
 /**
- * Defines a {@link Message} which contains {@link Object} as its pay-load
+ * Defines a {@link Message} which contains {@link Object} as its pay-load. The
+ * object is encoded by {@link ObjectCodecs} and decoded once, at the first
+ * {@link #getObject()}.
  */
 public class ObjectMessage extends Message {
 	private static final long serialVersionUID = 8818845859744946166L;
+	/* The decoded pay-load, kept for the next calls */
+	private transient volatile Object decoded = null;
+	private static final Logger logger = Logger.getLogger(ObjectMessage.class);
 
 	/**
 	 * Constructor
@@ -46,6 +50,36 @@ public class ObjectMessage extends Message {
 		setObject(object);
 	}
 
+	/**
+	 * Constructs an object message of the already serialized element, i.e.
+	 * unpacked from a {@link BatchMessage} or received, it is decoded at the
+	 * first {@link #getObject()}
+	 * 
+	 * @param source
+	 *            - an entity that sends the message
+	 * @param destination
+	 *            - an entity that receives the message
+	 * @param object
+	 *            - a serialized {@link MessageElement}
+	 */
+	public ObjectMessage(String source, String destination,
+			MessageElement object) {
+		super(source, destination);
+		Validator.validateObjNotNull(object);
+		super.addMessageElement(object);
+	}
+
+	/**
+	 * Constructs a view of a received object message, the object is decoded
+	 * at the first {@link #getObject()}
+	 * 
+	 * @param received
+	 *            a JXTA message carrying the object
+	 */
+	ObjectMessage(net.jxta.endpoint.Message received) {
+		super(received);
+	}
+
 	@Override
 	public String getTextualMesage() {
 		return null;
@@ -58,20 +92,23 @@ public class ObjectMessage extends Message {
 
 	@Override
 	public Object getObject() {
-		InputStream is = null;
-		ObjectInputStream ois = null;
+		Object object = decoded;
+		if (object != null) {
+			return object;
+		}
+		MessageElement element = super.getMessageElement(Tag.OBJECT.getValue());
+		if (null == element) {
+			return null;
+		}
 		try {
-			is = getInputStreamFromMessage();
-
-			ois = new ObjectInputStream(is);
-			return ois.readObject();
-
+			object = ObjectCodecs.decode(element);
+			decoded = object;
 		} catch (IOException e) {
-			e.printStackTrace();
+			logger.error(ObjectMessage.class.getName() + " " + e.getMessage());
 		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
+			logger.error(ObjectMessage.class.getName() + " " + e.getMessage());
 		}
-		return null;
+		return object;
 	}
 
 	/**
@@ -82,34 +119,11 @@ public class ObjectMessage extends Message {
 	 */
 	private void setObject(Object object) {
 		Validator.validateObjNotNull(object);
-		ByteArrayOutputStream bos = null;
-		ObjectOutputStream oos = null;
-
 		try {
-			bos = new ByteArrayOutputStream();
-			oos = new ObjectOutputStream(bos);
-			oos.writeObject(object);
-			oos.close();
-			bos.close();
-			super.addMessageElement(new ByteArrayMessageElement(Tag.OBJECT
-					.getValue(), MimeMediaType.AOS, bos.toByteArray(), null));
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-	}
-
-	/**
-	 * Extracts an Object from the {@link Message} as {@link InputStream}
-	 * 
-	 * @return an {@link InputStream}
-	 * 
-	 * @throws IOException
-	 */
-	private InputStream getInputStreamFromMessage() throws IOException {
-		MessageElement element = super.getMessageElement(Tag.OBJECT.getValue());
-		if (null == element) {
-			return null;
+			super.addMessageElement(ObjectCodecs.encode(Tag.OBJECT.getValue(),
+					object));
+		} catch (IOException e) {
+			logger.error(ObjectMessage.class.getName() + " " + e.getMessage());
 		}
-		return element.getStream();
 	}
 }
@@ -0,0 +1,59 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the fields of one registered class for the
+ * {@link CompactObjectCodec}. The nested objects are written by the codec.
+ * 
+ * @param <T>
+ *            a type of the serialized object
+ */
+public interface ObjectSerializer<T> {
+
+	/**
+	 * Writes the state of the object
+	 * 
+	 * @param out
+	 *            - a {@link DataOutput}
+	 * @param object
+	 *            - an object, never null
+	 * @param codec
+	 *            - a {@link CompactObjectCodec} for the nested objects
+	 * 
+	 * @throws IOException
+	 */
+	void write(DataOutput out, T object, CompactObjectCodec codec)
+			throws IOException;
+
+	/**
+	 * Reads an object written by {@link #write}
+	 * 
+	 * @param in
+	 *            - a {@link DataInput}
+	 * @param codec
+	 *            - a {@link CompactObjectCodec} for the nested objects
+	 * 
+	 * @return an object
+	 * 
+	 * @throws IOException
+	 */
+	T read(DataInput in, CompactObjectCodec codec) throws IOException;
+}
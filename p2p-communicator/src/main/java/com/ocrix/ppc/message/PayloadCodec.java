@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.jxta.document.MimeMediaType;
+
+/**
+ * Encodes the pay-load of a binary message before transmission and decodes it
+ * on receive. The MIME type of the codec is given to the message element, so
+ * the receiver picks the decoder by the element.
+ * 
+ * @see PayloadCodecs
+ */
+public interface PayloadCodec {
+
+	/**
+	 * Returns a short name of the codec, i.e. <code>lz4</code>
+	 * 
+	 * @return an id
+	 */
+	String getId();
+
+	/**
+	 * Returns a MIME type of the elements encoded by this codec, it is unique
+	 * among the codecs
+	 * 
+	 * @return a {@link MimeMediaType}
+	 */
+	MimeMediaType getMimeType();
+
+	/**
+	 * Encodes a part of the array
+	 * 
+	 * @param data
+	 *            - a pay-load
+	 * @param offset
+	 *            - where the pay-load starts
+	 * @param length
+	 *            - a length of the pay-load
+	 * 
+	 * @return the encoded bytes
+	 * 
+	 * @throws IOException
+	 *             - if the pay-load could not be encoded
+	 */
+	byte[] encode(byte[] data, int offset, int length) throws IOException;
+
+	/**
+	 * Decodes a stream of the encoded bytes
+	 * 
+	 * @param encoded
+	 *            - a stream of the element
+	 * 
+	 * @return a stream of the pay-load
+	 * 
+	 * @throws IOException
+	 *             - if the bytes are corrupted
+	 */
+	InputStream decode(InputStream encoded) throws IOException;
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+import net.jxta.endpoint.MessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+
+/**
+ * Keeps the known {@link PayloadCodec}s by their MIME types, encodes the
+ * pay-loads by the {@link CompressionPolicy} and decodes the received
+ * elements by the codec their MIME type names.
+ */
+public final class PayloadCodecs {
+	/* Class members */
+	public static final PayloadCodec NONE = new NoneCodec();
+	private static final ConcurrentMap<String, PayloadCodec> codecs = new ConcurrentHashMap<String, PayloadCodec>();
+	private static volatile CompressionPolicy policy = null;
+
+	static {
+		register(NONE);
+		register(new GzipCodec());
+		register(new DeflateCodec());
+		register(new Lz4Codec());
+	}
+
+	/* ---------- end of class members --------- */
+
+	private PayloadCodecs() {
+	}
+
+	/**
+	 * Registers a codec, replaces a codec of the same MIME type
+	 * 
+	 * @param codec
+	 *            - a {@link PayloadCodec}
+	 */
+	public static void register(PayloadCodec codec) {
+		Validator.validateObjNotNull(codec);
+		codecs.put(getKey(codec.getMimeType()), codec);
+	}
+
+	/**
+	 * Attains a codec of the MIME type
+	 * 
+	 * @param mimeType
+	 *            - a MIME type of the element
+	 * 
+	 * @return a {@link PayloadCodec} or null if unknown
+	 */
+	public static PayloadCodec forMimeType(MimeMediaType mimeType) {
+		return mimeType == null ? null : codecs.get(getKey(mimeType));
+	}
+
+	/**
+	 * Sets up a policy of the encoding
+	 * 
+	 * @param compressionPolicy
+	 *            - a {@link CompressionPolicy}
+	 */
+	public static void setPolicy(CompressionPolicy compressionPolicy) {
+		Validator.validateObjNotNull(compressionPolicy);
+		policy = compressionPolicy;
+	}
+
+	/**
+	 * Attains a policy of the encoding, it is read from the configuration at
+	 * first use
+	 * 
+	 * @return a {@link CompressionPolicy}
+	 */
+	public static CompressionPolicy getPolicy() {
+		CompressionPolicy current = policy;
+		if (current == null) {
+			current = CompressionPolicy.fromConfig();
+			policy = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Encodes a pay-load into an element by the codec the policy picks
+	 * 
+	 * @param name
+	 *            - a name of the element
+	 * @param data
+	 *            - a pay-load, not copied if it is sent as is
+	 * 
+	 * @return a {@link MessageElement} of the codec's MIME type
+	 * 
+	 * @throws IOException
+	 *             - if the pay-load could not be encoded
+	 */
+	public static MessageElement encode(String name, byte[] data)
+			throws IOException {
+		Validator.validateObjNotNull(data);
+		CompressionPolicy current = getPolicy();
+		PayloadCodec codec = current.select(data.length);
+		byte[] encoded = codec.encode(data, 0, data.length);
+		if (codec != NONE && encoded.length > data.length * current.getMaxRatio()) {
+			/* Not worth the decoding */
+			codec = NONE;
+			encoded = data;
+		}
+		return new ByteArrayMessageElement(name, codec.getMimeType(), encoded,
+				null);
+	}
+
+	/**
+	 * Decodes an element by the codec of its MIME type
+	 * 
+	 * @param element
+	 *            - a {@link MessageElement}
+	 * 
+	 * @return a stream of the pay-load or null if the codec is unknown
+	 * 
+	 * @throws IOException
+	 *             - if the element is corrupted
+	 */
+	public static InputStream decode(MessageElement element) throws IOException {
+		PayloadCodec codec = forMimeType(element.getMimeType());
+		if (codec == null) {
+			return null;
+		}
+		return codec.decode(element.getStream());
+	}
+
+	private static String getKey(MimeMediaType mimeType) {
+		return mimeType.getMimeMediaType().toLowerCase();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import net.jxta.document.MimeMediaType;
+
+/**
+ * Encodes an object by the Java serialization, the format the object messages
+ * were always sent with. It is the fallback for the types the
+ * {@link CompactObjectCodec} does not know and reads the messages of the
+ * older peers.
+ */
+public class SerializationCodec implements ObjectCodec {
+
+	// @Override
+	public String getId() {
+		return "java";
+	}
+
+	// @Override
+	public MimeMediaType getMimeType() {
+		return MimeMediaType.AOS;
+	}
+
+	// @Override
+	public byte[] encode(Object object) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		try {
+			oos.writeObject(object);
+		} finally {
+			oos.close();
+		}
+		return bos.toByteArray();
+	}
+
+	// @Override
+	public Object decode(InputStream encoded) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream ois = new ObjectInputStream(encoded);
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.endpoint.StringMessageElement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.Encoding;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * A streamed transfer reassembled from its chunks. A small transfer is kept
+ * in memory, a larger one was spilled to a temporary file which is removed by
+ * {@link #discard()} or at exit.
+ */
+public class StreamMessage extends Message {
+
+	private static final long serialVersionUID = 2206226356718294383L;
+	/* The reassembled bytes, either in memory or in the file */
+	private final transient byte[] data;
+	private final transient File file;
+	private final long size;
+	private static final Logger LOG = Logger.getLogger(StreamMessage.class);
+
+	/**
+	 * Constructs a reassembled transfer
+	 * 
+	 * @param source
+	 *            a sender
+	 * @param destination
+	 *            a recipient
+	 * @param transferId
+	 *            an id of the transfer
+	 * @param size
+	 *            a number of the bytes
+	 * @param data
+	 *            the bytes, null if they are in the file
+	 * @param file
+	 *            a file holding the bytes, null if they are in memory
+	 */
+	public StreamMessage(String source, String destination, String transferId,
+			long size, byte[] data, File file) {
+		super(source, destination);
+		Validator.validateString(transferId);
+		if (data == null) {
+			Validator.validateObjNotNull(file);
+		}
+		this.data = data;
+		this.file = file;
+		this.size = size;
+		try {
+			addMessageElement(new StringMessageElement(
+					Tag.TRANSFER_ID.getValue(), transferId,
+					Encoding.UTF_8.toString(), null));
+		} catch (UnsupportedEncodingException e) {
+			LOG.error(e);
+		}
+	}
+
+	/**
+	 * Returns an id of the transfer
+	 * 
+	 * @return a transfer id
+	 */
+	public String getTransferId() {
+		return getMessageElement(Tag.TRANSFER_ID.getValue()).toString();
+	}
+
+	/**
+	 * Returns a number of the received bytes
+	 * 
+	 * @return a size
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns a temporary file holding the transfer, it may be moved away
+	 * 
+	 * @return a {@link File} or null if the transfer is kept in memory
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Removes the temporary file of the transfer
+	 * 
+	 * @return <b>true</b> if there is no file anymore
+	 */
+	public boolean discard() {
+		return file == null || !file.exists() || file.delete();
+	}
+
+	@Override
+	public String getTextualMesage() {
+		return "Stream message cannot return the text, use TextualMessage instead";
+	}
+
+	/**
+	 * Opens a new stream of the transfer on each call
+	 */
+	@Override
+	public InputStream getStream() {
+		if (data != null) {
+			return new ByteArrayInputStream(data);
+		}
+		try {
+			return new FileInputStream(file);
+		} catch (IOException e) {
+			LOG.error(StreamMessage.class.getName() + " " + e.getMessage());
+		}
+		return null;
+	}
+
+	@Override
+	public Object getObject() {
+		return null;
+	}
+}
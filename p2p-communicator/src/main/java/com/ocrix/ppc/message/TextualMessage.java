@@ -47,6 +47,16 @@ public class TextualMessage extends Message {
 		setPayLoad(payLoad);
 	}
 
+	/**
+	 * Constructs a view of a received textual message
+	 * 
+	 * @param received
+	 *            a JXTA message carrying the text
+	 */
+	TextualMessage(net.jxta.endpoint.Message received) {
+		super(received);
+	}
+
 	/**
 	 * Returns a payload of the message
 	 * 
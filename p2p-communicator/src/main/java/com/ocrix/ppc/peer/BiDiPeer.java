@@ -15,9 +15,11 @@
 package com.ocrix.ppc.peer;
 
 import java.io.IOException;
-import java.lang.ref.WeakReference;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
@@ -32,15 +34,36 @@ import com.ocrix.ppc.commons.Validator;
 import com.ocrix.ppc.discovery.DiscoveryFactory;
 import com.ocrix.ppc.discovery.PipeDiscovery;
 import com.ocrix.ppc.exception.PPCException;
+import com.ocrix.ppc.listener.BatchMessageReceiver;
+import com.ocrix.ppc.listener.MessageInbox;
 import com.ocrix.ppc.listener.MessageReceiver;
+import com.ocrix.ppc.listener.MessageSelector;
 import com.ocrix.ppc.listener.ReceiverObservable;
+import com.ocrix.ppc.message.AckMessage;
+import com.ocrix.ppc.message.ChunkMessage;
+import com.ocrix.ppc.message.HeaderDictionary;
 import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.message.StreamMessage;
 import com.ocrix.ppc.message.TextualMessage;
+import com.ocrix.ppc.pipe.AcceptedPipeRegistry;
 import com.ocrix.ppc.pipe.PipeFactory;
 import com.ocrix.ppc.pipe.ServerPipe;
+import com.ocrix.ppc.state.BatchPolicy;
+import com.ocrix.ppc.state.BiDiSenderEngine;
+import com.ocrix.ppc.state.DeliveryReceipt;
+import com.ocrix.ppc.state.LanePolicy;
+import com.ocrix.ppc.state.LaneStats;
+import com.ocrix.ppc.state.ReceivePipeline;
+import com.ocrix.ppc.state.StreamReceiver;
+import com.ocrix.ppc.state.StreamSender;
 import com.ocrix.ppc.threadpool.TaskManager;
 import com.ocrix.ppc.threadpool.ThreadPoolSwitcher;
+import com.ocrix.ppc.type.AckMode;
 import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.OverflowPolicy;
+import com.ocrix.ppc.type.Priority;
+import com.ocrix.ppc.type.SendStatus;
 import com.ocrix.ppc.type.ThreadPoolType;
 
 /**
@@ -52,8 +75,8 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 	private PeerGroup peerGroup = null;
 	/* server accept listener */
 	private ServerPipeAcceptListener serverAcceptListener = null;
-	/* atomic reference for Jxta bi-directional pipe */
-	private final AtomicReference<JxtaBiDiPipe> acceptedPipe = new AtomicReference<JxtaBiDiPipe>();
+	/* The pipes accepted by the server pipe, by their remote peer */
+	private final AcceptedPipeRegistry acceptedPipes = new AcceptedPipeRegistry();
 	/* Server pipe */
 	private ServerPipe serverPipe = null;
 	/* Pipe factory */
@@ -64,8 +87,18 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 	private TaskManager taskManager = null;
 	/* Thread pool type */
 	private ThreadPoolType type = null;
-	/* Backlog of the messages */
-	private BlockingQueue<Message> backLog = null;
+	/* Keeps a sender and a connected pipe per destination */
+	private BiDiSenderEngine senderEngine = null;
+	/* Decodes the incoming messages on the decoder pool */
+	private ReceivePipeline receivePipeline = null;
+	/* Splits the outgoing streams into chunks */
+	private StreamSender streamSender = null;
+	/* Reassembles the incoming streams */
+	private final StreamReceiver streamReceiver = new StreamReceiver();
+	/* The open inboxes, the first one bounds the decoder queue */
+	private final Set<MessageInbox> openInboxes = new HashSet<MessageInbox>();
+	/* A depth of the decoder queue set up by an inbox, 0 if none */
+	private int inboxQueueDepth = 0;
 	/* A switcher that switches between thread pools - JAVA or WAS */
 	private ThreadPoolSwitcher switcher = null;
 	/*
@@ -75,8 +108,8 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 	private AtomicReference<ReceiverObservable> publisher = null;
 	/* A pipe discovery */
 	private PipeDiscovery pipeDiscovery = null;
-	/* How many time trying to retransmit the message */
-	private int retry;
+	/* Creates the acknowledgements */
+	private final MessageFactory messageFactory = new MessageFactory();
 
 	// ----------------- END CLASS MEMBERS -----------------
 
@@ -150,100 +183,456 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 	/**
 	 * Sends a response, useful in case when requires immediately response to
 	 * the incoming message As JXTA suggests its old approach. Try avoid using
-	 * this function, instead use send.
+	 * this function, instead use send. The response goes over the pipe its
+	 * destination connected by, the destination is the id of the remote peer
+	 * or the name its peer advertisement tells.
 	 * 
 	 * @param messageToBeSent
 	 *            {@link TextualMessage}
 	 * 
+	 * @return <b>true</b> if the pipe accepted the message
+	 * 
 	 * @throws IOException
-	 *             if could not send message
+	 *             if could not send message or no pipe was accepted from its
+	 *             destination
 	 */
-	public void sendResponse(Message messageToBeSent) throws IOException {
+	public boolean sendResponse(Message messageToBeSent) throws IOException {
 		/* Sets a message listener */
 		Validator.validateObjNotNull(messageToBeSent);
 
-		@SuppressWarnings("unused")
-		boolean status = acceptedPipe.get().sendMessage(messageToBeSent);
-		// TODO: add error/status callback
+		JxtaBiDiPipe pipe = acceptedPipes.get(messageToBeSent.getDestination());
+		if (pipe == null) {
+			throw new IOException("No pipe was accepted from ["
+					+ messageToBeSent.getDestination()
+					+ "], the response is not sent");
+		}
+		boolean status = false;
+		try {
+			status = pipe.sendMessage(messageToBeSent);
+		} catch (IOException e) {
+			/* The client connects again */
+			acceptedPipes.remove(pipe);
+			throw e;
+		}
+		if (!status) {
+			getLog().warn(
+					"The response to [" + messageToBeSent.getDestination()
+							+ "] is not accepted by the pipe");
+		}
 		publisher.get().alter();
+		return status;
 	}
 
 	/**
 	 * Sends a message to the recipient. <br>
-	 * Firstly puts message to the blocking queue <br>
-	 * Secondly, take a thread from the thread pool and send message
+	 * Firstly puts message to the window of its destination <br>
+	 * Secondly, the destination sender takes a thread from the thread pool
+	 * and sends the message over the pipe it keeps connected
 	 * 
 	 * @param messageToBeSent
 	 *            - a message to be sent
 	 * 
+	 * @return a future completed with a {@link DeliveryReceipt} once the pipe
+	 *         accepted the message or, in {@link AckMode#RECEIVER}, once the
+	 *         recipient acknowledged it
+	 * 
 	 * @throws IOException
 	 * @throws PPCException
+	 *             - if the window of the destination is full
 	 */
-	public void send(Message messageToBeSent) throws IOException, PPCException {
-		/* 1. puts a message into blocking queue, default is 50 */
-		if (getBackLog() != null) {
-			getBackLog().offer(messageToBeSent);
+	public CompletableFuture<DeliveryReceipt> send(Message messageToBeSent)
+			throws IOException, PPCException {
+		Validator.validateObjNotNull(messageToBeSent);
+		CompletableFuture<DeliveryReceipt> receipt = new CompletableFuture<DeliveryReceipt>();
+		SendStatus status = getSenderEngine().trySubmit(messageToBeSent,
+				receipt);
+		if (status != SendStatus.ACCEPTED) {
+			throw new PPCException("The message to ["
+					+ messageToBeSent.getDestination() + "] is not sent, "
+					+ status);
 		}
-		/*
-		 * 2. Runs a worker. For each message will be created its own worker.
-		 * The reason for that is to prevent locking issues for only single
-		 * instance of the worker. It may be changed in near future.
-		 */
-		getTaskManager().execute(
-				new WeakReference<Runnable>(getSwitcher().getWorker(type,
-						getBackLog(), getPipeFactory(), getPeerGroup(),
-						getPipeDiscovery(), getBiDiPipeMsgListener(),
-						getRetry())).get());
+		return receipt;
+	}
+
+	/**
+	 * Sends a message to the recipient without waiting
+	 * 
+	 * @param messageToBeSent
+	 *            - a message to be sent
+	 * 
+	 * @return ACCEPTED if the message waits to be sent, QUEUE_FULL if the
+	 *         window of the destination is full
+	 */
+	public SendStatus trySend(Message messageToBeSent) {
+		return getSenderEngine().trySubmit(messageToBeSent);
+	}
+
+	/**
+	 * Sends a message to the recipient, waits for a free place if the window
+	 * of the destination is full
+	 * 
+	 * @param messageToBeSent
+	 *            - a message to be sent
+	 * @param timeout
+	 *            - how long to wait, in milliseconds
+	 * 
+	 * @return ACCEPTED if the message waits to be sent, QUEUE_FULL if no place
+	 *         was freed in time
+	 * 
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting
+	 */
+	public SendStatus send(Message messageToBeSent, long timeout)
+			throws InterruptedException {
+		return getSenderEngine().submit(messageToBeSent, timeout);
+	}
+
+	/**
+	 * Sends a message to the recipient without waiting
+	 * 
+	 * @param messageToBeSent
+	 *            - a message to be sent
+	 * 
+	 * @return a future completed with a {@link DeliveryReceipt}, or
+	 *         exceptionally if the window is full, the message is dropped or
+	 *         not acknowledged in time
+	 */
+	public CompletableFuture<DeliveryReceipt> sendAsync(Message messageToBeSent) {
+		return getSenderEngine().submitAsync(messageToBeSent);
+	}
+
+	/**
+	 * Sends a large payload as a sequence of chunks, at most a window of them
+	 * is in flight. The recipient gets a single {@link StreamMessage}.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param in
+	 *            - an {@link InputStream} to be sent, it is not closed
+	 * 
+	 * @return an id of the transfer
+	 * 
+	 * @throws IOException
+	 *             - if the stream could not be read or a chunk was not
+	 *             delivered
+	 */
+	public String sendStream(String destination, InputStream in)
+			throws IOException {
+		return getStreamSender().send(destination, in);
+	}
+
+	/**
+	 * Sends a file as a sequence of chunks sliced from its mapping, the bytes
+	 * are not copied into the heap
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param file
+	 *            - a {@link Path} of the file
+	 * 
+	 * @return an id of the transfer
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be read or a chunk was not delivered
+	 */
+	public String sendFile(String destination, Path file) throws IOException {
+		return getStreamSender().sendFile(destination, file);
+	}
+
+	/**
+	 * Resumes an interrupted transfer of a file
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param file
+	 *            - a {@link Path} of the file
+	 * @param transferId
+	 *            - an id of the interrupted transfer
+	 * @param fromSequence
+	 *            - a sequence of the first chunk the recipient misses, as
+	 *            told by its {@link #getNextSequence(String, String)}
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be read or a chunk was not delivered
+	 */
+	public void resumeFile(String destination, Path file, String transferId,
+			long fromSequence) throws IOException {
+		getStreamSender().resumeFile(destination, file, transferId,
+				fromSequence);
+	}
+
+	/**
+	 * Returns a sequence of the first chunk an incoming transfer misses
+	 * 
+	 * @param source
+	 *            - a name of the sending peer
+	 * @param transferId
+	 *            - an id of the transfer
+	 * 
+	 * @return a sequence, 0 if nothing of the transfer was received
+	 */
+	public long getNextSequence(String source, String transferId) {
+		return streamReceiver.getNextSequence(source, transferId);
+	}
+
+	/**
+	 * Sets up how the priority lanes of a destination are drained, see
+	 * {@link Message#setPriority(Priority)}
+	 * 
+	 * @param lanePolicy
+	 *            - a {@link LanePolicy}, strict with starvation protection by
+	 *            default
+	 */
+	public void setLanePolicy(LanePolicy lanePolicy) {
+		getSenderEngine().setLanePolicy(lanePolicy);
+	}
+
+	/**
+	 * Takes a snapshot of a priority lane of the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param priority
+	 *            - a lane
+	 * 
+	 * @return its depth and how long its messages waited
+	 */
+	public LaneStats getLaneStats(String destination, Priority priority) {
+		return getSenderEngine().getLaneStats(destination, priority);
+	}
+
+	/**
+	 * Returns a number of messages waiting for the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a queue depth
+	 */
+	public int getQueueDepth(String destination) {
+		return getSenderEngine().getQueueDepth(destination);
+	}
+
+	/**
+	 * Sets up how many messages may wait for a single destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param capacity
+	 *            - a positive number
+	 */
+	public void setCapacity(String destination, int capacity) {
+		getSenderEngine().setCapacity(destination, capacity);
 	}
 
 	@Override
 	public void destroy() {
+		/* A resource that failed to stop does not keep the rest running */
+		try {
+			/* Stops the decoders */
+			getReceivePipeline().shutdown();
+		} catch (RuntimeException e) {
+			logStopFailure("the receive pipeline", e);
+		}
+		try {
+			/* Stops the subscriber threads */
+			publisher.get().shutdown();
+		} catch (RuntimeException e) {
+			logStopFailure("the subscribers", e);
+		}
+		try {
+			/* Removes the partially received streams */
+			streamReceiver.shutdown();
+		} catch (RuntimeException e) {
+			logStopFailure("the stream receiver", e);
+		}
+		try {
+			/* Drops the messages not sent yet and closes the pipes */
+			getSenderEngine().shutdown();
+		} catch (RuntimeException e) {
+			logStopFailure("the sender engine", e);
+		}
+		try {
+			acceptedPipes.close();
+		} catch (RuntimeException e) {
+			logStopFailure("the accepted pipes", e);
+		}
 		try {
 			getTaskManager().shutdown();
+		} catch (RuntimeException e) {
+			logStopFailure("the task manager", e);
+		}
+		try {
 			PPCUtils.visit(Thread.currentThread().getThreadGroup().getParent(),
 					0);
 			getPeerManager().stopNetwork();
-			/* Clears all messages from the queue */
-			getBackLog().clear();
-		} catch (Exception e) {
-			// TODO: handle exception
+		} catch (RuntimeException e) {
+			logStopFailure("the network", e);
 		}
 	}
 
+	/**
+	 * Logs a resource which failed to stop while the peer is destroyed
+	 * 
+	 * @param resource
+	 *            - a name of the resource
+	 * @param e
+	 *            - a failure
+	 */
+	private void logStopFailure(String resource, RuntimeException e) {
+		getLog().error(
+				BiDiPeer.class.getName() + " could not stop " + resource + " "
+						+ e.getMessage(), e);
+	}
+
 	// @Override
 	public void pipeMsgEvent(PipeMsgEvent event) {
-		AtomicReference<PipeMsgEvent> handler = new AtomicReference<PipeMsgEvent>(
-				event);
-		if (handler.get() != null) {
-			if (handler.get().getMessage() != null) {
-				Message myMessage = null;
-				try {
-					getLog().info("EVENT " + event.getMessage());
-					myMessage = PPCUtils.convertJxtaMsgToPpcMsg(handler.get()
-							.getMessage());
-				} catch (IOException e) {
-					getLog().info(
-							this.getClass().getName() + " " + e.getMessage());
-				} finally {
-					publisher.get().alter();
-					publisher.get().notifySubscribers(myMessage);
-				}
-			} else {
-				getLog().error("MESSAGE IS NULL");
-			}
-		} else {
+		if (event == null) {
 			getLog().error("EVENT IS NULL");
+		} else if (event.getMessage() == null) {
+			getLog().error("MESSAGE IS NULL");
+		} else if (!expand(event)) {
+			getLog().error("A message with a malformed header is dropped");
+		} else if (AckMessage.isAck(event.getMessage())) {
+			/* Completes the receipt here, a full inbox must not hold it */
+			getSenderEngine().acknowledge(
+					messageFactory.createReceivedMessage(event.getMessage())
+							.getCorrelationId());
+		} else {
+			if (event.getSource() instanceof JxtaBiDiPipe) {
+				/* Keeps a pipe that only receives from being evicted as idle */
+				acceptedPipes.touch((JxtaBiDiPipe) event.getSource());
+			}
+			if (!getReceivePipeline().submit(event)) {
+				getLog().debug("The peer is destroyed, a message is dropped");
+			}
+		}
+	}
+
+	/**
+	 * Restores the compact header of a message on the pipe thread, so the
+	 * names are learnt in the order the pipe delivered them
+	 * 
+	 * @param event
+	 *            - an event the message came with
+	 * 
+	 * @return <b>false</b> if the header is malformed
+	 */
+	private boolean expand(PipeMsgEvent event) {
+		try {
+			HeaderDictionary.expand(event.getSource(), event.getMessage());
+			return true;
+		} catch (IOException e) {
+			getLog().error(
+					this.getClass().getName() + " " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Handles a decoded message on the decoder pool, the messages of a source
+	 * come in the order they were received
+	 * 
+	 * @param event
+	 *            - an event the message came with
+	 * @param myMessage
+	 *            - a decoded message, null if it could not be decoded
+	 */
+	private void onMessage(PipeMsgEvent event, Message myMessage) {
+		if (myMessage instanceof ChunkMessage) {
+			onChunk(event, (ChunkMessage) myMessage);
+			return;
+		}
+		if (myMessage != null && myMessage.isAckRequested()) {
+			acknowledge(event, myMessage);
+		}
+		publisher.get().publish(myMessage);
+	}
+
+	/**
+	 * Appends a chunk to its transfer and publishes the completed one. A
+	 * chunk is acknowledged once it is appended, a chunk out of order is not,
+	 * so its sender fails and may resume the transfer.
+	 * 
+	 * @param event
+	 *            - an event the chunk came with
+	 * @param chunk
+	 *            - a {@link ChunkMessage}
+	 */
+	private void onChunk(PipeMsgEvent event, ChunkMessage chunk) {
+		StreamMessage completed = null;
+		try {
+			completed = streamReceiver.onChunk(chunk);
+		} catch (IOException e) {
+			getLog().error("The transfer " + chunk.getTransferId()
+					+ " is aborted, " + e.getMessage());
+			streamReceiver.abort(chunk.getSource(), chunk.getTransferId());
+			return;
+		}
+		boolean isAppended = completed != null
+				|| streamReceiver.isReceived(chunk);
+		if (isAppended && chunk.isAckRequested()) {
+			acknowledge(event, chunk);
+		}
+		if (completed != null) {
+			publisher.get().publish(completed);
 		}
 	}
 
 	/**
-	 * Sets up a message backlog size
+	 * Sets up a message backlog size, i.e. how many messages may wait for a
+	 * single destination
 	 * 
 	 * @param bufferSize
 	 */
 	public void setBufferSize(int bufferSize) {
-		if (bufferSize > 0)
-			setBackLog(new ArrayBlockingQueue<Message>(bufferSize));
+		getSenderEngine().setWindow(bufferSize);
+	}
+
+	/**
+	 * Turns the compact headers of the sent messages on or off. The peer
+	 * names are interned per pipe, so a short message is not dominated by its
+	 * headers. The recipient has to know the compact headers, this peer reads
+	 * both encodings.
+	 * 
+	 * @param isCompactHeaders
+	 *            <b>true</b> to send the compact headers
+	 */
+	public void setCompactHeaders(boolean isCompactHeaders) {
+		getSenderEngine().setCompactHeaders(isCompactHeaders);
+	}
+
+	/**
+	 * Sets up when the receipts of the sent messages are completed
+	 * 
+	 * @param ackMode
+	 *            {@link AckMode#PIPE} once the pipe accepted a message,
+	 *            {@link AckMode#RECEIVER} once the recipient acknowledged it
+	 */
+	public void setAckMode(AckMode ackMode) {
+		getSenderEngine().setAckMode(ackMode);
+	}
+
+	/**
+	 * Sets up how long an acknowledgement of the recipient is awaited
+	 * 
+	 * @param ackTimeout
+	 *            a time in milliseconds
+	 */
+	public void setAckTimeout(long ackTimeout) {
+		getSenderEngine().setAckTimeout(ackTimeout);
+	}
+
+	/**
+	 * Turns batching on, i.e. the messages of a destination are packed into a
+	 * single JXTA message by the limits of the policy. The receiving peer
+	 * unpacks them and delivers one by one.
+	 * 
+	 * @param batchPolicy
+	 *            a {@link BatchPolicy}, <b>null</b> turns batching off
+	 */
+	public void setBatchPolicy(BatchPolicy batchPolicy) {
+		getSenderEngine().setBatchPolicy(batchPolicy);
 	}
 
 	/**
@@ -266,6 +655,155 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 		publisher.get().subscribeReceiveMessages(subscriber);
 	}
 
+	/**
+	 * Subscribes to the incoming messages matched by a selector only, e.g. of
+	 * a single source or kind, the other subscribers are not visited for them
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param subscriber
+	 *            - a {@link MessageReceiver}
+	 */
+	public void subscribeRequestMessages(MessageSelector selector,
+			MessageReceiver subscriber) {
+		publisher.get().subscribe(selector, subscriber);
+	}
+
+	/**
+	 * Subscribes to the incoming messages in batches, a batch holds the
+	 * messages waiting for the subscriber up to the maximum. The subscriber is
+	 * called from a thread of its own.
+	 * 
+	 * @param subscriber
+	 *            - a {@link BatchMessageReceiver}
+	 * @param maxBatch
+	 *            - how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            - how long a smaller batch waits for more messages, 0 hands
+	 *            what is there at once
+	 */
+	public void subscribeRequestMessages(BatchMessageReceiver subscriber,
+			int maxBatch, long lingerMillis) {
+		publisher.get().addBatchMessageReceiverListener(subscriber, maxBatch,
+				lingerMillis);
+	}
+
+	/**
+	 * Subscribes to the incoming messages matched by a selector in batches
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param subscriber
+	 *            - a {@link BatchMessageReceiver}
+	 * @param maxBatch
+	 *            - how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            - how long a smaller batch waits for more messages
+	 */
+	public void subscribeRequestMessages(MessageSelector selector,
+			BatchMessageReceiver subscriber, int maxBatch, long lingerMillis) {
+		publisher.get().subscribe(selector, subscriber, maxBatch, lingerMillis);
+	}
+
+	/**
+	 * Opens a bounded inbox the incoming messages are pulled from, see
+	 * {@link MessageInbox}. The decoders wait while it is full and the pipe is
+	 * not read while they do, the acknowledgements are handled before the
+	 * queue. If <code>receive.max.queue</code> is not configured, the decoder
+	 * queue is bounded by the capacity of the inbox.
+	 * 
+	 * @param capacity
+	 *            - how many messages may wait in the inbox
+	 * 
+	 * @return a {@link MessageInbox}
+	 */
+	public MessageInbox openInbox(int capacity) {
+		return openInbox(new MessageSelector(), capacity);
+	}
+
+	/**
+	 * Opens a bounded inbox of the incoming messages matched by a selector
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param capacity
+	 *            - how many messages may wait in the inbox
+	 * 
+	 * @return a {@link MessageInbox}
+	 */
+	public MessageInbox openInbox(MessageSelector selector, int capacity) {
+		MessageInbox inbox = new MessageInbox(capacity);
+		synchronized (openInboxes) {
+			if (getReceivePipeline().getMaxQueueDepth() == 0) {
+				inboxQueueDepth = capacity;
+				getReceivePipeline().setMaxQueueDepth(capacity);
+			}
+			openInboxes.add(inbox);
+		}
+		publisher.get().subscribe(selector, inbox);
+		return inbox;
+	}
+
+	/**
+	 * Closes an inbox, it gets no more messages. Once the last inbox is
+	 * closed, the decoder queue is not bounded by its capacity anymore.
+	 * 
+	 * @param inbox
+	 *            - an inbox opened by {@link #openInbox(int)}
+	 */
+	public void closeInbox(MessageInbox inbox) {
+		publisher.get().deleteMessageReceiverListener(inbox);
+		inbox.close();
+		synchronized (openInboxes) {
+			if (openInboxes.remove(inbox) && openInboxes.isEmpty()
+					&& inboxQueueDepth > 0) {
+				/* A depth set up meanwhile is kept */
+				if (getReceivePipeline().getMaxQueueDepth() == inboxQueueDepth) {
+					getReceivePipeline().setMaxQueueDepth(0);
+				}
+				inboxQueueDepth = 0;
+			}
+		}
+	}
+
+	/**
+	 * Notifies every subscriber from a bounded buffer and a thread of its own,
+	 * so a slow subscriber does not slow down the receiving nor the others
+	 * 
+	 * @param capacity
+	 *            - how many messages may wait for a single subscriber
+	 * @param policy
+	 *            - an {@link OverflowPolicy} of a full buffer
+	 */
+	public void setAsyncDispatch(int capacity, OverflowPolicy policy) {
+		publisher.get().setAsyncDispatch(capacity, policy);
+	}
+
+	/**
+	 * Returns how many received messages the subscriber lags behind
+	 * 
+	 * @param subscriber
+	 *            - a subscribed {@link MessageReceiver}
+	 * 
+	 * @return a number of the messages waiting for it, 0 if notified
+	 *         synchronously
+	 */
+	public int getSubscriberLag(MessageReceiver subscriber) {
+		return publisher.get().getLag(subscriber);
+	}
+
+	/**
+	 * Returns how many received messages were dropped for the subscriber
+	 * 
+	 * @param subscriber
+	 *            - a subscribed {@link MessageReceiver}
+	 * 
+	 * @return a count
+	 */
+	public long getSubscriberDropped(MessageReceiver subscriber) {
+		return publisher.get().getDroppedCount(subscriber);
+	}
+
 	// ------------------------------------------------------
 	// PRIVATE FUNCTIONS AREA - ONLY MEMBERS ARE ALLOWED
 	// ------------------------------------------------------
@@ -282,13 +820,20 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 	 * <li>{@link PipeDiscovery}</li>
 	 * <li>{@link ThreadPoolSwitcher}</li>
 	 * <li>{@link TaskManager}</li>
-	 * <li>backlog - message buffering</li>
+	 * <li>{@link BiDiSenderEngine} - per destination message buffering</li>
 	 * </ul>
 	 */
 	private void initialize() throws IOException, PPCException {
 		/* Initializes the publisher */
 		publisher = new AtomicReference<ReceiverObservable>(
 				new ReceiverObservable());
+		/* Decodes the incoming messages off the pipe threads */
+		setReceivePipeline(new ReceivePipeline(new ReceivePipeline.Handler() {
+			// @Override
+			public void onMessage(PipeMsgEvent event, Message message) {
+				BiDiPeer.this.onMessage(event, message);
+			}
+		}));
 		/* Starts a network */
 		setPeerGroup(startNetwork());
 		/* Sets pipe message listener */
@@ -307,9 +852,15 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 		setSwitcher(new ThreadPoolSwitcher());
 		/* Sets a type of thread pool */
 		setTaskManager(getSwitcher().getTaskManager(type));
-		/* Initializes blocking queue */
-		setBackLog(new ArrayBlockingQueue<Message>(
-				DefaultParameter.QUEUE_CAPASITY.getCode()));
+		/* Initializes the per destination senders */
+		setSenderEngine(new BiDiSenderEngine(getTaskManager(),
+				getPipeFactory(), getPeerGroup(), getPipeDiscovery(),
+				getBiDiPipeMsgListener()));
+		/* Streams the large payloads over the engine */
+		setStreamSender(new StreamSender(getSenderEngine(), getPeerName()));
+		/* Drops the transfers their senders gave up */
+		streamReceiver.scheduleExpiry(DefaultParameter.STREAM_TIMEOUT
+				.getCode());
 	}
 
 	/**
@@ -327,12 +878,14 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 
 			// @Override
 			public void serverPipeClosed() {
+				/* No client connects anymore, the pipes are closed */
+				acceptedPipes.close();
 			}
 
 			// @Override
 			public void pipeAccepted(JxtaBiDiPipe pipe) {
-				acceptedPipe.set(pipe);
-				acceptedPipe.get().setMessageListener(getBiDiPipeMsgListener());
+				pipe.setMessageListener(getBiDiPipeMsgListener());
+				acceptedPipes.accept(pipe);
 			}
 		});
 	}
@@ -433,22 +986,88 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 	}
 
 	/**
-	 * Arranges a backlog of the incoming messages
+	 * Arranges a sender engine of the outgoing messages
 	 * 
-	 * @param backLog
-	 *            {@link BlockingQueue}
+	 * @param senderEngine
+	 *            {@link BiDiSenderEngine}
 	 */
-	private void setBackLog(BlockingQueue<Message> backLog) {
-		this.backLog = backLog;
+	private void setSenderEngine(BiDiSenderEngine senderEngine) {
+		Validator.validateObjNotNull(senderEngine);
+		this.senderEngine = senderEngine;
 	}
 
 	/**
-	 * Attains a backlog of the incoming massages
+	 * Attains a sender engine of the outgoing massages
 	 * 
-	 * @return {@link BlockingQueue}
+	 * @return {@link BiDiSenderEngine}
 	 */
-	private BlockingQueue<Message> getBackLog() {
-		return backLog;
+	private BiDiSenderEngine getSenderEngine() {
+		return senderEngine;
+	}
+
+	/**
+	 * Arranges a sender of the outgoing streams
+	 * 
+	 * @param streamSender
+	 *            {@link StreamSender}
+	 */
+	private void setStreamSender(StreamSender streamSender) {
+		Validator.validateObjNotNull(streamSender);
+		this.streamSender = streamSender;
+	}
+
+	/**
+	 * Attains a sender of the outgoing streams
+	 * 
+	 * @return {@link StreamSender}
+	 */
+	private StreamSender getStreamSender() {
+		return streamSender;
+	}
+
+	/**
+	 * Sets up a pipeline of the incoming messages
+	 * 
+	 * @param receivePipeline
+	 *            {@link ReceivePipeline}
+	 */
+	private void setReceivePipeline(ReceivePipeline receivePipeline) {
+		Validator.validateObjNotNull(receivePipeline);
+		this.receivePipeline = receivePipeline;
+	}
+
+	/**
+	 * Attains a pipeline of the incoming messages
+	 * 
+	 * @return {@link ReceivePipeline}
+	 */
+	private ReceivePipeline getReceivePipeline() {
+		return receivePipeline;
+	}
+
+	/**
+	 * Acknowledges a received message over the pipe it came from
+	 * 
+	 * @param event
+	 *            - a {@link PipeMsgEvent} of the message
+	 * @param received
+	 *            - a message that asked for an acknowledgement
+	 */
+	private void acknowledge(PipeMsgEvent event, Message received) {
+		JxtaBiDiPipe pipe = event.getSource() instanceof JxtaBiDiPipe ? (JxtaBiDiPipe) event
+				.getSource() : acceptedPipes.get(received.getSource());
+		if (pipe == null) {
+			getLog().warn(
+					"No pipe to acknowledge [" + received.getCorrelationId()
+							+ "] to " + received.getSource());
+			return;
+		}
+		try {
+			pipe.sendMessage(messageFactory.createAckMessage(received));
+		} catch (IOException e) {
+			getLog().error(
+					this.getClass().getName() + " " + e.getMessage());
+		}
 	}
 
 	/**
@@ -523,11 +1142,12 @@ public class BiDiPeer extends Peer implements PipeMsgListener {
 		return pipeDiscovery;
 	}
 
+	/**
+	 * Sets up how many times a message is tried to be sent
+	 * 
+	 * @param retry
+	 */
 	public void setRetry(int retry) {
-		this.retry = retry;
-	}
-
-	private int getRetry() {
-		return retry;
+		getSenderEngine().setRetry(retry);
 	}
 }
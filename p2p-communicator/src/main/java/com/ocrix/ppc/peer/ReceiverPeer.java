@@ -16,7 +16,9 @@ package com.ocrix.ppc.peer;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Observer;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.log4j.Logger;
 import net.jxta.peergroup.PeerGroup;
@@ -27,10 +29,18 @@ import net.jxta.protocol.PipeAdvertisement;
 import com.ocrix.ppc.commons.PPCUtils;
 import com.ocrix.ppc.commons.Validator;
 import com.ocrix.ppc.exception.PPCException;
+import com.ocrix.ppc.listener.BatchMessageReceiver;
+import com.ocrix.ppc.listener.MessageInbox;
 import com.ocrix.ppc.listener.MessageReceiver;
+import com.ocrix.ppc.listener.MessageSelector;
 import com.ocrix.ppc.listener.ReceiverObservable;
+import com.ocrix.ppc.message.ChunkMessage;
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.service.impl.PPCServicePipeFactoryImpl;
+import com.ocrix.ppc.state.ReceivePipeline;
+import com.ocrix.ppc.state.StreamReceiver;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.OverflowPolicy;
 
 /**
  * Represents a Receiver peer, that responsible for getting the incoming
@@ -49,6 +59,14 @@ public class ReceiverPeer extends Peer implements PipeMsgListener {
 	private InputPipe inputPipe = null;
 	/* Observable */
 	private AtomicReference<ReceiverObservable> publisher = null;
+	/* Decodes the incoming messages off the pipe thread */
+	private ReceivePipeline receivePipeline = null;
+	/* Reassembles the incoming streams */
+	private final StreamReceiver streamReceiver = new StreamReceiver();
+	/* The open inboxes, the first one bounds the decoder queue */
+	private final Set<MessageInbox> openInboxes = new HashSet<MessageInbox>();
+	/* A depth of the decoder queue set up by an inbox, 0 if none */
+	private int inboxQueueDepth = 0;
 
 	// ---------- END OF CLASS MEMBERS ----------\\
 
@@ -111,6 +129,13 @@ public class ReceiverPeer extends Peer implements PipeMsgListener {
 		/* Closes the input pipe */
 		if (inputPipe != null)
 			inputPipe.close();
+		/* Stops the decoders */
+		if (receivePipeline != null)
+			receivePipeline.shutdown();
+		/* Stops the subscriber threads */
+		publisher.get().shutdown();
+		/* Removes the partially received streams */
+		streamReceiver.shutdown();
 		/* Stops the JXTA's task manager */
 		net.jxta.impl.util.threads.TaskManager tm = getPeerManager()
 				.getNetPeerGroup().getTaskManager();
@@ -125,11 +150,8 @@ public class ReceiverPeer extends Peer implements PipeMsgListener {
 		/* event.getMessage is a type of Message and it's not TextualMessage */
 		try {
 			Validator.validateObjNotNull(event);
-			Message myMessage = PPCUtils.convertJxtaMsgToPpcMsg(event
-					.getMessage());
-			publisher.get().alter();
-			publisher.get().notifySubscribers(myMessage);
-
+			/* Decoded and published on the decoder pool, in order per source */
+			receivePipeline.submit(event);
 		} catch (Exception e) {
 			getLog().error(
 					ReceiverPeer.class.getName() + " pipeMsgEvent "
@@ -145,6 +167,154 @@ public class ReceiverPeer extends Peer implements PipeMsgListener {
 		publisher.get().subscribeReceiveMessages(subscriber);
 	}
 
+	/**
+	 * Subscribes to the incoming messages matched by a selector only, e.g. of
+	 * a single source or kind, the other subscribers are not visited for them
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param subscriber
+	 *            - a {@link MessageReceiver}
+	 */
+	public void subscribeReceiveMessages(MessageSelector selector,
+			MessageReceiver subscriber) {
+		publisher.get().subscribe(selector, subscriber);
+	}
+
+	/**
+	 * Subscribes to the incoming messages in batches, a batch holds the
+	 * messages waiting for the subscriber up to the maximum. The subscriber is
+	 * called from a thread of its own.
+	 * 
+	 * @param subscriber
+	 *            - a {@link BatchMessageReceiver}
+	 * @param maxBatch
+	 *            - how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            - how long a smaller batch waits for more messages, 0 hands
+	 *            what is there at once
+	 */
+	public void subscribeReceiveMessages(BatchMessageReceiver subscriber,
+			int maxBatch, long lingerMillis) {
+		publisher.get().addBatchMessageReceiverListener(subscriber, maxBatch,
+				lingerMillis);
+	}
+
+	/**
+	 * Subscribes to the incoming messages matched by a selector in batches
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param subscriber
+	 *            - a {@link BatchMessageReceiver}
+	 * @param maxBatch
+	 *            - how many messages are handed at most in a single call
+	 * @param lingerMillis
+	 *            - how long a smaller batch waits for more messages
+	 */
+	public void subscribeReceiveMessages(MessageSelector selector,
+			BatchMessageReceiver subscriber, int maxBatch, long lingerMillis) {
+		publisher.get().subscribe(selector, subscriber, maxBatch, lingerMillis);
+	}
+
+	/**
+	 * Opens a bounded inbox the incoming messages are pulled from, see
+	 * {@link MessageInbox}. The decoders wait while it is full and the pipe is
+	 * not read while they do. If <code>receive.max.queue</code> is not
+	 * configured, the decoder queue is bounded by the capacity of the inbox.
+	 * 
+	 * @param capacity
+	 *            - how many messages may wait in the inbox
+	 * 
+	 * @return a {@link MessageInbox}
+	 */
+	public MessageInbox openInbox(int capacity) {
+		return openInbox(new MessageSelector(), capacity);
+	}
+
+	/**
+	 * Opens a bounded inbox of the incoming messages matched by a selector
+	 * 
+	 * @param selector
+	 *            - a {@link MessageSelector}
+	 * @param capacity
+	 *            - how many messages may wait in the inbox
+	 * 
+	 * @return a {@link MessageInbox}
+	 */
+	public MessageInbox openInbox(MessageSelector selector, int capacity) {
+		MessageInbox inbox = new MessageInbox(capacity);
+		synchronized (openInboxes) {
+			if (receivePipeline.getMaxQueueDepth() == 0) {
+				inboxQueueDepth = capacity;
+				receivePipeline.setMaxQueueDepth(capacity);
+			}
+			openInboxes.add(inbox);
+		}
+		publisher.get().subscribe(selector, inbox);
+		return inbox;
+	}
+
+	/**
+	 * Closes an inbox, it gets no more messages. Once the last inbox is
+	 * closed, the decoder queue is not bounded by its capacity anymore.
+	 * 
+	 * @param inbox
+	 *            - an inbox opened by {@link #openInbox(int)}
+	 */
+	public void closeInbox(MessageInbox inbox) {
+		publisher.get().deleteMessageReceiverListener(inbox);
+		inbox.close();
+		synchronized (openInboxes) {
+			if (openInboxes.remove(inbox) && openInboxes.isEmpty()
+					&& inboxQueueDepth > 0) {
+				/* A depth set up meanwhile is kept */
+				if (receivePipeline.getMaxQueueDepth() == inboxQueueDepth) {
+					receivePipeline.setMaxQueueDepth(0);
+				}
+				inboxQueueDepth = 0;
+			}
+		}
+	}
+
+	/**
+	 * Notifies every subscriber from a bounded buffer and a thread of its own,
+	 * so a slow subscriber does not slow down the receiving nor the others
+	 * 
+	 * @param capacity
+	 *            - how many messages may wait for a single subscriber
+	 * @param policy
+	 *            - an {@link OverflowPolicy} of a full buffer
+	 */
+	public void setAsyncDispatch(int capacity, OverflowPolicy policy) {
+		publisher.get().setAsyncDispatch(capacity, policy);
+	}
+
+	/**
+	 * Returns how many received messages the subscriber lags behind
+	 * 
+	 * @param subscriber
+	 *            - a subscribed {@link MessageReceiver}
+	 * 
+	 * @return a number of the messages waiting for it, 0 if notified
+	 *         synchronously
+	 */
+	public int getSubscriberLag(MessageReceiver subscriber) {
+		return publisher.get().getLag(subscriber);
+	}
+
+	/**
+	 * Returns how many received messages were dropped for the subscriber
+	 * 
+	 * @param subscriber
+	 *            - a subscribed {@link MessageReceiver}
+	 * 
+	 * @return a count
+	 */
+	public long getSubscriberDropped(MessageReceiver subscriber) {
+		return publisher.get().getDroppedCount(subscriber);
+	}
+
 	/**
 	 * Initializes the following:
 	 * <ul>
@@ -165,6 +335,20 @@ public class ReceiverPeer extends Peer implements PipeMsgListener {
 		PPCUtils.deleteDir(new File(getCachePath()));
 		/* Creates a new one */
 		PPCUtils.createDir(new File(getCachePath()));
+		/* Creates the decoders before the pipe may deliver a message */
+		receivePipeline = new ReceivePipeline(new ReceivePipeline.Handler() {
+			// @Override
+			public void onMessage(PipeMsgEvent event, Message message) {
+				if (message instanceof ChunkMessage) {
+					message = onChunk((ChunkMessage) message);
+					if (message == null) {
+						return;
+					}
+				}
+				/* A batch is delivered message by message */
+				publisher.get().publish(message);
+			}
+		});
 		/* Starts a JXTA network */
 		peerGroup = startNetwork();
 		/* Creates a pipe factory */
@@ -177,6 +361,29 @@ public class ReceiverPeer extends Peer implements PipeMsgListener {
 				pipeAdvertisement, this);
 		/* Validates a created input pipe */
 		validateInputPipe(inputPipe);
+		/* Drops the transfers their senders gave up */
+		streamReceiver.scheduleExpiry(DefaultParameter.STREAM_TIMEOUT
+				.getCode());
+	}
+
+	/**
+	 * Appends a chunk to its transfer
+	 * 
+	 * @param chunk
+	 *            a {@link ChunkMessage}
+	 * 
+	 * @return a completed transfer or null
+	 */
+	private Message onChunk(ChunkMessage chunk) {
+		try {
+			return streamReceiver.onChunk(chunk);
+		} catch (IOException e) {
+			getLog().error(
+					"The transfer " + chunk.getTransferId() + " is aborted, "
+							+ e.getMessage());
+			streamReceiver.abort(chunk.getSource(), chunk.getTransferId());
+		}
+		return null;
 	}
 
 	/**
@@ -15,15 +15,18 @@
 package com.ocrix.ppc.peer;
 
 import java.io.IOException;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import org.apache.log4j.Logger;
 import net.jxta.peergroup.PeerGroup;
+import net.jxta.pipe.OutputPipe;
 import com.ocrix.ppc.commons.PPCUtils;
 import com.ocrix.ppc.commons.Validator;
 import com.ocrix.ppc.discovery.PipeDiscovery;
@@ -32,10 +35,22 @@ import com.ocrix.ppc.listener.MessageReceiver;
 import com.ocrix.ppc.listener.SenderObservable;
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.pipe.OutputPipeCache;
+import com.ocrix.ppc.pipe.OutputPipePoolFactory;
+import com.ocrix.ppc.pipe.PipeFactory;
+import com.ocrix.ppc.pipe.PipePool;
 import com.ocrix.ppc.service.impl.PPCServiceDiscoveryFactoryImpl;
+import com.ocrix.ppc.state.BatchPolicy;
+import com.ocrix.ppc.state.DeliveryReceipt;
+import com.ocrix.ppc.state.LanePolicy;
+import com.ocrix.ppc.state.LaneStats;
+import com.ocrix.ppc.state.OneWaySenderEngine;
+import com.ocrix.ppc.state.StreamSender;
 import com.ocrix.ppc.threadpool.TaskManager;
 import com.ocrix.ppc.threadpool.ThreadPoolSwitcher;
 import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.Priority;
+import com.ocrix.ppc.type.SendStatus;
 import com.ocrix.ppc.type.ThreadPoolType;
 
 /**
@@ -49,8 +64,6 @@ public class SenderPeer extends Peer {
 	private ExecutorService pool = null;
 	/* A pipe discovery */
 	private PipeDiscovery pipeDiscovery = null;
-	/* Backlog of the messages */
-	private BlockingQueue<Message> backLog = null;
 	/* A message factory */
 	private MessageFactory messageFactory = null;
 	/* Sender observer */
@@ -61,8 +74,14 @@ public class SenderPeer extends Peer {
 	private ThreadPoolType type = null;
 	/* A task manager */
 	private TaskManager taskManager = null;
-	/* A time of retries */
-	private int retry;
+	/* Output pipes, reused between messages */
+	private PipePool<OutputPipe> pipePool = null;
+	/* Resolved output pipes by pipe id */
+	private OutputPipeCache outputPipeCache = null;
+	/* Per destination senders, used when batching is on */
+	private OneWaySenderEngine senderEngine = null;
+	/* Splits the outgoing streams into chunks */
+	private StreamSender streamSender = null;
 
 	// ------ END OF CLASS MEMBERS ------\\
 
@@ -123,15 +142,17 @@ public class SenderPeer extends Peer {
 		/* Creates a new thread pool and save it */
 		setPool(Executors.newFixedThreadPool(DefaultParameter.THREAD_POOL_SIZE
 				.getCode()));
-		/* Initializes blocking queue */
-		setBackLog(new ArrayBlockingQueue<Message>(
-				DefaultParameter.QUEUE_CAPASITY.getCode()));
 		/* Starts the JXTA network */
 		init();
 		/* Creates a discovery service factory */
 		PPCServiceDiscoveryFactoryImpl dfs = new PPCServiceDiscoveryFactoryImpl();
 		/* Creates a pipe discovery */
 		pipeDiscovery = dfs.createPipeDiscovery(getPeerManager());
+		/* Creates a pool of the output pipes, a pipe is resolved once */
+		outputPipeCache = new OutputPipeCache();
+		setPipePool(new PipePool<OutputPipe>(new OutputPipePoolFactory(
+				new PipeFactory(outputPipeCache), getPeerGroup(),
+				pipeDiscovery)));
 		/* Create an instance of the Sender observable */
 		publisher = new AtomicReference<SenderObservable>(
 				new SenderObservable());
@@ -145,41 +166,198 @@ public class SenderPeer extends Peer {
 			setTaskManager(getSwitcher().getTaskManager(ThreadPoolType.JAVA));
 		} else
 			setTaskManager(getSwitcher().getTaskManager(type));
+		/* Initializes the per destination senders */
+		setSenderEngine(new OneWaySenderEngine(getTaskManager(),
+				getPipePool()));
+		/* Streams the large payloads over the engine */
+		streamSender = new StreamSender(getSenderEngine(), getPeerName());
 	}
 
 	/**
-	 * Sends a given message.
+	 * Sends a given message. The message is put into the window of its
+	 * destination and sent by the sender of the destination, the messages of a
+	 * slow destination do not hold the others.
 	 * 
 	 * @param messageToBeSent
 	 * 
+	 * @return a future completed with a {@link DeliveryReceipt} once the pipe
+	 *         accepted the message, or exceptionally if the message is dropped
+	 * 
 	 * @throws IOException
 	 *             - if could not create a sender peer
 	 * @throws PPCException
-	 *             - if could not start JXTA network
+	 *             - if the window of the destination is full
 	 * @throws ExecutionException
 	 *             - if the execution was terminated violently
 	 */
-	public void send(Message messageToBeSent) throws IOException, PPCException,
-			ExecutionException {
-		try {
-			/* Puts a message to the backlog */
-			getBackLog().offer(messageToBeSent);
-			/* Sends the massage */
-			getTaskManager().execute(
-					getSwitcher().getSenderWorker(type, getBackLog(),
-							getPeerGroup(), pipeDiscovery, getRetry()));
-
-			// ==========================================================================
-			// TEMPORARLY SOLUTION, UNTIL UNDERSTANDING WHAT EXACTLY WE SHOULD
-			// NOTIFY
-			// ==========================================================================
-			/* Notification to the subscribers */
-			getTaskManager().execute(
-					new Notifier(getPeerName(), messageToBeSent));
+	public CompletableFuture<DeliveryReceipt> send(Message messageToBeSent)
+			throws IOException, PPCException, ExecutionException {
+		CompletableFuture<DeliveryReceipt> receipt = notifyOnDelivery(messageToBeSent);
+		SendStatus status = getSenderEngine().trySubmit(messageToBeSent,
+				receipt);
+		if (status != SendStatus.ACCEPTED) {
+			throw new PPCException("The message to ["
+					+ messageToBeSent.getDestination() + "] is not sent, "
+					+ status);
+		}
+		return receipt;
+	}
 
-		} catch (Exception e) {
-			throw new PPCException(e.getMessage());
+	/**
+	 * Sends a given message without waiting
+	 * 
+	 * @param messageToBeSent
+	 *            - a message to be sent
+	 * 
+	 * @return ACCEPTED if the message waits to be sent, QUEUE_FULL if the
+	 *         window of the destination is full
+	 */
+	public SendStatus trySend(Message messageToBeSent) {
+		return getSenderEngine().trySubmit(messageToBeSent,
+				notifyOnDelivery(messageToBeSent));
+	}
+
+	/**
+	 * Sends a given message, waits for a free place if the window of the
+	 * destination is full
+	 * 
+	 * @param messageToBeSent
+	 *            - a message to be sent
+	 * @param timeout
+	 *            - how long to wait, in milliseconds
+	 * 
+	 * @return ACCEPTED if the message waits to be sent, QUEUE_FULL if no place
+	 *         was freed in time
+	 * 
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting
+	 */
+	public SendStatus send(Message messageToBeSent, long timeout)
+			throws InterruptedException {
+		return getSenderEngine().submit(messageToBeSent,
+				notifyOnDelivery(messageToBeSent), timeout);
+	}
+
+	/**
+	 * Sends a given message without waiting
+	 * 
+	 * @param messageToBeSent
+	 *            - a message to be sent
+	 * 
+	 * @return a future completed with a {@link DeliveryReceipt} once the pipe
+	 *         accepted the message, or exceptionally if the window is full or
+	 *         the message is dropped
+	 */
+	public CompletableFuture<DeliveryReceipt> sendAsync(Message messageToBeSent) {
+		CompletableFuture<DeliveryReceipt> receipt = notifyOnDelivery(messageToBeSent);
+		SendStatus status = getSenderEngine().trySubmit(messageToBeSent,
+				receipt);
+		if (status != SendStatus.ACCEPTED) {
+			receipt.completeExceptionally(new PPCException("The message to ["
+					+ messageToBeSent.getDestination() + "] is not sent, "
+					+ status));
 		}
+		return receipt;
+	}
+
+	/**
+	 * Sends a large payload as a sequence of chunks, at most a window of them
+	 * is in flight. A one-way pipe carries no acknowledgements, so a chunk
+	 * counts as delivered once the pipe accepted it.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param in
+	 *            - an {@link InputStream} to be sent, it is not closed
+	 * 
+	 * @return an id of the transfer
+	 * 
+	 * @throws IOException
+	 *             - if the stream could not be read or a chunk was not sent
+	 */
+	public String sendStream(String destination, InputStream in)
+			throws IOException {
+		return streamSender.send(destination, in);
+	}
+
+	/**
+	 * Sends a file as a sequence of chunks sliced from its mapping, the bytes
+	 * are not copied into the heap
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param file
+	 *            - a {@link Path} of the file
+	 * 
+	 * @return an id of the transfer
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be read or a chunk was not sent
+	 */
+	public String sendFile(String destination, Path file) throws IOException {
+		return streamSender.sendFile(destination, file);
+	}
+
+	/**
+	 * Sets up how the priority lanes of a destination are drained, see
+	 * {@link Message#setPriority(Priority)}
+	 * 
+	 * @param lanePolicy
+	 *            - a {@link LanePolicy}, strict with starvation protection by
+	 *            default
+	 */
+	public void setLanePolicy(LanePolicy lanePolicy) {
+		getSenderEngine().setLanePolicy(lanePolicy);
+	}
+
+	/**
+	 * Takes a snapshot of a priority lane of the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param priority
+	 *            - a lane
+	 * 
+	 * @return its depth and how long its messages waited
+	 */
+	public LaneStats getLaneStats(String destination, Priority priority) {
+		return getSenderEngine().getLaneStats(destination, priority);
+	}
+
+	/**
+	 * Returns a number of messages waiting for the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a queue depth
+	 */
+	public int getQueueDepth(String destination) {
+		return getSenderEngine().getQueueDepth(destination);
+	}
+
+	/**
+	 * Sets up how many messages may wait for a single destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param capacity
+	 *            - a positive number
+	 */
+	public void setCapacity(String destination, int capacity) {
+		getSenderEngine().setCapacity(destination, capacity);
+	}
+
+	/**
+	 * Turns batching on, i.e. the messages of a destination are packed into a
+	 * single JXTA message by the limits of the policy. The receiving peer
+	 * unpacks them and delivers one by one.
+	 * 
+	 * @param batchPolicy
+	 *            a {@link BatchPolicy}, <b>null</b> turns batching off
+	 */
+	public void setBatchPolicy(BatchPolicy batchPolicy) {
+		getSenderEngine().setBatchPolicy(batchPolicy);
 	}
 
 	/**
@@ -223,6 +401,12 @@ public class SenderPeer extends Peer {
 						SenderPeer.class.getName() + " " + e.getMessage());
 			}
 
+			/* Drops the batched messages not sent yet */
+			getSenderEngine().shutdown();
+			/* Closes the output pipes */
+			getPipePool().close();
+			getOutputPipeCache().clear();
+
 			if (getPool() != null && getPool().isTerminated())
 				getLog().info(" Is pool terminated ? " + isTimeout);
 
@@ -244,13 +428,23 @@ public class SenderPeer extends Peer {
 	}
 
 	/**
-	 * Sets a message backlog size
+	 * Sets a message backlog size, i.e. how many messages may wait for a
+	 * single destination
 	 * 
 	 * @param bufferSize
 	 */
 	public void setBufferSize(int bufferSize) {
-		if (bufferSize > 0)
-			setBackLog(new ArrayBlockingQueue<Message>(bufferSize));
+		getSenderEngine().setWindow(bufferSize);
+	}
+
+	/**
+	 * Returns a cache of the resolved output pipes, i.e. for its hit and miss
+	 * counters
+	 * 
+	 * @return {@link OutputPipeCache}
+	 */
+	public OutputPipeCache getOutputPipeCache() {
+		return outputPipeCache;
 	}
 
 	/**
@@ -304,23 +498,43 @@ public class SenderPeer extends Peer {
 	}
 
 	/**
-	 * Assigns a backlog, i.e. message buffer
+	 * Assigns a pool of the output pipes
+	 * 
+	 * @param pipePool
+	 *            {@link PipePool}
+	 */
+	private void setPipePool(PipePool<OutputPipe> pipePool) {
+		Validator.validateObjNotNull(pipePool);
+		this.pipePool = pipePool;
+	}
+
+	/**
+	 * Returns a pool of the output pipes
+	 * 
+	 * @return {@link PipePool}
+	 */
+	private PipePool<OutputPipe> getPipePool() {
+		return pipePool;
+	}
+
+	/**
+	 * Assigns the per destination senders
 	 * 
-	 * @param backLog
-	 *            {@link BlockingQueue}
+	 * @param senderEngine
+	 *            {@link OneWaySenderEngine}
 	 */
-	private void setBackLog(BlockingQueue<Message> backLog) {
-		Validator.validateObjNotNull(backLog);
-		this.backLog = backLog;
+	private void setSenderEngine(OneWaySenderEngine senderEngine) {
+		Validator.validateObjNotNull(senderEngine);
+		this.senderEngine = senderEngine;
 	}
 
 	/**
-	 * Returns a backlog
+	 * Returns the per destination senders
 	 * 
-	 * @return {@link BlockingQueue}
+	 * @return {@link OneWaySenderEngine}
 	 */
-	private BlockingQueue<Message> getBackLog() {
-		return backLog;
+	private OneWaySenderEngine getSenderEngine() {
+		return senderEngine;
 	}
 
 	private void setSwitcher(ThreadPoolSwitcher switcher) {
@@ -340,13 +554,32 @@ public class SenderPeer extends Peer {
 	}
 
 	public void setRetry(int retry) {
-		this.retry = retry;
+		getSenderEngine().setRetry(retry);
 	}
 
-	private int getRetry() {
-		if (retry <= 0)
-			setRetry(DefaultParameter.TRIAL_NUMBER.getCode());
-		return retry;
+	// ==========================================================================
+	// TEMPORARLY SOLUTION, UNTIL UNDERSTANDING WHAT EXACTLY WE SHOULD
+	// NOTIFY
+	// ==========================================================================
+	/**
+	 * Creates a receipt that notifies the subscribers once the message is
+	 * actually sent
+	 * 
+	 * @param message
+	 *            - a message
+	 * 
+	 * @return a future of the {@link DeliveryReceipt}
+	 */
+	private CompletableFuture<DeliveryReceipt> notifyOnDelivery(
+			final Message message) {
+		CompletableFuture<DeliveryReceipt> receipt = new CompletableFuture<DeliveryReceipt>();
+		receipt.thenAccept(new Consumer<DeliveryReceipt>() {
+			// @Override
+			public void accept(DeliveryReceipt delivered) {
+				getTaskManager().execute(new Notifier(getPeerName(), message));
+			}
+		});
+		return receipt;
 	}
 
 	class Notifier implements Runnable {
@@ -0,0 +1,231 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.pipe;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.protocol.PeerAdvertisement;
+import net.jxta.util.JxtaBiDiPipe;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Keeps every {@link JxtaBiDiPipe} accepted by the server pipe, so a response
+ * goes back over the connection of the peer it answers. A pipe is bound once
+ * it is accepted, to the id and the name of its remote peer advertisement, so
+ * the content of a message can't steer the responses. The pipes not used for
+ * longer than the idle time are closed when a new one is accepted or by
+ * {@link #evictIdle()}, the dead ones are dropped once looked up.
+ */
+public class AcceptedPipeRegistry {
+	/* Class members */
+	private final ConcurrentMap<JxtaBiDiPipe, Entry> accepted = new ConcurrentHashMap<JxtaBiDiPipe, Entry>();
+	/* By the id of the remote peer */
+	private final ConcurrentMap<String, Entry> byPeer = new ConcurrentHashMap<String, Entry>();
+	/* By the name the remote peer advertises */
+	private final ConcurrentMap<String, Entry> byName = new ConcurrentHashMap<String, Entry>();
+	/* How long a pipe may be idle, in milliseconds */
+	private final long idleMillis;
+	private static final Logger logger = Logger
+			.getLogger(AcceptedPipeRegistry.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a registry with the default idle time
+	 */
+	public AcceptedPipeRegistry() {
+		this(DefaultParameter.ACCEPTED_PIPE_IDLE.getCode());
+	}
+
+	/**
+	 * Creates a registry of the accepted pipes
+	 * 
+	 * @param idleMillis
+	 *            - how long a pipe may be idle before it is closed
+	 */
+	public AcceptedPipeRegistry(long idleMillis) {
+		if (idleMillis <= 0)
+			throw new IllegalArgumentException(
+					"The idle time must be possitive");
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Adds an accepted pipe and binds it to its remote peer. A peer that
+	 * connected again is bound to its newest pipe.
+	 * 
+	 * @param pipe
+	 *            - an accepted {@link JxtaBiDiPipe}
+	 */
+	public void accept(JxtaBiDiPipe pipe) {
+		Validator.validateObjNotNull(pipe);
+		Entry entry = new Entry(pipe);
+		accepted.put(pipe, entry);
+		if (entry.peerId != null) {
+			byPeer.put(entry.peerId, entry);
+		}
+		if (entry.name != null) {
+			byName.put(entry.name, entry);
+		}
+		if (entry.peerId == null && entry.name == null) {
+			logger.warn("An accepted pipe has no remote peer, "
+					+ "no response goes over it");
+		}
+		evictIdle();
+	}
+
+	/**
+	 * Marks an accepted pipe as used, e.g. a message came over it
+	 * 
+	 * @param pipe
+	 *            - a pipe the message came over
+	 * 
+	 * @return <b>false</b> if the pipe was not accepted by the server pipe
+	 */
+	public boolean touch(JxtaBiDiPipe pipe) {
+		Entry entry = accepted.get(pipe);
+		if (entry == null) {
+			return false;
+		}
+		entry.touch();
+		return true;
+	}
+
+	/**
+	 * Attains the pipe a peer is connected over
+	 * 
+	 * @param peer
+	 *            - an id of the remote peer, or the name it advertises
+	 * 
+	 * @return a {@link JxtaBiDiPipe}, null if the peer has no live pipe
+	 */
+	public JxtaBiDiPipe get(String peer) {
+		Validator.validateString(peer);
+		Entry entry = byPeer.get(peer);
+		if (entry == null) {
+			entry = byName.get(peer);
+		}
+		if (entry == null) {
+			return null;
+		}
+		if (!entry.pipe.isBound()) {
+			remove(entry.pipe);
+			return null;
+		}
+		entry.touch();
+		return entry.pipe;
+	}
+
+	/**
+	 * Drops and closes a pipe, e.g. it failed to send
+	 * 
+	 * @param pipe
+	 *            - an accepted {@link JxtaBiDiPipe}
+	 */
+	public void remove(JxtaBiDiPipe pipe) {
+		Entry entry = accepted.remove(pipe);
+		if (entry != null) {
+			if (entry.peerId != null) {
+				byPeer.remove(entry.peerId, entry);
+			}
+			if (entry.name != null) {
+				byName.remove(entry.name, entry);
+			}
+			close(pipe);
+		}
+	}
+
+	/**
+	 * Drops and closes the pipes idle longer than the idle time
+	 */
+	public void evictIdle() {
+		long now = System.currentTimeMillis();
+		List<JxtaBiDiPipe> idle = new ArrayList<JxtaBiDiPipe>();
+		Iterator<Entry> it = accepted.values().iterator();
+		while (it.hasNext()) {
+			Entry entry = it.next();
+			if (now - entry.lastUsed > idleMillis) {
+				idle.add(entry.pipe);
+			}
+		}
+		for (JxtaBiDiPipe pipe : idle) {
+			logger.debug("Closes an idle accepted pipe");
+			remove(pipe);
+		}
+	}
+
+	/**
+	 * Drops and closes all pipes
+	 */
+	public void close() {
+		for (JxtaBiDiPipe pipe : new ArrayList<JxtaBiDiPipe>(accepted.keySet())) {
+			remove(pipe);
+		}
+	}
+
+	/**
+	 * Returns a number of the accepted pipes
+	 * 
+	 * @return a size
+	 */
+	public int size() {
+		return accepted.size();
+	}
+
+	private void close(JxtaBiDiPipe pipe) {
+		try {
+			pipe.close();
+		} catch (IOException e) {
+			logger.error(AcceptedPipeRegistry.class.getName() + " "
+					+ e.getMessage());
+		} catch (RuntimeException e) {
+			logger.error(AcceptedPipeRegistry.class.getName() + " "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * An accepted pipe with its remote peer and the time it was last used
+	 */
+	private static class Entry {
+		private final JxtaBiDiPipe pipe;
+		private final String peerId;
+		private final String name;
+		private volatile long lastUsed = System.currentTimeMillis();
+
+		private Entry(JxtaBiDiPipe pipe) {
+			this.pipe = pipe;
+			/* Told by the peer when the pipe connected, not by its messages */
+			PeerAdvertisement remote = pipe.getRemotePeerAdvertisement();
+			this.peerId = remote == null || remote.getPeerID() == null ? null
+					: remote.getPeerID().toString();
+			this.name = remote == null ? null : remote.getName();
+		}
+
+		private void touch() {
+			lastUsed = System.currentTimeMillis();
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.pipe.PipeMsgListener;
+import net.jxta.util.JxtaBiDiPipe;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.discovery.PipeDiscovery;
+
+/**
+ * Creates the {@link JxtaBiDiPipe}s kept by a {@link PipePool}. A pipe is
+ * alive while it is bound.
+ */
+public class BiDiPipePoolFactory extends DiscoveredPipeFactory<JxtaBiDiPipe> {
+	/* Class members */
+	private PipeMsgListener listener = null;
+	private static final Logger logger = Logger
+			.getLogger(BiDiPipePoolFactory.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a factory of the bi-directional pipes
+	 * 
+	 * @param pipeFactory
+	 *            - a {@link PipeFactory}
+	 * @param peerGroup
+	 *            - a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            - a {@link PipeDiscovery}
+	 * @param listener
+	 *            - a {@link PipeMsgListener} for the responses
+	 */
+	public BiDiPipePoolFactory(PipeFactory pipeFactory, PeerGroup peerGroup,
+			PipeDiscovery pipeDiscovery, PipeMsgListener listener) {
+		super(pipeFactory, peerGroup, pipeDiscovery);
+		Validator.validateObjNotNull(listener);
+		this.listener = listener;
+	}
+
+	// @Override
+	public JxtaBiDiPipe create(String destination) throws IOException {
+		/* The pipe is connected by its constructor */
+		return getPipeFactory().createBiDiPipe(getPeerGroup(),
+				resolve(destination), destination, listener).getBidiPipe();
+	}
+
+	// @Override
+	public boolean isAlive(JxtaBiDiPipe pipe) {
+		return pipe.isBound();
+	}
+
+	// @Override
+	public void destroy(JxtaBiDiPipe pipe) {
+		try {
+			pipe.close();
+		} catch (IOException e) {
+			logger.error(BiDiPipePoolFactory.class.getName() + " "
+					+ e.getMessage());
+		}
+	}
+
+	// @Override
+	public void invalidate(JxtaBiDiPipe pipe) {
+		destroy(pipe);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import java.io.IOException;
+
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.protocol.PipeAdvertisement;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.discovery.PipeDiscovery;
+
+/**
+ * A base of the {@link PooledPipeFactory} that finds the pipe advertisement of
+ * the destination by means of a {@link PipeDiscovery}
+ * 
+ * @param <P>
+ *            a type of the pooled pipe
+ */
+public abstract class DiscoveredPipeFactory<P> implements PooledPipeFactory<P> {
+	/* Class members */
+	private PipeFactory pipeFactory = null;
+	private PeerGroup peerGroup = null;
+	private PipeDiscovery pipeDiscovery = null;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a factory of the pipes
+	 * 
+	 * @param pipeFactory
+	 *            - a {@link PipeFactory}
+	 * @param peerGroup
+	 *            - a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            - a {@link PipeDiscovery}
+	 */
+	public DiscoveredPipeFactory(PipeFactory pipeFactory, PeerGroup peerGroup,
+			PipeDiscovery pipeDiscovery) {
+		Validator.validateObjNotNull(pipeFactory);
+		Validator.validateObjNotNull(peerGroup);
+		Validator.validateObjNotNull(pipeDiscovery);
+		this.pipeFactory = pipeFactory;
+		this.peerGroup = peerGroup;
+		this.pipeDiscovery = pipeDiscovery;
+	}
+
+	/**
+	 * Seeks a pipe advertisement which name is the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a {@link PipeAdvertisement}
+	 * 
+	 * @throws IOException
+	 *             - if the destination is not found
+	 */
+	protected PipeAdvertisement resolve(String destination) throws IOException {
+		PipeAdvertisement pipeAdvertisement = getPipeDiscovery().lookupByName(
+				destination);
+		if (pipeAdvertisement == null) {
+			throw new IOException("Could not find [" + destination + "]");
+		}
+		return pipeAdvertisement;
+	}
+
+	/**
+	 * Attains a {@link PipeFactory}
+	 * 
+	 * @return a pipe factory
+	 */
+	protected PipeFactory getPipeFactory() {
+		return pipeFactory;
+	}
+
+	/**
+	 * Attains a {@link PeerGroup}
+	 * 
+	 * @return a peer group
+	 */
+	protected PeerGroup getPeerGroup() {
+		return peerGroup;
+	}
+
+	/**
+	 * Attains a {@link PipeDiscovery}
+	 * 
+	 * @return a pipe discovery
+	 */
+	protected PipeDiscovery getPipeDiscovery() {
+		return pipeDiscovery;
+	}
+}
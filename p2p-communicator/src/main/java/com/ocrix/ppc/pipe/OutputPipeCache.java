@@ -0,0 +1,366 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.id.ID;
+import net.jxta.pipe.OutputPipe;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Keeps the resolved {@link OutputPipe}s by their pipe id, so a pipe is
+ * resolved once and not for every message. An entry lives until its time to
+ * live is over, it is pushed out by the least recently used order when the
+ * cache is full, or it is invalidated because a send failed.
+ * <p>
+ * The cache owns its pipes. A pipe taken by {@link #acquire(ID)} or
+ * {@link #putAndAcquire(ID, OutputPipe)} is lent until it is given back by
+ * {@link #release(OutputPipe)}, an evicted pipe is closed once the last
+ * borrower gave it back, never while it is lent.
+ */
+public class OutputPipeCache {
+	/* Class members */
+	private final Map<ID, CachedPipe> entries;
+	/* The cached and the evicted but still lent pipes, guarded by entries */
+	private final Map<OutputPipe, CachedPipe> owned = new IdentityHashMap<OutputPipe, CachedPipe>();
+	/* Time to live of an entry in milliseconds */
+	private final long ttl;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private static final Logger logger = Logger
+			.getLogger(OutputPipeCache.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a cache with the default time to live and size
+	 */
+	public OutputPipeCache() {
+		this(DefaultParameter.OUTPUT_PIPE_TTL.getCode(),
+				DefaultParameter.OUTPUT_PIPE_CACHE_SIZE.getCode());
+	}
+
+	/**
+	 * Creates a cache of the output pipes
+	 * 
+	 * @param ttl
+	 *            - how long a resolved pipe is kept, in milliseconds
+	 * @param maxSize
+	 *            - how many pipes are kept
+	 */
+	public OutputPipeCache(long ttl, final int maxSize) {
+		Validator.validatePositive(maxSize);
+		if (ttl <= 0)
+			throw new IllegalArgumentException("The ttl must be possitive");
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<ID, CachedPipe>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<ID, CachedPipe> eldest) {
+				if (size() > maxSize) {
+					close(evict(eldest.getValue()));
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a resolved pipe
+	 * 
+	 * @param pipeId
+	 *            - an id of the pipe
+	 * 
+	 * @return an {@link OutputPipe} or null if the pipe is not cached, expired
+	 *         or closed
+	 */
+	public OutputPipe get(ID pipeId) {
+		return get(pipeId, false);
+	}
+
+	/**
+	 * Borrows a resolved pipe, it is not closed by the cache until it is
+	 * given back by {@link #release(OutputPipe)}
+	 * 
+	 * @param pipeId
+	 *            - an id of the pipe
+	 * 
+	 * @return an {@link OutputPipe} or null if the pipe is not cached, expired
+	 *         or closed
+	 */
+	public OutputPipe acquire(ID pipeId) {
+		return get(pipeId, true);
+	}
+
+	/**
+	 * Keeps a resolved pipe
+	 * 
+	 * @param pipeId
+	 *            - an id of the pipe
+	 * @param pipe
+	 *            - a resolved {@link OutputPipe}
+	 */
+	public void put(ID pipeId, OutputPipe pipe) {
+		put(pipeId, pipe, false);
+	}
+
+	/**
+	 * Keeps a resolved pipe and lends it to the caller, who gives it back by
+	 * {@link #release(OutputPipe)}
+	 * 
+	 * @param pipeId
+	 *            - an id of the pipe
+	 * @param pipe
+	 *            - a resolved {@link OutputPipe}
+	 */
+	public void putAndAcquire(ID pipeId, OutputPipe pipe) {
+		put(pipeId, pipe, true);
+	}
+
+	/**
+	 * Gives back a borrowed pipe. An evicted pipe is closed when its last
+	 * borrower gave it back.
+	 * 
+	 * @param pipe
+	 *            - an {@link OutputPipe}
+	 * 
+	 * @return <b>false</b> if the pipe is not owned by the cache, the caller
+	 *         closes it
+	 */
+	public boolean release(OutputPipe pipe) {
+		Validator.validateObjNotNull(pipe);
+		OutputPipe unused = null;
+		try {
+			synchronized (entries) {
+				CachedPipe entry = owned.get(pipe);
+				if (entry == null) {
+					return false;
+				}
+				if (entry.leases > 0) {
+					entry.leases--;
+				}
+				if (entry.isEvicted && entry.leases == 0) {
+					owned.remove(pipe);
+					unused = pipe;
+				}
+				return true;
+			}
+		} finally {
+			close(unused);
+		}
+	}
+
+	/**
+	 * Checks if the very pipe is kept by the cache
+	 * 
+	 * @param pipe
+	 *            - an {@link OutputPipe}
+	 * 
+	 * @return <b>true</b> if the cache owns the pipe
+	 */
+	public boolean contains(OutputPipe pipe) {
+		synchronized (entries) {
+			CachedPipe entry = entries.get(pipe.getPipeID());
+			return entry != null && entry.pipe == pipe;
+		}
+	}
+
+	/**
+	 * Drops and closes the pipe, i.e. when a send over it failed
+	 * 
+	 * @param pipeId
+	 *            - an id of the pipe
+	 */
+	public void invalidate(ID pipeId) {
+		OutputPipe unused = null;
+		synchronized (entries) {
+			CachedPipe entry = entries.remove(pipeId);
+			if (entry == null) {
+				return;
+			}
+			unused = evict(entry);
+		}
+		logger.debug("Invalidated an output pipe " + pipeId);
+		close(unused);
+	}
+
+	/**
+	 * Drops all pipes and closes the ones not lent
+	 */
+	public void clear() {
+		List<OutputPipe> unused = new ArrayList<OutputPipe>();
+		synchronized (entries) {
+			for (CachedPipe entry : entries.values()) {
+				unused.add(evict(entry));
+			}
+			entries.clear();
+		}
+		for (OutputPipe pipe : unused) {
+			close(pipe);
+		}
+	}
+
+	/**
+	 * Drops the pipes which time to live is over and closes the ones not
+	 * lent
+	 */
+	public void evictExpired() {
+		List<OutputPipe> unused = new ArrayList<OutputPipe>();
+		synchronized (entries) {
+			Iterator<CachedPipe> it = entries.values().iterator();
+			while (it.hasNext()) {
+				CachedPipe entry = it.next();
+				if (!entry.isValid(ttl)) {
+					it.remove();
+					unused.add(evict(entry));
+				}
+			}
+		}
+		for (OutputPipe pipe : unused) {
+			close(pipe);
+		}
+	}
+
+	/**
+	 * Returns a number of cached pipes
+	 * 
+	 * @return a size
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns how many times a resolved pipe was found
+	 * 
+	 * @return a hit count
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns how many times a pipe had to be resolved
+	 * 
+	 * @return a miss count
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	private OutputPipe get(ID pipeId, boolean isLent) {
+		Validator.validateObjNotNull(pipeId);
+		OutputPipe expired = null;
+		try {
+			synchronized (entries) {
+				CachedPipe entry = entries.get(pipeId);
+				if (entry != null && entry.isValid(ttl)) {
+					hits.incrementAndGet();
+					if (isLent) {
+						entry.leases++;
+					}
+					return entry.pipe;
+				}
+				if (entry != null) {
+					entries.remove(pipeId);
+					expired = evict(entry);
+				}
+			}
+			misses.incrementAndGet();
+			return null;
+		} finally {
+			close(expired);
+		}
+	}
+
+	private void put(ID pipeId, OutputPipe pipe, boolean isLent) {
+		Validator.validateObjNotNull(pipeId);
+		Validator.validateObjNotNull(pipe);
+		OutputPipe unused = null;
+		synchronized (entries) {
+			CachedPipe entry = owned.get(pipe);
+			if (entry == null || entry.isEvicted) {
+				entry = new CachedPipe(pipe, entry == null ? 0 : entry.leases);
+				owned.put(pipe, entry);
+			}
+			if (isLent) {
+				entry.leases++;
+			}
+			CachedPipe replaced = entries.put(pipeId, entry);
+			if (replaced != null && replaced != entry) {
+				unused = evict(replaced);
+			}
+		}
+		close(unused);
+	}
+
+	/**
+	 * Marks a pipe dropped from the entries as evicted, must hold the lock of
+	 * the entries
+	 * 
+	 * @return the pipe to be closed, null while it is lent
+	 */
+	private OutputPipe evict(CachedPipe entry) {
+		entry.isEvicted = true;
+		if (entry.leases > 0) {
+			return null;
+		}
+		owned.remove(entry.pipe);
+		return entry.pipe;
+	}
+
+	private static void close(OutputPipe pipe) {
+		if (pipe != null && !pipe.isClosed()) {
+			pipe.close();
+		}
+	}
+
+	/**
+	 * A resolved pipe and the time it was resolved
+	 */
+	private static class CachedPipe {
+		private final OutputPipe pipe;
+		private final long created = System.currentTimeMillis();
+		/* How many borrowers hold the pipe, guarded by the entries */
+		private int leases;
+		private boolean isEvicted = false;
+
+		private CachedPipe(OutputPipe pipe, int leases) {
+			this.pipe = pipe;
+			this.leases = leases;
+		}
+
+		private boolean isValid(long ttl) {
+			return !pipe.isClosed()
+					&& System.currentTimeMillis() - created < ttl;
+		}
+	}
+}
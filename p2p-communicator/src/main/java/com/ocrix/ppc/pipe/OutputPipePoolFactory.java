@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import java.io.IOException;
+
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.pipe.OutputPipe;
+
+import com.ocrix.ppc.discovery.PipeDiscovery;
+
+/**
+ * Creates the {@link OutputPipe}s kept by a {@link PipePool}. A pipe is alive
+ * until it is closed. If the {@link PipeFactory} has an
+ * {@link OutputPipeCache}, a pipe is resolved once and lent by the cache, a
+ * destroyed pipe is given back to it and the cache closes it once no pooled
+ * pipe holds it.
+ */
+public class OutputPipePoolFactory extends DiscoveredPipeFactory<OutputPipe> {
+
+	/**
+	 * Creates a factory of the output pipes
+	 * 
+	 * @param pipeFactory
+	 *            - a {@link PipeFactory}
+	 * @param peerGroup
+	 *            - a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            - a {@link PipeDiscovery}
+	 */
+	public OutputPipePoolFactory(PipeFactory pipeFactory, PeerGroup peerGroup,
+			PipeDiscovery pipeDiscovery) {
+		super(pipeFactory, peerGroup, pipeDiscovery);
+	}
+
+	// @Override
+	public OutputPipe create(String destination) throws IOException {
+		return getPipeFactory().createOutputPipe(getPeerGroup(),
+				resolve(destination));
+	}
+
+	// @Override
+	public boolean isAlive(OutputPipe pipe) {
+		return !pipe.isClosed();
+	}
+
+	// @Override
+	public void destroy(OutputPipe pipe) {
+		getPipeFactory().releaseOutputPipe(pipe);
+	}
+
+	// @Override
+	public void invalidate(OutputPipe pipe) {
+		getPipeFactory().invalidateOutputPipe(pipe);
+	}
+}
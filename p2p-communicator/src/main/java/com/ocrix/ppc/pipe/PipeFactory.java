@@ -22,6 +22,8 @@ import net.jxta.pipe.PipeMsgListener;
 import net.jxta.protocol.PipeAdvertisement;
 import net.jxta.util.ServerPipeAcceptListener;
 
+import com.ocrix.ppc.commons.Validator;
+
 /**
  * Intended for pipe creation as the following:
  * <ul>
@@ -44,10 +46,23 @@ import net.jxta.util.ServerPipeAcceptListener;
  * </ul>
  */
 public class PipeFactory {
+	/* Resolved output pipes, may be null */
+	private OutputPipeCache outputPipeCache = null;
 
 	public PipeFactory() {
 	}
 
+	/**
+	 * Creates a pipe factory that keeps the resolved output pipes
+	 * 
+	 * @param outputPipeCache
+	 *            - an {@link OutputPipeCache}
+	 */
+	public PipeFactory(OutputPipeCache outputPipeCache) {
+		Validator.validateObjNotNull(outputPipeCache);
+		this.outputPipeCache = outputPipeCache;
+	}
+
 	/**
 	 * Creates unicast pipe
 	 * 
@@ -185,7 +200,50 @@ public class PipeFactory {
 	 */
 	public OutputPipe createOutputPipe(PeerGroup peerGroup,
 			PipeAdvertisement pipeAdv) throws IOException {
-		SenderPipe senderPipe = new SenderPipe();
+		SenderPipe senderPipe = new SenderPipe(getOutputPipeCache());
 		return senderPipe.createSenderPipe(peerGroup, pipeAdv);
 	}
+
+	/**
+	 * Gives back an output pipe which is not needed anymore. A pipe of the
+	 * cache is closed by the cache once it is evicted and no one holds it,
+	 * another pipe is closed here.
+	 * 
+	 * @param pipe
+	 *            - an output pipe
+	 */
+	public void releaseOutputPipe(OutputPipe pipe) {
+		Validator.validateObjNotNull(pipe);
+		if (getOutputPipeCache() == null
+				|| !getOutputPipeCache().release(pipe)) {
+			if (!pipe.isClosed()) {
+				pipe.close();
+			}
+		}
+	}
+
+	/**
+	 * Drops an output pipe which failed to send from the cache and gives it
+	 * back, it is closed once the other borrowers gave it back too
+	 * 
+	 * @param pipe
+	 *            - an output pipe
+	 */
+	public void invalidateOutputPipe(OutputPipe pipe) {
+		Validator.validateObjNotNull(pipe);
+		if (getOutputPipeCache() != null
+				&& getOutputPipeCache().contains(pipe)) {
+			getOutputPipeCache().invalidate(pipe.getPipeID());
+		}
+		releaseOutputPipe(pipe);
+	}
+
+	/**
+	 * Returns a cache of the resolved output pipes
+	 * 
+	 * @return an {@link OutputPipeCache} or null
+	 */
+	public OutputPipeCache getOutputPipeCache() {
+		return outputPipeCache;
+	}
 }
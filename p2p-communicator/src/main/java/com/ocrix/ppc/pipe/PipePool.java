@@ -0,0 +1,377 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Keeps connected pipes per destination, so the connection handshake is paid
+ * once and not for every message. A borrowed pipe has to be given back by
+ * {@link #release(String, Object)} or, if it failed, by
+ * {@link #invalidate(String, Object)}.
+ * 
+ * @param <P>
+ *            a type of the pooled pipe
+ */
+public class PipePool<P> {
+	/* Class members */
+	private final ConcurrentMap<String, Slot<P>> slots = new ConcurrentHashMap<String, Slot<P>>();
+	private PooledPipeFactory<P> factory = null;
+	/* How many idle pipes are kept per destination */
+	private int maxIdle;
+	/* How many pipes may be opened to a single destination */
+	private int maxPerDestination;
+	private volatile boolean isClosed = false;
+	private static final Logger logger = Logger.getLogger(PipePool.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a pipe pool with the default limits
+	 * 
+	 * @param factory
+	 *            - a {@link PooledPipeFactory}
+	 */
+	public PipePool(PooledPipeFactory<P> factory) {
+		this(factory, DefaultParameter.MAX_IDLE_PIPES.getCode(),
+				DefaultParameter.MAX_PIPES_PER_DESTINATION.getCode());
+	}
+
+	/**
+	 * Creates a pipe pool
+	 * 
+	 * @param factory
+	 *            - a {@link PooledPipeFactory}
+	 * @param maxIdle
+	 *            - how many idle pipes are kept per destination
+	 * @param maxPerDestination
+	 *            - how many pipes may be opened to a single destination
+	 */
+	public PipePool(PooledPipeFactory<P> factory, int maxIdle,
+			int maxPerDestination) {
+		Validator.validateObjNotNull(factory);
+		Validator.validateInt(maxIdle);
+		Validator.validatePositive(maxPerDestination);
+		this.factory = factory;
+		this.maxIdle = maxIdle;
+		this.maxPerDestination = maxPerDestination;
+	}
+
+	/**
+	 * Borrows a pipe to the destination, waits for a free one if the limit of
+	 * the destination is reached.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a connected pipe
+	 * 
+	 * @throws IOException
+	 *             - if a pipe could not be created or none was given back in
+	 *             time
+	 */
+	public P borrow(String destination) throws IOException {
+		return borrow(destination,
+				DefaultParameter.WAIT_TIME_PIPE_CREATION.getCode());
+	}
+
+	/**
+	 * Borrows a pipe to the destination. An idle pipe is reused if it is
+	 * alive, the dead ones are evicted. A new pipe is created only if the
+	 * limit of the destination permits.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param timeout
+	 *            - how long to wait for a free pipe, in milliseconds
+	 * 
+	 * @return a connected pipe
+	 * 
+	 * @throws IOException
+	 *             - if a pipe could not be created or none was given back in
+	 *             time
+	 */
+	public P borrow(String destination, long timeout) throws IOException {
+		Validator.validateString(destination);
+		Slot<P> slot = getSlot(destination);
+		List<P> dead = new ArrayList<P>();
+		long deadline = System.currentTimeMillis() + timeout;
+
+		try {
+			synchronized (slot) {
+				while (true) {
+					if (isClosed) {
+						throw new IOException("The pipe pool is closed");
+					}
+					P pipe = null;
+					while ((pipe = slot.idle.pollFirst()) != null) {
+						if (factory.isAlive(pipe)) {
+							return pipe;
+						}
+						slot.total--;
+						dead.add(pipe);
+					}
+					if (slot.total < maxPerDestination) {
+						/* Reserves a place, the pipe is created out of lock */
+						slot.total++;
+						break;
+					}
+					long left = deadline - System.currentTimeMillis();
+					if (left <= 0) {
+						throw new IOException("No pipe to [" + destination
+								+ "] was released within " + timeout + " ms");
+					}
+					try {
+						slot.wait(left);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IOException(e.getMessage());
+					}
+				}
+			}
+		} finally {
+			destroy(dead);
+		}
+
+		return create(destination, slot);
+	}
+
+	/**
+	 * Gives a pipe back. The pipe is kept for the next borrower if it is alive
+	 * and the destination has less than max idle pipes, otherwise it is closed.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param pipe
+	 *            - a borrowed pipe
+	 */
+	public void release(String destination, P pipe) {
+		Validator.validateObjNotNull(pipe);
+		Slot<P> slot = slots.get(destination);
+		boolean isKept = false;
+		if (slot != null) {
+			synchronized (slot) {
+				isKept = !isClosed && slot.idle.size() < maxIdle
+						&& factory.isAlive(pipe);
+				if (isKept) {
+					slot.idle.offerFirst(pipe);
+				} else {
+					slot.total--;
+				}
+				slot.notifyAll();
+			}
+		}
+		if (!isKept) {
+			destroy(pipe);
+		}
+	}
+
+	/**
+	 * Closes a borrowed pipe that failed and frees its place
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param pipe
+	 *            - a borrowed pipe
+	 */
+	public void invalidate(String destination, P pipe) {
+		Validator.validateObjNotNull(pipe);
+		Slot<P> slot = slots.get(destination);
+		if (slot != null) {
+			synchronized (slot) {
+				slot.total--;
+				slot.notifyAll();
+			}
+		}
+		try {
+			factory.invalidate(pipe);
+		} catch (RuntimeException e) {
+			logger.error(PipePool.class.getName() + " " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes all idle pipes that are not alive anymore
+	 */
+	public void evict() {
+		List<P> dead = new ArrayList<P>();
+		for (Slot<P> slot : slots.values()) {
+			synchronized (slot) {
+				Iterator<P> it = slot.idle.iterator();
+				while (it.hasNext()) {
+					P pipe = it.next();
+					if (!factory.isAlive(pipe)) {
+						it.remove();
+						slot.total--;
+						dead.add(pipe);
+					}
+				}
+				slot.notifyAll();
+			}
+		}
+		destroy(dead);
+	}
+
+	/**
+	 * Closes all idle pipes, the borrowed ones are closed once released
+	 */
+	public void close() {
+		isClosed = true;
+		List<P> idle = new ArrayList<P>();
+		for (Slot<P> slot : slots.values()) {
+			synchronized (slot) {
+				slot.total -= slot.idle.size();
+				idle.addAll(slot.idle);
+				slot.idle.clear();
+				slot.notifyAll();
+			}
+		}
+		destroy(idle);
+	}
+
+	/**
+	 * Returns a number of idle pipes to the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return an idle count
+	 */
+	public int getIdleCount(String destination) {
+		Slot<P> slot = slots.get(destination);
+		if (slot == null) {
+			return 0;
+		}
+		synchronized (slot) {
+			return slot.idle.size();
+		}
+	}
+
+	/**
+	 * Returns a number of borrowed pipes to the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a borrowed count
+	 */
+	public int getActiveCount(String destination) {
+		Slot<P> slot = slots.get(destination);
+		if (slot == null) {
+			return 0;
+		}
+		synchronized (slot) {
+			return slot.total - slot.idle.size();
+		}
+	}
+
+	/**
+	 * Indicates if the pool was closed
+	 * 
+	 * @return <b>true</b> if closed
+	 */
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	/**
+	 * Creates a pipe for the place reserved in the slot, frees the place if
+	 * the creation failed
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param slot
+	 *            - a slot of the destination
+	 * 
+	 * @return a new pipe
+	 * 
+	 * @throws IOException
+	 */
+	private P create(String destination, Slot<P> slot) throws IOException {
+		P pipe = null;
+		try {
+			pipe = factory.create(destination);
+			if (pipe == null) {
+				throw new IOException("Could not create a pipe to ["
+						+ destination + "]");
+			}
+			logger.debug("Created a pooled pipe to " + destination);
+			return pipe;
+		} finally {
+			if (pipe == null) {
+				synchronized (slot) {
+					slot.total--;
+					slot.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Attains a slot of the destination, creates it at first use
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a slot
+	 */
+	private Slot<P> getSlot(String destination) {
+		Slot<P> slot = slots.get(destination);
+		if (slot == null) {
+			Slot<P> created = new Slot<P>();
+			slot = slots.putIfAbsent(destination, created);
+			if (slot == null) {
+				slot = created;
+			}
+		}
+		return slot;
+	}
+
+	private void destroy(List<P> pipes) {
+		for (P pipe : pipes) {
+			destroy(pipe);
+		}
+	}
+
+	private void destroy(P pipe) {
+		try {
+			factory.destroy(pipe);
+		} catch (RuntimeException e) {
+			logger.error(PipePool.class.getName() + " " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Pipes of a single destination, guarded by its own monitor
+	 */
+	private static class Slot<P> {
+		/* The most recently used pipe is at the head */
+		private final Deque<P> idle = new ArrayDeque<P>();
+		/* Idle and borrowed pipes */
+		private int total = 0;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import java.io.IOException;
+
+/**
+ * Creates, checks and destroys the pipes kept by a {@link PipePool}
+ * 
+ * @param <P>
+ *            a type of the pooled pipe
+ */
+public interface PooledPipeFactory<P> {
+
+	/**
+	 * Creates a pipe connected to the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a connected pipe
+	 * 
+	 * @throws IOException
+	 *             - if the destination could not be found or connected
+	 */
+	P create(String destination) throws IOException;
+
+	/**
+	 * Checks if the pipe can still be used
+	 * 
+	 * @param pipe
+	 *            - a pooled pipe
+	 * 
+	 * @return <b>true</b> if the pipe is alive
+	 */
+	boolean isAlive(P pipe);
+
+	/**
+	 * Closes the pipe
+	 * 
+	 * @param pipe
+	 *            - a pooled pipe
+	 */
+	void destroy(P pipe);
+
+	/**
+	 * Closes the pipe that failed, i.e. a send over it did not succeed
+	 * 
+	 * @param pipe
+	 *            - a pooled pipe
+	 */
+	void invalidate(P pipe);
+}
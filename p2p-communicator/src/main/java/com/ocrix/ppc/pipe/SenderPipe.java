@@ -28,6 +28,25 @@ import com.ocrix.ppc.type.DefaultParameter;
  * input pipe. Output pipe will wait until input pipe will be resolved.
  */
 public class SenderPipe {
+	/* Resolved pipes, may be null */
+	private OutputPipeCache outputPipeCache = null;
+
+	/**
+	 * Creates a sender pipe that resolves a pipe every time
+	 */
+	public SenderPipe() {
+	}
+
+	/**
+	 * Creates a sender pipe that resolves a pipe once and takes it from the
+	 * cache afterwards
+	 * 
+	 * @param outputPipeCache
+	 *            - an {@link OutputPipeCache}, may be null
+	 */
+	public SenderPipe(OutputPipeCache outputPipeCache) {
+		this.outputPipeCache = outputPipeCache;
+	}
 
 	/**
 	 * Creates an output pipe with 0 timeout, that means will waits infinitely
@@ -46,8 +65,21 @@ public class SenderPipe {
 	public OutputPipe createSenderPipe(PeerGroup peerGroup,
 			PipeAdvertisement pipeAdvertisement) throws IOException {
 		validateParameters(peerGroup, pipeAdvertisement);
-		return peerGroup.getPipeService().createOutputPipe(pipeAdvertisement,
-				DefaultParameter.WAIT_TIME_PIPE_CREATION.getCode());
+		if (outputPipeCache == null) {
+			return peerGroup.getPipeService().createOutputPipe(
+					pipeAdvertisement,
+					DefaultParameter.WAIT_TIME_PIPE_CREATION.getCode());
+		}
+		/* The pipe is lent, the cache does not close it until it is released */
+		OutputPipe pipe = outputPipeCache.acquire(pipeAdvertisement
+				.getPipeID());
+		if (pipe == null) {
+			pipe = peerGroup.getPipeService().createOutputPipe(
+					pipeAdvertisement,
+					DefaultParameter.WAIT_TIME_PIPE_CREATION.getCode());
+			outputPipeCache.putAndAcquire(pipeAdvertisement.getPipeID(), pipe);
+		}
+		return pipe;
 	}
 
 	/**
@@ -0,0 +1,89 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Defines when a destination sender closes a batch: after a number of
+ * messages, after a number of bytes or when no more messages arrive within the
+ * linger time, whichever comes first.
+ */
+public class BatchPolicy {
+	/* Class members */
+	private final int maxMessages;
+	private final int maxBytes;
+	private final long lingerMicros;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a batch policy with the default limits
+	 */
+	public BatchPolicy() {
+		this(DefaultParameter.BATCH_MAX_MESSAGES.getCode(),
+				DefaultParameter.BATCH_MAX_BYTES.getCode(),
+				DefaultParameter.BATCH_LINGER_MICROS.getCode());
+	}
+
+	/**
+	 * Creates a batch policy
+	 * 
+	 * @param maxMessages
+	 *            - how many messages are packed at most
+	 * @param maxBytes
+	 *            - how many bytes are packed at most, a single message may
+	 *            exceed it
+	 * @param lingerMicros
+	 *            - how long to wait for the next message, in microseconds
+	 */
+	public BatchPolicy(int maxMessages, int maxBytes, long lingerMicros) {
+		Validator.validatePositive(maxMessages);
+		Validator.validatePositive(maxBytes);
+		if (lingerMicros < 0)
+			throw new IllegalArgumentException("The number must be possitive");
+		this.maxMessages = maxMessages;
+		this.maxBytes = maxBytes;
+		this.lingerMicros = lingerMicros;
+	}
+
+	/**
+	 * Returns how many messages are packed at most
+	 * 
+	 * @return a number of messages
+	 */
+	public int getMaxMessages() {
+		return maxMessages;
+	}
+
+	/**
+	 * Returns how many bytes are packed at most
+	 * 
+	 * @return a number of bytes
+	 */
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns how long to wait for the next message
+	 * 
+	 * @return a linger time in microseconds
+	 */
+	public long getLingerMicros() {
+		return lingerMicros;
+	}
+}
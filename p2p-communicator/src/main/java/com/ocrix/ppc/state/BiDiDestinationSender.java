@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.util.JxtaBiDiPipe;
+
+import com.ocrix.ppc.message.HeaderDictionary;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.threadpool.BlockingCall;
+
+/**
+ * Sends the messages of one destination over a connected {@link JxtaBiDiPipe}
+ * borrowed from the pool of the engine. The pipe is given back after each
+ * message and reused by the next one, a pipe that failed is evicted and the
+ * message is retried by the {@link RetryScheduler} of the engine over a newly
+ * connected one.
+ */
+public class BiDiDestinationSender extends DestinationSender {
+	/* Class members */
+	private static final Logger logger = Logger
+			.getLogger(BiDiDestinationSender.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a bi-directional sender of one destination
+	 * 
+	 * @param engine
+	 *            - a {@link BiDiSenderEngine} that owns the sender
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param window
+	 *            - a capacity of the destination queue
+	 */
+	public BiDiDestinationSender(BiDiSenderEngine engine, String destination,
+			int window) {
+		super(engine, destination, window);
+	}
+
+	@Override
+	protected boolean deliver(Message message) {
+		boolean status = false;
+		JxtaBiDiPipe pipe = null;
+		try {
+			pipe = borrow();
+			net.jxta.endpoint.Message wire = message;
+			if (getEngine().isCompactHeaders()) {
+				/* The pipe is borrowed alone, so the copies go out in order */
+				wire = HeaderDictionary.forConnection(pipe).compact(message);
+			}
+			status = send(pipe, wire);
+		} catch (IOException e) {
+			logger.error(BiDiDestinationSender.class.getName() + " "
+					+ e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error(BiDiDestinationSender.class.getName()
+					+ " interrupted while sending to " + getDestination());
+		} finally {
+			if (pipe != null && status) {
+				getEngine().getPipePool().release(getDestination(), pipe);
+			} else if (pipe != null) {
+				/* The names defined to a broken pipe may be lost */
+				HeaderDictionary.release(pipe);
+				getEngine().getPipePool().invalidate(getDestination(), pipe);
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * Borrows a pipe, the pool may wait for a free one
+	 */
+	private JxtaBiDiPipe borrow() throws IOException, InterruptedException {
+		return new BlockingCall<JxtaBiDiPipe>() {
+			@Override
+			protected JxtaBiDiPipe call() throws IOException {
+				return getEngine().getPipePool().borrow(getDestination());
+			}
+		}.invoke();
+	}
+
+	/**
+	 * Sends a message, the pipe may block until the peer takes it
+	 */
+	private static boolean send(final JxtaBiDiPipe pipe,
+			final net.jxta.endpoint.Message wire) throws IOException,
+			InterruptedException {
+		return new BlockingCall<Boolean>() {
+			@Override
+			protected Boolean call() throws IOException {
+				return pipe.sendMessage(wire);
+			}
+		}.invoke();
+	}
+
+	@Override
+	protected void close() {
+		/* The pipes belong to the pool of the engine */
+	}
+
+	@Override
+	protected BiDiSenderEngine getEngine() {
+		return (BiDiSenderEngine) super.getEngine();
+	}
+}
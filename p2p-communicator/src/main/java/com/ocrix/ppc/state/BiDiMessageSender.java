@@ -15,7 +15,6 @@
 package com.ocrix.ppc.state;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
@@ -31,6 +30,7 @@ import com.ocrix.ppc.discovery.PipeDiscovery;
 import com.ocrix.ppc.exception.PPCException;
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.pipe.PipeFactory;
+import com.ocrix.ppc.pipe.PipePool;
 import com.ocrix.ppc.type.DefaultParameter;
 import com.ocrix.ppc.type.Tag;
 
@@ -57,6 +57,8 @@ public class BiDiMessageSender implements Runnable {
 	private int retry = 0;
 
 	private volatile JxtaBiDiPipe pipe;
+	/* If set, the pipes are borrowed instead of created per message */
+	private PipePool<JxtaBiDiPipe> pipePool = null;
 	private Logger logger = Logger.getLogger(BiDiMessageSender.class);
 
 	/* ---------- end of class members --------- */
@@ -145,6 +147,34 @@ public class BiDiMessageSender implements Runnable {
 		setRetry(retry);
 	}
 
+	/**
+	 * Creates an instance of Bi-directional message sender that borrows the
+	 * connected pipes from the pool
+	 * 
+	 * @param backLog
+	 *            a message buffer
+	 * @param pipeFactory
+	 *            a {@link PipeFactory}
+	 * @param peerGroup
+	 *            a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            a {@link PipeDiscovery}
+	 * @param listener
+	 *            a {@link PipeMsgListener}
+	 * @param retry
+	 *            a number of retries
+	 * @param pipePool
+	 *            a {@link PipePool} of the bi-directional pipes
+	 */
+	public BiDiMessageSender(BlockingQueue<Message> backLog,
+			PipeFactory pipeFactory, PeerGroup peerGroup,
+			PipeDiscovery pipeDiscovery, PipeMsgListener listener, int retry,
+			PipePool<JxtaBiDiPipe> pipePool) {
+		this(backLog, pipeFactory, peerGroup, pipeDiscovery, listener, retry);
+		Validator.validateObjNotNull(pipePool);
+		this.pipePool = pipePool;
+	}
+
 	/**
 	 * Sets a status flag.
 	 * 
@@ -160,6 +190,10 @@ public class BiDiMessageSender implements Runnable {
 		Validator.validateObjNotNull(getMessage());
 		Thread.currentThread().setName(
 				Tag.BIDI_THREAD_PREFIX.getValue() + System.currentTimeMillis());
+		if (pipePool != null) {
+			sendPooledMessage();
+			return;
+		}
 		try {
 			pipeAdvertisement = lookupPipe(pipeAdvertisement);
 			if (pipeAdvertisement != null) {
@@ -219,16 +253,9 @@ public class BiDiMessageSender implements Runnable {
 	 */
 	private PipeAdvertisement lookupPipe(PipeAdvertisement pipeAdvertisement)
 			throws PPCException {
-		List<PipeAdvertisement> findings = null;
-
 		try {
-			findings = pipeDiscovery.lookup();
-			for (PipeAdvertisement ps : findings) {
-				if (ps.toString().contains(getMessage().getDestination())) {
-					pipeAdvertisement = ps;
-					break;
-				}
-			}
+			pipeAdvertisement = pipeDiscovery.lookupByName(getMessage()
+					.getDestination());
 		} catch (Exception e) {
 			throw new PPCException(e);
 		}
@@ -276,6 +303,43 @@ public class BiDiMessageSender implements Runnable {
 		}
 	}
 
+	/**
+	 * Sends a message over a pipe borrowed from the pool. A pipe that failed
+	 * is evicted from the pool and the next trial takes another one.
+	 */
+	private void sendPooledMessage() {
+		String destination = getMessage().getDestination();
+		int countDown = getRetry();
+		boolean status = false;
+
+		while (!Thread.currentThread().isInterrupted() && !isStopped && !status
+				&& countDown-- > 0) {
+			JxtaBiDiPipe borrowed = null;
+			try {
+				borrowed = pipePool.borrow(destination);
+				status = borrowed.sendMessage(getMessage());
+				logger.debug("is message send " + status);
+			} catch (IOException e) {
+				logger.error(BiDiMessageSender.class.getName() + " "
+						+ e.getMessage());
+			} finally {
+				if (borrowed != null && status) {
+					pipePool.release(destination, borrowed);
+				} else if (borrowed != null) {
+					pipePool.invalidate(destination, borrowed);
+				}
+			}
+			if (!status && countDown > 0) {
+				PPCUtils.sleep(DefaultParameter.TWO_SEC.getCode());
+			}
+		}
+
+		if (!status) {
+			logger.warn("Could not send message, as result the message ["
+					+ getMessage() + "] is dropped");
+		}
+	}
+
 	private void closePipe() {
 		try {
 			logger.debug("Closing a BIDI PIPE");
@@ -299,32 +363,19 @@ public class BiDiMessageSender implements Runnable {
 	 *             - if {@link DiscoveryService} could be be initialized
 	 */
 	private PipeAdvertisement waitForFindingPipe(int numberOfTrials) {
-		boolean isFound = false;
 		int countDown = numberOfTrials;
 		PipeAdvertisement pipeAdvertisement = null;
 		Validator.validateObjNotNull(getPipeDiscovery());
-		List<PipeAdvertisement> findings = null;
 
 		while (!Thread.currentThread().isInterrupted() && !isStopped
-				&& !isFound && countDown-- > 0) {
+				&& pipeAdvertisement == null && countDown-- > 0) {
 
 			try {
-				findings = getPipeDiscovery().lookup();
-				if (findings != null && !findings.isEmpty()
-						&& findings.size() > 0) {
-					for (PipeAdvertisement ps : findings) {
-						if (ps.toString().contains(message.getDestination())) {
-							pipeAdvertisement = ps;
-							isFound = true;
-							break;
-						}
-					}
-				} else {
+				pipeAdvertisement = getPipeDiscovery().lookupByName(
+						message.getDestination());
+				if (pipeAdvertisement == null && countDown > 0) {
 					sleep();
 				}
-			} catch (PPCException e) {
-				logger.error(BiDiMessageSender.class.getName() + " "
-						+ e.getMessage());
 			} catch (IOException e) {
 				logger.error(e);
 			}
@@ -357,17 +408,21 @@ public class BiDiMessageSender implements Runnable {
 					logger.error(e);
 				}
 			}
-			sleep();
+			if (!status && countDown > 0) {
+				sleep();
+			}
 		}
 	}
 
 	/**
-	 * Thread.sleep. A default is a two seconds
+	 * Thread.sleep. A default is a two seconds, TWO_SEC is in milliseconds
 	 */
 	private void sleep() {
 		try {
-			TimeUnit.SECONDS.sleep(DefaultParameter.TWO_SEC.getCode());
+			TimeUnit.MILLISECONDS.sleep(DefaultParameter.TWO_SEC.getCode());
 		} catch (InterruptedException e) {
+			/* Preserves interrupt status, the loops stop on it */
+			Thread.currentThread().interrupt();
 			logger.error(BiDiMessageSender.class.getName() + " "
 					+ e.getMessage());
 		}
@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.pipe.PipeMsgListener;
+import net.jxta.util.JxtaBiDiPipe;
+
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.discovery.PipeDiscovery;
+import com.ocrix.ppc.message.HeaderDictionary;
+import com.ocrix.ppc.pipe.BiDiPipePoolFactory;
+import com.ocrix.ppc.pipe.PipeFactory;
+import com.ocrix.ppc.pipe.PipePool;
+import com.ocrix.ppc.threadpool.TaskManager;
+
+/**
+ * A {@link SenderEngine} of the bi-directional peer, creates a
+ * {@link BiDiDestinationSender} per destination. The connected pipes are kept
+ * in a {@link PipePool} shared by the senders.
+ */
+public class BiDiSenderEngine extends SenderEngine {
+	/* Class members */
+	private PipePool<JxtaBiDiPipe> pipePool = null;
+	/* Whether the messages are sent with the compact headers */
+	private volatile boolean isCompactHeaders = false;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates an engine of the bi-directional senders
+	 * 
+	 * @param taskManager
+	 *            - a {@link TaskManager} that runs the senders
+	 * @param pipeFactory
+	 *            - a {@link PipeFactory}
+	 * @param peerGroup
+	 *            - a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            - a {@link PipeDiscovery}
+	 * @param listener
+	 *            - a {@link PipeMsgListener} for the responses
+	 */
+	public BiDiSenderEngine(TaskManager taskManager, PipeFactory pipeFactory,
+			PeerGroup peerGroup, PipeDiscovery pipeDiscovery,
+			PipeMsgListener listener) {
+		super(taskManager);
+		Validator.validateNetPeerGroup(peerGroup);
+		setPipePool(new PipePool<JxtaBiDiPipe>(new BiDiPipePoolFactory(
+				pipeFactory, peerGroup, pipeDiscovery, listener)));
+		/* A number of trials is configurable */
+		String retry = PPCUtils.getValue("retry");
+		if (retry != null && !retry.trim().isEmpty()) {
+			setRetry(Integer.valueOf(retry.trim()));
+		}
+		/* The old encoding is kept unless the peers agree on the compact one */
+		String compact = PPCUtils.getValue("compact.headers");
+		if (compact != null && !compact.trim().isEmpty()) {
+			setCompactHeaders(Boolean.parseBoolean(compact.trim()));
+		}
+	}
+
+	@Override
+	protected DestinationSender createDestinationSender(String destination,
+			int window) {
+		return new BiDiDestinationSender(this, destination, window);
+	}
+
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		getPipePool().close();
+	}
+
+	/**
+	 * Attains a pool of the connected pipes
+	 * 
+	 * @return a {@link PipePool}
+	 */
+	public PipePool<JxtaBiDiPipe> getPipePool() {
+		return pipePool;
+	}
+
+	/**
+	 * Sets retry number.
+	 * 
+	 * @param retry
+	 *            - a number of trials to send a message
+	 */
+	public void setRetry(int retry) {
+		getRetryScheduler().setMaxAttempts(retry);
+	}
+
+	/**
+	 * Turns the compact headers on or off, the recipient has to know them
+	 * 
+	 * @param isCompactHeaders
+	 *            - <b>true</b> to intern the peer names per pipe, see
+	 *            {@link HeaderDictionary}
+	 */
+	public void setCompactHeaders(boolean isCompactHeaders) {
+		this.isCompactHeaders = isCompactHeaders;
+	}
+
+	/**
+	 * Indicates if the messages are sent with the compact headers
+	 * 
+	 * @return <b>true</b> if compact
+	 */
+	public boolean isCompactHeaders() {
+		return isCompactHeaders;
+	}
+
+	private void setPipePool(PipePool<JxtaBiDiPipe> pipePool) {
+		Validator.validateObjNotNull(pipePool);
+		this.pipePool = pipePool;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports a delivered message: its correlation id, how many trials it took and
+ * the latencies since it was submitted. The latencies are measured by
+ * {@link System#nanoTime()} of the sending peer.
+ */
+public class DeliveryReceipt {
+	/* Class members */
+	private final String correlationId;
+	private final String destination;
+	private final int attempts;
+	/* A wall clock time of the submission, in milliseconds */
+	private final long submittedAt;
+	/* Since the submission till the pipe accepted, in nanoseconds */
+	private final long acceptedLatency;
+	/* Since the submission till the acknowledgement, -1 if none */
+	private final long acknowledgedLatency;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a receipt
+	 * 
+	 * @param correlationId
+	 *            - a correlation id of the message
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param attempts
+	 *            - a number of trials, the first one included
+	 * @param submittedAt
+	 *            - a wall clock time of the submission, in milliseconds
+	 * @param acceptedLatency
+	 *            - since the submission till the pipe accepted, in nanoseconds
+	 * @param acknowledgedLatency
+	 *            - since the submission till the acknowledgement, in
+	 *            nanoseconds, -1 if the message was not acknowledged
+	 */
+	public DeliveryReceipt(String correlationId, String destination,
+			int attempts, long submittedAt, long acceptedLatency,
+			long acknowledgedLatency) {
+		this.correlationId = correlationId;
+		this.destination = destination;
+		this.attempts = attempts;
+		this.submittedAt = submittedAt;
+		this.acceptedLatency = acceptedLatency;
+		this.acknowledgedLatency = acknowledgedLatency;
+	}
+
+	/**
+	 * Returns a correlation id of the message
+	 * 
+	 * @return a correlation id
+	 */
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	/**
+	 * Returns a name of the destination
+	 * 
+	 * @return a destination
+	 */
+	public String getDestination() {
+		return destination;
+	}
+
+	/**
+	 * Returns a number of trials to send the message
+	 * 
+	 * @return a number of trials, the first one included
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Returns when the message was submitted
+	 * 
+	 * @return a wall clock time in milliseconds
+	 */
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+
+	/**
+	 * Returns a time since the submission till the pipe accepted the message
+	 * 
+	 * @param unit
+	 *            - a {@link TimeUnit} of the result
+	 * 
+	 * @return a latency
+	 */
+	public long getAcceptedLatency(TimeUnit unit) {
+		return unit.convert(acceptedLatency, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Returns a time since the submission till the acknowledgement
+	 * 
+	 * @param unit
+	 *            - a {@link TimeUnit} of the result
+	 * 
+	 * @return a latency, -1 if the message was not acknowledged
+	 */
+	public long getAcknowledgedLatency(TimeUnit unit) {
+		if (!isAcknowledged()) {
+			return -1;
+		}
+		return unit.convert(acknowledgedLatency, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Indicates if the recipient acknowledged the message
+	 * 
+	 * @return <b>true</b> if acknowledged
+	 */
+	public boolean isAcknowledged() {
+		return acknowledgedLatency >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "DeliveryReceipt [correlationId=" + correlationId
+				+ ", destination=" + destination + ", attempts=" + attempts
+				+ ", acceptedLatency=" + acceptedLatency
+				+ ", acknowledgedLatency=" + acknowledgedLatency + "]";
+	}
+}
@@ -0,0 +1,574 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.exception.PPCException;
+import com.ocrix.ppc.message.BatchMessage;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.type.Priority;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * A long-lived worker bound to a single destination. It owns a lane per
+ * {@link Priority} under a bounded in-flight window and is drained by at most
+ * one task at a time, which keeps the messages of a lane in the order they were
+ * submitted. The lanes share the window of the destination and each keeps a
+ * part of it, so the bulk messages do not keep the control ones out.
+ */
+public abstract class DestinationSender implements Runnable {
+	/* Class members */
+	private final String destination;
+	private final LaneQueue queue = new LaneQueue();
+	/* Free places of the lanes, a place is taken before a message is queued */
+	private final Window window;
+	private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+	private final SenderEngine engine;
+	/* A message that failed and waits for its retry */
+	private volatile RetryState pending = null;
+	/* A message taken from the window but not sent yet */
+	private volatile Envelope carried = null;
+	private static final Logger logger = Logger
+			.getLogger(DestinationSender.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Delivers a message to the destination.
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * 
+	 * @return <b>true</b> if the message was accepted by the pipe
+	 */
+	protected abstract boolean deliver(Message message);
+
+	/**
+	 * Releases the resources held for the destination, i.e. pipes.
+	 */
+	protected abstract void close();
+
+	/**
+	 * Creates a destination sender.
+	 * 
+	 * @param engine
+	 *            - a {@link SenderEngine} that owns this sender
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param window
+	 *            - a number of messages that may wait for the destination
+	 */
+	public DestinationSender(SenderEngine engine, String destination,
+			int window) {
+		Validator.validateObjNotNull(engine);
+		Validator.validateString(destination);
+		Validator.validatePositive(window);
+		this.engine = engine;
+		this.destination = destination;
+		this.window = new Window(window);
+	}
+
+	// @Override
+	public void run() {
+		/* The thread belongs to the pool, its name is given back */
+		Thread thread = Thread.currentThread();
+		String name = thread.getName();
+		thread.setName(Tag.BIDI_THREAD_PREFIX.getValue() + getDestination());
+		/* Yields the thread after a full window, other destinations wait too */
+		int countDown = Math.max(getCapacity(), 1);
+		boolean isWaiting = false;
+		/* The envelopes taken off the queue and not handed over yet */
+		List<Envelope> taken = null;
+		try {
+			/* A failed message is resent first, it keeps its place in order */
+			RetryState retry = pending;
+			pending = null;
+			if (retry != null) {
+				countDown--;
+				isWaiting = !attempt(retry);
+			}
+			Envelope envelope = null;
+			while (!isWaiting && !engine.isStopped() && countDown > 0
+					&& (envelope = next()) != null) {
+				taken = new ArrayList<Envelope>(1);
+				taken.add(envelope);
+				Message message = envelope.getMessage();
+				List<Envelope> envelopes = null;
+				BatchPolicy policy = engine.getBatchPolicy();
+				if (policy != null && BatchMessage.isBatchable(message)) {
+					envelopes = collectBatch(envelope, policy, countDown);
+					taken = envelopes;
+					if (envelopes.size() > 1) {
+						message = new BatchMessage(message.getSource(),
+								getDestination(), getMessages(envelopes));
+					}
+				} else {
+					envelopes = new ArrayList<Envelope>(1);
+					envelopes.add(envelope);
+				}
+				countDown -= envelopes.size();
+				isWaiting = !attempt(engine.getRetryScheduler().track(message,
+						envelopes));
+				taken = null;
+			}
+		} catch (RuntimeException e) {
+			logger.error(DestinationSender.class.getName() + " "
+					+ e.getMessage());
+			/* Nobody else completes their receipts */
+			if (taken != null) {
+				for (Envelope envelope : taken) {
+					engine.dropped(envelope, e);
+				}
+			}
+		} finally {
+			/* Stays scheduled while a retry is pending, the timer resumes it */
+			if (!isWaiting) {
+				isScheduled.set(false);
+				/* A message may have been offered after the last poll */
+				if (!queue.isEmpty() || carried != null) {
+					engine.schedule(this);
+				}
+			}
+			thread.setName(name);
+		}
+	}
+
+	/**
+	 * Returns a name of the destination
+	 * 
+	 * @return a destination
+	 */
+	public String getDestination() {
+		return destination;
+	}
+
+	/**
+	 * Returns a number of messages waiting to be sent
+	 * 
+	 * @return a queue depth
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns how many messages may wait for the destination, in all lanes
+	 * together
+	 * 
+	 * @return a capacity of the window
+	 */
+	public int getCapacity() {
+		return window.getCapacity();
+	}
+
+	/**
+	 * Takes a snapshot of a lane
+	 * 
+	 * @param priority
+	 *            - a lane
+	 * 
+	 * @return {@link LaneStats}
+	 */
+	public LaneStats getLaneStats(Priority priority) {
+		Validator.validateObjNotNull(priority);
+		return queue.getStats(priority);
+	}
+
+	/**
+	 * Puts a message into the window.
+	 * 
+	 * @param envelope
+	 *            an {@link Envelope} of the message
+	 * 
+	 * @return <b>false</b> if the window is full
+	 */
+	boolean offer(Envelope envelope) {
+		if (!window.tryAcquire(envelope.getPriority())) {
+			return false;
+		}
+		queue.offer(envelope);
+		return true;
+	}
+
+	/**
+	 * Puts a message into the window, waits for a free place if the window is
+	 * full
+	 * 
+	 * @param envelope
+	 *            an {@link Envelope} of the message
+	 * @param timeout
+	 *            how long to wait, in milliseconds
+	 * 
+	 * @return <b>false</b> if no place was freed in time
+	 * 
+	 * @throws InterruptedException
+	 */
+	boolean offer(Envelope envelope, long timeout) throws InterruptedException {
+		if (!window.tryAcquire(envelope.getPriority(), timeout,
+				TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		queue.offer(envelope);
+		return true;
+	}
+
+	/**
+	 * Changes a capacity of the window, i.e. of all lanes together, the
+	 * messages already waiting are kept
+	 * 
+	 * @param capacity
+	 *            a positive number
+	 */
+	void setCapacity(int capacity) {
+		window.setCapacity(capacity);
+	}
+
+	/**
+	 * Changes how the lanes are drained
+	 * 
+	 * @param policy
+	 *            a {@link LanePolicy}
+	 */
+	void setLanePolicy(LanePolicy policy) {
+		queue.setPolicy(policy);
+	}
+
+	/**
+	 * Marks the sender as scheduled for draining.
+	 * 
+	 * @return <b>true</b> if the caller should hand the sender to a thread
+	 */
+	boolean markScheduled() {
+		return isScheduled.compareAndSet(false, true);
+	}
+
+	/**
+	 * Marks the sender as idle when the thread pool did not take it
+	 */
+	void unmarkScheduled() {
+		isScheduled.set(false);
+	}
+
+	/**
+	 * Drops all messages waiting in the window
+	 */
+	void clear() {
+		clear(new PPCException("The sender of [" + getDestination()
+				+ "] is stopped"));
+	}
+
+	/**
+	 * Drops all messages waiting in the window
+	 * 
+	 * @param cause
+	 *            - a reason the receipts of the messages fail with
+	 */
+	void clear(Throwable cause) {
+		RetryState retry = pending;
+		pending = null;
+		if (retry != null) {
+			for (Envelope envelope : retry.getEnvelopes()) {
+				engine.dropped(envelope, cause);
+			}
+		}
+		Envelope envelope = null;
+		while ((envelope = next()) != null) {
+			engine.dropped(envelope, cause);
+		}
+	}
+
+	/**
+	 * Attains an owner of this sender
+	 * 
+	 * @return a {@link SenderEngine}
+	 */
+	protected SenderEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Delivers a message once. If it fails, the message is parked for a retry
+	 * and the sender stops draining until the retry is due, so the messages
+	 * behind it are not sent out of order.
+	 * 
+	 * @param retry
+	 *            - a {@link RetryState} of the message
+	 * 
+	 * @return <b>false</b> if the sender waits for a retry
+	 */
+	private boolean attempt(RetryState retry) {
+		boolean isDelivered = false;
+		try {
+			isDelivered = deliver(retry.getMessage());
+		} catch (RuntimeException e) {
+			/* Retried like a pipe that did not accept the message */
+			logger.error(DestinationSender.class.getName() + " "
+					+ e.getMessage());
+		}
+		if (isDelivered) {
+			for (Envelope envelope : retry.getEnvelopes()) {
+				engine.delivered(envelope, retry.getAttempts() + 1);
+			}
+			return true;
+		}
+		if (!engine.isStopped()) {
+			/* Parked first, the timer may resume the sender at once */
+			pending = retry;
+			if (engine.getRetryScheduler().schedule(retry, new Runnable() {
+				// @Override
+				public void run() {
+					engine.resume(DestinationSender.this);
+				}
+			})) {
+				logger.debug("Retransmition to " + getDestination() + " ...");
+				return false;
+			}
+			pending = null;
+		}
+		logger.warn("Could not send message after " + retry.getAttempts()
+				+ " trials, as result the message [" + retry.getMessage()
+				+ "] to [" + getDestination() + "] is dropped");
+		PPCException cause = new PPCException("Could not send to ["
+				+ getDestination() + "] after " + retry.getAttempts()
+				+ " trials");
+		for (Envelope envelope : retry.getEnvelopes()) {
+			engine.dropped(envelope, cause);
+		}
+		return true;
+	}
+
+	/**
+	 * Takes the first message and the ones that follow it within the limits
+	 * of the policy. A message that cannot be batched ends the batch and is
+	 * sent next on its own.
+	 * 
+	 * @param first
+	 *            - the first message of the batch
+	 * @param policy
+	 *            - a {@link BatchPolicy}
+	 * @param limit
+	 *            - how many messages may be taken at most
+	 * 
+	 * @return the envelopes of the batch
+	 */
+	private List<Envelope> collectBatch(Envelope first, BatchPolicy policy,
+			int limit) {
+		int max = Math.min(policy.getMaxMessages(), limit);
+		List<Envelope> batch = new ArrayList<Envelope>(max);
+		batch.add(first);
+		long bytes = first.getMessage().getByteLength();
+		long deadline = System.nanoTime()
+				+ TimeUnit.MICROSECONDS.toNanos(policy.getLingerMicros());
+
+		while (batch.size() < max && bytes < policy.getMaxBytes()) {
+			Envelope next = poll();
+			if (next == null) {
+				long left = deadline - System.nanoTime();
+				if (left <= 0) {
+					break;
+				}
+				try {
+					next = poll(left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (next == null) {
+					break;
+				}
+			}
+			if (!BatchMessage.isBatchable(next.getMessage())) {
+				carried = next;
+				break;
+			}
+			batch.add(next);
+			bytes += next.getMessage().getByteLength();
+		}
+		return batch;
+	}
+
+	/**
+	 * Takes the next message to be sent
+	 * 
+	 * @return an {@link Envelope} or null if the window is empty
+	 */
+	private Envelope next() {
+		Envelope envelope = carried;
+		if (envelope != null) {
+			carried = null;
+			return envelope;
+		}
+		return poll();
+	}
+
+	/**
+	 * Takes a message from the queue and frees its place in the window
+	 * 
+	 * @return an {@link Envelope} or null if the queue is empty
+	 */
+	private Envelope poll() {
+		Envelope envelope = queue.poll();
+		if (envelope != null) {
+			window.release(envelope.getPriority());
+		}
+		return envelope;
+	}
+
+	/**
+	 * Takes a message from the queue, waits for it if the queue is empty
+	 * 
+	 * @param timeout
+	 *            - how long to wait, in nanoseconds
+	 * 
+	 * @return an {@link Envelope} or null if none came in time
+	 * 
+	 * @throws InterruptedException
+	 */
+	private Envelope poll(long timeout) throws InterruptedException {
+		Envelope envelope = queue.poll(timeout);
+		if (envelope != null) {
+			window.release(envelope.getPriority());
+		}
+		return envelope;
+	}
+
+	private static List<Message> getMessages(List<Envelope> envelopes) {
+		List<Message> messages = new ArrayList<Message>(envelopes.size());
+		for (Envelope envelope : envelopes) {
+			messages.add(envelope.getMessage());
+		}
+		return messages;
+	}
+
+	/**
+	 * Free places of a destination, shared by its lanes. Each lane keeps a
+	 * share of the places for itself, so the bulk messages do not keep the
+	 * control ones out, and the lanes together hold at most the capacity. The
+	 * capacity may be changed at runtime.
+	 */
+	private static class Window {
+		/* A part of the capacity the lanes keep for themselves, 1 / n */
+		private static final int RESERVED_PART = 4;
+		private final Lock lock = new ReentrantLock();
+		private final Condition freed = lock.newCondition();
+		private final int[] taken = new int[Priority.values().length];
+		private int capacity;
+		private int used = 0;
+
+		Window(int capacity) {
+			this.capacity = capacity;
+		}
+
+		int getCapacity() {
+			lock.lock();
+			try {
+				return capacity;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void setCapacity(int capacity) {
+			Validator.validatePositive(capacity);
+			lock.lock();
+			try {
+				/* The places may be overdrawn until the queue is drained */
+				this.capacity = capacity;
+				freed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Takes a place of the lane if one is free
+		 */
+		boolean tryAcquire(Priority lane) {
+			lock.lock();
+			try {
+				return take(lane.ordinal());
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Takes a place of the lane, waits for it
+		 */
+		boolean tryAcquire(Priority lane, long timeout, TimeUnit unit)
+				throws InterruptedException {
+			long left = unit.toNanos(timeout);
+			lock.lockInterruptibly();
+			try {
+				while (!take(lane.ordinal())) {
+					if (left <= 0) {
+						return false;
+					}
+					left = freed.awaitNanos(left);
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Gives a place of the lane back
+		 */
+		void release(Priority lane) {
+			lock.lock();
+			try {
+				used--;
+				taken[lane.ordinal()]--;
+				freed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean take(int lane) {
+			if (used >= capacity) {
+				return false;
+			}
+			/* A place at least, if there are enough for every lane */
+			int reserved = capacity < taken.length ? 0 : Math.max(1, capacity
+					/ (RESERVED_PART * taken.length));
+			if (taken[lane] >= reserved) {
+				/* Only the places no other lane keeps are left */
+				int kept = 0;
+				for (int other = 0; other < taken.length; other++) {
+					if (other != lane) {
+						kept += Math.max(0, reserved - taken[other]);
+					}
+				}
+				if (used + kept >= capacity) {
+					return false;
+				}
+			}
+			used++;
+			taken[lane]++;
+			return true;
+		}
+	}
+}
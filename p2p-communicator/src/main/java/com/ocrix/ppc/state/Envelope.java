@@ -0,0 +1,122 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.type.Priority;
+
+/**
+ * A message waiting in the window of its destination, together with the
+ * future of the caller who waits for its {@link DeliveryReceipt}, if any.
+ */
+class Envelope {
+	/* Class members */
+	private final Message message;
+	private final CompletableFuture<DeliveryReceipt> future;
+	private final long submittedAt = System.currentTimeMillis();
+	private final long submittedNanos = System.nanoTime();
+	/* A lane of the message, read once */
+	private final Priority priority;
+	/* When the pipe accepted the message, 0 if not yet */
+	private volatile long acceptedNanos = 0;
+	private volatile int attempts = 0;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates an envelope
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * @param future
+	 *            - completed when the message is delivered, null if nobody
+	 *            waits
+	 */
+	Envelope(Message message, CompletableFuture<DeliveryReceipt> future) {
+		this.message = message;
+		this.future = future;
+		this.priority = message.getPriority();
+	}
+
+	Message getMessage() {
+		return message;
+	}
+
+	Priority getPriority() {
+		return priority;
+	}
+
+	long getSubmittedNanos() {
+		return submittedNanos;
+	}
+
+	/**
+	 * Indicates if the sender waits for an acknowledgement of the recipient
+	 * 
+	 * @return <b>true</b> if the future completes on acknowledgement
+	 */
+	boolean isAckRequested() {
+		return future != null && message.isAckRequested();
+	}
+
+	/**
+	 * Marks the message as accepted by the pipe
+	 * 
+	 * @param attempts
+	 *            - a number of trials it took
+	 */
+	void accepted(int attempts) {
+		this.attempts = attempts;
+		this.acceptedNanos = System.nanoTime();
+	}
+
+	/**
+	 * Reports the message as accepted by the pipe
+	 */
+	void complete() {
+		if (future != null)
+			future.complete(createReceipt(-1));
+	}
+
+	/**
+	 * Reports the message as acknowledged by the recipient
+	 */
+	void acknowledge() {
+		if (future != null)
+			future.complete(createReceipt(System.nanoTime() - submittedNanos));
+	}
+
+	/**
+	 * Reports the message as dropped
+	 * 
+	 * @param cause
+	 *            - why the message was not sent
+	 */
+	void fail(Throwable cause) {
+		if (future != null)
+			future.completeExceptionally(cause);
+	}
+
+	private DeliveryReceipt createReceipt(long acknowledgedLatency) {
+		/* An acknowledgement may overtake the return of the pipe */
+		long accepted = acceptedNanos == 0 ? System.nanoTime() : acceptedNanos;
+		return new DeliveryReceipt(message.getCorrelationId(),
+				message.getDestination(), Math.max(attempts, 1), submittedAt,
+				accepted - submittedNanos, acknowledgedLatency);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.LaneMode;
+import com.ocrix.ppc.type.Priority;
+
+/**
+ * Defines how a destination sender drains its priority lanes: a
+ * {@link LaneMode}, a weight per lane for the weighted mode and how long a
+ * message may wait before it is sent ahead of the higher lanes.
+ */
+public class LanePolicy {
+	/* Class members */
+	private final LaneMode mode;
+	private final int[] weights;
+	private final long maxWaitMillis;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a strict policy with the default starvation limit
+	 */
+	public LanePolicy() {
+		this(LaneMode.STRICT);
+	}
+
+	/**
+	 * Creates a policy with the default weights and starvation limit
+	 * 
+	 * @param mode
+	 *            - a {@link LaneMode}
+	 */
+	public LanePolicy(LaneMode mode) {
+		this(mode, new int[] { DefaultParameter.LANE_WEIGHT_HIGH.getCode(),
+				DefaultParameter.LANE_WEIGHT_NORMAL.getCode(),
+				DefaultParameter.LANE_WEIGHT_LOW.getCode() },
+				DefaultParameter.LANE_MAX_WAIT.getCode());
+	}
+
+	/**
+	 * Creates a policy
+	 * 
+	 * @param mode
+	 *            - a {@link LaneMode}
+	 * @param weights
+	 *            - a positive weight per {@link Priority}, in its order
+	 * @param maxWaitMillis
+	 *            - how long a message may wait before it goes first, 0 turns
+	 *            the starvation protection off
+	 */
+	public LanePolicy(LaneMode mode, int[] weights, long maxWaitMillis) {
+		Validator.validateObjNotNull(mode);
+		Validator.validateObjNotNull(weights);
+		if (weights.length != Priority.values().length) {
+			throw new IllegalArgumentException("A weight per lane is expected");
+		}
+		for (int weight : weights) {
+			Validator.validatePositive(weight);
+		}
+		if (maxWaitMillis < 0)
+			throw new IllegalArgumentException("The number must be possitive");
+		this.mode = mode;
+		this.weights = weights.clone();
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Returns how a lane is chosen
+	 * 
+	 * @return a {@link LaneMode}
+	 */
+	public LaneMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Returns a weight of the lane in the weighted mode
+	 * 
+	 * @param priority
+	 *            - a lane
+	 * 
+	 * @return a positive weight
+	 */
+	public int getWeight(Priority priority) {
+		return weights[priority.ordinal()];
+	}
+
+	/**
+	 * Returns how long a message may wait before it goes first
+	 * 
+	 * @return a time in milliseconds, 0 if not limited
+	 */
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+}
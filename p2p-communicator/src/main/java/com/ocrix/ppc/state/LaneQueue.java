@@ -0,0 +1,254 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.LaneMode;
+import com.ocrix.ppc.type.Priority;
+
+/**
+ * The messages waiting for a destination, a FIFO lane per {@link Priority}.
+ * The next message is taken from a lane chosen by the {@link LanePolicy}, the
+ * messages of a lane keep their order. Records how long the taken messages
+ * waited, per lane.
+ */
+class LaneQueue {
+	/* Class members */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final List<ArrayDeque<Envelope>> lanes;
+	/* The credits of the smooth weighted round robin */
+	private final int[] credits;
+	private final long[] taken;
+	private final long[] totalWaitNanos;
+	private final long[] maxWaitNanos;
+	private volatile LanePolicy policy = new LanePolicy();
+	private int size = 0;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates empty lanes
+	 */
+	LaneQueue() {
+		int count = Priority.values().length;
+		lanes = new ArrayList<ArrayDeque<Envelope>>(count);
+		for (int i = 0; i < count; i++) {
+			lanes.add(new ArrayDeque<Envelope>());
+		}
+		credits = new int[count];
+		taken = new long[count];
+		totalWaitNanos = new long[count];
+		maxWaitNanos = new long[count];
+	}
+
+	/**
+	 * Appends a message to its lane
+	 * 
+	 * @param envelope
+	 *            an {@link Envelope}
+	 */
+	void offer(Envelope envelope) {
+		lock.lock();
+		try {
+			lanes.get(envelope.getPriority().ordinal()).addLast(envelope);
+			size++;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next message
+	 * 
+	 * @return an {@link Envelope} or null if all lanes are empty
+	 */
+	Envelope poll() {
+		lock.lock();
+		try {
+			return take();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the next message, waits for it if all lanes are empty
+	 * 
+	 * @param timeout
+	 *            how long to wait, in nanoseconds
+	 * 
+	 * @return an {@link Envelope} or null if none came in time
+	 * 
+	 * @throws InterruptedException
+	 */
+	Envelope poll(long timeout) throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			long left = timeout;
+			while (size == 0) {
+				if (left <= 0) {
+					return null;
+				}
+				left = notEmpty.awaitNanos(left);
+			}
+			return take();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a number of the waiting messages
+	 * 
+	 * @return a depth of all lanes
+	 */
+	int size() {
+		lock.lock();
+		try {
+			return size;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Takes a snapshot of the lane
+	 * 
+	 * @param priority
+	 *            a lane
+	 * 
+	 * @return {@link LaneStats}
+	 */
+	LaneStats getStats(Priority priority) {
+		int lane = priority.ordinal();
+		lock.lock();
+		try {
+			return new LaneStats(priority, lanes.get(lane).size(),
+					taken[lane], totalWaitNanos[lane], maxWaitNanos[lane]);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Changes how the lanes are drained
+	 * 
+	 * @param policy
+	 *            a {@link LanePolicy}
+	 */
+	void setPolicy(LanePolicy policy) {
+		Validator.validateObjNotNull(policy);
+		this.policy = policy;
+	}
+
+	LanePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Takes the head of the chosen lane, the lock is held
+	 * 
+	 * @return an {@link Envelope} or null if all lanes are empty
+	 */
+	private Envelope take() {
+		if (size == 0) {
+			return null;
+		}
+		long now = System.nanoTime();
+		LanePolicy current = policy;
+		int lane = starved(current, now);
+		if (lane < 0) {
+			lane = current.getMode() == LaneMode.STRICT ? highest()
+					: weighted(current);
+		}
+		Envelope envelope = lanes.get(lane).pollFirst();
+		size--;
+		long wait = now - envelope.getSubmittedNanos();
+		taken[lane]++;
+		totalWaitNanos[lane] += wait;
+		maxWaitNanos[lane] = Math.max(maxWaitNanos[lane], wait);
+		return envelope;
+	}
+
+	/**
+	 * Finds a lane whose head waited longer than the policy permits
+	 * 
+	 * @return the lane of the longest waiting head or -1 if none
+	 */
+	private int starved(LanePolicy current, long now) {
+		if (current.getMaxWaitMillis() == 0) {
+			return -1;
+		}
+		long limit = TimeUnit.MILLISECONDS.toNanos(current.getMaxWaitMillis());
+		int oldest = -1;
+		long oldestWait = limit - 1;
+		for (int i = 0; i < lanes.size(); i++) {
+			Envelope head = lanes.get(i).peekFirst();
+			if (head != null && now - head.getSubmittedNanos() > oldestWait) {
+				oldest = i;
+				oldestWait = now - head.getSubmittedNanos();
+			}
+		}
+		return oldest;
+	}
+
+	private int highest() {
+		for (int i = 0; i < lanes.size(); i++) {
+			if (!lanes.get(i).isEmpty()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Chooses a non-empty lane by the smooth weighted round robin, the lanes
+	 * are interleaved rather than drained in bursts
+	 */
+	private int weighted(LanePolicy current) {
+		int total = 0;
+		int best = -1;
+		Priority[] priorities = Priority.values();
+		for (int i = 0; i < lanes.size(); i++) {
+			if (lanes.get(i).isEmpty()) {
+				/* An idle lane does not save up credits */
+				credits[i] = 0;
+				continue;
+			}
+			int weight = current.getWeight(priorities[i]);
+			credits[i] += weight;
+			total += weight;
+			if (best < 0 || credits[i] > credits[best]) {
+				best = i;
+			}
+		}
+		credits[best] -= total;
+		return best;
+	}
+}
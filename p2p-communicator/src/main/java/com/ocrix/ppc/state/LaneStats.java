@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import com.ocrix.ppc.type.Priority;
+
+/**
+ * A snapshot of a priority lane of a destination: how many messages wait in
+ * it and how long the sent ones waited.
+ */
+public class LaneStats {
+	/* Class members */
+	private final Priority priority;
+	private final int depth;
+	private final long taken;
+	private final long totalWaitNanos;
+	private final long maxWaitNanos;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a snapshot
+	 * 
+	 * @param priority
+	 *            - a lane
+	 * @param depth
+	 *            - a number of the waiting messages
+	 * @param taken
+	 *            - a number of the messages taken to be sent
+	 * @param totalWaitNanos
+	 *            - how long the taken messages waited in sum
+	 * @param maxWaitNanos
+	 *            - how long the longest waiting one waited
+	 */
+	public LaneStats(Priority priority, int depth, long taken,
+			long totalWaitNanos, long maxWaitNanos) {
+		this.priority = priority;
+		this.depth = depth;
+		this.taken = taken;
+		this.totalWaitNanos = totalWaitNanos;
+		this.maxWaitNanos = maxWaitNanos;
+	}
+
+	/**
+	 * Returns a lane of the snapshot
+	 * 
+	 * @return a {@link Priority}
+	 */
+	public Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Returns a number of the messages waiting in the lane
+	 * 
+	 * @return a queue depth
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * Returns a number of the messages taken from the lane to be sent
+	 * 
+	 * @return a count
+	 */
+	public long getTaken() {
+		return taken;
+	}
+
+	/**
+	 * Returns how long a taken message waited in the lane on average
+	 * 
+	 * @return a latency in microseconds, 0 if none was taken
+	 */
+	public long getMeanWaitMicros() {
+		return taken == 0 ? 0 : totalWaitNanos / taken / 1000;
+	}
+
+	/**
+	 * Returns how long the longest waiting message waited in the lane
+	 * 
+	 * @return a latency in microseconds
+	 */
+	public long getMaxWaitMicros() {
+		return maxWaitNanos / 1000;
+	}
+
+	@Override
+	public String toString() {
+		return priority + " depth=" + depth + " taken=" + taken + " mean="
+				+ getMeanWaitMicros() + "us max=" + getMaxWaitMicros() + "us";
+	}
+}
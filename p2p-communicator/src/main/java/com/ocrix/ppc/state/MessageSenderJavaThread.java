@@ -15,7 +15,6 @@
 package com.ocrix.ppc.state;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -32,6 +31,7 @@ import com.ocrix.ppc.discovery.PipeDiscovery;
 import com.ocrix.ppc.exception.PPCException;
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.pipe.PipeFactory;
+import com.ocrix.ppc.pipe.PipePool;
 import com.ocrix.ppc.type.DefaultParameter;
 import com.ocrix.ppc.type.Tag;
 
@@ -47,6 +47,8 @@ public class MessageSenderJavaThread implements IMessageSender, Runnable {
 	private AtomicReference<PipeFactory> pipeFactory = null;
 	private AtomicBoolean isStopped = new AtomicBoolean(false);
 	private AtomicInteger retry = new AtomicInteger();
+	/* If set, the output pipes are borrowed instead of created per message */
+	private PipePool<OutputPipe> pipePool = null;
 	private static final Logger logger = Logger
 			.getLogger(MessageSenderJavaThread.class);
 
@@ -95,12 +97,38 @@ public class MessageSenderJavaThread implements IMessageSender, Runnable {
 		setRetry(retry);
 	}
 
+	/**
+	 * Creates a message sender java thread that borrows the output pipes from
+	 * the pool.
+	 * 
+	 * @param backlog
+	 *            a size of queue.
+	 * @param peerGroup
+	 *            a group a peer is participate to.
+	 * @param pipeDiscovery
+	 * @param retry
+	 * @param pipePool
+	 *            a {@link PipePool} of the output pipes
+	 * 
+	 * @throws PPCException
+	 */
+	public MessageSenderJavaThread(BlockingQueue<Message> backlog,
+			PeerGroup peerGroup, PipeDiscovery pipeDiscovery, int retry,
+			PipePool<OutputPipe> pipePool) throws PPCException {
+		this(backlog, peerGroup, pipeDiscovery, retry);
+		if (pipePool == null)
+			throw new PPCException("Pipe pool is null");
+		this.pipePool = pipePool;
+	}
+
 	// @Override
 	public void run() {
 		Thread.currentThread().setName(
 				Tag.BIDI_THREAD_PREFIX.getValue() + System.currentTimeMillis());
 		try {
-			if (!Thread.currentThread().isInterrupted())
+			if (!Thread.currentThread().isInterrupted() && pipePool != null)
+				startPooled();
+			else if (!Thread.currentThread().isInterrupted())
 				start();
 		} catch (Exception e) {
 			logger.error(MessageSenderJavaThread.class.getName() + " "
@@ -149,18 +177,7 @@ public class MessageSenderJavaThread implements IMessageSender, Runnable {
 	 */
 	private PipeAdvertisement getFoundPipe(Message message)
 			throws PPCException, IOException {
-
-		PipeAdvertisement pipeAdvertisement = null;
-		List<PipeAdvertisement> findings = pipeDiscovery.get().lookup();
-		for (PipeAdvertisement ps : findings) {
-			if (ps.toString().contains(message.getDestination())) {
-				pipeAdvertisement = ps;
-			}
-
-			break;
-		}
-
-		return pipeAdvertisement;
+		return pipeDiscovery.get().lookupByName(message.getDestination());
 	}
 
 	/**
@@ -236,6 +253,13 @@ public class MessageSenderJavaThread implements IMessageSender, Runnable {
 				} catch (Exception e) {
 					logger.error(this.getClass().getName() + " "
 							+ e.getMessage());
+				} finally {
+					/* A failed pipe is not taken from the cache anymore */
+					if (pipe != null && isReceived) {
+						pipeFactory.get().releaseOutputPipe(pipe);
+					} else if (pipe != null) {
+						pipeFactory.get().invalidateOutputPipe(pipe);
+					}
 				}
 
 			} else if (!Thread.currentThread().isInterrupted()) { // tried to
@@ -256,6 +280,45 @@ public class MessageSenderJavaThread implements IMessageSender, Runnable {
 		return isReceived;
 	}
 
+	/**
+	 * Sends a message over an output pipe borrowed from the pool. A pipe that
+	 * failed is evicted from the pool, if the destination is not found yet the
+	 * next trial is done after a while.
+	 * 
+	 * @return <true> means that message sent successfully
+	 */
+	private boolean startPooled() {
+		String destination = message.get().getDestination();
+		int countDown = getRetry();
+		boolean isReceived = false;
+
+		while (!Thread.currentThread().isInterrupted() && !isStopped.get()
+				&& !isReceived && countDown-- > 0) {
+			OutputPipe pipe = null;
+			try {
+				pipe = pipePool.borrow(destination);
+				isReceived = pipe.send(message.get());
+			} catch (IOException e) {
+				logger.error(this.getClass().getName() + " " + e.getMessage());
+			} finally {
+				if (pipe != null && isReceived) {
+					pipePool.release(destination, pipe);
+				} else if (pipe != null) {
+					pipePool.invalidate(destination, pipe);
+				}
+			}
+			if (!isReceived && countDown > 0) {
+				PPCUtils.sleep(DefaultParameter.TWO_SEC.getCode());
+			}
+		}
+
+		if (!isReceived) {
+			logger.warn("Could not send message, as result the message ["
+					+ message.get() + "] is dropped");
+		}
+		return isReceived;
+	}
+
 	/**
 	 * Sets up a pipe factory
 	 * 
@@ -17,10 +17,12 @@ package com.ocrix.ppc.state;
 import java.util.concurrent.BlockingQueue;
 import org.apache.log4j.Logger;
 import net.jxta.peergroup.PeerGroup;
+import net.jxta.pipe.OutputPipe;
 //import com.ibm.websphere.asynchbeans.Work;
 import com.ocrix.ppc.discovery.PipeDiscovery;
 import com.ocrix.ppc.exception.PPCException;
 import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.pipe.PipePool;
 
 
 /**
@@ -48,6 +50,11 @@ public class MessageSenderWasThreadPool extends MessageSenderJavaThread {// impl
 		logger.info("MessageSenderWasThreadPool constructor");
 	}
 
+	public MessageSenderWasThreadPool(BlockingQueue<Message> backlog, PeerGroup peerGroup, PipeDiscovery pipeDiscovery, int retry, PipePool<OutputPipe> pipePool) throws PPCException {
+		super(backlog, peerGroup, pipeDiscovery, retry, pipePool);
+		logger.info("MessageSenderWasThreadPool constructor");
+	}
+
 
 //	@Override
 	public void release() {
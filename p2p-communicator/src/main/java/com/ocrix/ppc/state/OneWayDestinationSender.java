@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.pipe.OutputPipe;
+
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.threadpool.BlockingCall;
+
+/**
+ * Sends the messages of one destination over an {@link OutputPipe} borrowed
+ * from the pool of the engine. The pipe is given back after each message, a
+ * pipe that failed is evicted and the message is retried by the
+ * {@link RetryScheduler} of the engine over a newly resolved one.
+ */
+public class OneWayDestinationSender extends DestinationSender {
+	/* Class members */
+	private static final Logger logger = Logger
+			.getLogger(OneWayDestinationSender.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a one way sender of one destination
+	 * 
+	 * @param engine
+	 *            - a {@link OneWaySenderEngine} that owns the sender
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param window
+	 *            - a capacity of the destination queue
+	 */
+	public OneWayDestinationSender(OneWaySenderEngine engine,
+			String destination, int window) {
+		super(engine, destination, window);
+	}
+
+	@Override
+	protected boolean deliver(Message message) {
+		boolean status = false;
+		OutputPipe pipe = null;
+		try {
+			pipe = borrow();
+			status = send(pipe, message);
+		} catch (IOException e) {
+			logger.error(OneWayDestinationSender.class.getName() + " "
+					+ e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.error(OneWayDestinationSender.class.getName()
+					+ " interrupted while sending to " + getDestination());
+		} finally {
+			if (pipe != null && status) {
+				getEngine().getPipePool().release(getDestination(), pipe);
+			} else if (pipe != null) {
+				getEngine().getPipePool().invalidate(getDestination(), pipe);
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * Borrows a pipe, the pool may wait for a free one
+	 */
+	private OutputPipe borrow() throws IOException, InterruptedException {
+		return new BlockingCall<OutputPipe>() {
+			@Override
+			protected OutputPipe call() throws IOException {
+				return getEngine().getPipePool().borrow(getDestination());
+			}
+		}.invoke();
+	}
+
+	/**
+	 * Sends a message, the pipe may block until the peer takes it
+	 */
+	private static boolean send(final OutputPipe pipe, final Message message)
+			throws IOException, InterruptedException {
+		return new BlockingCall<Boolean>() {
+			@Override
+			protected Boolean call() throws IOException {
+				return pipe.send(message);
+			}
+		}.invoke();
+	}
+
+	@Override
+	protected void close() {
+		/* The pipes belong to the pool of the peer */
+	}
+
+	@Override
+	protected OneWaySenderEngine getEngine() {
+		return (OneWaySenderEngine) super.getEngine();
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import net.jxta.pipe.OutputPipe;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.pipe.PipePool;
+import com.ocrix.ppc.threadpool.TaskManager;
+
+/**
+ * A {@link SenderEngine} of the sender peer, creates a
+ * {@link OneWayDestinationSender} per destination. The output pipes are
+ * borrowed from the {@link PipePool} of the peer, which also closes them.
+ */
+public class OneWaySenderEngine extends SenderEngine {
+	/* Class members */
+	private PipePool<OutputPipe> pipePool = null;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates an engine of the one way senders
+	 * 
+	 * @param taskManager
+	 *            - a {@link TaskManager} that runs the senders
+	 * @param pipePool
+	 *            - a {@link PipePool} of the output pipes
+	 */
+	public OneWaySenderEngine(TaskManager taskManager,
+			PipePool<OutputPipe> pipePool) {
+		super(taskManager);
+		setPipePool(pipePool);
+	}
+
+	@Override
+	protected DestinationSender createDestinationSender(String destination,
+			int window) {
+		return new OneWayDestinationSender(this, destination, window);
+	}
+
+	/**
+	 * Attains a pool of the output pipes
+	 * 
+	 * @return a {@link PipePool}
+	 */
+	public PipePool<OutputPipe> getPipePool() {
+		return pipePool;
+	}
+
+	/**
+	 * Sets retry number.
+	 * 
+	 * @param retry
+	 *            - a number of trials to send a message
+	 */
+	public void setRetry(int retry) {
+		getRetryScheduler().setMaxAttempts(retry);
+	}
+
+	private void setPipePool(PipePool<OutputPipe> pipePool) {
+		Validator.validateObjNotNull(pipePool);
+		this.pipePool = pipePool;
+	}
+}
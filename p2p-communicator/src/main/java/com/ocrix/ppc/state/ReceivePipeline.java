@@ -0,0 +1,425 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import net.jxta.endpoint.MessageElement;
+import net.jxta.pipe.PipeMsgEvent;
+
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.threadpool.BoundedThreadPool;
+import com.ocrix.ppc.threadpool.ForkJoinThreadPool;
+import com.ocrix.ppc.threadpool.TaskManager;
+import com.ocrix.ppc.type.Tag;
+
+/**
+ * Converts the received messages and hands them to a {@link Handler} on a
+ * pool of decoder threads instead of the thread of the pipe. The messages are
+ * striped by their source peer: a stripe is drained by one thread at a time,
+ * so the messages of a source are handled in the order they were received
+ * while the different sources are handled in parallel. With a maximum queue
+ * depth the thread of the pipe waits in {@link #submit(PipeMsgEvent)} while the
+ * decoders are behind, so the pipe is not read until they catch up.
+ */
+public class ReceivePipeline {
+	/* Class members */
+	/* How many messages a stripe handles before it yields its thread */
+	private static final int DRAIN_LIMIT = 64;
+	private final TaskManager taskManager;
+	private final boolean isOwnTaskManager;
+	private final Stripe[] stripes;
+	private final Handler handler;
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	/* The messages submitted and not handled yet */
+	private final AtomicInteger depth = new AtomicInteger();
+	/* Zero does not bound the queue */
+	private volatile int maxQueueDepth = 0;
+	private final Object space = new Object();
+	private volatile boolean isShutdown = false;
+	private static final Logger logger = Logger.getLogger(ReceivePipeline.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Handles the converted messages, the calls of the same source are never
+	 * concurrent
+	 */
+	public interface Handler {
+
+		/**
+		 * Handles a received message
+		 * 
+		 * @param event
+		 *            - an event of the pipe, null if the message was submitted
+		 *            without it
+		 * @param message
+		 *            - a converted {@link Message}, null if the received one
+		 *            could not be converted
+		 */
+		void onMessage(PipeMsgEvent event, Message message);
+	}
+
+	/**
+	 * Creates a pipeline with the decoder threads and stripes of the
+	 * configuration, <code>receive.decoder.threads</code> and
+	 * <code>receive.stripes</code>. Zero means as many threads as processors
+	 * and four stripes per thread.
+	 * 
+	 * @param handler
+	 *            - a {@link Handler} of the messages
+	 */
+	public ReceivePipeline(Handler handler) {
+		this(handler, getDecoderThreads());
+	}
+
+	/**
+	 * Creates a pipeline with its own decoder pool
+	 * 
+	 * @param handler
+	 *            - a {@link Handler} of the messages
+	 * @param decoderThreads
+	 *            - a number of the decoder threads
+	 */
+	public ReceivePipeline(Handler handler, int decoderThreads) {
+		this(handler, new ForkJoinThreadPool(decoderThreads), true,
+				getStripes(decoderThreads));
+	}
+
+	/**
+	 * Creates a pipeline over a given task manager, it is not shut down with
+	 * the pipeline
+	 * 
+	 * @param handler
+	 *            - a {@link Handler} of the messages
+	 * @param taskManager
+	 *            - a {@link TaskManager} that runs the stripes
+	 * @param stripes
+	 *            - a number of the stripes, more than the threads so the busy
+	 *            sources rarely share a stripe
+	 */
+	public ReceivePipeline(Handler handler, TaskManager taskManager,
+			int stripes) {
+		this(handler, taskManager, false, stripes);
+	}
+
+	private ReceivePipeline(Handler handler, TaskManager taskManager,
+			boolean isOwnTaskManager, int stripes) {
+		Validator.validateObjNotNull(handler);
+		Validator.validateObjNotNull(taskManager);
+		Validator.validatePositive(stripes);
+		if (BoundedThreadPool.isDiscarding(taskManager)) {
+			throw new IllegalArgumentException(
+					"The decoders can't run on a pool which discards the tasks");
+		}
+		this.handler = handler;
+		this.taskManager = taskManager;
+		this.isOwnTaskManager = isOwnTaskManager;
+		this.stripes = new Stripe[stripes];
+		for (int i = 0; i < stripes; i++) {
+			this.stripes[i] = new Stripe();
+		}
+		String max = PPCUtils.getValue("receive.max.queue");
+		if (max != null && !max.trim().isEmpty()) {
+			setMaxQueueDepth(Integer.valueOf(max.trim()));
+		}
+	}
+
+	/**
+	 * Queues the message of the event for decoding
+	 * 
+	 * @param event
+	 *            - a {@link PipeMsgEvent}
+	 * 
+	 * @return <b>false</b> if the pipeline is shut down
+	 */
+	public boolean submit(PipeMsgEvent event) {
+		Validator.validateObjNotNull(event);
+		return submit(event, event.getMessage());
+	}
+
+	/**
+	 * Queues a received message for decoding, waits while the queue is at its
+	 * maximum depth
+	 * 
+	 * @param event
+	 *            - an event the message came with, may be null
+	 * @param message
+	 *            - a JXTA message
+	 * 
+	 * @return <b>false</b> if the pipeline is shut down
+	 */
+	public boolean submit(PipeMsgEvent event, net.jxta.endpoint.Message message) {
+		Validator.validateObjNotNull(message);
+		if (!awaitSpace()) {
+			return false;
+		}
+		received.incrementAndGet();
+		stripes[getStripe(message)].offer(new Inbound(event, message));
+		return true;
+	}
+
+	/**
+	 * Stops taking the messages, the queued ones are still handled if the
+	 * decoder pool is shared. An own decoder pool is shut down.
+	 */
+	public void shutdown() {
+		isShutdown = true;
+		synchronized (space) {
+			space.notifyAll();
+		}
+		if (isOwnTaskManager) {
+			taskManager.shutdown();
+		}
+	}
+
+	/**
+	 * Returns a number of the messages waiting for a decoder
+	 * 
+	 * @return a queue depth
+	 */
+	public int getQueueDepth() {
+		int depth = 0;
+		for (Stripe stripe : stripes) {
+			depth += stripe.size();
+		}
+		return depth;
+	}
+
+	/**
+	 * Bounds the messages waiting for a decoder, a submitter waits for a free
+	 * place
+	 * 
+	 * @param maxQueueDepth
+	 *            - a maximum depth, 0 does not bound the queue
+	 */
+	public void setMaxQueueDepth(int maxQueueDepth) {
+		Validator.validateInt(maxQueueDepth);
+		this.maxQueueDepth = maxQueueDepth;
+		synchronized (space) {
+			space.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns a maximum number of the messages waiting for a decoder
+	 * 
+	 * @return a maximum depth, 0 if not bounded
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Returns a number of the submitted messages
+	 * 
+	 * @return a received count
+	 */
+	public long getReceivedCount() {
+		return received.get();
+	}
+
+	/**
+	 * Returns a number of the messages that could not be converted
+	 * 
+	 * @return a failed count
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Reserves a place in the queue, waits while it is at its maximum depth
+	 * 
+	 * @return <b>false</b> if the pipeline is shut down
+	 */
+	private boolean awaitSpace() {
+		if (maxQueueDepth > 0 && depth.get() >= maxQueueDepth) {
+			synchronized (space) {
+				while (!isShutdown && maxQueueDepth > 0
+						&& depth.get() >= maxQueueDepth) {
+					try {
+						space.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+			}
+		}
+		if (isShutdown) {
+			return false;
+		}
+		depth.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Frees a place of a handled message
+	 */
+	private void release() {
+		int left = depth.decrementAndGet();
+		if (maxQueueDepth > 0 && left < maxQueueDepth) {
+			synchronized (space) {
+				space.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Picks a stripe by the source peer, read from its element without
+	 * decoding the rest of the message
+	 */
+	private int getStripe(net.jxta.endpoint.Message message) {
+		MessageElement source = message.getMessageElement(Tag.SOURCE
+				.getValue());
+		int hash = source == null ? 0 : source.toString().hashCode();
+		/* Spreads the low bits, the names often differ at the end only */
+		hash ^= (hash >>> 16);
+		return (hash & 0x7FFFFFFF) % stripes.length;
+	}
+
+	/**
+	 * Converts a message and gives the result to the handler
+	 */
+	private void handle(Inbound inbound) {
+		List<Message> messages = null;
+		try {
+			messages = PPCUtils.convertJxtaMsgToPpcMsgs(inbound.message);
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			logger.error(ReceivePipeline.class.getName() + " "
+					+ e.getMessage());
+		}
+		try {
+			if (messages == null) {
+				handler.onMessage(inbound.event, null);
+				return;
+			}
+			for (Message message : messages) {
+				handler.onMessage(inbound.event, message);
+			}
+		} catch (RuntimeException e) {
+			logger.error(ReceivePipeline.class.getName() + " handler "
+					+ e.getMessage());
+		}
+	}
+
+	private static int getDecoderThreads() {
+		String value = PPCUtils.getValue("receive.decoder.threads");
+		if (value != null && !value.trim().isEmpty()
+				&& Integer.valueOf(value.trim()) > 0) {
+			return Integer.valueOf(value.trim());
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static int getStripes(int decoderThreads) {
+		String value = PPCUtils.getValue("receive.stripes");
+		if (value != null && !value.trim().isEmpty()
+				&& Integer.valueOf(value.trim()) > 0) {
+			return Integer.valueOf(value.trim());
+		}
+		return decoderThreads * 4;
+	}
+
+	/**
+	 * A received message with its event
+	 */
+	private static class Inbound {
+		private final PipeMsgEvent event;
+		private final net.jxta.endpoint.Message message;
+
+		private Inbound(PipeMsgEvent event, net.jxta.endpoint.Message message) {
+			this.event = event;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Messages of the sources that hash to the same stripe, drained by at most
+	 * one decoder at a time
+	 */
+	private class Stripe implements Runnable {
+		private final Queue<Inbound> queue = new ConcurrentLinkedQueue<Inbound>();
+		private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+
+		private void offer(Inbound inbound) {
+			queue.offer(inbound);
+			schedule();
+		}
+
+		private int size() {
+			return queue.size();
+		}
+
+		private void schedule() {
+			if (isScheduled.compareAndSet(false, true)) {
+				try {
+					taskManager.execute(this);
+				} catch (RuntimeException e) {
+					logger.error(ReceivePipeline.class.getName()
+							+ " could not schedule a decoder " + e.getMessage());
+					drop();
+				}
+			}
+		}
+
+		/**
+		 * Drops the messages of a stripe the thread pool rejected, so their
+		 * places are freed and the stripe may be scheduled again
+		 */
+		private void drop() {
+			while (queue.poll() != null) {
+				failed.incrementAndGet();
+				release();
+			}
+			isScheduled.set(false);
+			/* A message may have come while the queue was drained */
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+
+		// @Override
+		public void run() {
+			Inbound inbound = null;
+			int handled = 0;
+			while (handled++ < DRAIN_LIMIT && (inbound = queue.poll()) != null) {
+				try {
+					handle(inbound);
+				} finally {
+					release();
+				}
+			}
+			isScheduled.set(false);
+			/* A message may have come after the last poll */
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+	}
+}
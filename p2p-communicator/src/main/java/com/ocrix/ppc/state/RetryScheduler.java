@@ -0,0 +1,203 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Schedules the retransmission of the messages that failed. A failed send is
+ * kept as a {@link RetryState} and handed back after an exponential backoff
+ * with jitter, so no worker thread waits for it. A message is dropped once it
+ * used all its trials or its deadline passed.
+ */
+public class RetryScheduler {
+	/* Class members */
+	private final ScheduledExecutorService timer;
+	/* A delay before the first retry, in milliseconds */
+	private volatile long baseDelay = DefaultParameter.RETRY_BASE_DELAY
+			.getCode();
+	/* The longest delay between two trials, in milliseconds */
+	private volatile long maxDelay = DefaultParameter.RETRY_MAX_DELAY.getCode();
+	/* A part of the delay that is randomized, between 0 and 1 */
+	private volatile double jitter = 0.5;
+	/* A number of trials to send a message, the first one included */
+	private volatile int maxAttempts = DefaultParameter.TRIAL_NUMBER.getCode();
+	/* How long a message may be retried, in milliseconds */
+	private volatile long deadline = DefaultParameter.RETRY_DEADLINE.getCode();
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a retry scheduler with a single timer thread
+	 */
+	public RetryScheduler() {
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			// @Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "PPC-RETRY-TIMER");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts tracking a message which is about to be sent the first time
+	 * 
+	 * @param message
+	 *            - a {@link Message}, possibly a batch
+	 * @param envelopes
+	 *            - the envelopes of the messages carried
+	 * 
+	 * @return a {@link RetryState} of the message
+	 */
+	RetryState track(Message message, List<Envelope> envelopes) {
+		return new RetryState(message, envelopes, System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(deadline));
+	}
+
+	/**
+	 * Schedules the next trial of a failed message
+	 * 
+	 * @param state
+	 *            - a {@link RetryState} of the message
+	 * @param task
+	 *            - resends the message when it is due
+	 * 
+	 * @return <b>false</b> if the message used all its trials or would miss
+	 *         its deadline, i.e. it should be dropped
+	 */
+	boolean schedule(RetryState state, Runnable task) {
+		int attempts = state.failed();
+		if (attempts >= maxAttempts || timer.isShutdown()) {
+			return false;
+		}
+		long delay = getDelay(attempts);
+		if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) > state
+				.getDeadline()) {
+			return false;
+		}
+		timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	/**
+	 * Runs a task once after the delay, i.e. to time out an acknowledgement
+	 * 
+	 * @param task
+	 *            - a task to run
+	 * @param delay
+	 *            - a delay in milliseconds
+	 * 
+	 * @return <b>false</b> if the timer is stopped
+	 */
+	boolean schedule(Runnable task, long delay) {
+		try {
+			timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Calculates a delay before the next trial, the base delay doubles with
+	 * each failure up to the max delay and a random part of it is added or
+	 * removed, so the senders that failed together do not retry together.
+	 * 
+	 * @param attempts
+	 *            - a number of failed trials, starting from 1
+	 * 
+	 * @return a delay in milliseconds
+	 */
+	public long getDelay(int attempts) {
+		Validator.validatePositive(attempts);
+		long delay = baseDelay << Math.min(attempts - 1, 30);
+		if (delay <= 0 || delay > maxDelay) {
+			delay = maxDelay;
+		}
+		long spread = (long) (delay * jitter);
+		if (spread > 0) {
+			delay += ThreadLocalRandom.current().nextLong(-spread, spread + 1);
+		}
+		return Math.max(delay, 0);
+	}
+
+	/**
+	 * Sets up a number of trials to send a message
+	 * 
+	 * @param maxAttempts
+	 *            - a positive number, the first trial included
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts > 0)
+			this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Attains a number of trials to send a message
+	 * 
+	 * @return a number of trials
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Sets up the backoff
+	 * 
+	 * @param baseDelay
+	 *            - a delay before the first retry, in milliseconds
+	 * @param maxDelay
+	 *            - the longest delay between two trials, in milliseconds
+	 * @param jitter
+	 *            - a randomized part of the delay, between 0 and 1
+	 */
+	public void setBackoff(long baseDelay, long maxDelay, double jitter) {
+		if (baseDelay <= 0 || maxDelay < baseDelay || jitter < 0 || jitter > 1)
+			throw new IllegalArgumentException("The backoff does not match");
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets up how long a message may be retried
+	 * 
+	 * @param deadline
+	 *            - a time in milliseconds since the first trial
+	 */
+	public void setDeadline(long deadline) {
+		if (deadline > 0)
+			this.deadline = deadline;
+	}
+
+	/**
+	 * Stops the timer, the pending retries are dropped
+	 */
+	public void shutdown() {
+		timer.shutdownNow();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import java.util.List;
+
+import com.ocrix.ppc.message.Message;
+
+/**
+ * Retry state of a single message, i.e. what costs a pending retry instead of
+ * a waiting thread.
+ */
+class RetryState {
+	/* Class members */
+	private final Message message;
+	/* The messages carried, more than one if it is a batch */
+	private final List<Envelope> envelopes;
+	/* The deadline in terms of System.nanoTime */
+	private final long deadline;
+	private int attempts = 0;
+
+	/* ---------- end of class members --------- */
+
+	RetryState(Message message, List<Envelope> envelopes, long deadline) {
+		this.message = message;
+		this.envelopes = envelopes;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Counts a failed trial
+	 * 
+	 * @return a number of failed trials
+	 */
+	int failed() {
+		return ++attempts;
+	}
+
+	Message getMessage() {
+		return message;
+	}
+
+	List<Envelope> getEnvelopes() {
+		return envelopes;
+	}
+
+	long getDeadline() {
+		return deadline;
+	}
+
+	int getAttempts() {
+		return attempts;
+	}
+}
@@ -0,0 +1,628 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.exception.PPCException;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.threadpool.BoundedThreadPool;
+import com.ocrix.ppc.threadpool.TaskManager;
+import com.ocrix.ppc.type.AckMode;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.Priority;
+import com.ocrix.ppc.type.SendStatus;
+
+/**
+ * Keeps a single {@link DestinationSender} per destination and hands it to the
+ * {@link TaskManager} whenever its window has something to send. A sender is
+ * never drained by two threads at once, so the order of a priority lane of the
+ * destination is kept.
+ */
+public abstract class SenderEngine {
+	/* Class members */
+	private final ConcurrentMap<String, DestinationSender> senders = new ConcurrentHashMap<String, DestinationSender>();
+	/* Windows of the destinations which differ from the default one */
+	private final ConcurrentMap<String, Integer> capacities = new ConcurrentHashMap<String, Integer>();
+	private TaskManager taskManager = null;
+	private volatile int window = DefaultParameter.QUEUE_CAPASITY.getCode();
+	private volatile boolean isStopped = false;
+	/* Batching is off unless a policy is set */
+	private volatile BatchPolicy batchPolicy = null;
+	/* How the priority lanes of a destination are drained */
+	private volatile LanePolicy lanePolicy = new LanePolicy();
+	/* The messages waiting for an acknowledgement, by correlation id */
+	private final ConcurrentMap<String, Envelope> acks = new ConcurrentHashMap<String, Envelope>();
+	private volatile AckMode ackMode = AckMode.PIPE;
+	private volatile long ackTimeout = DefaultParameter.ACK_TIMEOUT.getCode();
+	/* Resends the failed messages without holding a thread */
+	private final RetryScheduler retryScheduler = new RetryScheduler();
+	private static final Logger logger = Logger.getLogger(SenderEngine.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a sender of the particular destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param window
+	 *            - a capacity of the destination queue
+	 * 
+	 * @return a {@link DestinationSender}
+	 */
+	protected abstract DestinationSender createDestinationSender(
+			String destination, int window);
+
+	/**
+	 * Creates a sender engine
+	 * 
+	 * @param taskManager
+	 *            - a {@link TaskManager} that runs the senders
+	 */
+	public SenderEngine(TaskManager taskManager) {
+		setTaskManager(taskManager);
+	}
+
+	/**
+	 * Puts a message into the window of its destination and schedules the
+	 * destination sender if it is idle.
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * 
+	 * @return <b>false</b> if the window of the destination is full or the
+	 *         engine is stopped
+	 */
+	public boolean submit(Message message) {
+		return trySubmit(message) == SendStatus.ACCEPTED;
+	}
+
+	/**
+	 * Puts a message into the window of its destination without waiting
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * 
+	 * @return a {@link SendStatus}
+	 */
+	public SendStatus trySubmit(Message message) {
+		return trySubmit(message, null);
+	}
+
+	/**
+	 * Puts a message into the window of its destination without waiting
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * @param receipt
+	 *            - completed with a {@link DeliveryReceipt} once the message
+	 *            is delivered, or exceptionally if it is dropped, may be null
+	 * 
+	 * @return a {@link SendStatus}, the receipt is not completed unless
+	 *         ACCEPTED or REJECTED
+	 */
+	public SendStatus trySubmit(Message message,
+			CompletableFuture<DeliveryReceipt> receipt) {
+		Validator.validateObjNotNull(message);
+		if (isStopped()) {
+			return SendStatus.STOPPED;
+		}
+		DestinationSender sender = getSender(message.getDestination());
+		Envelope envelope = prepare(message, receipt);
+		if (!sender.offer(envelope)) {
+			unregister(envelope);
+			return SendStatus.QUEUE_FULL;
+		}
+		if (!schedule(sender)) {
+			return SendStatus.REJECTED;
+		}
+		return SendStatus.ACCEPTED;
+	}
+
+	/**
+	 * Puts a message into the window of its destination, waits for a free
+	 * place if the window is full
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * @param timeout
+	 *            - how long to wait, in milliseconds
+	 * 
+	 * @return a {@link SendStatus}, QUEUE_FULL if no place was freed in time
+	 * 
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting
+	 */
+	public SendStatus submit(Message message, long timeout)
+			throws InterruptedException {
+		return submit(message, null, timeout);
+	}
+
+	/**
+	 * Puts a message into the window of its destination, waits for a free
+	 * place if the window is full
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * @param receipt
+	 *            - completed with a {@link DeliveryReceipt} once the message
+	 *            is delivered, or exceptionally if it is dropped, may be null
+	 * @param timeout
+	 *            - how long to wait, in milliseconds
+	 * 
+	 * @return a {@link SendStatus}, QUEUE_FULL if no place was freed in time
+	 * 
+	 * @throws InterruptedException
+	 *             - if interrupted while waiting
+	 */
+	public SendStatus submit(Message message,
+			CompletableFuture<DeliveryReceipt> receipt, long timeout)
+			throws InterruptedException {
+		Validator.validateObjNotNull(message);
+		if (isStopped()) {
+			return SendStatus.STOPPED;
+		}
+		DestinationSender sender = getSender(message.getDestination());
+		Envelope envelope = prepare(message, receipt);
+		boolean isOffered = false;
+		try {
+			isOffered = sender.offer(envelope, timeout);
+		} finally {
+			if (!isOffered) {
+				unregister(envelope);
+			}
+		}
+		if (!isOffered) {
+			return SendStatus.QUEUE_FULL;
+		}
+		if (!schedule(sender)) {
+			return SendStatus.REJECTED;
+		}
+		return SendStatus.ACCEPTED;
+	}
+
+	/**
+	 * Puts a message into the window of its destination without waiting
+	 * 
+	 * @param message
+	 *            - a {@link Message} to be sent
+	 * 
+	 * @return a future completed with a {@link DeliveryReceipt} once the
+	 *         message is delivered, or exceptionally by a {@link PPCException}
+	 *         if the window is full or the message is dropped
+	 */
+	public CompletableFuture<DeliveryReceipt> submitAsync(Message message) {
+		CompletableFuture<DeliveryReceipt> receipt = new CompletableFuture<DeliveryReceipt>();
+		SendStatus status = trySubmit(message, receipt);
+		if (status != SendStatus.ACCEPTED) {
+			receipt.completeExceptionally(new PPCException("The message to ["
+					+ message.getDestination() + "] is not sent, " + status));
+		}
+		return receipt;
+	}
+
+	/**
+	 * Completes the receipt of a message acknowledged by its recipient
+	 * 
+	 * @param correlationId
+	 *            - a correlation id carried by the acknowledgement
+	 * 
+	 * @return <b>false</b> if no message waits for the acknowledgement
+	 */
+	public boolean acknowledge(String correlationId) {
+		if (correlationId == null) {
+			return false;
+		}
+		Envelope envelope = acks.remove(correlationId);
+		if (envelope == null) {
+			return false;
+		}
+		envelope.acknowledge();
+		return true;
+	}
+
+	/**
+	 * Returns a number of messages waiting for the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return a queue depth, 0 if nothing was sent to the destination
+	 */
+	public int getQueueDepth(String destination) {
+		DestinationSender sender = senders.get(destination);
+		return sender == null ? 0 : sender.getQueueDepth();
+	}
+
+	/**
+	 * Takes a snapshot of a priority lane of the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param priority
+	 *            - a lane
+	 * 
+	 * @return {@link LaneStats}, empty if nothing was sent to the destination
+	 */
+	public LaneStats getLaneStats(String destination, Priority priority) {
+		Validator.validateObjNotNull(priority);
+		DestinationSender sender = senders.get(destination);
+		return sender == null ? new LaneStats(priority, 0, 0, 0, 0) : sender
+				.getLaneStats(priority);
+	}
+
+	/**
+	 * Sets up how the priority lanes of every destination are drained
+	 * 
+	 * @param lanePolicy
+	 *            - a {@link LanePolicy}
+	 */
+	public void setLanePolicy(LanePolicy lanePolicy) {
+		Validator.validateObjNotNull(lanePolicy);
+		this.lanePolicy = lanePolicy;
+		for (DestinationSender sender : senders.values()) {
+			sender.setLanePolicy(lanePolicy);
+		}
+	}
+
+	/**
+	 * Attains a policy of the priority lanes
+	 * 
+	 * @return a {@link LanePolicy}
+	 */
+	public LanePolicy getLanePolicy() {
+		return lanePolicy;
+	}
+
+	/**
+	 * Sets up a window of a single destination, i.e. how many messages may
+	 * wait for it. Takes effect for the messages already waiting too.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param capacity
+	 *            - a positive number
+	 */
+	public void setCapacity(String destination, int capacity) {
+		Validator.validateString(destination);
+		Validator.validatePositive(capacity);
+		capacities.put(destination, capacity);
+		DestinationSender sender = senders.get(destination);
+		if (sender != null) {
+			sender.setCapacity(capacity);
+		}
+	}
+
+	/**
+	 * Returns a window of the destination
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * 
+	 * @return how many messages may wait for the destination
+	 */
+	public int getCapacity(String destination) {
+		Integer capacity = capacities.get(destination);
+		return capacity == null ? window : capacity;
+	}
+
+	/**
+	 * Sets up a window, i.e. how many messages may wait for a destination.
+	 * Takes effect for destinations that are not known yet.
+	 * 
+	 * @param window
+	 *            a positive number
+	 */
+	public void setWindow(int window) {
+		if (window > 0)
+			this.window = window;
+	}
+
+	/**
+	 * Sets up a batch policy, i.e. the senders pack the waiting messages of a
+	 * destination into a single {@link com.ocrix.ppc.message.BatchMessage}
+	 * 
+	 * @param batchPolicy
+	 *            a {@link BatchPolicy}, <b>null</b> turns batching off
+	 */
+	public void setBatchPolicy(BatchPolicy batchPolicy) {
+		this.batchPolicy = batchPolicy;
+	}
+
+	/**
+	 * Attains a batch policy
+	 * 
+	 * @return a {@link BatchPolicy} or null if batching is off
+	 */
+	public BatchPolicy getBatchPolicy() {
+		return batchPolicy;
+	}
+
+	/**
+	 * Sets up when a receipt is completed, the acknowledgements are requested
+	 * only for the messages whose receipt is awaited
+	 * 
+	 * @param ackMode
+	 *            an {@link AckMode}
+	 */
+	public void setAckMode(AckMode ackMode) {
+		Validator.validateObjNotNull(ackMode);
+		this.ackMode = ackMode;
+	}
+
+	/**
+	 * Attains when a receipt is completed
+	 * 
+	 * @return an {@link AckMode}
+	 */
+	public AckMode getAckMode() {
+		return ackMode;
+	}
+
+	/**
+	 * Sets up how long an acknowledgement is awaited once the pipe accepted
+	 * the message
+	 * 
+	 * @param ackTimeout
+	 *            a time in milliseconds
+	 */
+	public void setAckTimeout(long ackTimeout) {
+		if (ackTimeout > 0)
+			this.ackTimeout = ackTimeout;
+	}
+
+	/**
+	 * Attains a scheduler of the retries, i.e. to set up the backoff
+	 * 
+	 * @return a {@link RetryScheduler}
+	 */
+	public RetryScheduler getRetryScheduler() {
+		return retryScheduler;
+	}
+
+	/**
+	 * Stops all senders, drops the messages which were not sent yet and
+	 * releases their pipes.
+	 */
+	public void shutdown() {
+		isStopped = true;
+		retryScheduler.shutdown();
+		PPCException cause = new PPCException("The sender is stopped");
+		for (Envelope envelope : acks.values()) {
+			envelope.fail(cause);
+		}
+		acks.clear();
+		for (DestinationSender sender : senders.values()) {
+			sender.clear();
+			try {
+				sender.close();
+			} catch (RuntimeException e) {
+				logger.error(SenderEngine.class.getName() + " "
+						+ e.getMessage());
+			}
+		}
+		senders.clear();
+	}
+
+	/**
+	 * Indicates if the engine was shut down
+	 * 
+	 * @return <b>true</b> if stopped
+	 */
+	public boolean isStopped() {
+		return isStopped;
+	}
+
+	/**
+	 * Hands a sender to the thread pool unless it is already scheduled
+	 * 
+	 * @param sender
+	 *            a {@link DestinationSender}
+	 * 
+	 * @return <b>false</b> if the thread pool rejected the sender, its
+	 *         messages are dropped
+	 */
+	boolean schedule(DestinationSender sender) {
+		if (!isStopped() && sender.markScheduled()) {
+			return execute(sender);
+		}
+		return true;
+	}
+
+	/**
+	 * Hands a sender which waited for a retry back to the thread pool, it is
+	 * still marked as scheduled
+	 * 
+	 * @param sender
+	 *            a {@link DestinationSender}
+	 */
+	void resume(DestinationSender sender) {
+		if (!isStopped()) {
+			execute(sender);
+		}
+	}
+
+	/**
+	 * Runs a sender marked as scheduled. If the thread pool rejects it, the
+	 * messages waiting for its destination are dropped, so their receipts
+	 * fail instead of waiting for a sender that never runs.
+	 * 
+	 * @param sender
+	 *            a {@link DestinationSender}
+	 * 
+	 * @return <b>false</b> if the sender is rejected
+	 */
+	private boolean execute(DestinationSender sender) {
+		try {
+			getTaskManager().execute(sender);
+			return true;
+		} catch (RejectedExecutionException e) {
+			logger.error(SenderEngine.class.getName()
+					+ " the thread pool rejected the sender of ["
+					+ sender.getDestination() + "] " + e.getMessage());
+			sender.clear(new PPCException("The sender of ["
+					+ sender.getDestination()
+					+ "] is rejected by the thread pool", e));
+			sender.unmarkScheduled();
+			/* A message may have been offered while the window was cleared */
+			if (sender.getQueueDepth() > 0) {
+				return schedule(sender);
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Reports a message accepted by the pipe, its receipt is completed now or
+	 * once the recipient acknowledged it
+	 * 
+	 * @param envelope
+	 *            an {@link Envelope} of the message
+	 * @param attempts
+	 *            a number of trials it took
+	 */
+	void delivered(final Envelope envelope, int attempts) {
+		envelope.accepted(attempts);
+		if (!envelope.isAckRequested()) {
+			envelope.complete();
+			return;
+		}
+		final String correlationId = envelope.getMessage().getCorrelationId();
+		boolean isScheduled = retryScheduler.schedule(new Runnable() {
+			// @Override
+			public void run() {
+				if (acks.remove(correlationId, envelope)) {
+					envelope.fail(new PPCException("The message ["
+							+ correlationId + "] was not acknowledged by ["
+							+ envelope.getMessage().getDestination()
+							+ "] within " + ackTimeout + " ms"));
+				}
+			}
+		}, ackTimeout);
+		if (!isScheduled && acks.remove(correlationId, envelope)) {
+			envelope.fail(new PPCException("The sender is stopped"));
+		}
+	}
+
+	/**
+	 * Reports a message which is not sent
+	 * 
+	 * @param envelope
+	 *            an {@link Envelope} of the message
+	 * @param cause
+	 *            why the message is dropped
+	 */
+	void dropped(Envelope envelope, Throwable cause) {
+		String correlationId = envelope.getMessage().getCorrelationId();
+		if (correlationId != null) {
+			acks.remove(correlationId, envelope);
+		}
+		envelope.fail(cause);
+	}
+
+	/**
+	 * Puts a message into an envelope. A message whose receipt waits for the
+	 * recipient gets a correlation id, unless it has one, and asks for an
+	 * acknowledgement.
+	 * 
+	 * @param message
+	 *            a {@link Message} to be sent
+	 * @param receipt
+	 *            a future of the receipt, may be null
+	 * 
+	 * @return an {@link Envelope}
+	 */
+	private Envelope prepare(Message message,
+			CompletableFuture<DeliveryReceipt> receipt) {
+		if (receipt != null && ackMode == AckMode.RECEIVER) {
+			if (message.getCorrelationId() == null) {
+				message.setCorrelationId(UUID.randomUUID().toString());
+			}
+			message.setAckRequested(true);
+		}
+		Envelope envelope = new Envelope(message, receipt);
+		if (envelope.isAckRequested()) {
+			/* Registered before sending, an acknowledgement may be quick */
+			acks.put(message.getCorrelationId(), envelope);
+		}
+		return envelope;
+	}
+
+	/**
+	 * Forgets an envelope which was not taken by the window
+	 * 
+	 * @param envelope
+	 *            an {@link Envelope}
+	 */
+	private void unregister(Envelope envelope) {
+		if (envelope.isAckRequested()) {
+			acks.remove(envelope.getMessage().getCorrelationId(), envelope);
+		}
+	}
+
+	/**
+	 * Attains a sender of the destination, creates it at first use
+	 * 
+	 * @param destination
+	 *            a name of the destination peer
+	 * 
+	 * @return a {@link DestinationSender}
+	 */
+	private DestinationSender getSender(String destination) {
+		DestinationSender sender = senders.get(destination);
+		if (sender == null) {
+			DestinationSender created = createDestinationSender(destination,
+					getCapacity(destination));
+			sender = senders.putIfAbsent(destination, created);
+			if (sender == null) {
+				sender = created;
+				/* Read after it is put, a new policy reaches it either way */
+				sender.setLanePolicy(lanePolicy);
+			}
+		}
+		return sender;
+	}
+
+	/**
+	 * Sets up a {@link TaskManager}
+	 * 
+	 * @param taskManager
+	 */
+	private void setTaskManager(TaskManager taskManager) {
+		Validator.validateObjNotNull(taskManager);
+		if (BoundedThreadPool.isDiscarding(taskManager)) {
+			throw new IllegalArgumentException(
+					"The senders can't run on a pool which discards the tasks");
+		}
+		this.taskManager = taskManager;
+	}
+
+	/**
+	 * Attains a {@link TaskManager}
+	 * 
+	 * @return a task manager
+	 */
+	private TaskManager getTaskManager() {
+		return taskManager;
+	}
+}
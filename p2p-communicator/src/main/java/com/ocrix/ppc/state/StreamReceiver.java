@@ -0,0 +1,434 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.MappedFile;
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.ChunkMessage;
+import com.ocrix.ppc.message.StreamMessage;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * Reassembles the transfers sent by a {@link StreamSender}. The chunks of a
+ * transfer are appended in their order, a transfer that outgrows the spill
+ * size is moved from memory to a temporary file. A file whose size is
+ * announced by its first chunk is written into a mapping of a temporary file
+ * sized at once, the chunks are not copied through the heap. A transfer whose
+ * size does not match the declared one is dropped. A repeated chunk
+ * is ignored, a chunk ahead of the expected one is dropped, so its sender has
+ * to resume from {@link #getNextSequence(String, String)}. A completed
+ * transfer is remembered for the idle time of {@link #expire(long)}, so a
+ * late copy of its chunk is ignored too.
+ */
+public class StreamReceiver {
+	/* Class members */
+	private final ConcurrentMap<String, IncomingTransfer> transfers = new ConcurrentHashMap<String, IncomingTransfer>();
+	/* The completed transfers with the time of their completion */
+	private final ConcurrentMap<String, Long> completedTransfers = new ConcurrentHashMap<String, Long>();
+	private final int spillSize;
+	/* Expires the idle transfers, if scheduled */
+	private ScheduledExecutorService timer = null;
+	private static final Logger logger = Logger.getLogger(StreamReceiver.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a receiver with the default spill size
+	 */
+	public StreamReceiver() {
+		this(DefaultParameter.STREAM_SPILL_SIZE.getCode());
+	}
+
+	/**
+	 * Creates a receiver
+	 * 
+	 * @param spillSize
+	 *            - how many bytes of a transfer are kept in memory
+	 */
+	public StreamReceiver(int spillSize) {
+		Validator.validateInt(spillSize);
+		this.spillSize = spillSize;
+	}
+
+	/**
+	 * Appends a chunk to its transfer
+	 * 
+	 * @param chunk
+	 *            - a received {@link ChunkMessage}
+	 * 
+	 * @return a {@link StreamMessage} if the chunk completed the transfer,
+	 *         otherwise null
+	 * 
+	 * @throws IOException
+	 *             - if the transfer could not be spilled to a file or its
+	 *             size does not match the announced one, the transfer is
+	 *             dropped
+	 */
+	public StreamMessage onChunk(ChunkMessage chunk) throws IOException {
+		Validator.validateObjNotNull(chunk);
+		String key = key(chunk.getSource(), chunk.getTransferId());
+		if (isCompleted(key, chunk)) {
+			return null;
+		}
+		IncomingTransfer transfer = transfers.get(key);
+		if (transfer == null) {
+			IncomingTransfer created = new IncomingTransfer(chunk.getSource(),
+					chunk.getDestination(), chunk.getTransferId());
+			transfer = transfers.putIfAbsent(key, created);
+			if (transfer == null) {
+				transfer = created;
+				/* The transfer may have completed since the first look */
+				if (isCompleted(key, chunk)) {
+					transfers.remove(key, created);
+					return null;
+				}
+			}
+		}
+		StreamMessage completed = null;
+		synchronized (transfer) {
+			try {
+				completed = transfer.append(chunk);
+			} catch (IOException e) {
+				/* A broken transfer is not completed with what it got */
+				transfers.remove(key, transfer);
+				transfer.discard();
+				throw e;
+			}
+		}
+		if (completed != null) {
+			/* Remembered before removed, so no late chunk starts it again */
+			completedTransfers.put(key, System.currentTimeMillis());
+			transfers.remove(key, transfer);
+		}
+		return completed;
+	}
+
+	/**
+	 * Indicates if a chunk is already a part of its transfer, i.e. it may be
+	 * acknowledged
+	 * 
+	 * @param chunk
+	 *            - a received {@link ChunkMessage}
+	 * 
+	 * @return <b>true</b> if the chunk was appended or its transfer completed
+	 */
+	public boolean isReceived(ChunkMessage chunk) {
+		Validator.validateObjNotNull(chunk);
+		return completedTransfers.containsKey(key(chunk.getSource(),
+				chunk.getTransferId()))
+				|| getNextSequence(chunk.getSource(), chunk.getTransferId()) > chunk
+						.getSequence();
+	}
+
+	/**
+	 * Returns a sequence of the first chunk the transfer misses, a sender
+	 * resumes an interrupted transfer from it
+	 * 
+	 * @param source
+	 *            - a name of the sending peer
+	 * @param transferId
+	 *            - an id of the transfer
+	 * 
+	 * @return a sequence, 0 if nothing of the transfer was received
+	 */
+	public long getNextSequence(String source, String transferId) {
+		IncomingTransfer transfer = transfers.get(key(source, transferId));
+		if (transfer == null) {
+			return 0;
+		}
+		synchronized (transfer) {
+			return transfer.nextSequence;
+		}
+	}
+
+	/**
+	 * Returns a number of the transfers not completed yet
+	 * 
+	 * @return a count
+	 */
+	public int getPendingCount() {
+		return transfers.size();
+	}
+
+	/**
+	 * Drops a transfer and removes its temporary file
+	 * 
+	 * @param source
+	 *            - a name of the sending peer
+	 * @param transferId
+	 *            - an id of the transfer
+	 * 
+	 * @return <b>true</b> if the transfer was pending
+	 */
+	public boolean abort(String source, String transferId) {
+		IncomingTransfer transfer = transfers.remove(key(source, transferId));
+		if (transfer == null) {
+			return false;
+		}
+		synchronized (transfer) {
+			transfer.discard();
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the transfers which received no chunk for a while and forgets the
+	 * transfers completed before that time
+	 * 
+	 * @param idleTime
+	 *            - in milliseconds
+	 * 
+	 * @return a number of the dropped transfers
+	 */
+	public int expire(long idleTime) {
+		long now = System.currentTimeMillis();
+		int expired = 0;
+		Iterator<Long> times = completedTransfers.values().iterator();
+		while (times.hasNext()) {
+			if (now - times.next() >= idleTime) {
+				times.remove();
+			}
+		}
+		Iterator<Map.Entry<String, IncomingTransfer>> it = transfers
+				.entrySet().iterator();
+		while (it.hasNext()) {
+			IncomingTransfer transfer = it.next().getValue();
+			synchronized (transfer) {
+				if (now - transfer.lastChunkTime >= idleTime) {
+					it.remove();
+					transfer.discard();
+					expired++;
+				}
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Expires the idle transfers periodically, on a timer thread of the
+	 * receiver, until {@link #shutdown()}
+	 * 
+	 * @param idleTime
+	 *            - in milliseconds
+	 */
+	public synchronized void scheduleExpiry(final long idleTime) {
+		if (idleTime <= 0) {
+			throw new IllegalArgumentException("An idle time must be positive");
+		}
+		if (timer == null) {
+			timer = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						// @Override
+						public Thread newThread(Runnable task) {
+							Thread thread = new Thread(task,
+									"PPC-STREAM-EXPIRY");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			timer.scheduleWithFixedDelay(new Runnable() {
+				// @Override
+				public void run() {
+					int expired = expire(idleTime);
+					if (expired > 0) {
+						logger.warn("Dropped " + expired
+								+ " idle transfer(s) after " + idleTime
+								+ " ms");
+					}
+				}
+			}, idleTime, idleTime, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Stops the expiry and drops all pending transfers
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (timer != null) {
+				timer.shutdownNow();
+				timer = null;
+			}
+		}
+		expire(Long.MIN_VALUE);
+	}
+
+	private boolean isCompleted(String key, ChunkMessage chunk) {
+		if (!completedTransfers.containsKey(key)) {
+			return false;
+		}
+		logger.debug("Ignored a late chunk " + chunk.getSequence()
+				+ " of the completed transfer " + chunk.getTransferId());
+		return true;
+	}
+
+	private static String key(String source, String transferId) {
+		return source + "/" + transferId;
+	}
+
+	/**
+	 * A transfer being reassembled, guarded by its own monitor
+	 */
+	private class IncomingTransfer {
+		private final String source;
+		private final String destination;
+		private final String transferId;
+		private long nextSequence = 0;
+		private long size = 0;
+		private long lastChunkTime = System.currentTimeMillis();
+		private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+		private File file = null;
+		private OutputStream out = memory;
+		/* A mapping of the file, if its size was announced */
+		private MappedFile mapped = null;
+
+		private IncomingTransfer(String source, String destination,
+				String transferId) {
+			this.source = source;
+			this.destination = destination;
+			this.transferId = transferId;
+		}
+
+		/**
+		 * Appends a chunk if it is the expected one
+		 * 
+		 * @param chunk
+		 *            a {@link ChunkMessage}
+		 * 
+		 * @return a {@link StreamMessage} if the transfer is completed
+		 * 
+		 * @throws IOException
+		 */
+		private StreamMessage append(ChunkMessage chunk) throws IOException {
+			lastChunkTime = System.currentTimeMillis();
+			long sequence = chunk.getSequence();
+			if (sequence < nextSequence) {
+				logger.debug("Ignored a repeated chunk " + sequence
+						+ " of the transfer " + transferId);
+				return null;
+			}
+			if (sequence > nextSequence) {
+				logger.warn("Dropped the chunk " + sequence
+						+ " of the transfer " + transferId + ", expected "
+						+ nextSequence);
+				return null;
+			}
+			if (file == null && chunk.getFileSize() > spillSize) {
+				map(chunk.getFileSize());
+			} else if (file == null && size + chunk.getLength() > spillSize) {
+				spill();
+			}
+			if (mapped != null) {
+				if (size + chunk.getLength() > mapped.getSize()) {
+					throw new IOException("The chunk " + sequence
+							+ " of the transfer " + transferId
+							+ " is beyond the announced " + mapped.getSize()
+							+ " bytes");
+				}
+				mapped.write(size, chunk.getBuffer());
+			} else {
+				chunk.writeTo(out);
+			}
+			size += chunk.getLength();
+			nextSequence++;
+			if (!chunk.isLast()) {
+				return null;
+			}
+			if (chunk.getTotalSize() != size
+					|| (mapped != null && mapped.getSize() != size)) {
+				throw new IOException("The transfer " + transferId
+						+ " declared " + chunk.getTotalSize()
+						+ " bytes, received " + size);
+			}
+			close();
+			if (file == null) {
+				return new StreamMessage(source, destination, transferId,
+						size, memory.toByteArray(), null);
+			}
+			return new StreamMessage(source, destination, transferId, size,
+					null, file);
+		}
+
+		/**
+		 * Moves the received bytes to a temporary file
+		 * 
+		 * @throws IOException
+		 */
+		private void spill() throws IOException {
+			file = File.createTempFile("ppc-" + transferId + "-", ".part");
+			file.deleteOnExit();
+			out = new BufferedOutputStream(new FileOutputStream(file));
+			memory.writeTo(out);
+			memory = null;
+		}
+
+		/**
+		 * Moves the received bytes to a mapping of a temporary file of the
+		 * announced size
+		 * 
+		 * @param fileSize
+		 *            a size of the transfer
+		 * 
+		 * @throws IOException
+		 */
+		private void map(long fileSize) throws IOException {
+			file = File.createTempFile("ppc-" + transferId + "-", ".part");
+			file.deleteOnExit();
+			mapped = new MappedFile(file, fileSize);
+			mapped.write(0, ByteBuffer.wrap(memory.toByteArray()));
+			memory = null;
+			out = null;
+		}
+
+		private void close() throws IOException {
+			if (mapped != null) {
+				mapped.close();
+			} else {
+				out.close();
+			}
+		}
+
+		private void discard() {
+			try {
+				close();
+			} catch (IOException e) {
+				logger.error(StreamReceiver.class.getName() + " "
+						+ e.getMessage());
+			}
+			if (file != null && !file.delete()) {
+				logger.warn("Could not delete " + file);
+			}
+		}
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.MappedFile;
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.message.ChunkMessage;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.Priority;
+import com.ocrix.ppc.type.SendStatus;
+
+/**
+ * Sends a large payload as a sequence of {@link ChunkMessage}s through a
+ * {@link SenderEngine}. At most a window of chunks is in flight, the next one
+ * is read once the receipt of an earlier one is completed, so the memory
+ * taken by a transfer is bounded by the window whatever the payload size. In
+ * {@link com.ocrix.ppc.type.AckMode#RECEIVER} a receipt is completed by the
+ * acknowledgement of the recipient, otherwise once the pipe accepted the
+ * chunk. A file is sent from its mapping, so its bytes do not pass through the
+ * heap of the sender.
+ */
+public class StreamSender {
+	/* Class members */
+	private final SenderEngine engine;
+	private final String source;
+	private int chunkSize = DefaultParameter.STREAM_CHUNK_SIZE.getCode();
+	private int window = DefaultParameter.STREAM_WINDOW.getCode();
+	private long timeout = DefaultParameter.STREAM_TIMEOUT.getCode();
+	private static final Logger logger = Logger.getLogger(StreamSender.class);
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a stream sender
+	 * 
+	 * @param engine
+	 *            - a {@link SenderEngine} that sends the chunks
+	 * @param source
+	 *            - a name of the sending peer
+	 */
+	public StreamSender(SenderEngine engine, String source) {
+		Validator.validateObjNotNull(engine);
+		Validator.validateString(source);
+		this.engine = engine;
+		this.source = source;
+	}
+
+	/**
+	 * Sends a stream, reads it to the end but does not close it
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param in
+	 *            - an {@link InputStream} to be sent
+	 * 
+	 * @return an id of the transfer
+	 * 
+	 * @throws IOException
+	 *             - if the stream could not be read or a chunk was not
+	 *             delivered
+	 */
+	public String send(String destination, InputStream in) throws IOException {
+		String transferId = UUID.randomUUID().toString();
+		send(destination, in, transferId, 0);
+		return transferId;
+	}
+
+	/**
+	 * Sends a file by the slices of its mapping, the bytes are not copied into
+	 * the heap. The first chunk announces the size of the file.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param file
+	 *            - a {@link Path} of the file
+	 * 
+	 * @return an id of the transfer
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be read or a chunk was not delivered
+	 */
+	public String sendFile(String destination, Path file) throws IOException {
+		String transferId = UUID.randomUUID().toString();
+		resumeFile(destination, file, transferId, 0);
+		return transferId;
+	}
+
+	/**
+	 * Resumes an interrupted transfer of a file from the first chunk the
+	 * recipient misses
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param file
+	 *            - a {@link Path} of the file
+	 * @param transferId
+	 *            - an id of the interrupted transfer
+	 * @param fromSequence
+	 *            - a sequence of the first missing chunk, see
+	 *            {@link StreamReceiver#getNextSequence(String, String)}
+	 * 
+	 * @throws IOException
+	 *             - if the file could not be read or a chunk was not delivered
+	 */
+	public void resumeFile(String destination, Path file, String transferId,
+			long fromSequence) throws IOException {
+		Validator.validateString(destination);
+		Validator.validateObjNotNull(file);
+		Validator.validateString(transferId);
+		final Semaphore inFlight = new Semaphore(window);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		MappedFile mapped = new MappedFile(file.toFile());
+		try {
+			long size = mapped.getSize();
+			long position = fromSequence * chunkSize;
+			if (position > size) {
+				throw new IOException("The file " + file
+						+ " is shorter than the resumed transfer");
+			}
+			long sequence = fromSequence;
+			while (true) {
+				acquire(inFlight, failure, 1);
+				int length = (int) Math.min(chunkSize, size - position);
+				ChunkMessage message = new ChunkMessage(source, destination,
+						transferId, sequence, mapped.slice(position, length));
+				message.setCorrelationId(transferId + ":" + sequence);
+				message.setPriority(Priority.LOW);
+				if (sequence == fromSequence) {
+					message.setFileSize(size);
+				}
+				position += length;
+				if (position == size) {
+					message.setLast(size);
+				}
+				submit(message, inFlight, failure);
+				if (position == size) {
+					break;
+				}
+				sequence++;
+			}
+			/* Waits for the receipts of the chunks in flight */
+			acquire(inFlight, failure, window);
+			inFlight.release(window);
+			logger.debug("Sent the file " + file + " of " + size
+					+ " bytes to " + destination);
+		} finally {
+			mapped.close();
+		}
+	}
+
+	/**
+	 * Sends a stream as the chunks of the transfer starting from the sequence.
+	 * A chunk is read ahead to find out which one is the last, an empty stream
+	 * is sent as a single empty chunk.
+	 * 
+	 * @param destination
+	 *            - a name of the destination peer
+	 * @param in
+	 *            - an {@link InputStream} to be sent
+	 * @param transferId
+	 *            - an id of the transfer
+	 * @param firstSequence
+	 *            - a sequence of the first chunk read from the stream
+	 * 
+	 * @throws IOException
+	 *             - if the stream could not be read or a chunk was not
+	 *             delivered
+	 */
+	public void send(String destination, InputStream in, String transferId,
+			long firstSequence) throws IOException {
+		Validator.validateString(destination);
+		Validator.validateObjNotNull(in);
+		Validator.validateString(transferId);
+		final Semaphore inFlight = new Semaphore(window);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		long sequence = firstSequence;
+		long size = firstSequence * chunkSize;
+		byte[] chunk = new byte[chunkSize];
+		int length = readFully(in, chunk);
+		while (true) {
+			/* Nothing more is read until the window has a place */
+			acquire(inFlight, failure, 1);
+			byte[] next = null;
+			int nextLength = -1;
+			if (length == chunkSize) {
+				next = new byte[chunkSize];
+				nextLength = readFully(in, next);
+			}
+			size += length;
+			ChunkMessage message = new ChunkMessage(source, destination,
+					transferId, sequence, chunk, 0, length);
+			message.setCorrelationId(transferId + ":" + sequence);
+			/* Bulk, the control messages of the destination go first */
+			message.setPriority(Priority.LOW);
+			if (nextLength <= 0) {
+				message.setLast(size);
+			}
+			submit(message, inFlight, failure);
+			if (nextLength <= 0) {
+				break;
+			}
+			chunk = next;
+			length = nextLength;
+			sequence++;
+		}
+		/* Waits for the receipts of the chunks in flight */
+		acquire(inFlight, failure, window);
+		inFlight.release(window);
+		logger.debug("Sent the transfer " + transferId + " of " + size
+				+ " bytes to " + destination);
+	}
+
+	/**
+	 * Sets up a size of a chunk
+	 * 
+	 * @param chunkSize
+	 *            - a number of bytes
+	 */
+	public void setChunkSize(int chunkSize) {
+		Validator.validatePositive(chunkSize);
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Returns a size of a chunk
+	 * 
+	 * @return a number of bytes
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets up how many chunks may be in flight
+	 * 
+	 * @param window
+	 *            - a positive number
+	 */
+	public void setWindow(int window) {
+		Validator.validatePositive(window);
+		this.window = window;
+	}
+
+	/**
+	 * Returns how many chunks may be in flight
+	 * 
+	 * @return a window
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets up how long to wait for a receipt of a chunk
+	 * 
+	 * @param timeout
+	 *            - in milliseconds
+	 */
+	public void setTimeout(long timeout) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("A timeout must be positive");
+		}
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Hands a chunk to the engine, its permit is given back once the receipt
+	 * is completed
+	 * 
+	 * @param message
+	 *            a {@link ChunkMessage}
+	 * @param inFlight
+	 *            permits of the window
+	 * @param failure
+	 *            the first failure of the transfer
+	 * 
+	 * @throws IOException
+	 */
+	private void submit(ChunkMessage message, final Semaphore inFlight,
+			final AtomicReference<Throwable> failure) throws IOException {
+		CompletableFuture<DeliveryReceipt> receipt = new CompletableFuture<DeliveryReceipt>();
+		receipt.whenComplete(new BiConsumer<DeliveryReceipt, Throwable>() {
+			// @Override
+			public void accept(DeliveryReceipt delivered, Throwable cause) {
+				if (cause != null) {
+					failure.compareAndSet(null, cause);
+				}
+				inFlight.release();
+			}
+		});
+		SendStatus status = null;
+		try {
+			status = engine.submit(message, receipt, timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			inFlight.release();
+			throw new IOException("Interrupted while sending the transfer "
+					+ message.getTransferId());
+		}
+		if (status != SendStatus.ACCEPTED) {
+			/* A rejected chunk failed its receipt, which freed the permit */
+			if (status != SendStatus.REJECTED) {
+				inFlight.release();
+			}
+			throw new IOException("The chunk " + message.getSequence()
+					+ " of the transfer " + message.getTransferId()
+					+ " is not sent, " + status);
+		}
+	}
+
+	/**
+	 * Waits for the permits of the window, fails the transfer if a chunk was
+	 * not delivered
+	 * 
+	 * @param inFlight
+	 *            permits of the window
+	 * @param failure
+	 *            the first failure of the transfer
+	 * @param permits
+	 *            how many permits to take
+	 * 
+	 * @throws IOException
+	 */
+	private void acquire(Semaphore inFlight,
+			AtomicReference<Throwable> failure, int permits)
+			throws IOException {
+		boolean isAcquired = false;
+		try {
+			isAcquired = inFlight.tryAcquire(permits, timeout,
+					TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the window");
+		}
+		if (failure.get() != null) {
+			if (isAcquired) {
+				inFlight.release(permits);
+			}
+			throw new IOException("A chunk is not delivered, "
+					+ failure.get().getMessage());
+		}
+		if (!isAcquired) {
+			throw new IOException("No chunk was delivered within " + timeout
+					+ " ms");
+		}
+	}
+
+	/**
+	 * Reads until the buffer is full or the stream ends
+	 * 
+	 * @param in
+	 *            an {@link InputStream}
+	 * @param buffer
+	 *            a buffer to be filled
+	 * 
+	 * @return a number of bytes read
+	 * 
+	 * @throws IOException
+	 */
+	private static int readFully(InputStream in, byte[] buffer)
+			throws IOException {
+		int length = 0;
+		while (length < buffer.length) {
+			int read = in.read(buffer, length, buffer.length - length);
+			if (read < 0) {
+				break;
+			}
+			length += read;
+		}
+		return length;
+	}
+}
@@ -17,10 +17,12 @@ package com.ocrix.ppc.state;
 import java.util.concurrent.BlockingQueue;
 import net.jxta.peergroup.PeerGroup;
 import net.jxta.pipe.PipeMsgListener;
+import net.jxta.util.JxtaBiDiPipe;
 //import com.ibm.websphere.asynchbeans.Work;
 import com.ocrix.ppc.discovery.PipeDiscovery;
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.pipe.PipeFactory;
+import com.ocrix.ppc.pipe.PipePool;
 
 /**
  * Represents a {@link WasBiDiMessageSender}
@@ -71,6 +73,33 @@ public class WasBiDiMessageSender extends BiDiMessageSender {// implements Work{
 		super(backLog, pipeFactory, peerGroup, pipeDiscovery, listener);
 	}
 
+	/**
+	 * Creates an instance of the bi-directional message sender using WAS thread
+	 * pool, the pipes are borrowed from the pool
+	 * 
+	 * @param backLog
+	 *            a message buffer
+	 * @param pipeFactory
+	 *            a {@link PipeFactory}
+	 * @param peerGroup
+	 *            a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            a {@link PipeDiscovery}
+	 * @param listener
+	 *            a {@link PipeMsgListener}
+	 * @param retry
+	 *            a number of tries to send message
+	 * @param pipePool
+	 *            a {@link PipePool} of the bi-directional pipes
+	 */
+	public WasBiDiMessageSender(BlockingQueue<Message> backLog,
+			PipeFactory pipeFactory, PeerGroup peerGroup,
+			PipeDiscovery pipeDiscovery, PipeMsgListener listener, int retry,
+			PipePool<JxtaBiDiPipe> pipePool) {
+		super(backLog, pipeFactory, peerGroup, pipeDiscovery, listener, retry,
+				pipePool);
+	}
+
 	// @Override
 	public void release() {
 		super.setStopped(true);
@@ -0,0 +1,80 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.threadpool;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A call that blocks, e.g. a send on a pipe or a wait for a retry. Run in a
+ * {@link ForkJoinThreadPool} it lets the pool add a thread for the time of the
+ * call, so a blocked task does not hold the parallelism. Elsewhere it is just
+ * called.
+ * 
+ * @param <T>
+ *            - a type of the result
+ */
+public abstract class BlockingCall<T> implements ForkJoinPool.ManagedBlocker {
+	private T result = null;
+	private IOException failure = null;
+	private boolean isDone = false;
+
+	/**
+	 * Does the blocking work
+	 * 
+	 * @return a result of the call
+	 * 
+	 * @throws IOException
+	 *             - if the call failed
+	 * @throws InterruptedException
+	 *             - if interrupted while blocked
+	 */
+	protected abstract T call() throws IOException, InterruptedException;
+
+	/**
+	 * Runs the call, once
+	 * 
+	 * @return a result of the call
+	 * 
+	 * @throws IOException
+	 *             - if the call failed
+	 * @throws InterruptedException
+	 *             - if interrupted while blocked
+	 */
+	public final T invoke() throws IOException, InterruptedException {
+		ForkJoinPool.managedBlock(this);
+		if (failure != null) {
+			throw failure;
+		}
+		return result;
+	}
+
+	// @Override
+	public final boolean block() throws InterruptedException {
+		try {
+			result = call();
+		} catch (IOException e) {
+			failure = e;
+		} finally {
+			isDone = true;
+		}
+		return true;
+	}
+
+	// @Override
+	public final boolean isReleasable() {
+		return isDone;
+	}
+}
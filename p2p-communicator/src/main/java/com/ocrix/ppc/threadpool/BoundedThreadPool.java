@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.threadpool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+import com.ocrix.ppc.type.RejectionPolicy;
+
+/**
+ * A {@link TaskManager} backed by a {@link ThreadPoolExecutor} with a bounded
+ * queue. The pool grows from the core to the max size when the queue is full,
+ * beyond that a task is handled by the {@link RejectionPolicy}. The senders
+ * and the decoders refuse a pool which discards the tasks, with ABORT their
+ * rejected messages fail, with CALLER_RUNS they run on the submitting thread.
+ */
+public class BoundedThreadPool extends ExecutorTaskManager {
+	private final RejectionPolicy policy;
+
+	/* ---------- end of class members --------- */
+
+	/**
+	 * Creates a pool with the default limits
+	 * 
+	 * @param policy
+	 *            - a {@link RejectionPolicy}
+	 */
+	public BoundedThreadPool(RejectionPolicy policy) {
+		this(DefaultParameter.THREAD_POOL_SIZE.getCode(),
+				DefaultParameter.BOUNDED_POOL_MAX_SIZE.getCode(),
+				DefaultParameter.BOUNDED_POOL_QUEUE_CAPACITY.getCode(), policy);
+	}
+
+	/**
+	 * Creates a pool
+	 * 
+	 * @param coreSize
+	 *            - a number of threads kept alive
+	 * @param maxSize
+	 *            - a max number of threads
+	 * @param capacity
+	 *            - a number of tasks that may wait for a thread
+	 * @param policy
+	 *            - a {@link RejectionPolicy}
+	 */
+	public BoundedThreadPool(int coreSize, int maxSize, int capacity,
+			RejectionPolicy policy) {
+		super(new ThreadPoolExecutor(coreSize, maxSize,
+				DefaultParameter.TWO_SEC.getCode(), TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity), getHandler(policy)));
+		this.policy = policy;
+	}
+
+	/**
+	 * Attains the {@link RejectionPolicy} of the pool
+	 * 
+	 * @return a rejection policy
+	 */
+	public RejectionPolicy getRejectionPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Tells whether a rejected task is dropped without telling its caller.
+	 * Such a pool can't run a task that must not be lost, e.g. a destination
+	 * sender or a decoder stripe, they stay marked as scheduled forever.
+	 * 
+	 * @param taskManager
+	 *            - a {@link TaskManager}
+	 * 
+	 * @return <b>true</b> for a {@link BoundedThreadPool} which discards the
+	 *         rejected tasks
+	 */
+	public static boolean isDiscarding(TaskManager taskManager) {
+		if (!(taskManager instanceof BoundedThreadPool)) {
+			return false;
+		}
+		RejectionPolicy policy = ((BoundedThreadPool) taskManager).policy;
+		return policy == RejectionPolicy.DISCARD
+				|| policy == RejectionPolicy.DISCARD_OLDEST;
+	}
+
+	/**
+	 * Maps a {@link RejectionPolicy} to the handler of the executor
+	 * 
+	 * @param policy
+	 *            - a {@link RejectionPolicy}
+	 * 
+	 * @return a {@link RejectedExecutionHandler}
+	 */
+	private static RejectedExecutionHandler getHandler(RejectionPolicy policy) {
+		Validator.validateObjNotNull(policy);
+		switch (policy) {
+		case ABORT:
+			return new ThreadPoolExecutor.AbortPolicy();
+		case DISCARD:
+			return new ThreadPoolExecutor.DiscardPolicy();
+		case DISCARD_OLDEST:
+			return new ThreadPoolExecutor.DiscardOldestPolicy();
+		default:
+			return new ThreadPoolExecutor.CallerRunsPolicy();
+		}
+	}
+}
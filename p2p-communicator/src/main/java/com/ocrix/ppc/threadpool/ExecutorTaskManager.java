@@ -0,0 +1,92 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.threadpool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.ocrix.ppc.commons.Validator;
+import com.ocrix.ppc.type.DefaultParameter;
+
+/**
+ * A base of the {@link TaskManager}s backed by an {@link ExecutorService}. The
+ * tasks still running after the waiting time of the shutdown are interrupted.
+ */
+public abstract class ExecutorTaskManager implements TaskManager {
+	/* Class member */
+	private ExecutorService pool = null;
+	private static final Logger logger = Logger
+			.getLogger(ExecutorTaskManager.class);
+
+	/* ----- end of class member declaration */
+
+	/**
+	 * Creates a task manager
+	 * 
+	 * @param pool
+	 *            - an {@link ExecutorService} that runs the tasks
+	 */
+	protected ExecutorTaskManager(ExecutorService pool) {
+		setPool(pool);
+	}
+
+	// @Override
+	public void execute(Runnable jobToDo) {
+		getPool().execute(jobToDo);
+	}
+
+	// @Override
+	public void shutdown() {
+		getPool().shutdown();
+		try {
+			if (!getPool().awaitTermination(
+					DefaultParameter.WAITING_TIME.getCode(),
+					TimeUnit.MILLISECONDS)) {
+				getPool().shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			getPool().shutdownNow();
+			Thread.currentThread().interrupt();
+			logger.error(getClass().getName() + " " + e.getMessage());
+		}
+		logger.debug("Pool is terminated, " + getPool().isTerminated());
+	}
+
+	// @Override
+	public void init() {
+		logger.debug("Is not implemented");
+	}
+
+	/**
+	 * Sets up a thread pool
+	 * 
+	 * @param pool
+	 */
+	private void setPool(ExecutorService pool) {
+		Validator.validateObjNotNull(pool);
+		this.pool = pool;
+	}
+
+	/**
+	 * Attains a thread pool
+	 * 
+	 * @return a {@link ExecutorService}
+	 */
+	protected ExecutorService getPool() {
+		return pool;
+	}
+}
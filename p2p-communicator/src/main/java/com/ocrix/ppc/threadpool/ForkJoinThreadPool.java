@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.threadpool;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A work-stealing implementation of the {@link TaskManager}. The tasks run
+ * directly on the workers, the ones that block on a pipe or a retry wrap the
+ * wait into a {@link BlockingCall}, so the pool adds a thread only for the
+ * time of the wait.
+ */
+public class ForkJoinThreadPool extends ExecutorTaskManager {
+
+	/**
+	 * Creates a pool with the parallelism of the available processors
+	 */
+	public ForkJoinThreadPool() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a pool
+	 * 
+	 * @param parallelism
+	 *            - a target number of the running threads
+	 */
+	public ForkJoinThreadPool(int parallelism) {
+		/* The tasks are independent events, FIFO order suits them better */
+		super(new ForkJoinPool(parallelism,
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+	}
+}
@@ -16,24 +16,32 @@ package com.ocrix.ppc.threadpool;
 
 import java.util.concurrent.BlockingQueue;
 import net.jxta.peergroup.PeerGroup;
+import net.jxta.pipe.OutputPipe;
 import net.jxta.pipe.PipeMsgListener;
+import net.jxta.util.JxtaBiDiPipe;
+import com.ocrix.ppc.commons.Validator;
 import com.ocrix.ppc.discovery.PipeDiscovery;
 import com.ocrix.ppc.exception.PPCException;
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.pipe.PipeFactory;
+import com.ocrix.ppc.pipe.PipePool;
 import com.ocrix.ppc.state.BiDiMessageSender;
 import com.ocrix.ppc.state.MessageSenderJavaThread;
 import com.ocrix.ppc.state.MessageSenderWasThreadPool;
 import com.ocrix.ppc.state.WasBiDiMessageSender;
+import com.ocrix.ppc.type.RejectionPolicy;
 //import com.ocrix.ppc.type.Tag;
 import com.ocrix.ppc.type.ThreadPoolType;
 
 /**
- * Shifts between Java fixed thread pool and WAS' thread pool
+ * Shifts between the thread pools, i.e. Java fixed, work-stealing, virtual,
+ * bounded or WAS thread pool
  */
 public class ThreadPoolSwitcher {
 	/* A WAS' jndi thread pool name */
 	private String jndiName;
+	/* What a bounded thread pool does when it is full */
+	private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
 
 	/**
 	 * Default citor
@@ -56,6 +64,15 @@ public class ThreadPoolSwitcher {
 		case JAVA:
 			return new StandardFixedThreadPool();
 
+		case FORK_JOIN:
+			return new ForkJoinThreadPool();
+
+		case VIRTUAL:
+			return new VirtualThreadPool();
+
+		case BOUNDED:
+			return new BoundedThreadPool(getRejectionPolicy());
+
 			// case WAS:
 			// if (jndiName == null)
 			// return new WasThreadPool(Tag.JNDI_NAME.getValue());
@@ -67,6 +84,27 @@ public class ThreadPoolSwitcher {
 		}
 	}
 
+	/**
+	 * Sets up what a {@link BoundedThreadPool} does when all its threads are
+	 * busy and its queue is full
+	 * 
+	 * @param rejectionPolicy
+	 *            a {@link RejectionPolicy}
+	 */
+	public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+		Validator.validateObjNotNull(rejectionPolicy);
+		this.rejectionPolicy = rejectionPolicy;
+	}
+
+	/**
+	 * Attains a rejection policy of the bounded thread pool
+	 * 
+	 * @return a {@link RejectionPolicy}
+	 */
+	public RejectionPolicy getRejectionPolicy() {
+		return rejectionPolicy;
+	}
+
 	/**
 	 * Sets up a jndi name
 	 * 
@@ -100,15 +138,13 @@ public class ThreadPoolSwitcher {
 			PipeMsgListener biDiPipeMsgListener) {
 
 		switch (type) {
-		case JAVA:
-			return new BiDiMessageSender(backlog, pipeFactory, peerGroup,
-					pipeDiscovery, biDiPipeMsgListener);
-
 		case WAS:
 			return new WasBiDiMessageSender(backlog, pipeFactory, peerGroup,
 					pipeDiscovery, biDiPipeMsgListener);
+
 		default:
-			return null;
+			return new BiDiMessageSender(backlog, pipeFactory, peerGroup,
+					pipeDiscovery, biDiPipeMsgListener);
 		}
 	}
 
@@ -118,15 +154,53 @@ public class ThreadPoolSwitcher {
 			PipeMsgListener biDiPipeMsgListener, int retry) {
 
 		switch (type) {
-		case JAVA:
+		case WAS:
+			return new WasBiDiMessageSender(backlog, pipeFactory, peerGroup,
+					pipeDiscovery, biDiPipeMsgListener, retry);
+
+		default:
 			return new BiDiMessageSender(backlog, pipeFactory, peerGroup,
 					pipeDiscovery, biDiPipeMsgListener, retry);
+		}
+	}
 
+	/**
+	 * Returns either {@link BiDiMessageSender} or {@link WasBiDiMessageSender}
+	 * which borrow the connected pipes from the pool
+	 * 
+	 * @param type
+	 *            - a {@link ThreadPoolType}
+	 * @param backlog
+	 *            - a {@link BlockingQueue}
+	 * @param pipeFactory
+	 *            - a {@link PipeFactory}
+	 * @param peerGroup
+	 *            - a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            - a {@link PipeDiscovery}
+	 * @param biDiPipeMsgListener
+	 *            - a {@link PipeMsgListener}
+	 * @param retry
+	 *            - a number of retries
+	 * @param pipePool
+	 *            - a {@link PipePool} of the bi-directional pipes
+	 * 
+	 * @return a {@link Runnable}
+	 */
+	public Runnable getWorker(ThreadPoolType type,
+			BlockingQueue<Message> backlog, PipeFactory pipeFactory,
+			PeerGroup peerGroup, PipeDiscovery pipeDiscovery,
+			PipeMsgListener biDiPipeMsgListener, int retry,
+			PipePool<JxtaBiDiPipe> pipePool) {
+
+		switch (type) {
 		case WAS:
 			return new WasBiDiMessageSender(backlog, pipeFactory, peerGroup,
-					pipeDiscovery, biDiPipeMsgListener, retry);
+					pipeDiscovery, biDiPipeMsgListener, retry, pipePool);
+
 		default:
-			return null;
+			return new BiDiMessageSender(backlog, pipeFactory, peerGroup,
+					pipeDiscovery, biDiPipeMsgListener, retry, pipePool);
 		}
 	}
 
@@ -191,6 +265,43 @@ public class ThreadPoolSwitcher {
 		}
 	}
 
+	/**
+	 * Returns a sender worker which borrows the output pipes from the pool
+	 * 
+	 * @param type
+	 *            a {@link ThreadPoolType}
+	 * @param backlog
+	 *            a {@link BlockingQueue}
+	 * @param peerGroup
+	 *            a {@link PeerGroup}
+	 * @param pipeDiscovery
+	 *            a {@link PipeDiscovery}
+	 * @param retry
+	 *            a number of retries
+	 * @param pipePool
+	 *            a {@link PipePool} of the output pipes
+	 * 
+	 * @return a {@link Runnable}
+	 * 
+	 * @throws PPCException
+	 *             - if could not create a worker
+	 */
+	public Runnable getSenderWorker(ThreadPoolType type,
+			BlockingQueue<Message> backlog, PeerGroup peerGroup,
+			PipeDiscovery pipeDiscovery, int retry,
+			PipePool<OutputPipe> pipePool) throws PPCException {
+
+		switch (type) {
+		case WAS:
+			return new MessageSenderWasThreadPool(backlog, peerGroup,
+					pipeDiscovery, retry, pipePool);
+
+		default:
+			return new MessageSenderJavaThread(backlog, peerGroup,
+					pipeDiscovery, retry, pipePool);
+		}
+	}
+
 	/**
 	 * Attains a jndi name of the WAS thread pool.
 	 * 
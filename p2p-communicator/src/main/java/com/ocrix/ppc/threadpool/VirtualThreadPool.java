@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.threadpool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A {@link TaskManager} that starts a virtual thread per task, so a sender
+ * blocked on a pipe or a retry costs no platform thread. Virtual threads exist
+ * since JDK 21, on an older runtime a cached thread pool is used instead.
+ */
+public class VirtualThreadPool extends ExecutorTaskManager {
+	/* Class member */
+	private static final Logger logger = Logger
+			.getLogger(VirtualThreadPool.class);
+
+	/* ----- end of class member declaration */
+
+	/**
+	 * Creates a pool of virtual threads if the runtime supports them
+	 */
+	public VirtualThreadPool() {
+		super(createExecutor());
+	}
+
+	/**
+	 * Indicates if the runtime supports virtual threads
+	 * 
+	 * @return <b>true</b> if running on JDK 21 or later
+	 */
+	public static boolean isSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a virtual thread per task executor by reflection, the code is
+	 * compiled for older runtimes too
+	 * 
+	 * @return an {@link ExecutorService}
+	 */
+	private static ExecutorService createExecutor() {
+		if (isSupported()) {
+			try {
+				return (ExecutorService) Executors.class.getMethod(
+						"newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				logger.error(VirtualThreadPool.class.getName() + " "
+						+ e.getMessage());
+			}
+		}
+		logger.info("Virtual threads are not supported, a cached thread pool is used");
+		return Executors.newCachedThreadPool();
+	}
+}
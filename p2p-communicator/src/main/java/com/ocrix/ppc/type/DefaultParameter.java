@@ -17,7 +17,17 @@ package com.ocrix.ppc.type;
 public enum DefaultParameter {
 	WAITING_TIME(500), THRESHOLD(10), TWO_SEC(2000), TRIAL_NUMBER(3), THREAD_POOL_SIZE(
 			2), QUEUE_CAPASITY(50), WAIT_TIME_PIPE_CREATION(30000), DEFAULT_BUFFER_SIZE(
-			1024 * 4);
+			1024 * 4), MAX_IDLE_PIPES(4), MAX_PIPES_PER_DESTINATION(4), OUTPUT_PIPE_TTL(
+			300000), OUTPUT_PIPE_CACHE_SIZE(64), DISCOVERY_TIMEOUT(10000), BATCH_MAX_MESSAGES(
+			64), BATCH_MAX_BYTES(1024 * 64), BATCH_LINGER_MICROS(1000), BOUNDED_POOL_MAX_SIZE(
+			16), BOUNDED_POOL_QUEUE_CAPACITY(256), RETRY_BASE_DELAY(
+			250), RETRY_MAX_DELAY(8000), RETRY_DEADLINE(30000), ACK_TIMEOUT(
+			10000), COMPRESS_MIN_SIZE(1024), COMPRESS_FAST_MAX_SIZE(1024 * 1024), COMPRESS_LEVEL(
+			1), STREAM_CHUNK_SIZE(64 * 1024), STREAM_WINDOW(8), STREAM_SPILL_SIZE(
+			1024 * 1024), STREAM_TIMEOUT(30000), LANE_MAX_WAIT(
+			1000), LANE_WEIGHT_HIGH(8), LANE_WEIGHT_NORMAL(4), LANE_WEIGHT_LOW(1), DELIVERY_BATCH_SIZE(
+			256), DELIVERY_LINGER(10), DELIVERY_BUFFER(4096), ACCEPTED_PIPE_IDLE(
+			300000), OBJECT_MAX_LENGTH(16 * 1024 * 1024);
 
 	private int code;
 
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.type;
+
+/**
+ * Defines how a destination sender chooses the lane it sends from next:
+ * <ul>
+ * <li><b>STRICT</b> - the highest non-empty lane always goes first</li>
+ * <li><b>WEIGHTED</b> - the non-empty lanes share the sender by their weights
+ * </li>
+ * </ul>
+ * In both modes a message that waited longer than the limit of the policy is
+ * sent next, so a low lane is not starved.
+ */
+public enum LaneMode {
+	STRICT, WEIGHTED
+}
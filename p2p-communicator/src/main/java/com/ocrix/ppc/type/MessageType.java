@@ -18,5 +18,5 @@ package com.ocrix.ppc.type;
  * Defines message type
  */
 public enum MessageType {
-	TEXTUAL, BINARY, XML
+	TEXTUAL, BINARY, XML, OBJECT, STREAM
 }
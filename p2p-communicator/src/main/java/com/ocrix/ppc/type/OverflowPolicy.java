@@ -0,0 +1,29 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.type;
+
+/**
+ * Defines what a full buffer of an asynchronous subscriber does with a new
+ * message:
+ * <ul>
+ * <li><b>BLOCK</b> - the publisher waits for a free place, nothing is lost</li>
+ * <li><b>DROP_OLDEST</b> - the oldest waiting message is dropped</li>
+ * <li><b>DROP_NEWEST</b> - the new message is dropped</li>
+ * </ul>
+ */
+public enum OverflowPolicy {
+	BLOCK, DROP_OLDEST, DROP_NEWEST
+}
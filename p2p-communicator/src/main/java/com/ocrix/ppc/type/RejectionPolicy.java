@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.type;
+
+/**
+ * Defines what a bounded thread pool does with a task when all its threads
+ * are busy and its queue is full:
+ * <ul>
+ * <li><b>ABORT</b> - throws RejectedExecutionException</li>
+ * <li><b>CALLER_RUNS</b> - runs the task by the calling thread, i.e. slows the
+ * caller down</li>
+ * <li><b>DISCARD</b> - drops the task</li>
+ * <li><b>DISCARD_OLDEST</b> - drops the oldest waiting task and retries</li>
+ * </ul>
+ */
+public enum RejectionPolicy {
+	ABORT, CALLER_RUNS, DISCARD, DISCARD_OLDEST
+}
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.type;
+
+/**
+ * Defines an outcome of putting a message into the window of its destination:
+ * <ul>
+ * <li><b>ACCEPTED</b> - the message waits to be sent</li>
+ * <li><b>QUEUE_FULL</b> - the window of the destination is full, the message
+ * is not taken</li>
+ * <li><b>STOPPED</b> - the peer is being destroyed, the message is not taken</li>
+ * <li><b>REJECTED</b> - the thread pool refused to run the sender of the
+ * destination, the messages waiting for it are dropped</li>
+ * </ul>
+ */
+public enum SendStatus {
+	ACCEPTED, QUEUE_FULL, STOPPED, REJECTED
+}
@@ -34,13 +34,43 @@ import com.ocrix.ppc.message.Message;
  * <li><b>JNDI_NAME</b> - defines a default jndi name of WAS thread pool</li>
  * <li><b>BIDI_THREAD_PREFIX</b> - a prefix will be given for the thread pool in
  * bi-di peer</li>
+ * <li><b>BATCH</b> - defines a field in {@link Message} carrying a batch of
+ * messages</li>
+ * <li><b>CORRELATION_ID</b> - defines a field in {@link Message} that
+ * correlates a message with its acknowledgement or response</li>
+ * <li><b>ACK_REQUEST</b> - defines a field in {@link Message} asking the
+ * recipient to acknowledge it</li>
+ * <li><b>ACK</b> - defines a field in {@link Message} acknowledging a received
+ * message</li>
+ * <li><b>BUFFER</b> - defines a field in {@link Message} indicating a binary
+ * pay-load which is not compressed</li>
+ * <li><b>TRANSFER_ID</b> - defines a field in {@link Message} naming a
+ * streamed transfer its chunk belongs to</li>
+ * <li><b>CHUNK_SEQ</b> - defines a field in {@link Message} indicating a
+ * sequence number of the chunk</li>
+ * <li><b>CHUNK</b> - defines a field in {@link Message} carrying a chunk of a
+ * streamed transfer</li>
+ * <li><b>TRANSFER_SIZE</b> - defines a field in {@link Message} marking the
+ * last chunk, carries a total size of the transfer</li>
+ * <li><b>FILE_SIZE</b> - defines a field in {@link Message} announcing a total
+ * size of the transfer ahead of its last chunk</li>
+ * <li><b>HEADER</b> - defines a field in {@link Message} carrying the compact
+ * source, destination and pay-load, see
+ * {@link com.ocrix.ppc.message.HeaderDictionary}</li>
+ * <li><b>PRIORITY</b> - defines a field in {@link Message} indicating a lane
+ * the message waits in, see {@link Priority}</li>
  * </ul>
  * 
  */
 public enum Tag {
 	NAME("Name"), GROUP_ID("GID"), DEFAULT_PEER_GROUP("NetPeerGroup"), SOURCE(
 			"from"), DESTINATION("to"), PAYLOAD("payLoad"), STREAM("binary"), OBJECT(
-			"object"), JNDI_NAME("wm/default"), BIDI_THREAD_PREFIX("PPC-BIDI");
+			"object"), JNDI_NAME("wm/default"), BIDI_THREAD_PREFIX("PPC-BIDI"), BATCH(
+			"batch"), CORRELATION_ID("correlationId"), ACK_REQUEST("ackRequest"), ACK(
+			"ack"), BUFFER("buffer"), TRANSFER_ID("transferId"), CHUNK_SEQ(
+			"chunkSeq"), CHUNK("chunk"), TRANSFER_SIZE("transferSize"), FILE_SIZE(
+			"fileSize"), HEADER("hdr"), PRIORITY(
+			"priority");
 
 	private String value;
 
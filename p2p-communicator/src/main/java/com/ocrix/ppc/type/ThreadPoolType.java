@@ -23,8 +23,20 @@ package com.ocrix.ppc.type;
  * <ul>
  * JAVA - a new fixed thread pool
  * </ul>
+ * </li> <li>
+ * <ul>
+ * FORK_JOIN - a work-stealing pool
+ * </ul>
+ * </li> <li>
+ * <ul>
+ * VIRTUAL - a virtual thread per task, a cached pool before JDK 21
+ * </ul>
+ * </li> <li>
+ * <ul>
+ * BOUNDED - a bounded pool with a rejection policy
+ * </ul>
  * </li>
  */
 public enum ThreadPoolType {
-	WAS, JAVA
+	WAS, JAVA, FORK_JOIN, VIRTUAL, BOUNDED
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+	/* Class members */
+	private final AtomicInteger destroyed = new AtomicInteger();
+
+	@Test
+	public void shallReuseReleasedObject() {
+		ObjectPool<Object> pool = createPool(2);
+		Object first = pool.borrow();
+		pool.release(first);
+		assertSame(first, pool.borrow());
+		assertEquals(1, pool.getBorrowedCount());
+	}
+
+	@Test
+	public void shallDestroyAboveMaxIdle() {
+		ObjectPool<Object> pool = createPool(2);
+		Object[] borrowed = { pool.borrow(), pool.borrow(), pool.borrow() };
+		for (Object object : borrowed) {
+			pool.release(object);
+		}
+		assertEquals(2, pool.getIdleCount());
+		assertEquals(1, destroyed.get());
+		pool.clear();
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(3, destroyed.get());
+	}
+
+	@Test
+	public void shallReportLeaks() {
+		ObjectPool<Object> pool = createPool(2);
+		pool.setLeakDetection(true);
+		Object kept = pool.borrow();
+		pool.release(pool.borrow());
+		assertEquals(1, pool.reportLeaks(0));
+		pool.release(kept);
+		assertEquals(0, pool.reportLeaks(0));
+	}
+
+	@Test
+	public void shallAcquireBySizeClass() {
+		BufferPool buffers = new BufferPool();
+		byte[] small = buffers.acquire(1);
+		assertEquals(BufferPool.MIN_SIZE, small.length);
+		assertEquals(8192, buffers.acquire(4097).length);
+		assertEquals(BufferPool.MAX_SIZE, buffers.acquire(BufferPool.MAX_SIZE).length);
+		/* Too large to be pooled */
+		assertEquals(BufferPool.MAX_SIZE + 1, buffers.acquire(BufferPool.MAX_SIZE + 1).length);
+		buffers.release(small);
+		assertSame(small, buffers.acquire(100));
+		/* An array not of a size class is never handed out */
+		byte[] odd = new byte[5000];
+		buffers.release(odd);
+		assertNotSame(odd, buffers.acquire(5000));
+	}
+
+	@Test
+	public void shallTrackBorrowedBuffers() {
+		BufferPool buffers = new BufferPool();
+		buffers.setLeakDetection(true);
+		byte[] buffer = buffers.acquire(20000);
+		assertEquals(1, buffers.getBorrowedCount());
+		assertTrue(buffers.reportLeaks(0) == 1);
+		buffers.release(buffer);
+		assertEquals(0, buffers.getBorrowedCount());
+	}
+
+	private ObjectPool<Object> createPool(int maxIdle) {
+		return new ObjectPool<Object>("test object", maxIdle) {
+			@Override
+			protected Object create() {
+				return new Object();
+			}
+
+			@Override
+			protected boolean reset(Object object) {
+				return true;
+			}
+
+			@Override
+			protected void destroy(Object object) {
+				destroyed.incrementAndGet();
+			}
+		};
+	}
+}
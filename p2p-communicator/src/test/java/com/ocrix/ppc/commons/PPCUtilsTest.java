@@ -13,14 +13,32 @@
  */
 package com.ocrix.ppc.commons;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.jxta.endpoint.Message.ElementIterator;
+import net.jxta.endpoint.MessageElement;
+import net.jxta.endpoint.StringMessageElement;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.ocrix.ppc.message.AckMessage;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.type.Tag;
+
 public class PPCUtilsTest {
 
+	private MessageFactory messageFactory = null;
+
 	@Before
 	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
 	}
 
 	@After
@@ -34,4 +52,63 @@ public class PPCUtilsTest {
 		System.out.println("RESULT=" + result);
 	}
 
+	@Test
+	public void shallKeepCorrelationId() throws Exception {
+		Message message = messageFactory.createTextualMessage("a", "b", "hi");
+		message.setCorrelationId("request-1");
+		message.setAckRequested(true);
+		Message converted = PPCUtils.convertJxtaMsgToPpcMsg(message);
+		assertEquals("request-1", converted.getCorrelationId());
+		assertTrue(converted.isAckRequested());
+		assertEquals("hi", converted.getTextualMesage());
+	}
+
+	@Test
+	public void shallConvertAcknowledgement() throws Exception {
+		Message message = messageFactory.createTextualMessage("a", "b", "hi");
+		message.setCorrelationId("request-1");
+		Message ack = PPCUtils.convertJxtaMsgToPpcMsg(messageFactory
+				.createAckMessage(message));
+		assertTrue(ack instanceof AckMessage);
+		assertEquals("request-1", ack.getCorrelationId());
+		assertEquals("a", ack.getDestination());
+		assertFalse(ack.isAckRequested());
+	}
+
+	@Test
+	public void shallShareReceivedElements() throws Exception {
+		net.jxta.endpoint.Message received = new net.jxta.endpoint.Message();
+		Message binary = messageFactory.createBinaryMessage("a", "b",
+				new byte[] { 1, 2, 3 });
+		Message object = messageFactory.createObjectMessage("a", "b", "text");
+		for (Message sent : new Message[] { binary, object }) {
+			received.clear();
+			MessageElement payload = null;
+			ElementIterator elements = sent.getMessageElements();
+			while (elements.hasNext()) {
+				MessageElement element = elements.next();
+				received.addMessageElement(element);
+				if (!Tag.SOURCE.getValue().equals(element.getElementName())
+						&& !Tag.DESTINATION.getValue().equals(
+								element.getElementName())) {
+					payload = element;
+				}
+			}
+			Message view = PPCUtils.convertJxtaMsgToPpcMsg(received);
+			assertEquals(sent.getClass(), view.getClass());
+			assertEquals("a", view.getSource());
+			assertSame(payload, view.getMessageElement(payload.getElementName()));
+		}
+		assertEquals("text", PPCUtils.convertJxtaMsgToPpcMsg(received)
+				.getObject());
+	}
+
+	@Test
+	public void shallIgnoreMessageWithoutSource() throws Exception {
+		net.jxta.endpoint.Message received = new net.jxta.endpoint.Message();
+		received.addMessageElement(new StringMessageElement(Tag.PAYLOAD
+				.getValue(), "hi", null));
+		assertNull(PPCUtils.convertJxtaMsgToPpcMsg(received));
+	}
+
 }
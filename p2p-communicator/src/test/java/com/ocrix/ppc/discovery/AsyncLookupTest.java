@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.discovery;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.jxta.discovery.DiscoveryEvent;
+import net.jxta.discovery.DiscoveryListener;
+import net.jxta.discovery.DiscoveryService;
+import net.jxta.document.Advertisement;
+import net.jxta.peergroup.PeerGroup;
+import net.jxta.platform.NetworkManager;
+import net.jxta.protocol.DiscoveryResponseMsg;
+import net.jxta.protocol.PipeAdvertisement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.ocrix.ppc.VerificationConstants;
+
+public class AsyncLookupTest {
+	/* Test members */
+	private DiscoveryService discoveryService = null;
+	private PipeDiscovery pipeDiscovery = null;
+
+	@Before
+	public void setUp() throws Exception {
+		discoveryService = mock(DiscoveryService.class);
+		PeerGroup peerGroup = mock(PeerGroup.class);
+		when(peerGroup.getDiscoveryService()).thenReturn(discoveryService);
+		NetworkManager manager = mock(NetworkManager.class);
+		when(manager.getNetPeerGroup()).thenReturn(peerGroup);
+		when(
+				discoveryService.getLocalAdvertisements(anyInt(), anyString(),
+						anyString())).thenReturn(
+				Collections.enumeration(Collections.<Advertisement> emptyList()));
+		pipeDiscovery = new PipeDiscovery(manager);
+	}
+
+	@Test
+	public void shallCompleteByDiscoveryResponse() throws Exception {
+		CompletableFuture<PipeAdvertisement> future = pipeDiscovery
+				.lookupAsync(VerificationConstants.MSG_DESTINATION);
+		ArgumentCaptor<DiscoveryListener> listener = ArgumentCaptor
+				.forClass(DiscoveryListener.class);
+		verify(discoveryService).getRemoteAdvertisements(isNull(),
+				eq(DiscoveryService.ADV), eq("Name"),
+				eq(VerificationConstants.MSG_DESTINATION), anyInt(),
+				listener.capture());
+
+		PipeAdvertisement other = createAdvertisement(VerificationConstants.MSG_SOURCE);
+		PipeAdvertisement bob = createAdvertisement(VerificationConstants.MSG_DESTINATION);
+		listener.getValue().discoveryEvent(createEvent(other, bob));
+
+		assertSame(bob, future.get(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shallCompleteFromLocalCache() throws Exception {
+		PipeAdvertisement bob = createAdvertisement(VerificationConstants.MSG_DESTINATION);
+		when(
+				discoveryService.getLocalAdvertisements(DiscoveryService.ADV,
+						"Name", VerificationConstants.MSG_DESTINATION))
+				.thenReturn(
+						Collections.enumeration(Arrays
+								.<Advertisement> asList(bob)));
+
+		CompletableFuture<PipeAdvertisement> future = pipeDiscovery
+				.lookupAsync(VerificationConstants.MSG_DESTINATION);
+
+		assertTrue(future.isDone());
+		assertSame(bob, future.get());
+		verify(discoveryService, never()).getRemoteAdvertisements(any(),
+				anyInt(), anyString(), anyString(), anyInt(),
+				any(DiscoveryListener.class));
+	}
+
+	@Test
+	public void shallTimeOutWhenNothingAnswers() throws Exception {
+		CompletableFuture<PipeAdvertisement> future = pipeDiscovery
+				.lookupAsync(VerificationConstants.MSG_DESTINATION, 50);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail("The lookup shall time out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	private DiscoveryEvent createEvent(Advertisement... advertisements) {
+		DiscoveryResponseMsg response = mock(DiscoveryResponseMsg.class);
+		when(response.getAdvertisements()).thenReturn(
+				Collections.enumeration(Arrays.asList(advertisements)));
+		DiscoveryEvent event = mock(DiscoveryEvent.class);
+		when(event.getResponse()).thenReturn(response);
+		return event;
+	}
+
+	private PipeAdvertisement createAdvertisement(String name) {
+		PipeAdvertisement advertisement = mock(PipeAdvertisement.class);
+		when(advertisement.getName()).thenReturn(name);
+		return advertisement;
+	}
+}
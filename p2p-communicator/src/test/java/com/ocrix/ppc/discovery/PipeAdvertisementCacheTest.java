@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.jxta.discovery.DiscoveryEvent;
+import net.jxta.document.Advertisement;
+import net.jxta.protocol.DiscoveryResponseMsg;
+import net.jxta.protocol.PipeAdvertisement;
+
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+
+public class PipeAdvertisementCacheTest {
+
+	@Test
+	public void shallFindAdvertisementByExactName() {
+		PipeAdvertisementCache cache = new PipeAdvertisementCache();
+		PipeAdvertisement bob = createAdvertisement(VerificationConstants.MSG_DESTINATION);
+		cache.put(bob, 60000);
+		assertSame(bob, cache.get(VerificationConstants.MSG_DESTINATION));
+		assertNull(cache.get(VerificationConstants.MSG_DESTINATION
+				.substring(1)));
+	}
+
+	@Test
+	public void shallForgetExpiredAdvertisement() throws InterruptedException {
+		PipeAdvertisementCache cache = new PipeAdvertisementCache();
+		cache.put(createAdvertisement(VerificationConstants.MSG_SOURCE), 10);
+		Thread.sleep(30);
+		assertNull(cache.get(VerificationConstants.MSG_SOURCE));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void shallBeFilledByDiscoveryResponse() {
+		PipeAdvertisementCache cache = new PipeAdvertisementCache();
+		PipeAdvertisement alice = createAdvertisement(VerificationConstants.MSG_SOURCE);
+		PipeAdvertisement bob = createAdvertisement(VerificationConstants.MSG_DESTINATION);
+		DiscoveryResponseMsg response = mock(DiscoveryResponseMsg.class);
+		when(response.getAdvertisements()).thenReturn(
+				Collections.enumeration(Arrays.<Advertisement> asList(alice,
+						bob)));
+		when(response.getExpirations()).thenReturn(
+				Collections.enumeration(Arrays.asList(60000L, 0L)));
+		DiscoveryEvent event = mock(DiscoveryEvent.class);
+		when(event.getResponse()).thenReturn(response);
+
+		cache.discoveryEvent(event);
+
+		assertSame(alice, cache.get(VerificationConstants.MSG_SOURCE));
+		/* An advertisement that already expired is not kept */
+		assertNull(cache.get(VerificationConstants.MSG_DESTINATION));
+	}
+
+	private PipeAdvertisement createAdvertisement(String name) {
+		PipeAdvertisement advertisement = mock(PipeAdvertisement.class);
+		when(advertisement.getName()).thenReturn(name);
+		return advertisement;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.type.OverflowPolicy;
+
+public class AsyncDispatchTest {
+	/* Class members */
+	private ReceiverObservable publisher = null;
+	private CountDownLatch gate = null;
+
+	@Before
+	public void setUp() throws Exception {
+		publisher = new ReceiverObservable();
+		gate = new CountDownLatch(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		gate.countDown();
+		publisher.shutdown();
+	}
+
+	@Test
+	public void shallNotWaitForSlowSubscriber() throws Exception {
+		publisher.setAsyncDispatch(4, OverflowPolicy.DROP_OLDEST);
+		MessageReceiver slow = new Gated();
+		final CountDownLatch received = new CountDownLatch(1);
+		publisher.subscribeReceiveMessages(slow);
+		publisher.subscribeReceiveMessages(new MessageReceiver() {
+			// @Override
+			public void onMessage(Object message) {
+				/* The newest message is never dropped */
+				if (Integer.valueOf(99).equals(message)) {
+					received.countDown();
+				}
+			}
+		});
+		for (int i = 0; i < 100; i++) {
+			publisher.publish(i);
+		}
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertTrue(publisher.getDroppedCount(slow) > 0);
+	}
+
+	@Test
+	public void shallDropOldest() throws Exception {
+		publisher.setAsyncDispatch(2, OverflowPolicy.DROP_OLDEST);
+		Gated slow = new Gated();
+		publisher.subscribeReceiveMessages(slow);
+		publisher.publish("first");
+		/* The first one is taken and holds the subscriber */
+		assertTrue(slow.entered.await(5, TimeUnit.SECONDS));
+		publisher.publish("a");
+		publisher.publish("b");
+		publisher.publish("c");
+		assertEquals(2, publisher.getLag(slow));
+		assertEquals(1, publisher.getDroppedCount(slow));
+		gate.countDown();
+		waitForLag(slow);
+		assertEquals("[first, b, c]", slow.messages.toString());
+	}
+
+	@Test
+	public void shallDropNewest() throws Exception {
+		publisher.setAsyncDispatch(2, OverflowPolicy.DROP_NEWEST);
+		Gated slow = new Gated();
+		publisher.subscribeReceiveMessages(slow);
+		publisher.publish("first");
+		assertTrue(slow.entered.await(5, TimeUnit.SECONDS));
+		publisher.publish("a");
+		publisher.publish("b");
+		publisher.publish("c");
+		assertEquals(1, publisher.getDroppedCount(slow));
+		gate.countDown();
+		waitForLag(slow);
+		assertEquals("[first, a, b]", slow.messages.toString());
+	}
+
+	@Test
+	public void shallBlockUntilFreed() throws Exception {
+		publisher.setAsyncDispatch(1, OverflowPolicy.BLOCK);
+		Gated slow = new Gated();
+		publisher.subscribeReceiveMessages(slow);
+		publisher.publish("first");
+		assertTrue(slow.entered.await(5, TimeUnit.SECONDS));
+		publisher.publish("a");
+		final CountDownLatch published = new CountDownLatch(1);
+		new Thread(new Runnable() {
+			// @Override
+			public void run() {
+				publisher.publish("b");
+				published.countDown();
+			}
+		}).start();
+		assertFalse(published.await(200, TimeUnit.MILLISECONDS));
+		gate.countDown();
+		assertTrue(published.await(5, TimeUnit.SECONDS));
+		waitForLag(slow);
+		assertEquals("[first, a, b]", slow.messages.toString());
+		assertEquals(0, publisher.getDroppedCount(slow));
+	}
+
+	@Test
+	public void shallNotifySynchronouslyAfterShutdown() throws Exception {
+		publisher.setAsyncDispatch(2, OverflowPolicy.BLOCK);
+		final List<Object> messages = new CopyOnWriteArrayList<Object>();
+		publisher.subscribeReceiveMessages(new MessageReceiver() {
+			// @Override
+			public void onMessage(Object message) {
+				messages.add(message);
+			}
+		});
+		publisher.shutdown();
+		assertFalse(publisher.isAsyncDispatch());
+		publisher.publish("now");
+		assertEquals(1, messages.size());
+	}
+
+	private void waitForLag(Gated subscriber) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((publisher.getLag(subscriber) > 0 || subscriber.messages.size() < 3)
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Holds its thread until the gate of the test is opened
+	 */
+	private class Gated implements MessageReceiver {
+		private final List<Object> messages = new CopyOnWriteArrayList<Object>();
+		private final CountDownLatch entered = new CountDownLatch(1);
+
+		// @Override
+		public void onMessage(Object message) {
+			entered.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			messages.add(message);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.type.MessageType;
+
+public class BatchDeliveryTest {
+	/* Class members */
+	private MessageFactory messageFactory = null;
+	private ReceiverObservable publisher = null;
+	private CountDownLatch gate = null;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		publisher = new ReceiverObservable();
+		gate = new CountDownLatch(1);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		gate.countDown();
+		publisher.shutdown();
+	}
+
+	@Test
+	public void shallDrainWaitingMessagesAtOnce() throws Exception {
+		Gated subscriber = new Gated(11);
+		publisher.addBatchMessageReceiverListener(subscriber, 64, 0);
+		publisher.publish(text("0"));
+		assertTrue(subscriber.entered.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i <= 10; i++) {
+			publisher.publish(text(String.valueOf(i)));
+		}
+		gate.countDown();
+		assertTrue(subscriber.received.await(5, TimeUnit.SECONDS));
+		assertEquals("[1, 10]", subscriber.sizes.toString());
+		assertEquals("10", subscriber.last.getTextualMesage());
+	}
+
+	@Test
+	public void shallCapBatchSize() throws Exception {
+		Gated subscriber = new Gated(10);
+		publisher.addBatchMessageReceiverListener(subscriber, 4, 0);
+		publisher.publish(text("0"));
+		assertTrue(subscriber.entered.await(5, TimeUnit.SECONDS));
+		for (int i = 1; i < 10; i++) {
+			publisher.publish(text(String.valueOf(i)));
+		}
+		gate.countDown();
+		assertTrue(subscriber.received.await(5, TimeUnit.SECONDS));
+		assertEquals("[1, 4, 4, 1]", subscriber.sizes.toString());
+	}
+
+	@Test
+	public void shallLingerForFullBatch() throws Exception {
+		gate.countDown();
+		Gated subscriber = new Gated(3);
+		publisher.addBatchMessageReceiverListener(subscriber, 3, 2000);
+		for (int i = 0; i < 3; i++) {
+			publisher.publish(text(String.valueOf(i)));
+		}
+		assertTrue(subscriber.received.await(5, TimeUnit.SECONDS));
+		assertEquals("[3]", subscriber.sizes.toString());
+	}
+
+	@Test
+	public void shallBatchSelectedMessagesOnly() throws Exception {
+		gate.countDown();
+		Gated subscriber = new Gated(2);
+		publisher.subscribe(new MessageSelector().ofType(MessageType.TEXTUAL),
+				subscriber, 8, 0);
+		publisher.publish(messageFactory.createBinaryMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_BINARY.getBytes()));
+		publisher.publish(text("a"));
+		publisher.publish(text("b"));
+		assertTrue(subscriber.received.await(5, TimeUnit.SECONDS));
+		assertEquals("b", subscriber.last.getTextualMesage());
+
+		publisher.deleteBatchMessageReceiverListener(subscriber);
+		assertEquals(0, publisher.countMessageReceiverListeners());
+	}
+
+	private Message text(String payload) {
+		return messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, payload);
+	}
+
+	/**
+	 * Records the batch sizes, holds its first call until the gate is opened
+	 */
+	private class Gated implements BatchMessageReceiver {
+		private final List<Integer> sizes = new CopyOnWriteArrayList<Integer>();
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch received;
+		private volatile Message last = null;
+
+		private Gated(int expected) {
+			received = new CountDownLatch(expected);
+		}
+
+		// @Override
+		public void onMessages(List<Message> messages) {
+			entered.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			sizes.add(messages.size());
+			for (Message message : messages) {
+				last = message;
+				received.countDown();
+			}
+		}
+	}
+}
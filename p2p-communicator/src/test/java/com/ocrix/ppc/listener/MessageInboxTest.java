@@ -0,0 +1,215 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.jxta.pipe.PipeMsgEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.state.ReceivePipeline;
+
+public class MessageInboxTest {
+	/* Class members */
+	private MessageFactory messageFactory = null;
+	private MessageInbox inbox = null;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		inbox = new MessageInbox(4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		inbox.close();
+	}
+
+	@Test
+	public void shallPollAndDrain() throws Exception {
+		assertNull(inbox.poll(10, TimeUnit.MILLISECONDS));
+		for (int i = 0; i < 3; i++) {
+			inbox.onMessage(text(String.valueOf(i)));
+		}
+		assertEquals("0", inbox.poll(1, TimeUnit.SECONDS).getTextualMesage());
+		List<Message> drained = new ArrayList<Message>();
+		assertEquals(1, inbox.drainTo(drained, 1));
+		assertEquals(1, inbox.drainTo(drained, 10));
+		assertEquals("2", drained.get(1).getTextualMesage());
+		assertEquals(0, inbox.size());
+	}
+
+	@Test
+	public void shallStopReceivingWhileFull() throws Exception {
+		ReceivePipeline pipeline = new ReceivePipeline(
+				new ReceivePipeline.Handler() {
+					// @Override
+					public void onMessage(PipeMsgEvent event, Message message) {
+						inbox.onMessage(message);
+					}
+				}, 1);
+		pipeline.setMaxQueueDepth(2);
+		final ReceivePipeline submitted = pipeline;
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread pipe = new Thread(new Runnable() {
+			// @Override
+			public void run() {
+				for (int i = 0; i < 20; i++) {
+					submitted.submit(null, text(String.valueOf(i)));
+				}
+				done.countDown();
+			}
+		});
+		pipe.start();
+		/* The inbox fills, then the decoder queue, then the pipe waits */
+		assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+		assertEquals(4, inbox.size());
+		assertTrue(pipeline.getReceivedCount() < 20);
+
+		List<Message> drained = new ArrayList<Message>();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (drained.size() < 20 && System.currentTimeMillis() < deadline) {
+			if (inbox.drainTo(drained, 3) == 0) {
+				Thread.sleep(5);
+			}
+		}
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(20, drained.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(String.valueOf(i), drained.get(i).getTextualMesage());
+		}
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void shallSignalRequestedMessagesOnly() throws Exception {
+		Recorder subscriber = new Recorder();
+		inbox.subscribe(subscriber);
+		assertTrue(subscriber.subscribed.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 4; i++) {
+			inbox.onMessage(text(String.valueOf(i)));
+		}
+		subscriber.subscription.request(1);
+		subscriber.await(1);
+		Thread.sleep(200);
+		assertEquals(1, subscriber.messages.size());
+		assertEquals(3, inbox.size());
+
+		subscriber.subscription.request(Long.MAX_VALUE);
+		subscriber.await(4);
+		assertEquals(4, subscriber.messages.size());
+
+		inbox.close();
+		assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shallCompleteSubscriberWithoutDemand() throws Exception {
+		Recorder subscriber = new Recorder();
+		inbox.subscribe(subscriber);
+		assertTrue(subscriber.subscribed.await(5, TimeUnit.SECONDS));
+		inbox.onMessage(text("left"));
+		inbox.close();
+		/* A message is left, so it is not completed yet */
+		assertFalse(subscriber.completed.await(200, TimeUnit.MILLISECONDS));
+		subscriber.subscription.request(1);
+		assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+		assertEquals(1, subscriber.messages.size());
+
+		MessageInbox empty = new MessageInbox(4);
+		Recorder idle = new Recorder();
+		empty.subscribe(idle);
+		assertTrue(idle.subscribed.await(5, TimeUnit.SECONDS));
+		empty.close();
+		assertTrue(idle.completed.await(5, TimeUnit.SECONDS));
+		assertTrue(idle.subscription.isCancelled());
+	}
+
+	@Test
+	public void shallFailNonPositiveRequest() throws Exception {
+		Recorder subscriber = new Recorder();
+		inbox.subscribe(subscriber);
+		assertTrue(subscriber.subscribed.await(5, TimeUnit.SECONDS));
+		subscriber.subscription.request(0);
+		assertTrue(subscriber.failed.await(5, TimeUnit.SECONDS));
+		assertTrue(subscriber.error instanceof IllegalArgumentException);
+		/* The inbox may be subscribed again */
+		inbox.subscribe(new Recorder());
+	}
+
+	private Message text(String payload) {
+		return messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, payload);
+	}
+
+	/**
+	 * Records the signals of its subscription
+	 */
+	private static class Recorder implements InboxSubscriber {
+		private final List<Message> messages = new CopyOnWriteArrayList<Message>();
+		private final CountDownLatch subscribed = new CountDownLatch(1);
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private final CountDownLatch failed = new CountDownLatch(1);
+		private volatile InboxSubscription subscription = null;
+		private volatile Throwable error = null;
+
+		// @Override
+		public void onSubscribe(InboxSubscription subscription) {
+			this.subscription = subscription;
+			subscribed.countDown();
+		}
+
+		// @Override
+		public void onNext(Message message) {
+			messages.add(message);
+		}
+
+		// @Override
+		public void onError(Throwable error) {
+			this.error = error;
+			failed.countDown();
+		}
+
+		// @Override
+		public void onComplete() {
+			completed.countDown();
+		}
+
+		private void await(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (messages.size() < count
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.type.MessageType;
+import com.ocrix.ppc.type.Tag;
+
+public class MessageSelectorTest {
+	/* Class members */
+	private MessageFactory messageFactory = null;
+	private ReceiverObservable publisher = null;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		publisher = new ReceiverObservable();
+	}
+
+	@Test
+	public void shallMatchSourceTypeAndHeader() throws Exception {
+		Message message = text(VerificationConstants.MSG_SOURCE);
+		message.setCorrelationId("42");
+		assertTrue(new MessageSelector().matches(message));
+		assertTrue(new MessageSelector().fromSource(
+				VerificationConstants.MSG_SOURCE).ofType(MessageType.TEXTUAL)
+				.matches(message));
+		assertFalse(new MessageSelector().fromSource("Carol").matches(message));
+		assertFalse(new MessageSelector().ofType(MessageType.BINARY).matches(
+				message));
+		assertTrue(new MessageSelector().withHeader(
+				Tag.CORRELATION_ID.getValue(), "42").matches(message));
+		assertTrue(new MessageSelector().withHeader(
+				Tag.CORRELATION_ID.getValue(), null).matches(message));
+		assertFalse(new MessageSelector().withHeader(
+				Tag.CORRELATION_ID.getValue(), "7").matches(message));
+	}
+
+	@Test
+	public void shallPublishToMatchingSubscribersOnly() throws Exception {
+		Recorder all = new Recorder();
+		Recorder fromAlice = new Recorder();
+		Recorder binary = new Recorder();
+		Recorder fromCarol = new Recorder();
+		publisher.subscribeReceiveMessages(all);
+		publisher.subscribe(new MessageSelector()
+				.fromSource(VerificationConstants.MSG_SOURCE), fromAlice);
+		publisher.subscribe(new MessageSelector().ofType(MessageType.BINARY),
+				binary);
+		publisher.subscribe(new MessageSelector().fromSource("Carol").ofType(
+				MessageType.TEXTUAL), fromCarol);
+
+		publisher.publish(text(VerificationConstants.MSG_SOURCE));
+		publisher.publish(text("Carol"));
+		publisher.publish(messageFactory.createBinaryMessage("Carol",
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_BINARY.getBytes()));
+
+		assertEquals(3, all.messages.size());
+		assertEquals(1, fromAlice.messages.size());
+		assertEquals(1, binary.messages.size());
+		assertEquals(1, fromCarol.messages.size());
+	}
+
+	@Test
+	public void shallReplaceAndRemoveSelector() throws Exception {
+		Recorder subscriber = new Recorder();
+		publisher.subscribe(new MessageSelector().fromSource("Carol"),
+				subscriber);
+		publisher.publish(text(VerificationConstants.MSG_SOURCE));
+		assertEquals(0, subscriber.messages.size());
+
+		publisher.subscribe(new MessageSelector()
+				.fromSource(VerificationConstants.MSG_SOURCE), subscriber);
+		assertEquals(1, publisher.countMessageReceiverListeners());
+		publisher.publish(text(VerificationConstants.MSG_SOURCE));
+		assertEquals(1, subscriber.messages.size());
+
+		publisher.deleteMessageReceiverListener(subscriber);
+		publisher.publish(text(VerificationConstants.MSG_SOURCE));
+		assertEquals(1, subscriber.messages.size());
+	}
+
+	private Message text(String source) {
+		return messageFactory.createTextualMessage(source,
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_PAYLOAD);
+	}
+
+	/**
+	 * Keeps the messages it was notified of
+	 */
+	private static class Recorder implements MessageReceiver {
+		private final List<Object> messages = new ArrayList<Object>();
+
+		// @Override
+		public void onMessage(Object message) {
+			messages.add(message);
+		}
+	}
+}
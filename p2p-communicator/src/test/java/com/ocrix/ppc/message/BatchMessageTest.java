@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.commons.PPCUtils;
+
+public class BatchMessageTest {
+	/* Message factory */
+	private static MessageFactory messageFactory = null;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+	}
+
+	@Test
+	public void shallUnpackMessagesInOrder() throws Exception {
+		List<Message> messages = new ArrayList<Message>();
+		for (int i = 0; i < 100; i++) {
+			messages.add(messageFactory.createTextualMessage(
+					VerificationConstants.MSG_SOURCE,
+					VerificationConstants.MSG_DESTINATION, String.valueOf(i)));
+		}
+		BatchMessage batch = new BatchMessage(VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, messages);
+
+		List<Message> unpacked = PPCUtils.convertJxtaMsgToPpcMsgs(batch);
+		assertEquals(messages.size(), unpacked.size());
+		for (int i = 0; i < messages.size(); i++) {
+			assertEquals(String.valueOf(i), unpacked.get(i).getTextualMesage());
+			assertEquals(VerificationConstants.MSG_SOURCE, unpacked.get(i)
+					.getSource());
+			assertEquals(VerificationConstants.MSG_DESTINATION, unpacked
+					.get(i).getDestination());
+		}
+	}
+
+	@Test
+	public void shallKeepPayloadTypes() throws Exception {
+		BatchMessage batch = new BatchMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				Arrays.asList(
+						messageFactory.createTextualMessage(
+								VerificationConstants.MSG_SOURCE,
+								VerificationConstants.MSG_DESTINATION,
+								VerificationConstants.MSG_PAYLOAD),
+						messageFactory.createBinaryMessage(
+								VerificationConstants.MSG_SOURCE,
+								VerificationConstants.MSG_DESTINATION,
+								VerificationConstants.MSG_BINARY.getBytes()),
+						messageFactory.createObjectMessage(
+								VerificationConstants.MSG_SOURCE,
+								VerificationConstants.MSG_DESTINATION,
+								VerificationConstants.MSG_TXT_LONG)));
+
+		List<Message> unpacked = batch.getMessages();
+		assertTrue(unpacked.get(0) instanceof TextualMessage);
+		assertEquals(VerificationConstants.MSG_PAYLOAD, unpacked.get(0)
+				.getTextualMesage());
+		assertTrue(unpacked.get(1) instanceof BinaryMessage);
+		assertEquals(VerificationConstants.MSG_BINARY,
+				PPCUtils.toString(unpacked.get(1).getStream()));
+		assertTrue(unpacked.get(2) instanceof ObjectMessage);
+		assertEquals(VerificationConstants.MSG_TXT_LONG, unpacked.get(2)
+				.getObject());
+	}
+
+	@Test
+	public void shallNotBatchBatch() {
+		Message message = messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_PAYLOAD);
+		assertTrue(BatchMessage.isBatchable(message));
+		assertFalse(BatchMessage.isBatch(message));
+		BatchMessage batch = new BatchMessage(VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, Arrays.asList(message));
+		assertFalse(BatchMessage.isBatchable(batch));
+		assertTrue(BatchMessage.isBatch(batch));
+	}
+}
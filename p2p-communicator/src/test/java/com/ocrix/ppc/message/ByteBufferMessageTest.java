@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.ByteArrayMessageElement;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.type.Tag;
+
+public class ByteBufferMessageTest {
+	/* Message factory */
+	private static MessageFactory messageFactory = null;
+	private static byte[] payload = null;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		payload = VerificationConstants.MSG_BINARY.getBytes();
+	}
+
+	@Test
+	public void shallWrapHeapBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		ByteBufferMessage message = messageFactory.createByteBufferMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, buffer);
+		assertEquals(0, buffer.position());
+		assertEquals(payload.length, message.getMessageElement(
+				Tag.BUFFER.getValue()).getByteLength());
+		assertArrayEquals(payload, PPCUtils.toByteArray(message.getStream()));
+		assertTrue(message.getByteBuffer().isReadOnly());
+	}
+
+	@Test
+	public void shallWriteDirectBuffer() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(payload.length + 4);
+		buffer.putInt(-1).put(payload).flip();
+		buffer.position(4);
+		ByteBufferMessage message = messageFactory.createByteBufferMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, buffer);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		message.getMessageElement(Tag.BUFFER.getValue()).sendToStream(out);
+		assertArrayEquals(payload, out.toByteArray());
+		assertEquals(4, buffer.position());
+	}
+
+	@Test
+	public void shallConvertWithoutCopy() throws Exception {
+		byte[] received = payload.clone();
+		Message jxtaMessage = messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, "-");
+		jxtaMessage.removeMessageElement(jxtaMessage
+				.getMessageElement(Tag.PAYLOAD.getValue()));
+		jxtaMessage.addMessageElement(new ByteArrayMessageElement(Tag.BUFFER
+				.getValue(), MimeMediaType.AOS, received, null));
+		Message converted = PPCUtils.convertJxtaMsgToPpcMsg(jxtaMessage);
+		assertTrue(converted instanceof ByteBufferMessage);
+		ByteBuffer view = ((ByteBufferMessage) converted).getByteBuffer();
+		assertEquals(payload.length, view.remaining());
+		/* The view shares the bytes of the received element */
+		received[0] = (byte) (received[0] + 1);
+		assertEquals(received[0], view.get(0));
+	}
+
+	@Test
+	public void shallKeepCompressedBinaryElement() throws Exception {
+		Message binary = messageFactory.createBinaryMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, payload);
+		Message converted = PPCUtils.convertJxtaMsgToPpcMsg(binary);
+		assertTrue(converted.getMessageElement(Tag.STREAM.getValue()) == binary
+				.getMessageElement(Tag.STREAM.getValue()));
+		assertArrayEquals(payload, PPCUtils.toByteArray(converted.getStream()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shallNotWrapNullBuffer() {
+		messageFactory.createByteBufferMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, null);
+	}
+}
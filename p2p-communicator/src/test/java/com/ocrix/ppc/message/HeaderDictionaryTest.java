@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.type.Tag;
+
+public class HeaderDictionaryTest {
+	/* Class members */
+	private MessageFactory messageFactory = null;
+	/* The dictionaries of the two ends of a connection */
+	private HeaderDictionary sender = null;
+	private HeaderDictionary receiver = null;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		sender = new HeaderDictionary();
+		receiver = new HeaderDictionary();
+	}
+
+	@Test
+	public void shallReplaceStringElementsByHeader() throws Exception {
+		TextualMessage message = messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_PAYLOAD);
+		net.jxta.endpoint.Message compacted = sender.compact(message);
+		assertNotNull(compacted.getMessageElement(Tag.HEADER.getValue()));
+		assertNull(compacted.getMessageElement(Tag.SOURCE.getValue()));
+		assertNull(compacted.getMessageElement(Tag.DESTINATION.getValue()));
+		assertNull(compacted.getMessageElement(Tag.PAYLOAD.getValue()));
+		/* The original may be sent again over another pipe */
+		assertEquals(VerificationConstants.MSG_SOURCE, message.getSource());
+		assertNull(message.getMessageElement(Tag.HEADER.getValue()));
+
+		Message received = messageFactory.createReceivedMessage(receiver
+				.expand(compacted));
+		assertTrue(received instanceof TextualMessage);
+		assertEquals(VerificationConstants.MSG_SOURCE, received.getSource());
+		assertEquals(VerificationConstants.MSG_DESTINATION,
+				received.getDestination());
+		assertEquals(VerificationConstants.MSG_PAYLOAD,
+				received.getTextualMesage());
+		assertEquals(2, receiver.getReceivedCount());
+	}
+
+	@Test
+	public void shallDefineNameOnce() throws Exception {
+		long first = header(sender.compact(textual("first")));
+		long second = header(sender.compact(textual("first")));
+		/* Both names are defined by the first message only */
+		assertTrue(second < first);
+		assertEquals(2, sender.getSentCount());
+		/* The reply interns the same names */
+		sender.compact(messageFactory.createTextualMessage(
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_SOURCE, "reply"));
+		assertEquals(2, sender.getSentCount());
+	}
+
+	@Test
+	public void shallKeepOtherElements() throws Exception {
+		byte[] data = VerificationConstants.MSG_BINARY.getBytes();
+		BinaryMessage message = messageFactory.createBinaryMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, data);
+		message.setCorrelationId("42");
+		message.setAckRequested(true);
+		Message received = messageFactory.createReceivedMessage(receiver
+				.expand(sender.compact(message)));
+		assertTrue(received instanceof BinaryMessage);
+		assertEquals("42", received.getCorrelationId());
+		assertTrue(received.isAckRequested());
+		assertArrayEquals(data, PPCUtils.toByteArray(received.getStream()));
+	}
+
+	@Test
+	public void shallPassOldEncoding() throws Exception {
+		TextualMessage message = textual("old");
+		assertSame(message, receiver.expand(message));
+		assertEquals(VerificationConstants.MSG_SOURCE, message.getSource());
+		assertSame(message, HeaderDictionary.expand(new Object(), message));
+	}
+
+	@Test
+	public void shallNotCompactBeyondMaxNames() throws Exception {
+		HeaderDictionary small = new HeaderDictionary(2);
+		assertNotNull(small.compact(textual("a")).getMessageElement(
+				Tag.HEADER.getValue()));
+		TextualMessage other = messageFactory.createTextualMessage("Carol",
+				VerificationConstants.MSG_DESTINATION, "b");
+		assertSame(other, small.compact(other));
+	}
+
+	@Test
+	public void shallRejectUnknownName() throws Exception {
+		sender.compact(textual("lost"));
+		try {
+			/* The message defining the names never came */
+			receiver.expand(sender.compact(textual("next")));
+			fail("The names are not defined to the receiver");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not defined"));
+		}
+	}
+
+	@Test
+	public void shallKeepDictionaryPerConnection() throws Exception {
+		Object pipe = new Object();
+		assertSame(HeaderDictionary.forConnection(pipe),
+				HeaderDictionary.forConnection(pipe));
+		HeaderDictionary dictionary = HeaderDictionary.forConnection(pipe);
+		HeaderDictionary.release(pipe);
+		assertTrue(dictionary != HeaderDictionary.forConnection(pipe));
+	}
+
+	private TextualMessage textual(String text) {
+		return messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, text);
+	}
+
+	private static long header(net.jxta.endpoint.Message message) {
+		return message.getMessageElement(Tag.HEADER.getValue())
+				.getByteLength();
+	}
+}
@@ -16,6 +16,19 @@ package com.ocrix.ppc.message;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import net.jxta.document.MimeMediaType;
+import net.jxta.endpoint.MessageElement;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -23,6 +36,7 @@ import org.junit.Test;
 
 import com.ocrix.ppc.message.Message;
 import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.type.Tag;
 
 public class ObjectMessageTest {
 	/* Message factory */
@@ -66,6 +80,181 @@ public class ObjectMessageTest {
 		assertNull(objectMessage.getObject());
 	}
 
+	@Test
+	public void shallEncodeRegisteredObjectCompactly() throws Exception {
+		ObjectCodecs.registerClass(Quote.class, 100);
+		ObjectCodecs.registerClass(Side.class, 101);
+		Quote quote = new Quote();
+		quote.symbol = "OCRX";
+		quote.price = 12.5;
+		quote.size = 300;
+		quote.side = Side.ASK;
+		quote.tags.add("fast");
+		quote.tags.add(null);
+		quote.extra.put("venue", 7L);
+
+		Message message = messageFactory.createObjectMessage(source,
+				destination, quote);
+		MessageElement element = message.getMessageElement(Tag.OBJECT
+				.getValue());
+		assertEquals(ObjectCodecs.COMPACT.getMimeType(), element.getMimeType());
+		assertTrue(element.getByteLength() < ObjectCodecs.SERIALIZATION
+				.encode(quote).length / 4);
+
+		ObjectMessage received = new ObjectMessage(source, destination,
+				element);
+		Quote decoded = (Quote) received.getObject();
+		assertEquals(quote, decoded);
+		/* Decoded once */
+		assertSame(decoded, received.getObject());
+	}
+
+	@Test
+	public void shallFallBackToSerialization() throws Exception {
+		Message message = messageFactory.createObjectMessage(source,
+				destination, new java.util.TreeMap<String, Integer>());
+		assertEquals(MimeMediaType.AOS, message.getMessageElement(
+				Tag.OBJECT.getValue()).getMimeType());
+		assertTrue(message.getObject() instanceof java.util.TreeMap);
+	}
+
+	@Test
+	public void shallSerializeUnregisteredGraph() throws Exception {
+		ArrayList<String> list = new ArrayList<String>();
+		list.add("plain");
+		Message message = messageFactory.createObjectMessage(source,
+				destination, list);
+		/* A peer without the compact codec reads it */
+		assertEquals(MimeMediaType.AOS, message.getMessageElement(
+				Tag.OBJECT.getValue()).getMimeType());
+		assertEquals(list, message.getObject());
+	}
+
+	@Test
+	public void shallFallBackToSerializationOnCycle() throws Exception {
+		ObjectCodecs.registerClass(Node.class, 103);
+		Node node = new Node();
+		node.v = 7;
+		node.next = node;
+		Message message = messageFactory.createObjectMessage(source,
+				destination, node);
+		assertEquals(MimeMediaType.AOS, message.getMessageElement(
+				Tag.OBJECT.getValue()).getMimeType());
+		Node decoded = (Node) message.getObject();
+		assertEquals(7, decoded.v);
+		assertSame(decoded, decoded.next);
+	}
+
+	@Test
+	public void shallWriteSharedReferenceTwice() throws Exception {
+		ObjectCodecs.registerClass(Node.class, 103);
+		Node shared = new Node();
+		shared.v = 1;
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		nodes.add(shared);
+		nodes.add(shared);
+		@SuppressWarnings("unchecked")
+		ArrayList<Node> decoded = (ArrayList<Node>) ObjectCodecs.COMPACT
+				.decode(new java.io.ByteArrayInputStream(ObjectCodecs.COMPACT
+						.encode(nodes)));
+		assertEquals(2, decoded.size());
+		assertEquals(1, decoded.get(1).v);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shallRefuseTakenClassId() {
+		ObjectCodecs.registerClass(Quote.class, 102);
+		ObjectCodecs.registerClass(Side.class, 102);
+	}
+
+	@Test
+	public void shallForgetOldIdOfReregisteredClass() throws Exception {
+		CompactObjectCodec codec = new CompactObjectCodec();
+		codec.register(Node.class, 110);
+		codec.register(Node.class, 111);
+		/* The old id is free for another class */
+		codec.register(Side.class, 110);
+		Node node = new Node();
+		node.v = 3;
+		Node decoded = (Node) codec.decode(new ByteArrayInputStream(codec
+				.encode(node)));
+		assertEquals(3, decoded.v);
+	}
+
+	@Test(expected = StreamCorruptedException.class)
+	public void shallRefuseLengthBeyondInput() throws Exception {
+		/* An array of 100 MB with 3 bytes in it */
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		CompactObjectCodec.writeVarInt(out, 10);
+		CompactObjectCodec.writeVarInt(out, 100 * 1024 * 1024);
+		out.write(new byte[] { 1, 2, 3 });
+		CompactObjectCodec codec = new CompactObjectCodec();
+		codec.setMaxLength(Integer.MAX_VALUE);
+		codec.decode(new ByteArrayInputStream(bos.toByteArray()));
+	}
+
+	@Test(expected = StreamCorruptedException.class)
+	public void shallRefuseLengthAboveMax() throws Exception {
+		CompactObjectCodec codec = new CompactObjectCodec();
+		codec.setMaxLength(4);
+		codec.decode(new ByteArrayInputStream(codec.encode("alice")));
+	}
+
+	@Test(expected = StreamCorruptedException.class)
+	public void shallRefuseCorruptedCollectionSize() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bos);
+		CompactObjectCodec.writeVarInt(out, 13);
+		CompactObjectCodec.writeVarInt(out, Integer.MAX_VALUE);
+		new CompactObjectCodec().decode(new ByteArrayInputStream(bos
+				.toByteArray()));
+	}
+
+	@Test(expected = StreamCorruptedException.class)
+	public void shallRefuseNegativeLength() throws Exception {
+		/* 5 bytes of a var int with the sign bit set */
+		byte[] encoded = { 10, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+				(byte) 0xFF, 0x0F };
+		new CompactObjectCodec().decode(new ByteArrayInputStream(encoded));
+	}
+
+	public static class Node implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private Node next;
+		private int v;
+	}
+
+	public enum Side {
+		BID, ASK
+	}
+
+	public static class Quote implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private String symbol;
+		private double price;
+		private int size;
+		private Side side;
+		private ArrayList<String> tags = new ArrayList<String>();
+		private HashMap<String, Object> extra = new HashMap<String, Object>();
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Quote)) {
+				return false;
+			}
+			Quote quote = (Quote) other;
+			return symbol.equals(quote.symbol) && price == quote.price
+					&& size == quote.size && side == quote.side
+					&& tags.equals(quote.tags) && extra.equals(quote.extra);
+		}
+
+		@Override
+		public int hashCode() {
+			return symbol.hashCode();
+		}
+	}
+
 	@AfterClass
 	public static void tearDown() throws Exception {
 	}
@@ -0,0 +1,198 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.message;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import net.jxta.endpoint.MessageElement;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.commons.PPCUtils;
+import com.ocrix.ppc.commons.ZlibPool;
+import com.ocrix.ppc.type.Tag;
+
+public class PayloadCodecTest {
+	/* Class members */
+	private final Random random = new Random(7);
+
+	@Test
+	public void shallRoundTripLz4() throws Exception {
+		Lz4Codec codec = new Lz4Codec();
+		int[] lengths = { 0, 1, 12, 13, 17, 255, 4096, 300000 };
+		for (int length : lengths) {
+			byte[] data = createText(length);
+			byte[] encoded = codec.encode(data, 0, data.length);
+			assertArrayEquals(data, PPCUtils.toByteArray(codec
+					.decode(new ByteArrayInputStream(encoded))));
+		}
+		/* Random bytes do not shrink but still come back */
+		byte[] noise = new byte[70000];
+		random.nextBytes(noise);
+		byte[] encoded = codec.encode(noise, 0, noise.length);
+		assertArrayEquals(noise, codec.decode(encoded, 0, encoded.length));
+	}
+
+	@Test
+	public void shallCompressRepeatedText() throws Exception {
+		byte[] data = createText(100000);
+		assertTrue(new Lz4Codec().encode(data, 0, data.length).length < data.length / 2);
+		assertTrue(new DeflateCodec(1).encode(data, 0, data.length).length < data.length / 2);
+	}
+
+	@Test
+	public void shallReadPooledGzipAndDeflate() throws Exception {
+		byte[] data = createText(200000);
+		byte[] gzip = new GzipCodec().encode(data, 0, data.length);
+		assertArrayEquals(data, PPCUtils.toByteArray(new GZIPInputStream(
+				new ByteArrayInputStream(gzip))));
+		DeflateCodec deflate = new DeflateCodec(1);
+		for (int i = 0; i < 3; i++) {
+			byte[] encoded = deflate.encode(data, 0, data.length);
+			InputStream decoded = deflate.decode(new ByteArrayInputStream(
+					encoded));
+			try {
+				assertArrayEquals(data, PPCUtils.toByteArray(decoded));
+			} finally {
+				decoded.close();
+			}
+		}
+	}
+
+	@Test
+	public void shallGiveInflaterBackAtEndOfStream() throws Exception {
+		byte[] data = createText(50000);
+		ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+		GZIPOutputStream out = new GZIPOutputStream(legacy);
+		out.write(data);
+		out.close();
+		GzipCodec gzip = new GzipCodec();
+		DeflateCodec deflate = new DeflateCodec();
+		ZlibPool.setLeakDetection(true);
+		try {
+			/* The streams of the messages are read to the end, not closed */
+			assertArrayEquals(data, PPCUtils.toByteArray(gzip
+					.decode(new ByteArrayInputStream(legacy.toByteArray()))));
+			byte[] encoded = gzip.encode(data, 0, data.length);
+			assertArrayEquals(data, PPCUtils.toByteArray(gzip
+					.decode(new ByteArrayInputStream(encoded))));
+			encoded = deflate.encode(data, 0, data.length);
+			assertArrayEquals(data, PPCUtils.toByteArray(deflate
+					.decode(new ByteArrayInputStream(encoded))));
+			assertEquals(0, ZlibPool.reportLeaks(0));
+		} finally {
+			ZlibPool.setLeakDetection(false);
+		}
+	}
+
+	@Test(expected = ZipException.class)
+	public void shallDetectCorruptGzipTrailer() throws Exception {
+		byte[] data = createText(4096);
+		byte[] encoded = new GzipCodec().encode(data, 0, data.length);
+		encoded[encoded.length - 5]++;
+		PPCUtils.toByteArray(new GzipCodec().decode(new ByteArrayInputStream(
+				encoded)));
+	}
+
+	@Test(expected = IOException.class)
+	public void shallDetectTruncatedLz4() throws Exception {
+		Lz4Codec codec = new Lz4Codec();
+		byte[] data = createText(4096);
+		byte[] encoded = codec.encode(data, 0, data.length);
+		codec.decode(encoded, 0, encoded.length - 3);
+	}
+
+	@Test
+	public void shallPickCodecBySize() {
+		CompressionPolicy policy = new CompressionPolicy(true, 100, 1000, 6,
+				CompressionPolicy.DEFAULT_MAX_RATIO);
+		assertEquals("none", policy.select(99).getId());
+		assertEquals("lz4", policy.select(100).getId());
+		assertEquals("lz4", policy.select(1000).getId());
+		assertEquals("deflate", policy.select(1001).getId());
+		assertEquals("none", new CompressionPolicy(false).select(1000000)
+				.getId());
+	}
+
+	@Test
+	public void shallSkipPoorRatio() throws Exception {
+		PayloadCodecs.setPolicy(new CompressionPolicy(true, 16, 1000000, 1,
+				CompressionPolicy.DEFAULT_MAX_RATIO));
+		byte[] noise = new byte[4096];
+		random.nextBytes(noise);
+		MessageElement element = PayloadCodecs.encode(Tag.STREAM.getValue(),
+				noise);
+		assertEquals(PayloadCodecs.NONE.getMimeType(), element.getMimeType());
+		MessageElement text = PayloadCodecs.encode(Tag.STREAM.getValue(),
+				createText(4096));
+		assertEquals(new Lz4Codec().getMimeType(), text.getMimeType());
+	}
+
+	@Test
+	public void shallDecodeByMimeType() throws Exception {
+		byte[] data = createText(2000000);
+		PayloadCodecs.setPolicy(new CompressionPolicy(true, 16, 1000, 1,
+				CompressionPolicy.DEFAULT_MAX_RATIO));
+		Message message = new MessageFactory().createBinaryMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, data);
+		assertEquals(new DeflateCodec().getMimeType(), message
+				.getMessageElement(Tag.STREAM.getValue()).getMimeType());
+		assertArrayEquals(data, PPCUtils.toByteArray(message.getStream()));
+		/* The elements of the older peers are still read */
+		GzipCodec gzip = new GzipCodec();
+		Message legacy = new BinaryMessage(VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				new net.jxta.endpoint.ByteArrayMessageElement(Tag.STREAM
+						.getValue(), gzip.getMimeType(), gzip.encode(data, 0,
+						data.length), null));
+		assertArrayEquals(data, PPCUtils.toByteArray(legacy.getStream()));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		PayloadCodecs.setPolicy(CompressionPolicy.fromConfig());
+	}
+
+	/**
+	 * Creates a compressible text of the given length
+	 */
+	private byte[] createText(int length) {
+		byte[] data = new byte[length];
+		String[] words = { "alice ", "bob ", "peer ", "pipe ", "message " };
+		int i = 0;
+		while (i < length) {
+			byte[] word = words[random.nextInt(words.length)].getBytes();
+			for (int j = 0; j < word.length && i < length; j++) {
+				data[i++] = word[j];
+			}
+		}
+		return data;
+	}
+}
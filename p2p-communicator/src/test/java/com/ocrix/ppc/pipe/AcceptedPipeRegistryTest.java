@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import net.jxta.peer.PeerID;
+import net.jxta.protocol.PeerAdvertisement;
+import net.jxta.util.JxtaBiDiPipe;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AcceptedPipeRegistryTest {
+	/* Class members */
+	private AcceptedPipeRegistry registry = null;
+
+	@Before
+	public void setUp() throws Exception {
+		registry = new AcceptedPipeRegistry(200);
+	}
+
+	@Test
+	public void shallRouteToPipeOfPeer() throws Exception {
+		FakePipe alice = new FakePipe("Alice");
+		FakePipe carol = new FakePipe("Carol");
+		assertNull(registry.get("Alice"));
+		registry.accept(alice);
+		registry.accept(carol);
+		assertSame(alice, registry.get("Alice"));
+		assertSame(carol, registry.get("Carol"));
+		assertSame(alice, registry.get(alice.peerId.toString()));
+		assertSame(carol, registry.get(carol.peerId.toString()));
+		assertEquals(2, registry.size());
+	}
+
+	@Test
+	public void shallTouchAcceptedPipesOnly() throws Exception {
+		FakePipe alice = new FakePipe("Alice");
+		assertFalse(registry.touch(alice));
+		registry.accept(alice);
+		assertTrue(registry.touch(alice));
+	}
+
+	@Test
+	public void shallKeepPipeWithoutRemotePeerUnbound() throws Exception {
+		FakePipe anonymous = new FakePipe(null);
+		registry.accept(anonymous);
+		assertEquals(1, registry.size());
+		assertNull(registry.get("Alice"));
+	}
+
+	@Test
+	public void shallRebindReconnectedPeer() throws Exception {
+		FakePipe first = new FakePipe("Alice");
+		FakePipe second = new FakePipe("Alice");
+		registry.accept(first);
+		registry.accept(second);
+		assertSame(second, registry.get("Alice"));
+		/* The old pipe is not bound to the name anymore */
+		registry.remove(first);
+		assertSame(second, registry.get("Alice"));
+		assertNull(registry.get(first.peerId.toString()));
+		assertTrue(first.isClosed);
+	}
+
+	@Test
+	public void shallDropDeadAndIdlePipes() throws Exception {
+		FakePipe dead = new FakePipe("Alice");
+		registry.accept(dead);
+		dead.isBound = false;
+		assertNull(registry.get("Alice"));
+		assertTrue(dead.isClosed);
+
+		FakePipe idle = new FakePipe("Carol");
+		registry.accept(idle);
+		Thread.sleep(300);
+		registry.evictIdle();
+		assertNull(registry.get("Carol"));
+		assertTrue(idle.isClosed);
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void shallCloseAll() throws Exception {
+		FakePipe pipe = new FakePipe("Alice");
+		registry.accept(pipe);
+		registry.close();
+		assertTrue(pipe.isClosed);
+		assertNull(registry.get("Alice"));
+	}
+
+	/**
+	 * An accepted pipe without a network, its remote peer advertises a name
+	 */
+	private static class FakePipe extends JxtaBiDiPipe {
+		private final PeerID peerId = mock(PeerID.class);
+		private final PeerAdvertisement remote;
+		private volatile boolean isBound = true;
+		private volatile boolean isClosed = false;
+
+		private FakePipe(String name) {
+			if (name == null) {
+				remote = null;
+			} else {
+				remote = mock(PeerAdvertisement.class);
+				when(remote.getPeerID()).thenReturn(peerId);
+				when(remote.getName()).thenReturn(name);
+			}
+		}
+
+		@Override
+		public PeerAdvertisement getRemotePeerAdvertisement() {
+			return remote;
+		}
+
+		@Override
+		public boolean isBound() {
+			return isBound;
+		}
+
+		@Override
+		public void close() throws IOException {
+			isClosed = true;
+			isBound = false;
+		}
+	}
+}
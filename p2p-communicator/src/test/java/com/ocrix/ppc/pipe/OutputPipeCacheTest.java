@@ -0,0 +1,175 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import net.jxta.id.ID;
+import net.jxta.pipe.OutputPipe;
+
+import org.junit.Test;
+
+public class OutputPipeCacheTest {
+
+	@Test
+	public void shallCountHitsAndMisses() {
+		OutputPipeCache cache = new OutputPipeCache();
+		ID id = mock(ID.class);
+		OutputPipe pipe = createPipe(id);
+		assertNull(cache.get(id));
+		cache.put(id, pipe);
+		assertSame(pipe, cache.get(id));
+		assertSame(pipe, cache.get(id));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertTrue(cache.contains(pipe));
+	}
+
+	@Test
+	public void shallInvalidateAndClosePipe() {
+		OutputPipeCache cache = new OutputPipeCache();
+		ID id = mock(ID.class);
+		OutputPipe pipe = createPipe(id);
+		cache.put(id, pipe);
+		cache.invalidate(id);
+		assertNull(cache.get(id));
+		assertFalse(cache.contains(pipe));
+		verify(pipe, times(1)).close();
+	}
+
+	@Test
+	public void shallExpireEntries() throws InterruptedException {
+		OutputPipeCache cache = new OutputPipeCache(10, 4);
+		ID id = mock(ID.class);
+		OutputPipe pipe = createPipe(id);
+		cache.put(id, pipe);
+		Thread.sleep(30);
+		assertNull(cache.get(id));
+		assertEquals(0, cache.size());
+		verify(pipe, times(1)).close();
+	}
+
+	@Test
+	public void shallEvictLeastRecentlyUsed() {
+		OutputPipeCache cache = new OutputPipeCache(60000, 2);
+		ID first = mock(ID.class);
+		ID second = mock(ID.class);
+		ID third = mock(ID.class);
+		OutputPipe firstPipe = createPipe(first);
+		OutputPipe secondPipe = createPipe(second);
+		cache.put(first, firstPipe);
+		cache.put(second, secondPipe);
+		/* The first becomes the most recently used */
+		cache.get(first);
+		cache.put(third, createPipe(third));
+		assertEquals(2, cache.size());
+		assertSame(firstPipe, cache.get(first));
+		assertNull(cache.get(second));
+		verify(secondPipe, times(1)).close();
+		verify(firstPipe, never()).close();
+	}
+
+	@Test
+	public void shallSkipClosedPipe() {
+		OutputPipeCache cache = new OutputPipeCache();
+		ID id = mock(ID.class);
+		OutputPipe pipe = createPipe(id);
+		cache.put(id, pipe);
+		when(pipe.isClosed()).thenReturn(true);
+		assertNull(cache.get(id));
+	}
+
+	@Test
+	public void shallKeepCachedPipeOpenOnRelease() {
+		OutputPipeCache cache = new OutputPipeCache();
+		PipeFactory factory = new PipeFactory(cache);
+		ID id = mock(ID.class);
+		OutputPipe cached = createPipe(id);
+		OutputPipe other = createPipe(id);
+		cache.put(id, cached);
+		factory.releaseOutputPipe(cached);
+		factory.releaseOutputPipe(other);
+		verify(cached, never()).close();
+		verify(other, times(1)).close();
+		factory.invalidateOutputPipe(cached);
+		verify(cached, atLeastOnce()).close();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void shallNotCloseLentPipeOnEviction() {
+		OutputPipeCache cache = new OutputPipeCache(60000, 1);
+		ID first = mock(ID.class);
+		ID second = mock(ID.class);
+		OutputPipe lent = createPipe(first);
+		cache.putAndAcquire(first, lent);
+		/* Pushes the lent pipe out of the full cache */
+		cache.put(second, createPipe(second));
+		assertNull(cache.get(first));
+		verify(lent, never()).close();
+		assertTrue(cache.release(lent));
+		verify(lent, times(1)).close();
+		assertFalse(cache.release(lent));
+	}
+
+	@Test
+	public void shallCloseExpiredPipeAfterLastBorrower()
+			throws InterruptedException {
+		OutputPipeCache cache = new OutputPipeCache(10, 4);
+		ID id = mock(ID.class);
+		OutputPipe pipe = createPipe(id);
+		cache.putAndAcquire(id, pipe);
+		assertSame(pipe, cache.acquire(id));
+		Thread.sleep(30);
+		cache.evictExpired();
+		assertEquals(0, cache.size());
+		cache.release(pipe);
+		verify(pipe, never()).close();
+		cache.release(pipe);
+		verify(pipe, times(1)).close();
+	}
+
+	@Test
+	public void shallCloseInvalidatedPipeOnceGivenBack() {
+		OutputPipeCache cache = new OutputPipeCache();
+		PipeFactory factory = new PipeFactory(cache);
+		ID id = mock(ID.class);
+		OutputPipe pipe = createPipe(id);
+		/* Two borrowers, e.g. two pipes of a pool, hold the same pipe */
+		cache.putAndAcquire(id, pipe);
+		cache.acquire(id);
+		factory.invalidateOutputPipe(pipe);
+		assertNull(cache.get(id));
+		verify(pipe, never()).close();
+		factory.releaseOutputPipe(pipe);
+		verify(pipe, times(1)).close();
+	}
+
+	private OutputPipe createPipe(ID id) {
+		OutputPipe pipe = mock(OutputPipe.class);
+		when(pipe.getPipeID()).thenReturn(id);
+		return pipe;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+
+public class PipePoolTest {
+	/* Class members */
+	private static final String DEST = VerificationConstants.MSG_DESTINATION;
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicInteger destroyed = new AtomicInteger();
+	private PooledPipeFactory<FakePipe> factory = null;
+
+	@Before
+	public void setUp() throws Exception {
+		created.set(0);
+		destroyed.set(0);
+		factory = new PooledPipeFactory<FakePipe>() {
+			// @Override
+			public FakePipe create(String destination) throws IOException {
+				if (destination.equals(VerificationConstants.TARGET))
+					throw new IOException("not found");
+				created.incrementAndGet();
+				return new FakePipe();
+			}
+
+			// @Override
+			public boolean isAlive(FakePipe pipe) {
+				return pipe.isBound;
+			}
+
+			// @Override
+			public void destroy(FakePipe pipe) {
+				pipe.isBound = false;
+				destroyed.incrementAndGet();
+			}
+
+			// @Override
+			public void invalidate(FakePipe pipe) {
+				destroy(pipe);
+			}
+		};
+	}
+
+	@Test
+	public void shallReuseReleasedPipe() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory);
+		FakePipe first = pool.borrow(DEST);
+		pool.release(DEST, first);
+		assertEquals(1, pool.getIdleCount(DEST));
+		assertSame(first, pool.borrow(DEST));
+		assertEquals(1, created.get());
+		assertEquals(1, pool.getActiveCount(DEST));
+	}
+
+	@Test
+	public void shallEvictDeadPipe() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory);
+		FakePipe first = pool.borrow(DEST);
+		pool.release(DEST, first);
+		first.isBound = false;
+		FakePipe second = pool.borrow(DEST);
+		assertNotSame(first, second);
+		assertEquals(2, created.get());
+		assertEquals(1, destroyed.get());
+	}
+
+	@Test
+	public void shallEvictDeadIdlePipes() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory);
+		FakePipe first = pool.borrow(DEST);
+		FakePipe second = pool.borrow(DEST);
+		pool.release(DEST, first);
+		pool.release(DEST, second);
+		first.isBound = false;
+		pool.evict();
+		assertEquals(1, pool.getIdleCount(DEST));
+	}
+
+	@Test(expected = IOException.class)
+	public void shallLimitPipesPerDestination() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory, 1, 1);
+		pool.borrow(DEST);
+		pool.borrow(DEST, 50);
+	}
+
+	@Test
+	public void shallFreePlaceOfInvalidatedPipe() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory, 1, 1);
+		pool.invalidate(DEST, pool.borrow(DEST));
+		assertTrue(pool.borrow(DEST, 50) != null);
+		assertEquals(1, destroyed.get());
+	}
+
+	@Test
+	public void shallFreePlaceIfCreationFailed() {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory, 1, 1);
+		for (int i = 0; i < 3; i++) {
+			try {
+				pool.borrow(VerificationConstants.TARGET, 50);
+			} catch (IOException e) {
+				assertEquals("not found", e.getMessage());
+			}
+		}
+		assertEquals(0, pool.getActiveCount(VerificationConstants.TARGET));
+	}
+
+	@Test
+	public void shallCloseExtraIdlePipes() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory, 1, 2);
+		FakePipe first = pool.borrow(DEST);
+		FakePipe second = pool.borrow(DEST);
+		pool.release(DEST, first);
+		pool.release(DEST, second);
+		assertEquals(1, pool.getIdleCount(DEST));
+		assertEquals(1, destroyed.get());
+	}
+
+	@Test
+	public void shallCloseAllPipes() throws IOException {
+		PipePool<FakePipe> pool = new PipePool<FakePipe>(factory);
+		FakePipe first = pool.borrow(DEST);
+		FakePipe second = pool.borrow(DEST);
+		pool.release(DEST, first);
+		pool.close();
+		assertEquals(1, destroyed.get());
+		pool.release(DEST, second);
+		assertEquals(2, destroyed.get());
+		assertTrue(pool.isClosed());
+	}
+
+	private static class FakePipe {
+		private volatile boolean isBound = true;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.type.LaneMode;
+import com.ocrix.ppc.type.Priority;
+
+public class LaneQueueTest {
+	/* Class members */
+	private MessageFactory messageFactory = null;
+	private LaneQueue queue = null;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		queue = new LaneQueue();
+	}
+
+	@Test
+	public void shallCarryPriority() throws Exception {
+		Message message = messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_PAYLOAD);
+		assertEquals(Priority.NORMAL, message.getPriority());
+		message.setPriority(Priority.HIGH);
+		assertEquals(Priority.HIGH, messageFactory.createReceivedMessage(
+				message).getPriority());
+		message.setPriority(Priority.NORMAL);
+		assertEquals(Priority.NORMAL, message.getPriority());
+	}
+
+	@Test
+	public void shallDrainStrictlyByPriority() throws Exception {
+		queue.setPolicy(new LanePolicy(LaneMode.STRICT, new int[] { 1, 1, 1 },
+				0));
+		queue.offer(envelope("low-1", Priority.LOW));
+		queue.offer(envelope("normal", Priority.NORMAL));
+		queue.offer(envelope("low-2", Priority.LOW));
+		queue.offer(envelope("high", Priority.HIGH));
+		assertEquals("high", next());
+		assertEquals("normal", next());
+		assertEquals("low-1", next());
+		assertEquals("low-2", next());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void shallShareByWeights() throws Exception {
+		queue.setPolicy(new LanePolicy(LaneMode.WEIGHTED, new int[] { 4, 2,
+				1 }, 0));
+		for (int i = 0; i < 70; i++) {
+			for (Priority priority : Priority.values()) {
+				queue.offer(envelope(String.valueOf(i), priority));
+			}
+		}
+		int[] taken = new int[Priority.values().length];
+		for (int i = 0; i < 70; i++) {
+			taken[queue.poll().getPriority().ordinal()]++;
+		}
+		assertEquals(40, taken[Priority.HIGH.ordinal()]);
+		assertEquals(20, taken[Priority.NORMAL.ordinal()]);
+		assertEquals(10, taken[Priority.LOW.ordinal()]);
+	}
+
+	@Test
+	public void shallNotStarveLowLane() throws Exception {
+		queue.setPolicy(new LanePolicy(LaneMode.STRICT, new int[] { 1, 1, 1 },
+				20));
+		queue.offer(envelope("old", Priority.LOW));
+		Thread.sleep(40);
+		queue.offer(envelope("high-1", Priority.HIGH));
+		queue.offer(envelope("high-2", Priority.HIGH));
+		assertEquals("old", next());
+		assertEquals("high-1", next());
+		LaneStats stats = queue.getStats(Priority.LOW);
+		assertEquals(0, stats.getDepth());
+		assertEquals(1, stats.getTaken());
+		assertTrue(stats.getMaxWaitMicros() >= 20000);
+		assertEquals(1, queue.getStats(Priority.HIGH).getDepth());
+	}
+
+	@Test
+	public void shallWaitForMessage() throws Exception {
+		assertNull(queue.poll(1000000));
+		queue.offer(envelope("late", Priority.NORMAL));
+		assertEquals("late", queue.poll(1000000).getMessage()
+				.getTextualMesage());
+		assertTrue(queue.isEmpty());
+	}
+
+	private Envelope envelope(String text, Priority priority) {
+		Message message = messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION, text);
+		message.setPriority(priority);
+		return new Envelope(message, null);
+	}
+
+	private String next() {
+		return queue.poll().getMessage().getTextualMesage();
+	}
+}
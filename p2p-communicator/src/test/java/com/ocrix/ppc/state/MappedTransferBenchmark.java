@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.ocrix.ppc.message.ChunkMessage;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.message.StreamMessage;
+import com.ocrix.ppc.threadpool.StandardFixedThreadPool;
+import com.ocrix.ppc.threadpool.TaskManager;
+
+/**
+ * Compares sending a file from its mapping with sending it by the heap arrays
+ * read from a stream. The chunks are handed straight to a
+ * {@link StreamReceiver}, so the copying and the allocations of both ends are
+ * measured but not the pipe. Run it by its main method, i.e.
+ * <code>java ... MappedTransferBenchmark [megabytes]</code>.
+ */
+public class MappedTransferBenchmark {
+	/* Class members */
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+		Path file = Files.createTempFile("ppc-benchmark", ".bin");
+		try {
+			byte[] block = new byte[1024 * 1024];
+			new Random(7).nextBytes(block);
+			for (int i = 0; i < megabytes; i++) {
+				Files.write(file, block, StandardOpenOption.APPEND);
+			}
+			/* Warms up the code paths */
+			run(file, false);
+			run(file, true);
+			System.out.println("path\tMB/s\theap MB per transfer");
+			report("byte[]", file, false, megabytes);
+			report("mapped", file, true, megabytes);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static void report(String name, Path file, boolean isMapped,
+			int megabytes) throws Exception {
+		long elapsed = 0;
+		long allocated = 0;
+		for (int i = 0; i < ROUNDS; i++) {
+			long before = allocatedBytes();
+			long start = System.nanoTime();
+			run(file, isMapped);
+			elapsed += System.nanoTime() - start;
+			allocated += allocatedBytes() - before;
+		}
+		System.out.printf("%s\t%.0f\t%.1f%n", name, megabytes * ROUNDS
+				/ (elapsed / 1e9), allocated / ROUNDS / 1048576.0);
+	}
+
+	/**
+	 * Sends the file to a receiver that keeps it in a temporary file
+	 */
+	private static void run(Path file, boolean isMapped) throws Exception {
+		TaskManager taskManager = new StandardFixedThreadPool();
+		final StreamReceiver receiver = new StreamReceiver(0);
+		final AtomicReference<StreamMessage> completed = new AtomicReference<StreamMessage>();
+		try {
+			StreamSender sender = new StreamSender(new DirectEngine(
+					taskManager, receiver, completed), "source");
+			if (isMapped) {
+				sender.sendFile("me", file);
+			} else {
+				InputStream in = Files.newInputStream(file);
+				try {
+					sender.send("me", in);
+				} finally {
+					in.close();
+				}
+			}
+			if (completed.get() == null
+					|| completed.get().getSize() != Files.size(file)) {
+				throw new IllegalStateException("The file was not received");
+			}
+		} finally {
+			if (completed.get() != null) {
+				completed.get().discard();
+			}
+			taskManager.shutdown();
+		}
+	}
+
+	/**
+	 * Sums the heap allocations of the live threads, the pool threads of a
+	 * run are alive until it ends
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory
+				.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return 0;
+		}
+		long sum = 0;
+		for (long allocated : ((com.sun.management.ThreadMXBean) threads)
+				.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			sum += Math.max(0, allocated);
+		}
+		return sum;
+	}
+
+	/**
+	 * Hands the chunks to the receiver instead of sending them over a pipe
+	 */
+	private static class DirectEngine extends SenderEngine {
+		private final StreamReceiver receiver;
+		private final AtomicReference<StreamMessage> completed;
+		private final MessageFactory messageFactory = new MessageFactory();
+
+		public DirectEngine(TaskManager taskManager, StreamReceiver receiver,
+				AtomicReference<StreamMessage> completed) {
+			super(taskManager);
+			this.receiver = receiver;
+			this.completed = completed;
+		}
+
+		@Override
+		protected DestinationSender createDestinationSender(
+				String destination, int window) {
+			return new DestinationSender(this, destination, window) {
+				@Override
+				protected boolean deliver(Message message) {
+					ChunkMessage chunk = (ChunkMessage) messageFactory
+							.createReceivedMessage(message);
+					try {
+						StreamMessage stream = receiver.onChunk(chunk);
+						if (stream != null) {
+							completed.set(stream);
+						}
+					} catch (IOException e) {
+						return false;
+					}
+					return true;
+				}
+
+				@Override
+				protected void close() {
+				}
+			};
+		}
+	}
+}
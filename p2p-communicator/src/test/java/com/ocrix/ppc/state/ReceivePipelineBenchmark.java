@@ -0,0 +1,124 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import net.jxta.pipe.PipeMsgEvent;
+
+import com.ocrix.ppc.message.CompressionPolicy;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.message.PayloadCodecs;
+
+/**
+ * Measures the receive throughput of the {@link ReceivePipeline} with a
+ * growing number of decoder threads. Every message is a compressed binary
+ * message that the handler decompresses and checksums, as a subscriber
+ * reading the pay-load would. Run it by its main method, i.e.
+ * <code>java ... ReceivePipelineBenchmark [messages] [sources]</code>.
+ */
+public class ReceivePipelineBenchmark {
+	/* Class members */
+	private static final int PAYLOAD_SIZE = 16 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int sources = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+		int cores = Runtime.getRuntime().availableProcessors();
+		/* Compresses every pay-load, the decoding is the work measured */
+		PayloadCodecs.setPolicy(new CompressionPolicy(true, 0, 0, 1,
+				CompressionPolicy.DEFAULT_MAX_RATIO));
+		Message[] sample = createMessages(messages, sources);
+
+		/* Warms up the code paths */
+		run(sample, Math.max(1, cores / 2));
+		System.out.println("threads\tmessages/s\tspeed-up");
+		double single = 0;
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			double rate = run(sample, threads);
+			if (threads == 1) {
+				single = rate;
+			}
+			System.out.printf("%d\t%.0f\t\t%.2f%n", threads, rate, rate
+					/ single);
+		}
+	}
+
+	/**
+	 * Receives all messages by a pipeline of the given size
+	 * 
+	 * @return messages per second
+	 */
+	private static double run(Message[] sample, int threads)
+			throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(sample.length);
+		ReceivePipeline pipeline = new ReceivePipeline(
+				new ReceivePipeline.Handler() {
+					// @Override
+					public void onMessage(PipeMsgEvent event, Message message) {
+						consume(message);
+						latch.countDown();
+					}
+				}, threads);
+		long start = System.nanoTime();
+		for (Message message : sample) {
+			pipeline.submit(null, message);
+		}
+		if (!latch.await(5, TimeUnit.MINUTES)) {
+			throw new IllegalStateException("The messages were not received");
+		}
+		long elapsed = System.nanoTime() - start;
+		pipeline.shutdown();
+		return sample.length / (elapsed / 1e9);
+	}
+
+	private static void consume(Message message) {
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		try {
+			InputStream in = message.getStream();
+			try {
+				int count;
+				while ((count = in.read(chunk)) != -1) {
+					crc.update(chunk, 0, count);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Message[] createMessages(int count, int sources) {
+		MessageFactory messageFactory = new MessageFactory();
+		Message[] messages = new Message[count];
+		byte[] data = new byte[PAYLOAD_SIZE];
+		for (int i = 0; i < data.length; i++) {
+			/* Compressible but not trivial */
+			data[i] = (byte) ((i * 31) ^ (i >>> 5));
+		}
+		for (int i = 0; i < count; i++) {
+			messages[i] = messageFactory.createBinaryMessage("source-"
+					+ (i % sources), "me", data);
+		}
+		return messages;
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.jxta.endpoint.StringMessageElement;
+import net.jxta.pipe.PipeMsgEvent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.threadpool.BoundedThreadPool;
+import com.ocrix.ppc.threadpool.TaskManager;
+import com.ocrix.ppc.type.RejectionPolicy;
+import com.ocrix.ppc.type.Tag;
+
+public class ReceivePipelineTest {
+	/* Test members */
+	private static final int SOURCES = 8;
+	private static final int PER_SOURCE = 500;
+	private ReceivePipeline pipeline = null;
+	private MessageFactory messageFactory = null;
+	private final Map<String, List<String>> received = new ConcurrentHashMap<String, List<String>>();
+	private final List<Message> failed = Collections
+			.synchronizedList(new ArrayList<Message>());
+	private CountDownLatch latch = null;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		pipeline = new ReceivePipeline(new ReceivePipeline.Handler() {
+			// @Override
+			public void onMessage(PipeMsgEvent event, Message message) {
+				if (message == null) {
+					failed.add(message);
+				} else {
+					received.get(message.getSource()).add(
+							message.getTextualMesage());
+				}
+				latch.countDown();
+			}
+		}, 4);
+		for (int i = 0; i < SOURCES; i++) {
+			received.put("source-" + i, new ArrayList<String>());
+		}
+	}
+
+	@Test
+	public void shallKeepOrderPerSource() throws Exception {
+		latch = new CountDownLatch(SOURCES * PER_SOURCE);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < SOURCES; i++) {
+			final String source = "source-" + i;
+			threads.add(new Thread(new Runnable() {
+				public void run() {
+					for (int n = 0; n < PER_SOURCE; n++) {
+						pipeline.submit(null, messageFactory
+								.createTextualMessage(source, "me",
+										String.valueOf(n)));
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (List<String> texts : received.values()) {
+			assertEquals(PER_SOURCE, texts.size());
+			for (int n = 0; n < PER_SOURCE; n++) {
+				assertEquals(String.valueOf(n), texts.get(n));
+			}
+		}
+		assertEquals(SOURCES * PER_SOURCE, pipeline.getReceivedCount());
+		assertEquals(0, pipeline.getQueueDepth());
+	}
+
+	@Test
+	public void shallHandUnknownMessageAsNull() throws Exception {
+		latch = new CountDownLatch(1);
+		net.jxta.endpoint.Message unknown = new net.jxta.endpoint.Message();
+		unknown.addMessageElement(new StringMessageElement(Tag.SOURCE
+				.getValue(), "source-0", null));
+		pipeline.submit(null, unknown);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(1, failed.size());
+		assertNull(failed.get(0));
+	}
+
+	@Test
+	public void shallDropWhenPoolRejectsDecoder() throws Exception {
+		latch = new CountDownLatch(1);
+		final CountDownLatch busy = new CountDownLatch(1);
+		final CountDownLatch idle = new CountDownLatch(2);
+		TaskManager boundedPool = new BoundedThreadPool(1, 1, 1,
+				RejectionPolicy.ABORT);
+		ReceivePipeline rejecting = new ReceivePipeline(
+				new ReceivePipeline.Handler() {
+					// @Override
+					public void onMessage(PipeMsgEvent event, Message message) {
+						received.get(message.getSource()).add(
+								message.getTextualMesage());
+						latch.countDown();
+					}
+				}, boundedPool, 1);
+		try {
+			/* One task holds the thread, the other one fills the queue */
+			for (int i = 0; i < 2; i++) {
+				boundedPool.execute(new Runnable() {
+					public void run() {
+						try {
+							busy.await();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						idle.countDown();
+					}
+				});
+			}
+			assertTrue(rejecting.submit(null, messageFactory
+					.createTextualMessage("source-0", "me", "1")));
+			assertEquals(1, rejecting.getFailedCount());
+			assertEquals(0, rejecting.getQueueDepth());
+			/* The stripe is idle again and runs once the pool has a place */
+			busy.countDown();
+			assertTrue(idle.await(5, TimeUnit.SECONDS));
+			assertTrue(rejecting.submit(null, messageFactory
+					.createTextualMessage("source-0", "me", "2")));
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertEquals(Collections.singletonList("2"),
+					received.get("source-0"));
+		} finally {
+			rejecting.shutdown();
+			boundedPool.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shallRefuseDiscardingPool() {
+		new ReceivePipeline(new ReceivePipeline.Handler() {
+			// @Override
+			public void onMessage(PipeMsgEvent event, Message message) {
+			}
+		}, new BoundedThreadPool(1, 1, 1, RejectionPolicy.DISCARD_OLDEST), 1);
+	}
+
+	@Test
+	public void shallRefuseAfterShutdown() {
+		pipeline.shutdown();
+		assertFalse(pipeline.submit(null,
+				messageFactory.createTextualMessage("a", "b", "late")));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pipeline.shutdown();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+
+public class RetrySchedulerTest {
+	/* Test members */
+	private RetryScheduler scheduler = null;
+	private MessageFactory messageFactory = null;
+
+	@Before
+	public void setUp() throws Exception {
+		scheduler = new RetryScheduler();
+		messageFactory = new MessageFactory();
+	}
+
+	@Test
+	public void shallDoubleDelayUpToMax() {
+		scheduler.setBackoff(100, 1000, 0);
+		assertEquals(100, scheduler.getDelay(1));
+		assertEquals(200, scheduler.getDelay(2));
+		assertEquals(400, scheduler.getDelay(3));
+		assertEquals(1000, scheduler.getDelay(5));
+		assertEquals(1000, scheduler.getDelay(100));
+	}
+
+	@Test
+	public void shallKeepJitterWithinBounds() {
+		scheduler.setBackoff(100, 1000, 0.5);
+		for (int i = 0; i < 1000; i++) {
+			long delay = scheduler.getDelay(2);
+			assertTrue(delay >= 100 && delay <= 300);
+		}
+	}
+
+	@Test
+	public void shallStopAfterMaxAttempts() throws Exception {
+		scheduler.setBackoff(1, 1, 0);
+		scheduler.setMaxAttempts(3);
+		RetryState state = scheduler.track(createMessage(),
+				Collections.<Envelope> emptyList());
+		final CountDownLatch fired = new CountDownLatch(2);
+		Runnable task = new Runnable() {
+			public void run() {
+				fired.countDown();
+			}
+		};
+		assertTrue(scheduler.schedule(state, task));
+		assertTrue(scheduler.schedule(state, task));
+		assertFalse(scheduler.schedule(state, task));
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void shallStopAfterDeadline() {
+		scheduler.setBackoff(1000, 1000, 0);
+		scheduler.setDeadline(100);
+		RetryState state = scheduler.track(createMessage(),
+				Collections.<Envelope> emptyList());
+		assertFalse(scheduler.schedule(state, new Runnable() {
+			public void run() {
+			}
+		}));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		scheduler.shutdown();
+	}
+
+	private Message createMessage() {
+		return messageFactory.createTextualMessage(
+				VerificationConstants.MSG_SOURCE,
+				VerificationConstants.MSG_DESTINATION,
+				VerificationConstants.MSG_PAYLOAD);
+	}
+}
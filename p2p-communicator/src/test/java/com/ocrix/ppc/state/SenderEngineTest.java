@@ -0,0 +1,540 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.exception.PPCException;
+import com.ocrix.ppc.message.BatchMessage;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.threadpool.BoundedThreadPool;
+import com.ocrix.ppc.threadpool.StandardFixedThreadPool;
+import com.ocrix.ppc.threadpool.TaskManager;
+import com.ocrix.ppc.type.AckMode;
+import com.ocrix.ppc.type.Priority;
+import com.ocrix.ppc.type.RejectionPolicy;
+import com.ocrix.ppc.type.SendStatus;
+
+public class SenderEngineTest {
+	/* Class members */
+	private static final int MESSAGES = 200;
+	private final List<String> delivered = new CopyOnWriteArrayList<String>();
+	private final List<String> created = new CopyOnWriteArrayList<String>();
+	private final List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+	private MessageFactory messageFactory = null;
+	private TaskManager taskManager = null;
+	private CountDownLatch latch = null;
+	private CountDownLatch gate = null;
+	/* How many deliveries fail before the pipe recovers */
+	private final AtomicInteger failures = new AtomicInteger();
+	/* Whether the recipient acknowledges the delivered messages */
+	private volatile boolean isAcking = false;
+	/* Whether the pipe throws instead of reporting a failure */
+	private volatile boolean isThrowing = false;
+
+	@Before
+	public void setUp() throws Exception {
+		messageFactory = new MessageFactory();
+		taskManager = new StandardFixedThreadPool();
+		delivered.clear();
+		created.clear();
+		batches.clear();
+		failures.set(0);
+		isAcking = false;
+		isThrowing = false;
+	}
+
+	@Test
+	public void shallKeepOrderPerDestination() throws Exception {
+		latch = new CountDownLatch(MESSAGES);
+		gate = new CountDownLatch(0);
+		SenderEngine engine = new TestEngine(taskManager);
+		/* The other lanes keep a part of the window */
+		engine.setWindow(2 * MESSAGES);
+		for (int i = 0; i < MESSAGES; i++) {
+			assertTrue(engine.submit(messageFactory.createTextualMessage(
+					VerificationConstants.MSG_SOURCE,
+					VerificationConstants.MSG_DESTINATION, String.valueOf(i))));
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < MESSAGES; i++) {
+			assertEquals(String.valueOf(i), delivered.get(i));
+		}
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallCreateSingleSenderPerDestination() throws Exception {
+		latch = new CountDownLatch(4);
+		gate = new CountDownLatch(0);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.submit(messageFactory.createTextualMessage("a", "b", "1"));
+		engine.submit(messageFactory.createTextualMessage("a", "c", "2"));
+		engine.submit(messageFactory.createTextualMessage("a", "b", "3"));
+		engine.submit(messageFactory.createTextualMessage("a", "c", "4"));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(2, created.size());
+		engine.shutdown();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shallRefuseEmptyWindow() {
+		/* No message could ever be submitted to it */
+		new TestEngine(taskManager).createDestinationSender(
+				VerificationConstants.MSG_DESTINATION, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shallRefuseDiscardingPool() {
+		/* A discarded sender would stay scheduled and never run again */
+		new TestEngine(new BoundedThreadPool(1, 1, 1, RejectionPolicy.DISCARD));
+	}
+
+	@Test
+	public void shallFailWhenPoolRejectsSender() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		final CountDownLatch busy = new CountDownLatch(1);
+		final CountDownLatch idle = new CountDownLatch(2);
+		TaskManager boundedPool = new BoundedThreadPool(1, 1, 1,
+				RejectionPolicy.ABORT);
+		SenderEngine engine = new TestEngine(boundedPool);
+		/* One task holds the thread, the other one fills the queue */
+		for (int i = 0; i < 2; i++) {
+			boundedPool.execute(new Runnable() {
+				public void run() {
+					try {
+						busy.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					idle.countDown();
+				}
+			});
+		}
+		CompletableFuture<DeliveryReceipt> receipt = new CompletableFuture<DeliveryReceipt>();
+		assertEquals(SendStatus.REJECTED, engine.trySubmit(messageFactory
+				.createTextualMessage("a", "b", "1"), receipt));
+		try {
+			receipt.get(10, TimeUnit.SECONDS);
+			fail("The receipt of a rejected message shall fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PPCException);
+		}
+		assertEquals(0, engine.getQueueDepth("b"));
+		/* The sender is idle again and runs once the pool has a place */
+		busy.countDown();
+		assertTrue(idle.await(5, TimeUnit.SECONDS));
+		assertTrue(engine.submit(messageFactory.createTextualMessage("a", "b",
+				"2")));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals("2", delivered.get(0));
+		engine.shutdown();
+		boundedPool.shutdown();
+	}
+
+	@Test
+	public void shallRejectWhenWindowIsFull() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(1);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setWindow(2);
+		/* The first message is taken by the sender that waits on the gate */
+		assertTrue(engine.submit(messageFactory.createTextualMessage("a", "b",
+				"1")));
+		while (engine.getQueueDepth("b") != 0) {
+			Thread.sleep(10);
+		}
+		assertTrue(engine.submit(messageFactory.createTextualMessage("a", "b",
+				"2")));
+		assertTrue(engine.submit(messageFactory.createTextualMessage("a", "b",
+				"3")));
+		assertFalse(engine.submit(messageFactory.createTextualMessage("a",
+				"b", "4")));
+		assertEquals(2, engine.getQueueDepth("b"));
+		gate.countDown();
+		engine.shutdown();
+		assertFalse(engine.submit(messageFactory.createTextualMessage("a",
+				"b", "5")));
+	}
+
+	@Test
+	public void shallSendHigherLaneFirst() throws Exception {
+		latch = new CountDownLatch(4);
+		gate = new CountDownLatch(1);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setWindow(4);
+		assertTrue(engine.submit(messageFactory.createTextualMessage("a", "b",
+				"first")));
+		while (engine.getQueueDepth("b") != 0) {
+			Thread.sleep(10);
+		}
+		engine.submit(prioritized("bulk-1", Priority.LOW));
+		engine.submit(prioritized("bulk-2", Priority.LOW));
+		/* The rest of the window is kept by the other lanes */
+		assertFalse(engine.submit(prioritized("bulk-3", Priority.LOW)));
+		assertTrue(engine.submit(prioritized("heartbeat", Priority.HIGH)));
+		assertEquals(1, engine.getLaneStats("b", Priority.HIGH).getDepth());
+		gate.countDown();
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals("first", delivered.get(0));
+		assertEquals("heartbeat", delivered.get(1));
+		assertEquals("bulk-1", delivered.get(2));
+		assertEquals("bulk-2", delivered.get(3));
+		assertEquals(2, engine.getLaneStats("b", Priority.LOW).getTaken());
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallPackWaitingMessagesIntoBatches() throws Exception {
+		latch = new CountDownLatch(MESSAGES);
+		gate = new CountDownLatch(1);
+		SenderEngine engine = new TestEngine(taskManager);
+		/* The other lanes keep a part of the window */
+		engine.setWindow(2 * MESSAGES);
+		engine.setBatchPolicy(new BatchPolicy(32, 1024 * 1024, 0));
+		for (int i = 0; i < MESSAGES; i++) {
+			assertTrue(engine.submit(messageFactory.createTextualMessage(
+					VerificationConstants.MSG_SOURCE,
+					VerificationConstants.MSG_DESTINATION, String.valueOf(i))));
+		}
+		gate.countDown();
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		/* The messages are still in order and no batch exceeds the limit */
+		for (int i = 0; i < MESSAGES; i++) {
+			assertEquals(String.valueOf(i), delivered.get(i));
+		}
+		assertTrue(batches.size() < MESSAGES);
+		for (Integer size : batches) {
+			assertTrue(size <= 32);
+		}
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallRetryInOrderWithoutHoldingThread() throws Exception {
+		latch = new CountDownLatch(MESSAGES);
+		gate = new CountDownLatch(0);
+		failures.set(2);
+		SenderEngine engine = new TestEngine(taskManager);
+		/* The other lanes keep a part of the window */
+		engine.setWindow(2 * MESSAGES);
+		engine.getRetryScheduler().setBackoff(10, 20, 0.5);
+		for (int i = 0; i < MESSAGES; i++) {
+			assertTrue(engine.submit(messageFactory.createTextualMessage(
+					VerificationConstants.MSG_SOURCE,
+					VerificationConstants.MSG_DESTINATION, String.valueOf(i))));
+		}
+		/* Another destination is served while the first waits for a retry */
+		final CountDownLatch other = new CountDownLatch(1);
+		taskManager.execute(new Runnable() {
+			public void run() {
+				other.countDown();
+			}
+		});
+		assertTrue(other.await(10, TimeUnit.SECONDS));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < MESSAGES; i++) {
+			assertEquals(String.valueOf(i), delivered.get(i));
+		}
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallDropMessageAfterLastTrial() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		failures.set(3);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.getRetryScheduler().setBackoff(10, 20, 0);
+		engine.getRetryScheduler().setMaxAttempts(3);
+		engine.submit(messageFactory.createTextualMessage("a", "b", "1"));
+		engine.submit(messageFactory.createTextualMessage("a", "b", "2"));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(1, delivered.size());
+		assertEquals("2", delivered.get(0));
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallReportQueueFullPerDestination() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(1);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setCapacity("b", 1);
+		assertEquals(1, engine.getCapacity("b"));
+		assertEquals(SendStatus.ACCEPTED, engine.trySubmit(messageFactory
+				.createTextualMessage("a", "b", "1")));
+		while (engine.getQueueDepth("b") != 0) {
+			Thread.sleep(10);
+		}
+		/* The slow destination is full, the others are not held */
+		assertEquals(SendStatus.ACCEPTED, engine.trySubmit(messageFactory
+				.createTextualMessage("a", "b", "2")));
+		assertEquals(SendStatus.QUEUE_FULL, engine.trySubmit(messageFactory
+				.createTextualMessage("a", "b", "3")));
+		assertEquals(SendStatus.ACCEPTED, engine.trySubmit(messageFactory
+				.createTextualMessage("a", "c", "4")));
+		gate.countDown();
+		engine.shutdown();
+		assertEquals(SendStatus.STOPPED, engine.trySubmit(messageFactory
+				.createTextualMessage("a", "b", "5")));
+	}
+
+	@Test
+	public void shallWaitForFreePlace() throws Exception {
+		latch = new CountDownLatch(3);
+		gate = new CountDownLatch(1);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setWindow(1);
+		assertEquals(SendStatus.ACCEPTED, engine.submit(messageFactory
+				.createTextualMessage("a", "b", "1"), 100));
+		while (engine.getQueueDepth("b") != 0) {
+			Thread.sleep(10);
+		}
+		assertEquals(SendStatus.ACCEPTED, engine.submit(messageFactory
+				.createTextualMessage("a", "b", "2"), 100));
+		assertEquals(SendStatus.QUEUE_FULL, engine.submit(messageFactory
+				.createTextualMessage("a", "b", "3"), 50));
+		/* A place is freed once the gate opens */
+		gate.countDown();
+		assertEquals(SendStatus.ACCEPTED, engine.submit(messageFactory
+				.createTextualMessage("a", "b", "3"), 10000));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals("3", delivered.get(2));
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallCompleteFutureOnDelivery() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		SenderEngine engine = new TestEngine(taskManager);
+		CompletableFuture<DeliveryReceipt> future = engine
+				.submitAsync(messageFactory.createTextualMessage("a", "b", "1"));
+		DeliveryReceipt receipt = future.get(10, TimeUnit.SECONDS);
+		assertEquals("b", receipt.getDestination());
+		assertEquals(1, receipt.getAttempts());
+		assertFalse(receipt.isAcknowledged());
+		assertTrue(receipt.getAcceptedLatency(TimeUnit.NANOSECONDS) >= 0);
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallCompleteFutureOnAcknowledgement() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		isAcking = true;
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setAckMode(AckMode.RECEIVER);
+		Message message = messageFactory.createTextualMessage("a", "b", "1");
+		message.setCorrelationId("request-1");
+		DeliveryReceipt receipt = engine.submitAsync(message).get(10,
+				TimeUnit.SECONDS);
+		assertTrue(receipt.isAcknowledged());
+		assertEquals("request-1", receipt.getCorrelationId());
+		assertTrue(receipt.getAcknowledgedLatency(TimeUnit.NANOSECONDS) >= 0);
+		assertFalse(engine.acknowledge("request-1"));
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallFailFutureWithoutAcknowledgement() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setAckMode(AckMode.RECEIVER);
+		engine.setAckTimeout(50);
+		CompletableFuture<DeliveryReceipt> future = engine
+				.submitAsync(messageFactory.createTextualMessage("a", "b", "1"));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("The message has to be acknowledged in time");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PPCException);
+		}
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallFailFutureOfDroppedMessage() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		failures.set(2);
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.getRetryScheduler().setBackoff(10, 20, 0);
+		engine.getRetryScheduler().setMaxAttempts(2);
+		CompletableFuture<DeliveryReceipt> future = engine
+				.submitAsync(messageFactory.createTextualMessage("a", "b", "1"));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("The message has to be dropped");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PPCException);
+		}
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallFailFutureWhenPipeThrows() throws Exception {
+		gate = new CountDownLatch(0);
+		isThrowing = true;
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.getRetryScheduler().setBackoff(10, 20, 0);
+		engine.getRetryScheduler().setMaxAttempts(2);
+		CompletableFuture<DeliveryReceipt> future = engine
+				.submitAsync(messageFactory.createTextualMessage("a", "b", "1"));
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("The message has to be dropped");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof PPCException);
+		}
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallRestoreNameOfPoolThread() throws Exception {
+		latch = new CountDownLatch(1);
+		gate = new CountDownLatch(0);
+		/* Runs the sender on the thread of the test */
+		SenderEngine engine = new TestEngine(new TaskManager() {
+			// @Override
+			public void execute(Runnable jobToDo) {
+				jobToDo.run();
+			}
+
+			// @Override
+			public void shutdown() {
+			}
+
+			// @Override
+			public void init() {
+			}
+		});
+		String name = Thread.currentThread().getName();
+		assertTrue(engine.submit(messageFactory.createTextualMessage("a", "b",
+				"1")));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertEquals(name, Thread.currentThread().getName());
+		engine.shutdown();
+	}
+
+	@Test
+	public void shallBoundAllLanesByWindow() throws Exception {
+		DestinationSender sender = new TestEngine(taskManager)
+				.createDestinationSender("b", 6);
+		int low = 0;
+		while (sender.offer(new Envelope(prioritized("low", Priority.LOW),
+				null))) {
+			low++;
+		}
+		/* The other lanes keep a place each */
+		assertEquals(4, low);
+		assertTrue(sender.offer(new Envelope(prioritized("high",
+				Priority.HIGH), null)));
+		assertTrue(sender.offer(new Envelope(prioritized("normal",
+				Priority.NORMAL), null)));
+		assertFalse(sender.offer(new Envelope(prioritized("high",
+				Priority.HIGH), null)));
+		assertEquals(6, sender.getCapacity());
+		assertEquals(6, sender.getQueueDepth());
+	}
+
+	private Message prioritized(String text, Priority priority) {
+		Message message = messageFactory.createTextualMessage("a", "b", text);
+		message.setPriority(priority);
+		return message;
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		taskManager.shutdown();
+	}
+
+	/**
+	 * Records what was delivered instead of sending it over a pipe
+	 */
+	private class TestEngine extends SenderEngine {
+		public TestEngine(TaskManager taskManager) {
+			super(taskManager);
+		}
+
+		@Override
+		protected DestinationSender createDestinationSender(
+				String destination, int window) {
+			created.add(destination);
+			return new DestinationSender(this, destination, window) {
+				@Override
+				protected boolean deliver(Message message) {
+					try {
+						gate.await();
+					} catch (InterruptedException e) {
+						return false;
+					}
+					if (isThrowing) {
+						throw new IllegalStateException("The pipe is broken");
+					}
+					if (failures.getAndDecrement() > 0) {
+						return false;
+					}
+					if (message instanceof BatchMessage) {
+						try {
+							List<Message> messages = ((BatchMessage) message)
+									.getMessages();
+							batches.add(messages.size());
+							for (Message packed : messages) {
+								delivered.add(packed.getTextualMesage());
+								latch.countDown();
+							}
+						} catch (IOException e) {
+							return false;
+						}
+						return true;
+					}
+					delivered.add(message.getTextualMesage());
+					latch.countDown();
+					if (isAcking && message.isAckRequested()) {
+						acknowledge(message.getCorrelationId());
+					}
+					return true;
+				}
+
+				@Override
+				protected void close() {
+				}
+			};
+		}
+	}
+}
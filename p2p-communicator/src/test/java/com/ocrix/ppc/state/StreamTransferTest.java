@@ -0,0 +1,444 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ocrix.ppc.state;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ocrix.ppc.VerificationConstants;
+import com.ocrix.ppc.message.ChunkMessage;
+import com.ocrix.ppc.message.Message;
+import com.ocrix.ppc.message.MessageFactory;
+import com.ocrix.ppc.message.StreamMessage;
+import com.ocrix.ppc.threadpool.StandardFixedThreadPool;
+import com.ocrix.ppc.threadpool.TaskManager;
+import com.ocrix.ppc.type.AckMode;
+
+public class StreamTransferTest {
+	/* Class members */
+	private static final int CHUNK_SIZE = 1024;
+	private final List<StreamMessage> completed = new CopyOnWriteArrayList<StreamMessage>();
+	private final MessageFactory messageFactory = new MessageFactory();
+	private TaskManager taskManager = null;
+	private StreamReceiver receiver = null;
+	private CountDownLatch gate = null;
+	/* A sequence of the chunk which is lost once */
+	private volatile long lost = -1;
+	/* How many chunks were sent from outside of the heap */
+	private final AtomicLong direct = new AtomicLong();
+
+	@Before
+	public void setUp() throws Exception {
+		taskManager = new StandardFixedThreadPool();
+		receiver = new StreamReceiver(4 * CHUNK_SIZE);
+		gate = new CountDownLatch(0);
+		completed.clear();
+		lost = -1;
+		direct.set(0);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		taskManager.shutdown();
+		for (StreamMessage message : completed) {
+			message.discard();
+		}
+	}
+
+	@Test
+	public void shallReassembleInMemory() throws Exception {
+		byte[] data = random(3 * CHUNK_SIZE + 17);
+		String transferId = newSender(AckMode.RECEIVER).send(
+				VerificationConstants.MSG_DESTINATION,
+				new ByteArrayInputStream(data));
+		assertEquals(1, completed.size());
+		StreamMessage message = completed.get(0);
+		assertEquals(transferId, message.getTransferId());
+		assertEquals(VerificationConstants.MSG_SOURCE, message.getSource());
+		assertEquals(data.length, message.getSize());
+		assertNull(message.getFile());
+		assertArrayEquals(data, read(message.getStream()));
+	}
+
+	@Test
+	public void shallSpillLargeTransferToFile() throws Exception {
+		byte[] data = random(10 * CHUNK_SIZE);
+		newSender(AckMode.PIPE).send(VerificationConstants.MSG_DESTINATION,
+				new ByteArrayInputStream(data));
+		assertEquals(1, completed.size());
+		StreamMessage message = completed.get(0);
+		assertNotNull(message.getFile());
+		assertEquals(data.length, message.getFile().length());
+		assertArrayEquals(data, read(message.getStream()));
+		assertTrue(message.discard());
+		assertEquals(0, receiver.getPendingCount());
+	}
+
+	@Test
+	public void shallSendEmptyStream() throws Exception {
+		newSender(AckMode.RECEIVER).send(VerificationConstants.MSG_DESTINATION,
+				new ByteArrayInputStream(new byte[0]));
+		assertEquals(1, completed.size());
+		assertEquals(0, completed.get(0).getSize());
+	}
+
+	@Test
+	public void shallBoundInFlightChunksByWindow() throws Exception {
+		final int window = 3;
+		gate = new CountDownLatch(1);
+		final StreamSender sender = newSender(AckMode.RECEIVER);
+		sender.setWindow(window);
+		final CountingStream in = new CountingStream(random(50 * CHUNK_SIZE));
+		final CopyOnWriteArrayList<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+		Thread thread = new Thread(new Runnable() {
+			// @Override
+			public void run() {
+				try {
+					sender.send(VerificationConstants.MSG_DESTINATION, in);
+				} catch (IOException e) {
+					errors.add(e);
+				}
+			}
+		});
+		thread.start();
+		Thread.sleep(300);
+		/* The window and a chunk read ahead */
+		assertEquals((window + 1) * CHUNK_SIZE, in.count.get());
+		gate.countDown();
+		thread.join(10000);
+		assertTrue(errors.isEmpty());
+		assertEquals(1, completed.size());
+		assertEquals(50 * CHUNK_SIZE, completed.get(0).getSize());
+	}
+
+	@Test
+	public void shallResumeInterruptedTransfer() throws Exception {
+		byte[] data = random(6 * CHUNK_SIZE + 100);
+		Path file = Files.createTempFile("ppc-stream", ".bin");
+		try {
+			Files.write(file, data);
+			StreamSender sender = newSender(AckMode.RECEIVER);
+			sender.setTimeout(300);
+			lost = 4;
+			String transferId = null;
+			try {
+				sender.send(VerificationConstants.MSG_DESTINATION,
+						Files.newInputStream(file), "resumed", 0);
+				fail("The lost chunk is not acknowledged");
+			} catch (IOException e) {
+				transferId = "resumed";
+			}
+			assertEquals(0, completed.size());
+			long next = receiver.getNextSequence(
+					VerificationConstants.MSG_SOURCE, transferId);
+			assertEquals(4, next);
+			sender.resumeFile(VerificationConstants.MSG_DESTINATION, file,
+					transferId, next);
+			assertEquals(1, completed.size());
+			assertArrayEquals(data, read(completed.get(0).getStream()));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void shallSendMappedFile() throws Exception {
+		byte[] data = random(10 * CHUNK_SIZE + 5);
+		Path file = Files.createTempFile("ppc-mapped", ".bin");
+		try {
+			Files.write(file, data);
+			String transferId = newSender(AckMode.RECEIVER).sendFile(
+					VerificationConstants.MSG_DESTINATION, file);
+			assertEquals(1, completed.size());
+			StreamMessage message = completed.get(0);
+			assertEquals(transferId, message.getTransferId());
+			/* Announced ahead, so written into a mapped file of that size */
+			assertNotNull(message.getFile());
+			assertEquals(data.length, message.getFile().length());
+			assertArrayEquals(data, read(message.getStream()));
+			assertEquals(11, direct.get());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void shallSendSmallMappedFileInMemory() throws Exception {
+		byte[] data = random(CHUNK_SIZE + 1);
+		Path file = Files.createTempFile("ppc-mapped", ".bin");
+		try {
+			Files.write(file, data);
+			newSender(AckMode.PIPE).sendFile(
+					VerificationConstants.MSG_DESTINATION, file);
+			assertEquals(1, completed.size());
+			assertNull(completed.get(0).getFile());
+			assertArrayEquals(data, read(completed.get(0).getStream()));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void shallIgnoreRepeatedChunk() throws Exception {
+		byte[] data = random(2 * CHUNK_SIZE);
+		ChunkMessage first = chunk("t", 0, data, 0, CHUNK_SIZE);
+		ChunkMessage last = chunk("t", 1, data, CHUNK_SIZE, CHUNK_SIZE);
+		last.setLast(data.length);
+		assertNull(receiver.onChunk(first));
+		assertNull(receiver.onChunk(first));
+		StreamMessage message = receiver.onChunk(last);
+		assertNotNull(message);
+		assertArrayEquals(data, read(message.getStream()));
+	}
+
+	@Test
+	public void shallFailTransferOfWrongSize() throws Exception {
+		byte[] data = random(CHUNK_SIZE);
+		ChunkMessage only = chunk("short", 0, data, 0, data.length);
+		only.setLast(data.length + 1);
+		try {
+			receiver.onChunk(only);
+			fail("A transfer shorter than declared shall fail");
+		} catch (IOException e) {
+			assertEquals(0, receiver.getPendingCount());
+			assertFalse(receiver.isReceived(only));
+		}
+	}
+
+	@Test
+	public void shallFailMappedTransferShorterThanAnnounced()
+			throws Exception {
+		byte[] data = random(6 * CHUNK_SIZE);
+		for (int i = 0; i < 6; i++) {
+			ChunkMessage chunk = chunk("mapped-short", i, data, i * CHUNK_SIZE,
+					CHUNK_SIZE);
+			if (i == 0) {
+				chunk.setFileSize(8 * CHUNK_SIZE);
+			}
+			if (i == 5) {
+				/* Declares what it sent, not what it announced */
+				chunk.setLast(data.length);
+				try {
+					receiver.onChunk(chunk);
+					fail("A mapped file shall not be padded");
+				} catch (IOException e) {
+					assertEquals(0, receiver.getPendingCount());
+				}
+			} else {
+				assertNull(receiver.onChunk(chunk));
+			}
+		}
+	}
+
+	@Test
+	public void shallRefuseChunkBeyondMappedSize() throws Exception {
+		byte[] data = random(6 * CHUNK_SIZE);
+		ChunkMessage first = chunk("mapped-long", 0, data, 0, CHUNK_SIZE);
+		first.setFileSize(5 * CHUNK_SIZE);
+		assertNull(receiver.onChunk(first));
+		for (int i = 1; i < 5; i++) {
+			assertNull(receiver.onChunk(chunk("mapped-long", i, data, i
+					* CHUNK_SIZE, CHUNK_SIZE)));
+		}
+		try {
+			receiver.onChunk(chunk("mapped-long", 5, data, 5 * CHUNK_SIZE,
+					CHUNK_SIZE));
+			fail("A chunk beyond the announced size shall fail");
+		} catch (IOException e) {
+			assertEquals(0, receiver.getPendingCount());
+		}
+	}
+
+	@Test
+	public void shallExpireIdleTransfer() throws Exception {
+		byte[] data = random(CHUNK_SIZE);
+		assertNull(receiver.onChunk(chunk("idle", 0, data, 0, data.length)));
+		assertEquals(1, receiver.getPendingCount());
+		assertEquals(0, receiver.expire(60000));
+		assertEquals(1, receiver.expire(0));
+		assertEquals(0, receiver.getPendingCount());
+	}
+
+	@Test
+	public void shallIgnoreLateChunkOfCompletedTransfer() throws Exception {
+		byte[] data = random(2 * CHUNK_SIZE);
+		ChunkMessage first = chunk("late", 0, data, 0, CHUNK_SIZE);
+		ChunkMessage last = chunk("late", 1, data, CHUNK_SIZE, CHUNK_SIZE);
+		last.setLast(data.length);
+		assertNull(receiver.onChunk(first));
+		assertNotNull(receiver.onChunk(last));
+		/* Retransmitted after the receipt was lost */
+		assertNull(receiver.onChunk(first));
+		assertNull(receiver.onChunk(last));
+		assertTrue(receiver.isReceived(first));
+		assertEquals(0, receiver.getPendingCount());
+	}
+
+	@Test
+	public void shallPublishSingleChunkTransferOnce() throws Exception {
+		byte[] data = random(CHUNK_SIZE);
+		ChunkMessage only = chunk("once", 0, data, 0, data.length);
+		only.setLast(data.length);
+		assertNotNull(receiver.onChunk(only));
+		assertNull(receiver.onChunk(only));
+		assertTrue(receiver.isReceived(only));
+		/* Forgotten after the idle time */
+		receiver.expire(0);
+		assertFalse(receiver.isReceived(only));
+	}
+
+	@Test
+	public void shallExpireIdleTransferOnSchedule() throws Exception {
+		byte[] data = random(CHUNK_SIZE);
+		assertNull(receiver.onChunk(chunk("abandoned", 0, data, 0,
+				data.length)));
+		receiver.scheduleExpiry(50);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (receiver.getPendingCount() > 0
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, receiver.getPendingCount());
+	}
+
+	private StreamSender newSender(AckMode ackMode) {
+		SenderEngine engine = new TestEngine(taskManager);
+		engine.setAckMode(ackMode);
+		StreamSender sender = new StreamSender(engine,
+				VerificationConstants.MSG_SOURCE);
+		sender.setChunkSize(CHUNK_SIZE);
+		return sender;
+	}
+
+	private ChunkMessage chunk(String transferId, long sequence, byte[] data,
+			int offset, int length) {
+		return (ChunkMessage) messageFactory
+				.createReceivedMessage(new ChunkMessage(
+						VerificationConstants.MSG_SOURCE,
+						VerificationConstants.MSG_DESTINATION, transferId,
+						sequence, data, offset, length));
+	}
+
+	private static byte[] random(int size) {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return data;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[512];
+		int read = 0;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Counts the bytes read from the stream
+	 */
+	private static class CountingStream extends ByteArrayInputStream {
+		private final AtomicLong count = new AtomicLong();
+
+		public CountingStream(byte[] data) {
+			super(data);
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				count.addAndGet(read);
+			}
+			return read;
+		}
+	}
+
+	/**
+	 * Hands the chunks to the receiver instead of sending them over a pipe
+	 */
+	private class TestEngine extends SenderEngine {
+		public TestEngine(TaskManager taskManager) {
+			super(taskManager);
+		}
+
+		@Override
+		protected DestinationSender createDestinationSender(
+				String destination, int window) {
+			return new DestinationSender(this, destination, window) {
+				@Override
+				protected boolean deliver(Message message) {
+					try {
+						gate.await();
+					} catch (InterruptedException e) {
+						return false;
+					}
+					ChunkMessage chunk = (ChunkMessage) messageFactory
+							.createReceivedMessage(message);
+					if (chunk.getBuffer().isDirect()) {
+						direct.incrementAndGet();
+					}
+					if (chunk.getSequence() == lost) {
+						/* Lost on the way, the later ones come out of order */
+						lost = -1;
+						return true;
+					}
+					try {
+						StreamMessage stream = receiver.onChunk(chunk);
+						if (stream != null) {
+							completed.add(stream);
+						}
+						if (stream != null || receiver.isReceived(chunk)) {
+							if (chunk.isAckRequested()) {
+								acknowledge(chunk.getCorrelationId());
+							}
+						}
+					} catch (IOException e) {
+						return false;
+					}
+					return true;
+				}
+
+				@Override
+				protected void close() {
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ocrix.ppc.threadpool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.ocrix.ppc.type.RejectionPolicy;
+import com.ocrix.ppc.type.ThreadPoolType;
+
+public class TaskManagerTest {
+	/* More blocked tasks than the fixed thread pool has threads */
+	private static final int BLOCKED_TASKS = 8;
+	private static final int BUSY_TASKS = 64;
+
+	@Test
+	public void shallNotStallOnBlockedTasksInForkJoinPool() throws Exception {
+		assertRunsBlockedTasks(new ThreadPoolSwitcher()
+				.getTaskManager(ThreadPoolType.FORK_JOIN));
+	}
+
+	@Test
+	public void shallRunBusyTasksOnParallelismOfForkJoinPool()
+			throws Exception {
+		final Set<Thread> threads = Collections
+				.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+		final CountDownLatch finished = new CountDownLatch(BUSY_TASKS);
+		TaskManager taskManager = new ForkJoinThreadPool(1);
+		for (int i = 0; i < BUSY_TASKS; i++) {
+			taskManager.execute(new Runnable() {
+				public void run() {
+					threads.add(Thread.currentThread());
+					long sum = 0;
+					for (int j = 0; j < 100000; j++) {
+						sum += j;
+					}
+					if (sum > 0)
+						finished.countDown();
+				}
+			});
+		}
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(1, threads.size());
+		taskManager.shutdown();
+	}
+
+	@Test
+	public void shallNotStallOnBlockedTasksInVirtualPool() throws Exception {
+		assertRunsBlockedTasks(new ThreadPoolSwitcher()
+				.getTaskManager(ThreadPoolType.VIRTUAL));
+	}
+
+	@Test
+	public void shallNotStallOnBlockedTasksInBoundedPool() throws Exception {
+		assertRunsBlockedTasks(new BoundedThreadPool(BLOCKED_TASKS, BLOCKED_TASKS, 1,
+				RejectionPolicy.ABORT));
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void shallRejectWhenBoundedPoolIsFull() throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		TaskManager taskManager = new BoundedThreadPool(1, 1, 1,
+				RejectionPolicy.ABORT);
+		try {
+			for (int i = 0; i < 3; i++) {
+				taskManager.execute(new Runnable() {
+					public void run() {
+						await(gate);
+					}
+				});
+			}
+		} finally {
+			gate.countDown();
+			taskManager.shutdown();
+		}
+	}
+
+	@Test
+	public void shallRunByCallerWhenBoundedPoolIsFull() throws Exception {
+		final CountDownLatch gate = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		TaskManager taskManager = new BoundedThreadPool(1, 1, 1,
+				RejectionPolicy.CALLER_RUNS);
+		for (int i = 0; i < 2; i++) {
+			taskManager.execute(new Runnable() {
+				public void run() {
+					await(gate);
+				}
+			});
+		}
+		final Thread caller = Thread.currentThread();
+		taskManager.execute(new Runnable() {
+			public void run() {
+				if (Thread.currentThread() == caller)
+					done.countDown();
+			}
+		});
+		assertTrue(done.await(0, TimeUnit.SECONDS));
+		gate.countDown();
+		taskManager.shutdown();
+	}
+
+	/**
+	 * Starts tasks that wait for each other, they finish only if all of them
+	 * run at once
+	 */
+	private void assertRunsBlockedTasks(TaskManager taskManager)
+			throws Exception {
+		final CountDownLatch started = new CountDownLatch(BLOCKED_TASKS);
+		final CountDownLatch finished = new CountDownLatch(BLOCKED_TASKS);
+		for (int i = 0; i < BLOCKED_TASKS; i++) {
+			taskManager.execute(new Runnable() {
+				public void run() {
+					started.countDown();
+					await(started);
+					finished.countDown();
+				}
+			});
+		}
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		taskManager.shutdown();
+	}
+
+	private static void await(final CountDownLatch latch) {
+		try {
+			new BlockingCall<Boolean>() {
+				@Override
+				protected Boolean call() throws InterruptedException {
+					return latch.await(10, TimeUnit.SECONDS);
+				}
+			}.invoke();
+		} catch (IOException e) {
+			// not thrown by a latch
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}